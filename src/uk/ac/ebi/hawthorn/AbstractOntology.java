@@ -17,8 +17,6 @@
 
 package uk.ac.ebi.hawthorn;
 
-import org.biojava.utils.io.InputStreamMonitor;
-import org.biojava.utils.net.URLConnectionHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -26,8 +24,13 @@ import java.util.*;
 import java.net.URL;
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 /**
  * Provides a cached map of ontology terms.
@@ -38,6 +41,10 @@ import java.io.FileInputStream;
  */
 public abstract class AbstractOntology implements Ontology {
 
+    // Milliseconds a new ontology waits for another node to publish a first snapshot
+    private static final long SNAPSHOT_WAIT  = 60000;
+    private static final long SNAPSHOT_POLL  = 500;
+
     private final String prefix;
     private final String uri;
     private final String userName;
@@ -45,11 +52,27 @@ public abstract class AbstractOntology implements Ontology {
     private final int    refreshInterval;
     private final boolean tolerateRefreshException;
 
-    private final InputStreamMonitor  inputStreamMonitor;
+    private final CircuitBreaker      circuitBreaker;
     private final InputStreamListener inputStreamListener;
-    private final Map                 terms;
+    private final OntologyLoader      loader;
+    private final RefreshCoordinator  coordinator;
     private final Log                 log;
 
+    private volatile TermStore        store;
+    private volatile LoadStatistics   loadStatistics;
+    private volatile HeapBudget       heapBudget;
+    private long                      lastChecksum;
+    private long                      lastSourceCrc;    // of whole source read by last load
+    private long                      lastLength;       // of source file at last load
+    private long                      lastModified;
+    private CRC32                     sourceCrc;        // of source opened by the load in progress
+    private long                      sourceChecksum;   // set by subclass if source not opened
+    private File                      sourceFile;       // set if source last opened from file system
+    private File                      spool;            // copy of changed source for the next load
+    private long                      reserved;         // heap budget held by the refresh in progress
+    private final Map                 slims = new HashMap();   // subset -> SlimProjection
+    private final Map                 namespaceViews = new HashMap();   // namespace -> NamespaceView
+
     /**
      * Loads ontology terms from <code>url</code>.
      *
@@ -70,6 +93,65 @@ public abstract class AbstractOntology implements Ontology {
                                boolean tolerateRefreshException,
                                InputStreamListener inputStreamListener)
               throws IOException   {
+        this(null, prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener);
+    }
+
+    /**
+     * Loads ontology terms from <code>url</code> with <code>loader</code>, through the load
+     * pipeline.
+     *
+     * @param   loader  Loader for the source format, or null to use <code>loadTermStore</code>
+     * @param   prefix Ontology prefix
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval How often in seconds to check for updates.
+     * @param   tolerateRefreshException Allow refresh exceptions to be logged or thrown
+     * @param   inputStreamListener Listens for calls to obtain input streams
+     * @throws  IOException if could not load terms
+     * @since   1.1
+     */
+    protected AbstractOntology(OntologyLoader loader,
+                               String prefix,
+                               String uri,
+                               String userName,
+                               String password,
+                               int refreshInterval,
+                               boolean tolerateRefreshException,
+                               InputStreamListener inputStreamListener)
+              throws IOException   {
+        this(loader, prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+    }
+
+    /**
+     * Loads ontology terms from <code>url</code> with <code>loader</code>, sharing loads and
+     * refreshes with other nodes through <code>coordinator</code> so only one node fetches the
+     * source. The first snapshot is taken from the coordinator if another node has published one.
+     *
+     * @param   loader  Loader for the source format, or null to use <code>loadTermStore</code>
+     * @param   prefix Ontology prefix
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval How often in seconds to check for updates.
+     * @param   tolerateRefreshException Allow refresh exceptions to be logged or thrown
+     * @param   inputStreamListener Listens for calls to obtain input streams
+     * @param   coordinator Coordinator, or null to fetch the source directly
+     * @throws  IOException if could not load terms
+     * @see     FileRefreshCoordinator
+     * @since   1.1
+     */
+    protected AbstractOntology(OntologyLoader loader,
+                               String prefix,
+                               String uri,
+                               String userName,
+                               String password,
+                               int refreshInterval,
+                               boolean tolerateRefreshException,
+                               InputStreamListener inputStreamListener,
+                               RefreshCoordinator coordinator)
+              throws IOException   {
+        this.loader             = loader;
         this.log                = LogFactory.getLog(this.getClass());
         this.prefix             = prefix;
         this.uri                = uri;
@@ -77,10 +159,10 @@ public abstract class AbstractOntology implements Ontology {
         this.password           = password;
         this.refreshInterval    = refreshInterval;
         this.tolerateRefreshException = tolerateRefreshException;
-        this.inputStreamMonitor = new InputStreamMonitor(getRefreshInterval());
         this.inputStreamListener = inputStreamListener;
-        this.terms              = new HashMap();
-        terms.putAll(getTerms());
+        this.coordinator        = coordinator;
+        this.store              = (coordinator == null) ? load() : loadCoordinated();
+        this.circuitBreaker     = new CircuitBreaker(refreshInterval * 1000L, System.currentTimeMillis());
     }
 
     public final String getPrefix()   {
@@ -105,12 +187,107 @@ public abstract class AbstractOntology implements Ontology {
 
     public final String getTerm(String id) throws IOException, NoSuchElementException   {
         refresh();
-        if (terms.containsKey(id))
-            return (String) terms.get(id);
+        TermStore s = store;
+        int index = s.indexOf(id);
+        if (index > -1)
+            return s.getName(index);
         else
             throw new NoSuchElementException("Could not find term for ontology ID: " + id);
     }
 
+    public final TermRecord getTermRecord(String id) throws IOException, NoSuchElementException   {
+        refresh();
+        TermStore s = store;
+        int index = s.indexOf(id);
+        if (index > -1)
+            return s.getRecord(index);
+        else
+            throw new NoSuchElementException("Could not find term for ontology ID: " + id);
+    }
+
+    public final TermStore getTermStore() throws IOException  {
+        refresh();
+        return store;
+    }
+
+    public final SlimProjection getSlimProjection(String subset) throws IOException  {
+        TermStore s = getTermStore();
+        synchronized (slims)    {
+            SlimProjection projection = (SlimProjection) slims.get(subset);
+            if (projection == null || projection.getTermStore() != s)   {
+                projection = SlimProjection.forSubset(s, subset);
+                slims.put(subset, projection);
+            }
+            return projection;
+        }
+    }
+
+    public final NamespaceView getNamespaceView(String namespace) throws IOException  {
+        TermStore s = getTermStore();
+        synchronized (namespaceViews)    {
+            NamespaceView view = (NamespaceView) namespaceViews.get(namespace);
+            if (view == null || view.getTermStore() != s)   {
+                view = NamespaceView.forNamespace(s, namespace);
+                namespaceViews.put(namespace, view);
+            }
+            return view;
+        }
+    }
+
+    public final SourceHealth getHealth()  {
+        return circuitBreaker.getHealth();
+    }
+
+    public final LoadStatistics getLoadStatistics()  {
+        return loadStatistics;
+    }
+
+    public final MemoryUsage getMemoryUsage()  {
+        return store.getMemoryUsage();
+    }
+
+    /**
+     * Counts this ontology's snapshot against <code>budget</code>, and refuses to parse a changed
+     * source when a second snapshot the size of the current one would take usage over it.
+     *
+     * @param   budget  Budget shared with other ontologies, or null for none
+     * @see     HeapBudget
+     * @since   1.1
+     */
+    public final void setHeapBudget(HeapBudget budget)  {
+        HeapBudget previous = heapBudget;
+        if (previous != null)   {
+            previous.remove(this);
+        }
+        if (budget != null) {
+            budget.update(this, store.getMemoryUsage().getTotalBytes());
+        }
+        heapBudget = budget;
+    }
+
+    /**
+     * Sets how refresh failures are handled. Defaults are 3 failures, 30 seconds and 1 hour.
+     *
+     * @param   failureThreshold    Consecutive failures before lookups stop checking the source
+     * @param   retryInterval       Seconds before the source is first checked again
+     * @param   maxRetryInterval    Most seconds between checks while the source stays down
+     * @see     SourceHealth
+     * @since   1.1
+     */
+    public final void setFailurePolicy(int failureThreshold, int retryInterval, int maxRetryInterval)  {
+        circuitBreaker.configure(failureThreshold, retryInterval * 1000L, maxRetryInterval * 1000L);
+    }
+
+    /**
+     * Returns coordinator that refreshes of this ontology are shared through.
+     *
+     * @return  coordinator, or null if the source is fetched directly
+     * @since   1.1
+     */
+    public final RefreshCoordinator getRefreshCoordinator()  {
+        return coordinator;
+    }
+
     public boolean isTolerateRefreshExceptions() {
         return tolerateRefreshException;
     }
@@ -129,19 +306,33 @@ public abstract class AbstractOntology implements Ontology {
         buf.append("Password:\t"         + getPassword()        + "\n");
         buf.append("Refresh interval:\t" + getRefreshInterval() + "\n");
         buf.append("Tolerate refresh exceptions:\t" + isTolerateRefreshExceptions() + "\n");
-        buf.append("Term count:\t"       + Integer.toString(terms.size()) + "\n");
+        buf.append("Term count:\t"       + Integer.toString(store.size()) + "\n");
+        buf.append("Memory:\t"           + store.getMemoryUsage() + "\n");
         return (buf.toString());
     }
 
     /**
-     * Returns input stream for URL.
+     * Returns input stream for URL. A checksum is taken of the bytes read, so a load can tell
+     * whether the source has changed without reading it twice. If a refresh has already read
+     * a changed source to check it, its copy is returned rather than fetching it again.
      *
      * @return  input stream for URL
      * @throws  IOException if could not open connection or get input stream
      * @see     #getUri
+     * @see     FetchEngine#fetchOnWorker(URL, String, String)
      */
     protected final InputStream getInputStream() throws IOException {
+        InputStream inputStream = (spool == null) ? openSource() : new FileInputStream(spool);
+        CRC32 crc = new CRC32();
+        sourceCrc = crc;
+        return new CheckedInputStream(inputStream, crc);
+    }
+
+    // Opens source through listeners, class loader, file system or URL, in that order, and
+    // notes whether it came from a file
+    private InputStream openSource() throws IOException {
         String uri = getUri();
+        sourceFile = null;
         try {
             InputStream inputStream = null;
             // First try event listeners
@@ -157,10 +348,11 @@ public abstract class AbstractOntology implements Ontology {
                 File file = new File(uri);
                 if (file.exists())  {
                     inputStream = new FileInputStream(file);
+                    sourceFile  = file;
                 }
                 else    {
                     // Finally assume it's a URL
-                    inputStream = URLConnectionHelper.getInputStream(new URL(uri), getUserName(), getPassword());
+                    inputStream = FetchEngine.getDefault().fetchOnWorker(new URL(uri), getUserName(), getPassword());
                 }
             }
             return inputStream;
@@ -173,18 +365,215 @@ public abstract class AbstractOntology implements Ontology {
     }
 
     /**
-     * Reloads terms if ontology has been updated.
+     * Returns loader for the source format.
+     *
+     * @return  loader, or null if the subclass reads the source itself
+     * @since   1.1
+     */
+    public final OntologyLoader getLoader()  {
+        return loader;
+    }
+
+    /**
+     * Reads ontology and returns a new snapshot of its terms. The default implementation
+     * reads the source with the loader passed to the constructor, or if there is none wraps
+     * the map returned by <code>getTerms</code>; subclasses that can read richer data should
+     * pass a loader, or override this method and implement <code>getTerms</code> in terms of it.
+     *
+     * @return  new snapshot of terms
+     * @throws  IOException if could not load terms
+     * @see     #getTerms()
+     */
+    protected TermStore loadTermStore() throws IOException {
+        if (loader != null) {
+            return loadPipelined(loader);
+        }
+        return TermStore.fromMap(getTerms());
+    }
+
+    /**
+     * Reads <code>getInputStream</code> through the load pipeline, so the source is fetched on
+     * another thread while <code>loader</code> works through the bytes already read. Reloads
+     * build into a snapshot pre-sized like the current one.
+     *
+     * @param   loader  Loader for the source format
+     * @return  new snapshot of terms
+     * @throws  IOException if could not read or parse source
+     * @see     LoadPipeline
+     */
+    final TermStore loadPipelined(OntologyLoader loader) throws IOException {
+        LoadPipeline pipeline = new LoadPipeline(loader, store);
+        TermStore s = pipeline.load(getInputStream());
+        loadStatistics = pipeline.getStatistics();
+        return s;
+    }
+
+    /**
+     * Records checksum of the source for a load that does not read it through
+     * <code>getInputStream</code>.
+     *
+     * @param   checksum    Checksum of the bytes the terms were read from
+     */
+    final void setSourceChecksum(long checksum)  {
+        sourceChecksum = checksum;
+    }
+
+    // Calls loadTermStore, timing it as one stage unless it went through the load pipeline, and
+    // records the checksum of the source
+    private TermStore load() throws IOException  {
+        long start = System.nanoTime();
+        LoadStatistics previous = loadStatistics;
+        // Taken before reading, so a change during the load is seen by the next check
+        File file = new File(getUri());
+        long length   = file.length();
+        long modified = file.lastModified();
+        sourceCrc      = null;
+        sourceChecksum = RefreshCoordinator.NO_VERSION;
+        TermStore s = loadTermStore();
+        if (loadStatistics == previous) {
+            long time = System.nanoTime() - start;
+            loadStatistics = new LoadStatistics(0, time, 0, 0, time, -1, s.size());
+        }
+        lastSourceCrc = (sourceCrc == null) ? RefreshCoordinator.NO_VERSION : sourceCrc.getValue();
+        lastChecksum  = (sourceChecksum == RefreshCoordinator.NO_VERSION) ? lastSourceCrc : sourceChecksum;
+        lastLength    = length;
+        lastModified  = modified;
+        sourceCrc     = null;
+        return s;
+    }
+
+    /**
+     * Returns true if the source may have changed since the last load, without parsing it.
+     * A source file is compared by length and modification time without being read. Any other
+     * source is read once and checksummed; if it has changed it is kept in a temporary file
+     * for the load that follows, so it is not fetched twice.
+     *
+     * @return  true if the source should be loaded
+     * @throws  IOException if could not read source
+     */
+    private boolean isModified() throws IOException  {
+        InputStream in = openSource();
+        try {
+            if (sourceFile != null) {
+                return sourceFile.length() != lastLength || sourceFile.lastModified() != lastModified;
+            }
+            File copy = File.createTempFile("hawthorn", ".source");
+            boolean modified = false;
+            try {
+                CRC32 crc = new CRC32();
+                OutputStream out = new FileOutputStream(copy);
+                try {
+                    byte[] buffer = new byte[1 << 16];
+                    int n;
+                    while ((n = in.read(buffer)) > -1)  {
+                        crc.update(buffer, 0, n);
+                        out.write(buffer, 0, n);
+                    }
+                }
+                finally {
+                    out.close();
+                }
+                modified = (crc.getValue() != lastSourceCrc);
+            }
+            finally {
+                if (modified)   {
+                    spool = copy;
+                }
+                else    {
+                    copy.delete();
+                }
+            }
+            return modified;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Loads terms if the source has changed, and drops them if its checksum turns out to
+     * match the last load's. Room for the new snapshot is reserved in <code>budget</code>
+     * before the source is parsed. Only called by the thread holding the circuit breaker.
+     *
+     * @param   budget  Heap budget, or null for none
+     * @return  new snapshot of terms, or null if the source is unchanged
+     * @throws  IOException if could not load terms, or there is no room for them
+     */
+    private TermStore loadIfModified(HeapBudget budget) throws IOException  {
+        if (!isModified())  {
+            return null;
+        }
+        try {
+            reserve(budget);
+            long checked = lastChecksum;
+            TermStore s = load();
+            if (lastChecksum == checked && checked != RefreshCoordinator.NO_VERSION)   {
+                return null;
+            }
+            return s;
+        }
+        finally {
+            if (spool != null)  {
+                spool.delete();
+                spool = null;
+            }
+        }
+    }
+
+    /**
+     * Reserves room in <code>budget</code> for a second snapshot, estimated as the size of the
+     * current one, before it is built. The reservation is held until the refresh finishes.
+     *
+     * @param   budget  Heap budget, or null for none
+     * @throws  HeapBudgetException if there is no room
+     */
+    private void reserve(HeapBudget budget) throws HeapBudgetException  {
+        TermStore s = store;
+        if (budget == null || s == null || reserved > 0) {
+            return;
+        }
+        long bytes = s.getMemoryUsage().getTotalBytes();
+        if (!budget.reserve(bytes)) {
+            throw new HeapBudgetException("Could not refresh ontology '" + getPrefix() + "': needs " +
+                                          (bytes >> 10) + " KB more than " + budget);
+        }
+        reserved = bytes;
+    }
+
+    /**
+     * Reloads terms if ontology has been updated. The source is only checked once the refresh
+     * interval has passed, and only by one thread at a time; other callers carry on with the
+     * current snapshot. The source is only parsed if it has changed. After a failure the
+     * source is left alone for a retry interval, which doubles while it stays down, and
+     * lookups are served from the last snapshot without waiting on the source.
      *
      * @throws IOException if could not get input stream for ontology
+     * @see    #getHealth()
      */
     private void refresh() throws IOException  {
-        Map map = null;
+        if (!circuitBreaker.tryAcquire(System.currentTimeMillis()))   {
+            return;
+        }
+        HeapBudget budget = heapBudget;
         try {
-            if (inputStreamMonitor.isModified(getInputStream()))   {
-                map = getTerms();
+            TermStore s = (coordinator == null) ? loadIfModified(budget) : refreshCoordinated(budget);
+            if (s != null)  {
+                replace(s, budget);
+            }
+            circuitBreaker.success(System.currentTimeMillis());
+        }
+        catch (HeapBudgetException e)   {
+            // Not the source's fault, so not counted against it; next refresh tries again
+            circuitBreaker.success(System.currentTimeMillis());
+            if (isTolerateRefreshExceptions())    {
+                log.warn(e.getMessage());
+            }
+            else    {
+                throw e;
             }
         }
         catch (IOException e)   {
+            circuitBreaker.failure(System.currentTimeMillis(), e);
             if (isTolerateRefreshExceptions())    {
                 log.warn("Could not refresh ontology '" + getPrefix() + "'", e);
             }
@@ -192,10 +581,137 @@ public abstract class AbstractOntology implements Ontology {
                 throw e;
             }
         }
-        if (map != null)    {
-            terms.clear();
-            terms.putAll(map);
+        catch (RuntimeException e)   {
+            circuitBreaker.failure(System.currentTimeMillis(), e);
+            throw e;
+        }
+        catch (Error e)   {
+            circuitBreaker.failure(System.currentTimeMillis(), e);
+            throw e;
+        }
+        finally {
+            if (reserved > 0)   {
+                budget.release(reserved);
+                reserved = 0;
+            }
+        }
+    }
+
+    // Swaps in new snapshot
+    private void replace(TermStore s, HeapBudget budget)  {
+        store = s;
+        // Let old snapshot go as soon as its readers finish
+        synchronized (slims)    {
+            slims.clear();
+        }
+        synchronized (namespaceViews)    {
+            namespaceViews.clear();
+        }
+        if (budget != null) {
+            budget.update(this, s.getMemoryUsage().getTotalBytes());
+        }
+    }
+
+    /**
+     * Loads first snapshot through the coordinator. The published snapshot is used if there is
+     * one; otherwise this node publishes one if it gets the lock, or waits for the node that
+     * has it. If that node takes too long the source is read directly.
+     *
+     * @return  first snapshot of terms
+     * @throws  IOException if could not load terms
+     */
+    private TermStore loadCoordinated() throws IOException  {
+        long deadline = System.currentTimeMillis() + SNAPSHOT_WAIT;
+        while (true)    {
+            TermStore s = refreshCoordinated(null);
+            if (s != null)  {
+                return s;
+            }
+            if (System.currentTimeMillis() > deadline)  {
+                log.warn("No snapshot published for ontology '" + getPrefix() + "' through " +
+                         coordinator + ", reading source");
+                return load();
+            }
+            try {
+                Thread.sleep(SNAPSHOT_POLL);
+            }
+            catch (InterruptedException e)  {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for snapshot");
+            }
+        }
+    }
+
+    /**
+     * Checks the source if this node gets the coordinator's lock and no node has checked it
+     * within the refresh interval, publishing a new snapshot if the source changed. Then reads
+     * the published snapshot if it differs from the one this node has. Room for a new snapshot
+     * is reserved in <code>budget</code> before it is read or parsed.
+     *
+     * @param   budget  Heap budget, or null for none
+     * @return  new snapshot of terms, or null if unchanged
+     * @throws  IOException if could not read source or snapshot, or there is no room for it
+     */
+    private TermStore refreshCoordinated(HeapBudget budget) throws IOException  {
+        String prefix = getPrefix();
+        if (coordinator.tryLock(prefix)) {
+            long checkTime = 0;
+            TermStore s = null;
+            try {
+                long now = System.currentTimeMillis();
+                long version = coordinator.getVersion(prefix);
+                if (version == RefreshCoordinator.NO_VERSION ||
+                        now - coordinator.getLastCheckTime(prefix) >= refreshInterval * 1000L)    {
+                    if (version != RefreshCoordinator.NO_VERSION && lastChecksum != version)  {
+                        // Catch up first, so unchanged source is not loaded again
+                        reserve(budget);
+                        RefreshCoordinator.Snapshot snapshot = coordinator.read(prefix);
+                        if (snapshot != null)   {
+                            lastChecksum = snapshot.getVersion();
+                            s = snapshot.getTermStore();
+                        }
+                    }
+                    // Checksum only moves on once the new terms are loaded, so old terms are
+                    // never published under it
+                    TermStore loaded = (s == null && store == null) ? load() : loadIfModified(budget);
+                    if (loaded != null) {
+                        s = loaded;
+                    }
+                    if (lastChecksum != version)    {
+                        coordinator.publish(prefix, lastChecksum, (s == null) ? store : s);
+                    }
+                    checkTime = now;
+                }
+            }
+            finally {
+                coordinator.unlock(prefix, checkTime);
+            }
+            if (checkTime > 0)  {
+                return s;
+            }
+        }
+        // Pick up snapshot published by another node
+        if (coordinator.getVersion(prefix) != lastChecksum || store == null)    {
+            reserve(budget);
+            RefreshCoordinator.Snapshot snapshot = coordinator.read(prefix);
+            if (snapshot != null && (snapshot.getVersion() != lastChecksum || store == null))   {
+                lastChecksum = snapshot.getVersion();
+                return snapshot.getTermStore();
+            }
         }
+        return null;
+    }
+
+    /**
+     * Thrown when a refresh is refused for lack of heap budget, which does not count as a
+     * failure of the source.
+     */
+    private static final class HeapBudgetException extends IOException  {
+
+        HeapBudgetException(String message)  {
+            super(message);
+        }
+
     }
 
-}
\ No newline at end of file
+}
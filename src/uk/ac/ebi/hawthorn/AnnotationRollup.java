@@ -0,0 +1,448 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.NoSuchElementException;
+
+/**
+ * Counts the entities, such as genes, annotated to each term of one ontology, propagating
+ * annotations up the hierarchy. An entity counts once towards a term if it is annotated to the
+ * term or to any of its descendants, however many of its annotations lead there. For example:
+ * <pre>
+ *  AnnotationRollup rollup = new AnnotationRollup(store, new String[]{"is_a", "part_of"});
+ *  AnnotationRollup.Counts counts = rollup.count(new FileReader("gene_association.goa"), 1, 4);
+ *  int genes = counts.getCount("GO:0008150");
+ * </pre>
+ * <p>
+ * Ancestors are looked up once, when the rollup is created. Pairs of entity and term are
+ * collected as ints and grouped by entity; each entity then marks the ancestors of its terms in
+ * a bitset so that shared ancestors are only counted once. Entities are split across processors,
+ * each with its own bitset and counts. Instances are immutable and safe to share between threads.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     TermStore
+ */
+public final class AnnotationRollup {
+
+    // Smallest number of entities worth counting on another thread
+    private static final int MIN_ENTITIES = 1024;
+
+    private static final char SEPARATOR = '\t';
+    private static final char COMMENT   = '!';
+
+    private final TermStore store;
+    private final int[]     offsets;    // term index -> start in ancestors
+    private final int[]     ancestors;  // ancestors of each term, including the term
+
+    /**
+     * Creates rollup over the hierarchy of <code>store</code>.
+     *
+     * @param   store               Snapshot of terms
+     * @param   relationshipTypes   Relationship types to follow, or null to follow all
+     */
+    public AnnotationRollup(TermStore store, String[] relationshipTypes)  {
+        this.store = store;
+        TermStore.AncestorTable table = store.getAncestorTable(store.getRelationshipTypeMask(relationshipTypes));
+        this.offsets   = table.offsets;
+        this.ancestors = table.ancestors;
+    }
+
+    /**
+     * Returns snapshot this rollup was created from.
+     *
+     * @return  snapshot this rollup was created from
+     */
+    public TermStore getTermStore() {
+        return store;
+    }
+
+    /**
+     * Returns new counter for adding annotations one at a time.
+     *
+     * @return  new counter
+     */
+    public Counter newCounter() {
+        return new Counter();
+    }
+
+    /**
+     * Counts annotations given as parallel arrays.
+     *
+     * @param   entities    Annotated entity of each annotation
+     * @param   ids         Ontology ID of each annotation; IDs not in the snapshot are counted
+     *                      as unknown
+     * @return  counts
+     * @throws  IllegalArgumentException if the arrays differ in length
+     */
+    public Counts count(String[] entities, String[] ids) throws IllegalArgumentException  {
+        if (entities.length != ids.length)  {
+            throw new IllegalArgumentException(entities.length + " entities but " + ids.length + " IDs");
+        }
+        Counter counter = new Counter(ids.length);
+        for (int i = 0; i < ids.length; i++)    {
+            counter.add(entities[i], ids[i]);
+        }
+        return counter.getCounts();
+    }
+
+    /**
+     * Counts annotations read from tab-separated lines, such as a GO annotation file
+     * (entity column 1, ID column 4). Blank lines and lines starting with "!" are skipped,
+     * as are lines without both columns.
+     *
+     * @param   in              Annotation lines
+     * @param   entityColumn    Zero-based index of column holding the entity
+     * @param   idColumn        Zero-based index of column holding the ontology ID
+     * @return  counts
+     * @throws  IOException if could not read <code>in</code>
+     */
+    public Counts count(Reader in, int entityColumn, int idColumn) throws IOException  {
+        BufferedReader reader = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        Counter counter = new Counter();
+        String line;
+        while ((line = reader.readLine()) != null)  {
+            if (line.length() == 0 || line.charAt(0) == COMMENT)   {
+                continue;
+            }
+            String entity = getColumn(line, entityColumn);
+            String id     = getColumn(line, idColumn);
+            if (entity != null && id != null)   {
+                counter.add(entity, id);
+            }
+        }
+        return counter.getCounts();
+    }
+
+    // Returns column of line, or null if line has too few columns
+    private static String getColumn(String line, int column)    {
+        int start = 0;
+        for (int i = 0; i < column; i++)    {
+            start = line.indexOf(SEPARATOR, start) + 1;
+            if (start == 0) {
+                return null;
+            }
+        }
+        int end = line.indexOf(SEPARATOR, start);
+        return line.substring(start, (end < 0) ? line.length() : end);
+    }
+
+    /**
+     * Returns start of ancestors of term at <code>index</code> in {@link #getAncestors()};
+     * they end at the start for <code>index + 1</code>.
+     *
+     * @param   index   Term index, from 0 to the number of terms
+     * @return  offset of first ancestor
+     */
+    int getAncestorOffset(int index)   {
+        return offsets[index];
+    }
+
+    /**
+     * Returns ancestors of all terms, including the terms themselves.
+     *
+     * @return  ancestor term indices (not copied, so must not be changed)
+     */
+    int[] getAncestors()    {
+        return ancestors;
+    }
+
+    // Sets bit t in marks; returns false if it was already set
+    static boolean mark(int t, long[] marks)    {
+        long bit = 1L << t;
+        if ((marks[t >>> 6] & bit) != 0)    {
+            return false;
+        }
+        marks[t >>> 6] |= bit;
+        return true;
+    }
+
+    /**
+     * Collects annotations for counting. Not thread-safe.
+     */
+    public final class Counter  {
+
+        private final IdDictionary entities = new IdDictionary();
+        private final IntList      pairEntities;
+        private final IntList      pairTerms;
+        private long               unknown = 0;
+
+        private Counter()   {
+            this(1024);
+        }
+
+        private Counter(int capacity)   {
+            this.pairEntities = new IntList(capacity);
+            this.pairTerms    = new IntList(capacity);
+        }
+
+        /**
+         * Adds annotation of <code>entity</code> to term <code>id</code>.
+         *
+         * @param   entity  Annotated entity, for example a gene
+         * @param   id      Ontology ID; IDs not in the snapshot are counted as unknown
+         * @return  true if <code>id</code> is in the snapshot
+         */
+        public boolean add(String entity, String id)    {
+            int t = store.indexOf(id);
+            if (t < 0)  {
+                unknown++;
+                return false;
+            }
+            pairEntities.add(entities.intern(entity));
+            pairTerms.add(t);
+            return true;
+        }
+
+        /**
+         * Returns number of annotations added so far, including unknown IDs.
+         *
+         * @return  number of annotations
+         */
+        public long size()  {
+            return pairTerms.size() + unknown;
+        }
+
+        /**
+         * Counts annotations added so far.
+         *
+         * @return  counts
+         */
+        public Counts getCounts()   {
+            int entityCount = entities.size();
+            int pairCount   = pairTerms.size();
+
+            // Group terms by entity
+            final int[] entityOffsets = new int[entityCount + 1];
+            for (int i = 0; i < pairCount; i++) {
+                entityOffsets[pairEntities.get(i) + 1]++;
+            }
+            for (int e = 0; e < entityCount; e++)   {
+                entityOffsets[e + 1] += entityOffsets[e];
+            }
+            final int[] entityTerms = new int[pairCount];
+            int[] fill = new int[entityCount];
+            for (int i = 0; i < pairCount; i++) {
+                int e = pairEntities.get(i);
+                entityTerms[entityOffsets[e] + fill[e]++] = pairTerms.get(i);
+            }
+            fill = null;
+
+            final int n = store.size();
+            final int[] direct     = new int[n];
+            final int[] propagated = new int[n];
+            Parallel.run(entityCount, MIN_ENTITIES, new Parallel.Range()   {
+                public void run(int from, int to)  {
+                    int[] d = new int[n];
+                    int[] p = new int[n];
+                    long[] directMarks = new long[(n + 63) >>> 6];
+                    long[] marks       = new long[(n + 63) >>> 6];
+                    IntList touched = new IntList();
+                    for (int e = from; e < to; e++) {
+                        touched.clear();
+                        int start = entityOffsets[e];
+                        int end   = entityOffsets[e + 1];
+                        for (int j = start; j < end; j++)   {
+                            int t = entityTerms[j];
+                            if (mark(t, directMarks))   {
+                                d[t]++;
+                            }
+                            // Ancestor sets are closed, so a marked term has all its ancestors marked
+                            if ((marks[t >>> 6] & (1L << t)) != 0) {
+                                continue;
+                            }
+                            for (int k = offsets[t]; k < offsets[t + 1]; k++)    {
+                                int a = ancestors[k];
+                                if (mark(a, marks)) {
+                                    p[a]++;
+                                    touched.add(a);
+                                }
+                            }
+                        }
+                        for (int j = start; j < end; j++)   {
+                            int t = entityTerms[j];
+                            directMarks[t >>> 6] &= ~(1L << t);
+                        }
+                        for (int k = 0; k < touched.size(); k++)    {
+                            int a = touched.get(k);
+                            marks[a >>> 6] &= ~(1L << a);
+                        }
+                    }
+                    synchronized (propagated)   {
+                        for (int t = 0; t < n; t++) {
+                            direct[t]     += d[t];
+                            propagated[t] += p[t];
+                        }
+                    }
+                }
+            });
+            return new Counts(AnnotationRollup.this, entities.copy(), entityOffsets, entityTerms,
+                              direct, propagated, pairCount, unknown);
+        }
+
+    }
+
+    /**
+     * Number of entities annotated to each term, directly and through descendants.
+     * Instances are immutable and safe to share between threads.
+     */
+    public static final class Counts {
+
+        private final AnnotationRollup rollup;
+        private final IdDictionary     entities;
+        private final int[]            entityOffsets;   // entity code -> start in entityTerms
+        private final int[]            entityTerms;     // terms annotated to each entity
+        private final int[]            direct;
+        private final int[]            propagated;
+        private final long             annotationCount;
+        private final long             unknownCount;
+
+        private Counts(AnnotationRollup rollup, IdDictionary entities, int[] entityOffsets, int[] entityTerms,
+                       int[] direct, int[] propagated, long annotationCount, long unknownCount)   {
+            this.rollup          = rollup;
+            this.entities        = entities;
+            this.entityOffsets   = entityOffsets;
+            this.entityTerms     = entityTerms;
+            this.direct          = direct;
+            this.propagated      = propagated;
+            this.annotationCount = annotationCount;
+            this.unknownCount    = unknownCount;
+        }
+
+        /**
+         * Returns snapshot these counts are for.
+         *
+         * @return  snapshot of terms
+         */
+        public TermStore getTermStore() {
+            return rollup.store;
+        }
+
+        /**
+         * Returns number of entities annotated to <code>id</code> or any of its descendants.
+         *
+         * @param   id  Ontology ID, for example GO:0000001
+         * @return  number of entities
+         * @throws  NoSuchElementException if <code>id</code> not recognised
+         */
+        public int getCount(String id) throws NoSuchElementException  {
+            return propagated[getIndex(id)];
+        }
+
+        /**
+         * Returns number of entities annotated to term at <code>index</code> or any of its descendants.
+         *
+         * @param   index   Term index in the snapshot
+         * @return  number of entities
+         */
+        public int getCount(int index)  {
+            return propagated[index];
+        }
+
+        /**
+         * Returns number of entities annotated directly to <code>id</code>.
+         *
+         * @param   id  Ontology ID, for example GO:0000001
+         * @return  number of entities
+         * @throws  NoSuchElementException if <code>id</code> not recognised
+         */
+        public int getDirectCount(String id) throws NoSuchElementException  {
+            return direct[getIndex(id)];
+        }
+
+        /**
+         * Returns number of distinct entities with at least one annotation to a known term.
+         *
+         * @return  number of entities
+         */
+        public int getEntityCount() {
+            return entities.size();
+        }
+
+        /**
+         * Returns number of annotations to known terms, including repeats.
+         *
+         * @return  number of annotations
+         */
+        public long getAnnotationCount()    {
+            return annotationCount;
+        }
+
+        /**
+         * Returns number of annotations to IDs not in the snapshot.
+         *
+         * @return  number of annotations
+         */
+        public long getUnknownCount()   {
+            return unknownCount;
+        }
+
+        public String toString()    {
+            return "Entities: " + getEntityCount() + ", annotations: " + annotationCount +
+                   ", unknown: " + unknownCount + ", terms: " + rollup.store.size();
+        }
+
+        AnnotationRollup getRollup()    {
+            return rollup;
+        }
+
+        /**
+         * Returns code of <code>entity</code>, from 0 to <code>getEntityCount() - 1</code>.
+         *
+         * @param   entity  Entity
+         * @return  entity code, or -1 if the entity has no annotations to known terms
+         */
+        int getEntityCode(String entity)    {
+            return entities.get(entity);
+        }
+
+        /**
+         * Returns offsets of each entity's terms in {@link #getEntityTerms()}: the terms of
+         * entity <code>e</code> run from <code>offsets[e]</code> to <code>offsets[e + 1]</code>.
+         *
+         * @return  offsets, indexed by entity code (not copied, so must not be changed)
+         */
+        int[] getEntityOffsets()    {
+            return entityOffsets;
+        }
+
+        /**
+         * Returns indices of the terms each entity is annotated to, which may repeat.
+         *
+         * @return  term indices (not copied, so must not be changed)
+         */
+        int[] getEntityTerms()  {
+            return entityTerms;
+        }
+
+        private int getIndex(String id) throws NoSuchElementException   {
+            int index = rollup.store.indexOf(id);
+            if (index < 0)  {
+                throw new NoSuchElementException("Could not find term for ontology ID: " + id);
+            }
+            return index;
+        }
+
+    }
+
+}
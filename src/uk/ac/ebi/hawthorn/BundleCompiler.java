@@ -0,0 +1,168 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Compiles the ontologies in a properties file into one binary bundle, so nodes can load
+ * terms, relationships and all other fields without parsing text. Usage:
+ * <pre>
+ *  java uk.ac.ebi.hawthorn.BundleCompiler ontologies.properties ontologies.bundle [release]
+ * </pre>
+ * or <code>ant bundle</code>. The bundle is then used by pointing each prefix at it:
+ * <pre>
+ *  GO.uri=ontologies.bundle
+ *  GO.class=uk.ac.ebi.hawthorn.BundleOntology
+ * </pre>
+ * <p>
+ * A bundle starts with a header holding the format version, a release label, the time it was
+ * compiled and a table of sections. Each section holds one ontology in the
+ * {@link TermExporter} binary format, and its table entry gives the prefix, the position and
+ * length of the section and its CRC-32 checksum.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     BundleOntology
+ */
+public final class BundleCompiler {
+
+    static final int MAGIC   = 0x4857424E;     // "HWBN"
+    static final int VERSION = 1;
+
+    static final String ENCODING = "UTF-8";
+
+    private BundleCompiler()  {
+    }
+
+    public static void main(String[] args)  {
+        if (args.length < 2)    {
+            System.err.println("Usage: BundleCompiler <ontologies.properties> <bundle-file> [release]");
+            System.exit(1);
+        }
+        try {
+            String release = (args.length > 2) ? args[2] : "";
+            OntologyMap ontologyMap = new OntologyMap(new FileInputStream(args[0]));
+            Map counts = compile(ontologyMap, new File(args[1]), release);
+            for (Iterator i = counts.entrySet().iterator(); i.hasNext(); )   {
+                Map.Entry entry = (Map.Entry) i.next();
+                System.out.println(entry.getKey() + "\t" + entry.getValue() + " terms");
+            }
+            System.out.println("Wrote " + args[1]);
+        }
+        catch (Exception e)    {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Writes all ontologies in <code>ontologyMap</code> to <code>file</code>. The file is
+     * written under a temporary name and then renamed, so readers never see part of a bundle.
+     *
+     * @param   ontologyMap Ontologies to compile
+     * @param   file        Bundle file
+     * @param   release     Release label, for example "2005-06-21"
+     * @return  map with ontology prefix as key and number of terms as value
+     * @throws  IOException if could not load an ontology or write the bundle, or the bundle
+     *                      would be larger than 2 GB
+     */
+    public static Map compile(OntologyMap ontologyMap, File file, String release) throws IOException  {
+        Map ontologies = new TreeMap(ontologyMap.getMap());
+        String[] prefixes = new String[ontologies.size()];
+        byte[][] sections = new byte[ontologies.size()][];
+        Map counts = new TreeMap();
+        int k = 0;
+        for (Iterator i = ontologies.entrySet().iterator(); i.hasNext(); k++)   {
+            Map.Entry entry = (Map.Entry) i.next();
+            TermStore store = ((Ontology) entry.getValue()).getTermStore();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TermExporter.writeBinary(store, out);
+            prefixes[k] = (String) entry.getKey();
+            sections[k] = out.toByteArray();
+            counts.put(prefixes[k], Integer.valueOf(store.size()));
+        }
+
+        // Header size depends only on the prefixes, so work it out before writing
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        writeHeader(new DataOutputStream(header), release, prefixes, sections, 0);
+        long offset = header.size();
+        long size = offset;
+        for (int i = 0; i < sections.length; i++)   {
+            size += sections[i].length;
+        }
+        if (size > Integer.MAX_VALUE)   {
+            throw new IOException("Bundle would be larger than 2 GB, which BundleOntology cannot map: " + file);
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+        try {
+            writeHeader(out, release, prefixes, sections, offset);
+            for (int i = 0; i < sections.length; i++)   {
+                out.write(sections[i]);
+            }
+        }
+        finally {
+            out.close();
+        }
+        // Rename replaces the old bundle in one step where the platform allows it
+        if (!temp.renameTo(file))   {
+            if (!file.delete() || !temp.renameTo(file))    {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        }
+        return counts;
+    }
+
+    private static void writeHeader(DataOutputStream out, String release, String[] prefixes,
+                                    byte[][] sections, long offset) throws IOException  {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, release);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(prefixes.length);
+        for (int i = 0; i < prefixes.length; i++)   {
+            CRC32 crc = new CRC32();
+            crc.update(sections[i]);
+            writeString(out, prefixes[i]);
+            out.writeLong(offset);
+            out.writeInt(sections[i].length);
+            out.writeLong(crc.getValue());
+            offset += sections[i].length;
+        }
+        out.flush();
+    }
+
+    // Writes string as UTF-8 bytes preceded by their number as an unsigned short
+    private static void writeString(DataOutputStream out, String value) throws IOException  {
+        byte[] bytes = value.getBytes(ENCODING);
+        if (bytes.length > 0xffff)  {
+            throw new IOException("String too long for bundle header: " + value.substring(0, 64) + "...");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Provides cached map of terms from a bundle written by {@link BundleCompiler}. The section for
+ * this ontology's prefix is read, so one bundle can serve every prefix. For example:
+ * <pre>
+ *  GO.uri=ontologies.bundle
+ *  GO.class=uk.ac.ebi.hawthorn.BundleOntology
+ * </pre>
+ * Bundle files are memory-mapped and only the header and this ontology's section are read.
+ * No text is parsed, so loading is much faster than from OBO, DAG or OWL. Other URIs are read
+ * through <code>getInputStream</code>. The section checksum is checked on every load. Bundles
+ * must be smaller than 2 GB.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     BundleCompiler
+ */
+public final class BundleOntology extends AbstractOntology implements Ontology {
+
+    /**
+     * Register class with OntologyManager
+     * @see OntologyManager#registerOntology(String, OntologyFactory)
+     */
+    static  {
+        OntologyManager.registerOntology("uk.ac.ebi.hawthorn.BundleOntology", new BundleOntologyFactory());
+    }
+
+    static class BundleOntologyFactory implements CoordinatedOntologyFactory {
+        public Ontology getInstance(String prefix, String uri, String userName,
+                                    String password, int refreshInterval,
+                                    boolean tolerateRefreshException,
+                                    InputStreamListener inputStreamListener)
+               throws IOException   {
+            return getInstance(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+        }
+
+        public Ontology getInstance(String prefix, String uri, String userName,
+                                    String password, int refreshInterval,
+                                    boolean tolerateRefreshException,
+                                    InputStreamListener inputStreamListener,
+                                    RefreshCoordinator coordinator)
+               throws IOException   {
+            return new BundleOntology(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
+        }
+    }
+
+    /**
+     * Loads terms from ontology bundle.
+     *
+     * @param   prefix
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval
+     * @param   tolerateRefreshException
+     * @param   inputStreamListener     Listens for calls to obtain input streams
+     * @throws  IOException if could not load terms
+     * @see     AbstractOntology#AbstractOntology(String, String, String, String, int, boolean, InputStreamListener)
+     */
+    protected BundleOntology(String prefix, String uri, String userName, String password,
+                             int refreshInterval, boolean tolerateRefreshException,
+                             InputStreamListener inputStreamListener)
+              throws IOException   {
+        this(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+    }
+
+    /**
+     * Loads terms from ontology bundle.
+     *
+     * @param   prefix
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval
+     * @param   tolerateRefreshException
+     * @param   inputStreamListener     Listens for calls to obtain input streams
+     * @param   coordinator             Coordinator to share refreshes through, or null for none
+     * @throws  IOException if could not load terms
+     * @see     AbstractOntology#AbstractOntology(OntologyLoader, String, String, String, String, int, boolean, InputStreamListener, RefreshCoordinator)
+     */
+    protected BundleOntology(String prefix, String uri, String userName, String password,
+                             int refreshInterval, boolean tolerateRefreshException,
+                             InputStreamListener inputStreamListener,
+                             RefreshCoordinator coordinator)
+              throws IOException   {
+        super(null, prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
+    }
+
+    public Map getTerms() throws IOException {
+        return getTermStore().asMap();
+    }
+
+    /**
+     * Reads this ontology's section from the bundle, checking its checksum.
+     *
+     * @return  new snapshot of terms
+     * @throws  IOException if could not read bundle, bundle has no section for this prefix,
+     *                      or the section is corrupt
+     */
+    protected TermStore loadTermStore() throws IOException {
+        ByteBuffer bundle = open();
+        try {
+            if (bundle.getInt() != BundleCompiler.MAGIC) {
+                throw new IOException("Not an ontology bundle: " + getUri());
+            }
+            int version = bundle.getInt();
+            if (version != BundleCompiler.VERSION)  {
+                throw new IOException("Unsupported bundle version " + version + ": " + getUri());
+            }
+            readString(bundle);     // release
+            bundle.getLong();       // time compiled
+            int count = bundle.getInt();
+            for (int i = 0; i < count; i++)  {
+                String prefix = readString(bundle);
+                long offset   = bundle.getLong();
+                int  length   = bundle.getInt();
+                long checksum = bundle.getLong();
+                if (prefix.equals(getPrefix())) {
+                    if (offset < 0 || length < 0 || offset + length > bundle.capacity())  {
+                        throw new IOException("Corrupt ontology bundle " + getUri() + ": section for prefix '" +
+                                              prefix + "' is outside the bundle");
+                    }
+                    ByteBuffer section = bundle.duplicate();
+                    section.limit((int) offset + length);
+                    section.position((int) offset);
+                    return read(section.slice(), checksum);
+                }
+            }
+        }
+        catch (RuntimeException e)  {
+            // Buffer underflow or bad position: bundle is truncated
+            throw new IOException("Corrupt ontology bundle " + getUri() + ": " + e);
+        }
+        throw new IOException("No section for prefix '" + getPrefix() + "' in bundle " + getUri());
+    }
+
+    // Maps bundle file, or reads whole bundle if not a file
+    private ByteBuffer open() throws IOException  {
+        File file = new File(getUri());
+        if (file.isFile())  {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Ontology bundle larger than 2 GB: " + getUri());
+                }
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            finally {
+                raf.close();
+            }
+        }
+        InputStream inputStream = getInputStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = inputStream.read(buffer)) > -1) {
+                out.write(buffer, 0, n);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        }
+        finally {
+            inputStream.close();
+        }
+    }
+
+    private TermStore read(ByteBuffer section, long checksum) throws IOException  {
+        CheckedInputStream in = new CheckedInputStream(new ByteBufferInputStream(section), new CRC32());
+        TermStore store = null;
+        IOException failure = null;
+        try {
+            store = TermExporter.readBinary(in);
+        }
+        catch (IOException e)   {
+            failure = e;
+        }
+        // Include any bytes the reader did not need, and report corruption ahead of read errors
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) > -1)    {
+        }
+        if (in.getChecksum().getValue() != checksum) {
+            throw new IOException("Checksum mismatch for prefix '" + getPrefix() + "' in bundle " + getUri());
+        }
+        if (failure != null)    {
+            throw failure;
+        }
+        // Refreshes only pick up a new bundle if this ontology's section changed
+        setSourceChecksum(checksum);
+        return store;
+    }
+
+    // Reads string written by BundleCompiler.writeString
+    private static String readString(ByteBuffer buffer) throws IOException  {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, BundleCompiler.ENCODING);
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+/**
+ * Decides when an ontology source may be checked, and tracks its health.
+ * Only one thread at a time is allowed to check; others carry on with the current snapshot.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     SourceHealth
+ */
+final class CircuitBreaker {
+
+    static final int  DEFAULT_FAILURE_THRESHOLD  = 3;
+    static final long DEFAULT_RETRY_INTERVAL     = 30 * 1000L;
+    static final long DEFAULT_MAX_RETRY_INTERVAL = 60 * 60 * 1000L;
+
+    private final long checkInterval;
+
+    private int    failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long   retryInterval    = DEFAULT_RETRY_INTERVAL;
+    private long   maxRetryInterval = DEFAULT_MAX_RETRY_INTERVAL;
+
+    private volatile long nextCheckTime;
+    private boolean checking = false;
+
+    private int    state = SourceHealth.CLOSED;
+    private int    consecutiveFailures;
+    private long   failureCount;
+    private String lastFailure;
+    private long   lastFailureTime;
+    private long   lastSuccessTime;
+
+    /**
+     * Creates breaker for a source that has just been loaded.
+     *
+     * @param   checkInterval   Time between checks while healthy, in milliseconds
+     * @param   now             Current time in milliseconds
+     */
+    CircuitBreaker(long checkInterval, long now)  {
+        this.checkInterval   = checkInterval;
+        this.lastSuccessTime = now;
+        this.nextCheckTime   = now + checkInterval;
+    }
+
+    /**
+     * Sets failure handling.
+     *
+     * @param   failureThreshold    Consecutive failures before the circuit opens
+     * @param   retryInterval       Time before the source is checked again after a failure, in milliseconds
+     * @param   maxRetryInterval    Longest time between checks while the source stays down, in milliseconds
+     */
+    synchronized void configure(int failureThreshold, long retryInterval, long maxRetryInterval) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.retryInterval    = retryInterval;
+        this.maxRetryInterval = Math.max(retryInterval, maxRetryInterval);
+    }
+
+    /**
+     * Returns true if the caller should check the source now, in which case it must then call
+     * {@link #success} or {@link #failure}. Returns false without locking while a check is
+     * not due.
+     *
+     * @param   now Current time in milliseconds
+     * @return  true if the caller should check the source
+     */
+    boolean tryAcquire(long now)  {
+        if (now < nextCheckTime)   {
+            return false;
+        }
+        synchronized (this) {
+            if (checking || now < nextCheckTime)    {
+                return false;
+            }
+            checking = true;
+            if (state == SourceHealth.OPEN) {
+                state = SourceHealth.HALF_OPEN;
+            }
+            return true;
+        }
+    }
+
+    synchronized void success(long now)   {
+        state = SourceHealth.CLOSED;
+        consecutiveFailures = 0;
+        lastSuccessTime     = now;
+        nextCheckTime       = now + checkInterval;
+        checking            = false;
+    }
+
+    synchronized void failure(long now, Throwable e)   {
+        consecutiveFailures++;
+        failureCount++;
+        lastFailure     = e.toString();
+        lastFailureTime = now;
+        if (state == SourceHealth.HALF_OPEN || consecutiveFailures >= failureThreshold)    {
+            state = SourceHealth.OPEN;
+        }
+        // Back off even below the threshold, so lookups do not wait on a dead source in turn
+        nextCheckTime = now + getRetryInterval(consecutiveFailures - 1);
+        checking = false;
+    }
+
+    synchronized SourceHealth getHealth()    {
+        return new SourceHealth(state, consecutiveFailures, failureCount, lastFailure,
+                                lastFailureTime, lastSuccessTime, nextCheckTime);
+    }
+
+    // Doubles from retryInterval up to maxRetryInterval
+    private long getRetryInterval(int n) {
+        long interval = retryInterval;
+        for (int i = 0; i < n && interval < maxRetryInterval; i++)    {
+            interval *= 2;
+        }
+        return Math.min(interval, maxRetryInterval);
+    }
+
+}
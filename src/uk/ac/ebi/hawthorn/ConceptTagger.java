@@ -0,0 +1,556 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.util.*;
+import java.io.IOException;
+
+/**
+ * Finds term names and synonyms from all ontologies in an <code>OntologyMap</code> in free text,
+ * such as abstracts. For example:
+ * <pre>
+ *  ConceptTagger tagger = ontologyMap.getConceptTagger();
+ *  ConceptTagger.Match[] matches = tagger.tagLongest("Loss of mitochondrial genome maintenance ...");
+ * </pre>
+ * <p>
+ * Names are matched ignoring case, with any run of whitespace in the text matching a single
+ * space, and only at word boundaries (a match may not start or end next to a letter or digit).
+ * All names are compiled into one Aho-Corasick automaton, so text is scanned once whatever the
+ * number of names, and every match is found, including overlapping ones. <code>tagLongest</code>
+ * keeps only the leftmost longest matches.
+ * </p>
+ * <p>
+ * <code>refresh</code> rebuilds the automaton when a term snapshot has changed or prefixes have
+ * been added or removed. Tagging uses an immutable automaton, so it is safe from any number of
+ * threads, including during a refresh.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OntologyMap#getConceptTagger()
+ */
+public final class ConceptTagger {
+
+    private static final Match[] NO_MATCHES = new Match[0];
+
+    // Smallest batch of documents worth splitting across threads
+    private static final int MIN_CHUNK = 16;
+
+    private static final Comparator BY_POSITION = new Comparator()   {
+        public int compare(Object o1, Object o2)    {
+            Match m1 = (Match) o1;
+            Match m2 = (Match) o2;
+            if (m1.start != m2.start)   {
+                return m1.start - m2.start;
+            }
+            return m2.end - m1.end;
+        }
+    };
+
+    private final OntologyMap ontologyMap;
+
+    private volatile Automaton automaton;
+
+    /**
+     * Builds tagger over all ontologies in <code>ontologyMap</code>.
+     *
+     * @param   ontologyMap Ontologies to take names from
+     * @throws  IOException if could not load an ontology
+     */
+    public ConceptTagger(OntologyMap ontologyMap) throws IOException  {
+        this.ontologyMap = ontologyMap;
+        this.automaton   = new Automaton(new String[0], new TermStore[0]);
+        refresh();
+    }
+
+    /**
+     * Rebuilds the automaton if any term snapshot has changed, or prefixes have been added or
+     * removed, since the last call.
+     *
+     * @throws  IOException if could not load an ontology
+     */
+    public synchronized void refresh() throws IOException  {
+        Map ontologies = new TreeMap(ontologyMap.getMap());
+        String[]    prefixes = new String[ontologies.size()];
+        TermStore[] stores   = new TermStore[ontologies.size()];
+        int k = 0;
+        for (Iterator i = ontologies.entrySet().iterator(); i.hasNext(); k++)   {
+            Map.Entry entry = (Map.Entry) i.next();
+            prefixes[k] = (String) entry.getKey();
+            stores[k]   = ((Ontology) entry.getValue()).getTermStore();
+        }
+        Automaton a = automaton;
+        if (!Arrays.equals(prefixes, a.prefixes) || !Arrays.equals(stores, a.stores))    {
+            automaton = new Automaton(prefixes, stores);
+        }
+    }
+
+    /**
+     * Returns number of names and synonyms the automaton was built from, not counting
+     * repeats within a term.
+     *
+     * @return  number of names
+     */
+    public int size()   {
+        return automaton.patternTerms.length;
+    }
+
+    /**
+     * Finds all names in <code>text</code>, including overlapping and nested ones.
+     *
+     * @param   text    Free text
+     * @return  matches ordered by start, longest first
+     */
+    public Match[] tag(String text)    {
+        List matches = automaton.scan(text);
+        if (matches.isEmpty())  {
+            return NO_MATCHES;
+        }
+        Match[] sorted = (Match[]) matches.toArray(new Match[matches.size()]);
+        Arrays.sort(sorted, BY_POSITION);
+        return sorted;
+    }
+
+    /**
+     * Finds the leftmost longest names in <code>text</code>, so matches do not overlap.
+     * Terms with the same name (for example from different ontologies) are all returned.
+     *
+     * @param   text    Free text
+     * @return  matches ordered by start
+     */
+    public Match[] tagLongest(String text)    {
+        Match[] all = tag(text);
+        List longest = new ArrayList(all.length);
+        Match last = null;
+        for (int i = 0; i < all.length; i++) {
+            Match m = all[i];
+            if (last == null || m.start >= last.end || (m.start == last.start && m.end == last.end))   {
+                longest.add(m);
+                last = m;
+            }
+        }
+        return (Match[]) longest.toArray(new Match[longest.size()]);
+    }
+
+    /**
+     * Tags a batch of documents, splitting large batches across threads. Refreshes first.
+     *
+     * @param   texts   Documents
+     * @param   longest True to keep only leftmost longest matches
+     * @return  array with one entry per document, holding its matches
+     * @throws  IOException if could not load an ontology
+     * @see     #tag(String)
+     * @see     #tagLongest(String)
+     */
+    public Match[][] tag(final String[] texts, final boolean longest) throws IOException    {
+        refresh();
+        final Match[][] matches = new Match[texts.length][];
+        Parallel.run(texts.length, MIN_CHUNK, new Parallel.Range()    {
+            public void run(int from, int to)  {
+                for (int i = from; i < to; i++) {
+                    matches[i] = longest ? tagLongest(texts[i]) : tag(texts[i]);
+                }
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Term name found in text.
+     */
+    public static final class Match {
+
+        private final TermStore store;
+        private final int       index;
+        private final int       start;
+        private final int       end;
+
+        Match(TermStore store, int index, int start, int end)  {
+            this.store = store;
+            this.index = index;
+            this.start = start;
+            this.end   = end;
+        }
+
+        /**
+         * Returns position of first character of match in text.
+         *
+         * @return  start position
+         */
+        public int getStart()   {
+            return start;
+        }
+
+        /**
+         * Returns position after last character of match in text.
+         *
+         * @return  end position
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * Returns ontology ID of the matched term.
+         *
+         * @return  ontology ID
+         */
+        public String getId()   {
+            return store.getId(index);
+        }
+
+        /**
+         * Returns name of the matched term (the text may have matched a synonym).
+         *
+         * @return  term name
+         */
+        public String getName() {
+            return store.getName(index);
+        }
+
+        /**
+         * Returns full record of the matched term.
+         *
+         * @return  term record
+         */
+        public TermRecord getTermRecord()   {
+            return store.getRecord(index);
+        }
+
+        public String toString()    {
+            return start + "-" + end + " " + getId() + " " + getName();
+        }
+
+    }
+
+    // Folds case and whitespace the same way for names and text
+    private static char fold(char c)  {
+        return Character.isWhitespace(c) ? ' ' : Character.toLowerCase(c);
+    }
+
+    private static boolean isWordChar(String text, int i)  {
+        return i > -1 && i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+    }
+
+    /**
+     * Immutable automaton over the names in a set of term snapshots. States are numbered from 0
+     * (root) and transitions are held as one sorted run of characters per state.
+     */
+    private static final class Automaton    {
+
+        private final String[]    prefixes;
+        private final TermStore[] stores;
+
+        private final int[]  edgeOffsets;       // state -> start in edgeChars
+        private final char[] edgeChars;
+        private final int[]  edgeTargets;
+        private final int[]  fail;              // state -> longest proper suffix state
+        private final int[]  outputLink;        // state -> nearest suffix state with output, or 0
+        private final int[]  outputOffsets;     // state -> start in outputs
+        private final int[]  outputs;           // pattern numbers
+        private final int[]  patternStores;     // pattern -> store number
+        private final int[]  patternTerms;      // pattern -> term index
+        private final int[]  patternLengths;    // pattern -> folded length
+        private final int    positionMask;
+
+        Automaton(String[] prefixes, TermStore[] stores)    {
+            this.prefixes = prefixes;
+            this.stores   = stores;
+
+            // Build trie, with children found through a hash of (state, char)
+            TrieBuilder trie = new TrieBuilder();
+            IntList patternStoreList  = new IntList();
+            IntList patternTermList   = new IntList();
+            IntList patternLengthList = new IntList();
+            IntList patternStateList  = new IntList();
+            int maxLength = 1;
+            for (int s = 0; s < stores.length; s++) {
+                TermStore store = stores[s];
+                for (int t = 0; t < store.size(); t++)  {
+                    int first = patternStateList.size();
+                    String[] synonyms = store.getSynonyms(t);
+                    for (int n = -1; n < synonyms.length; n++)  {
+                        String name = (n < 0) ? store.getName(t) : synonyms[n];
+                        int length = 0;
+                        int state  = 0;
+                        boolean space = true;
+                        for (int i = 0; i < name.length(); i++) {
+                            char c = fold(name.charAt(i));
+                            if (c == ' ' && space)  {
+                                continue;
+                            }
+                            space = (c == ' ');
+                            state = trie.child(state, c);
+                            length++;
+                        }
+                        if (space && length > 0)    {
+                            // Trailing space: use the state before it
+                            state = trie.parentOf(state);
+                            length--;
+                        }
+                        if (length == 0 || contains(patternStateList, first, state))    {
+                            continue;
+                        }
+                        patternStoreList.add(s);
+                        patternTermList.add(t);
+                        patternLengthList.add(length);
+                        patternStateList.add(state);
+                        maxLength = Math.max(maxLength, length);
+                    }
+                }
+            }
+            this.patternStores  = patternStoreList.toArray();
+            this.patternTerms   = patternTermList.toArray();
+            this.patternLengths = patternLengthList.toArray();
+            int size = 1;
+            while (size < maxLength) {
+                size <<= 1;
+            }
+            this.positionMask = size - 1;
+
+            // Transitions grouped by state and sorted by character
+            int states = trie.size();
+            this.edgeOffsets = new int[states + 1];
+            for (int v = 1; v < states; v++) {
+                edgeOffsets[trie.parentOf(v) + 1]++;
+            }
+            for (int u = 0; u < states; u++) {
+                edgeOffsets[u + 1] += edgeOffsets[u];
+            }
+            this.edgeChars   = new char[states - 1];
+            this.edgeTargets = new int[states - 1];
+            int[] next = new int[states];
+            for (int v = 1; v < states; v++) {
+                int u = trie.parentOf(v);
+                int j = edgeOffsets[u] + next[u]++;
+                char c = trie.labelOf(v);
+                while (j > edgeOffsets[u] && edgeChars[j - 1] > c)    {
+                    edgeChars[j]   = edgeChars[j - 1];
+                    edgeTargets[j] = edgeTargets[j - 1];
+                    j--;
+                }
+                edgeChars[j]   = c;
+                edgeTargets[j] = v;
+            }
+            trie = null;
+
+            // Outputs grouped by state
+            this.outputOffsets = new int[states + 1];
+            for (int p = 0; p < patternStateList.size(); p++)   {
+                outputOffsets[patternStateList.get(p) + 1]++;
+            }
+            for (int u = 0; u < states; u++) {
+                outputOffsets[u + 1] += outputOffsets[u];
+            }
+            this.outputs = new int[patternStateList.size()];
+            next = new int[states];
+            for (int p = 0; p < patternStateList.size(); p++)   {
+                int u = patternStateList.get(p);
+                outputs[outputOffsets[u] + next[u]++] = p;
+            }
+
+            // Failure and output links, breadth first so shorter suffixes are done first
+            this.fail       = new int[states];
+            this.outputLink = new int[states];
+            int[] queue = next;
+            int head = 0, tail = 0;
+            queue[tail++] = 0;
+            while (head < tail)    {
+                int u = queue[head++];
+                for (int e = edgeOffsets[u]; e < edgeOffsets[u + 1]; e++)  {
+                    int v = edgeTargets[e];
+                    if (u > 0)  {
+                        int f = fail[u];
+                        int g = child(f, edgeChars[e]);
+                        while (g < 0 && f > 0)  {
+                            f = fail[f];
+                            g = child(f, edgeChars[e]);
+                        }
+                        fail[v] = (g < 0) ? 0 : g;
+                    }
+                    int f = fail[v];
+                    outputLink[v] = (outputOffsets[f + 1] > outputOffsets[f]) ? f : outputLink[f];
+                    queue[tail++] = v;
+                }
+            }
+        }
+
+        /**
+         * Returns all matches in <code>text</code>, in order of end position.
+         */
+        List scan(String text)  {
+            List matches = new ArrayList();
+            if (patternTerms.length == 0)   {
+                return matches;
+            }
+            // Text position of each folded character, for the last maxLength characters
+            int[] positions = new int[positionMask + 1];
+            int count = 0;
+            int state = 0;
+            boolean space = false;
+            for (int i = 0; i < text.length(); i++)    {
+                char c = fold(text.charAt(i));
+                if (c == ' ')   {
+                    if (space)  {
+                        continue;
+                    }
+                    space = true;
+                }
+                else    {
+                    space = false;
+                }
+                positions[count & positionMask] = i;
+                count++;
+                state = next(state, c);
+                int s = (outputOffsets[state + 1] > outputOffsets[state]) ? state : outputLink[state];
+                while (s > 0)   {
+                    for (int o = outputOffsets[s]; o < outputOffsets[s + 1]; o++)   {
+                        int p = outputs[o];
+                        int start = positions[(count - patternLengths[p]) & positionMask];
+                        int end = i + 1;
+                        if (!isWordChar(text, start - 1) && !isWordChar(text, end)) {
+                            matches.add(new Match(stores[patternStores[p]], patternTerms[p], start, end));
+                        }
+                    }
+                    s = outputLink[s];
+                }
+            }
+            return matches;
+        }
+
+        private int next(int state, char c)   {
+            while (true)    {
+                int g = child(state, c);
+                if (g > -1) {
+                    return g;
+                }
+                if (state == 0) {
+                    return 0;
+                }
+                state = fail[state];
+            }
+        }
+
+        private int child(int state, char c)  {
+            int low  = edgeOffsets[state];
+            int high = edgeOffsets[state + 1] - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char m = edgeChars[mid];
+                if (m < c)  {
+                    low = mid + 1;
+                }
+                else if (m > c) {
+                    high = mid - 1;
+                }
+                else    {
+                    return edgeTargets[mid];
+                }
+            }
+            return -1;
+        }
+
+        private static boolean contains(IntList list, int from, int value)    {
+            for (int i = from; i < list.size(); i++)   {
+                if (list.get(i) == value)   {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Growable trie used while building an automaton. Children are found through an
+     * open-addressing hash of (state, char).
+     */
+    private static final class TrieBuilder  {
+
+        private long[]  keys   = new long[1024];      // (state << 16 | char) + 1, or 0 if empty
+        private int[]   values = new int[1024];
+        private int     used   = 0;
+        private IntList parents = new IntList(1024);
+        private StringBuffer labels = new StringBuffer(1024);
+
+        TrieBuilder()   {
+            parents.add(-1);
+            labels.append('\0');
+        }
+
+        int size()  {
+            return parents.size();
+        }
+
+        int parentOf(int state)  {
+            return parents.get(state);
+        }
+
+        char labelOf(int state)  {
+            return labels.charAt(state);
+        }
+
+        // Returns child of state for c, adding it if needed
+        int child(int state, char c)    {
+            long key = (((long) state << 16) | c) + 1;
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != 0)    {
+                if (keys[slot] == key)  {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            int v = parents.size();
+            parents.add(state);
+            labels.append(c);
+            keys[slot]   = key;
+            values[slot] = v;
+            if (++used * 2 > keys.length)  {
+                grow();
+            }
+            return v;
+        }
+
+        private void grow()    {
+            long[] k = keys;
+            int[]  v = values;
+            keys   = new long[k.length * 2];
+            values = new int[k.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < k.length; i++)  {
+                if (k[i] != 0)  {
+                    int slot = hash(k[i]) & mask;
+                    while (keys[slot] != 0)    {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot]   = k[i];
+                    values[slot] = v[i];
+                }
+            }
+        }
+
+        private static int hash(long key)    {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32));
+        }
+
+    }
+
+}
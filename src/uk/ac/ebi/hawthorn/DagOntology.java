@@ -17,7 +17,9 @@
 
 package uk.ac.ebi.hawthorn;
 
-import org.bdgp.apps.dagedit.dataadapter.GOFlatFileAdapter;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.IOException;
 import java.util.Map;
 
@@ -44,16 +46,43 @@ public final class DagOntology extends AbstractOntology implements Ontology {
         OntologyManager.registerOntology("uk.ac.ebi.hawthorn.DagOntology", new DagOntologyFactory());
     }
 
-    static class DagOntologyFactory implements OntologyFactory {
+    static class DagOntologyFactory implements CoordinatedOntologyFactory {
         public Ontology getInstance(String prefix, String uri, String userName,
                                     String password, int refreshInterval, 
                                     boolean tolerateRefreshException, 
                                     InputStreamListener inputStreamListener)
                throws IOException   {
-            return new DagOntology(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener);
+            return getInstance(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+        }
+
+        public Ontology getInstance(String prefix, String uri, String userName,
+                                    String password, int refreshInterval, 
+                                    boolean tolerateRefreshException, 
+                                    InputStreamListener inputStreamListener,
+                                    RefreshCoordinator coordinator)
+               throws IOException   {
+            return new DagOntology(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
+        }
+    }
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Reads GO flat files, which are UTF-8.
+     *
+     * @see DagParser
+     */
+    public static final class Loader implements OntologyLoader  {
+        public String getFormat()   {
+            return "dag";
+        }
+        public void load(InputStream inputStream, TermSink sink) throws IOException   {
+            DagParser.parse(new BufferedReader(new InputStreamReader(inputStream, ENCODING)), sink);
         }
     }
 
+    private static final OntologyLoader LOADER = new Loader();
+
     /**
      * Loads terms from GO-formatted ontology.
      *
@@ -71,12 +100,33 @@ public final class DagOntology extends AbstractOntology implements Ontology {
                           int refreshInterval, boolean tolerateRefreshException,
                           InputStreamListener inputStreamListener)
               throws IOException   {
-        super(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener);
+        this(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+    }
+
+    /**
+     * Loads terms from GO-formatted ontology.
+     *
+     * @param   prefix
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval
+     * @param   tolerateRefreshException
+     * @param   inputStreamListener     Listens for calls to obtain input streams
+     * @param   coordinator             Coordinator to share refreshes through, or null for none
+     * @throws  IOException if could not load terms
+     * @see     AbstractOntology#AbstractOntology(OntologyLoader, String, String, String, String, int, boolean, InputStreamListener, RefreshCoordinator)
+     * @since   1.1
+     */
+    protected DagOntology(String prefix, String uri, String userName, String password,
+                          int refreshInterval, boolean tolerateRefreshException,
+                          InputStreamListener inputStreamListener,
+                          RefreshCoordinator coordinator)
+              throws IOException   {
+        super(LOADER, prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
     }
 
     public Map getTerms() throws IOException {
-        GOFlatFileAdapter adapter = new GOFlatFileAdapter();
-        adapter.setPath(getUri());
-        return OboOntology.getTerms(adapter);
+        return getTermStore().asMap();
     }
 }
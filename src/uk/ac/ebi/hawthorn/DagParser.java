@@ -0,0 +1,236 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for DAG-formatted ontologies. Each line holds one term, indented one space
+ * per level below its parent, and starts with a symbol giving the relationship to that parent:
+ * <pre>
+ *  !type: % is_a is a
+ *  !type: &lt; part_of part of
+ *  $Gene_Ontology ; GO:0003673
+ *   &lt;molecular_function ; GO:0003674
+ *    %antioxidant activity ; GO:0016209 ; EC:1.11.1.- ; synonym:antioxidant % other parent ; GO:0000001
+ * </pre>
+ * Fields are separated by ";". The second field holds the ID followed by any secondary IDs.
+ * Later fields hold xrefs and "synonym:" entries. Further parents can follow, each introduced
+ * by its relationship symbol. Terms may appear more than once, under each of their parents.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     DagOntology
+ */
+final class DagParser {
+
+    private static final char   COMMENT        = '!';
+    private static final char   ROOT           = '$';
+    private static final char   ESCAPE         = '\\';
+    private static final char   FIELD_SEP      = ';';
+    private static final char   LIST_SEP       = ',';
+    private static final String TYPE_HEADER    = "!type:";
+    private static final String SYNONYM        = "synonym:";
+
+    private final BufferedReader    reader;
+    private final TermSink builder;
+
+    // Relationship symbols and their types, eg. '%' -> "is_a"
+    private String     symbols = "";
+    private final List types   = new ArrayList();
+
+    // Index of last term seen at each depth
+    private int[] path  = new int[32];
+    private int   depth = -1;
+    private int   lines = 0;
+
+    private DagParser(BufferedReader reader, TermSink builder)    {
+        this.reader  = reader;
+        this.builder = builder;
+        addType('%', "is_a");
+        addType('<', "part_of");
+    }
+
+    /**
+     * Reads all terms from <code>reader</code> into <code>builder</code>.
+     *
+     * @param   reader  DAG-formatted ontology
+     * @param   builder Receives terms and relationships
+     * @throws  IOException if could not read or parse ontology
+     */
+    static void parse(BufferedReader reader, TermSink builder) throws IOException   {
+        new DagParser(reader, builder).parse();
+    }
+
+    private void parse() throws IOException  {
+        String line;
+        while ((line = reader.readLine()) != null)  {
+            lines++;
+            if (line.startsWith(TYPE_HEADER))   {
+                parseType(line.substring(TYPE_HEADER.length()).trim());
+            }
+            else if (line.length() > 0 && line.charAt(0) != COMMENT)    {
+                parseTerm(line);
+            }
+        }
+    }
+
+    // "% is_a is a"
+    private void parseType(String s)   {
+        if (s.length() > 2 && s.charAt(1) == ' ')  {
+            int end = s.indexOf(' ', 2);
+            addType(s.charAt(0), (end < 0) ? s.substring(2) : s.substring(2, end));
+        }
+    }
+
+    private void addType(char symbol, String type)  {
+        int i = symbols.indexOf(symbol);
+        if (i > -1) {
+            types.set(i, type);
+        }
+        else    {
+            symbols += symbol;
+            types.add(type);
+        }
+    }
+
+    private void parseTerm(String line) throws IOException  {
+        int depth = 0;
+        while (depth < line.length() && line.charAt(depth) == ' ')   {
+            depth++;
+        }
+        if (depth == line.length())  {
+            return;
+        }
+        char symbol = line.charAt(depth);
+        if (symbol != ROOT && symbols.indexOf(symbol) < 0)   {
+            throw new IOException("Unrecognised relationship symbol '" + symbol + "' at line " + lines + ": " + line);
+        }
+        if (symbol != ROOT && depth == 0)   {
+            throw new IOException("Missing parent at line " + lines + ": " + line);
+        }
+        if (depth > this.depth + 1)  {
+            throw new IOException("Bad indentation at line " + lines + ": " + line);
+        }
+        this.depth = depth;
+        // Split into term and extra parents at unescaped relationship symbols
+        List segments = new ArrayList();
+        List segmentSymbols = new ArrayList();
+        int start = depth + 1;
+        for (int i = start; i < line.length(); i++)  {
+            char c = line.charAt(i);
+            if (c == ESCAPE)    {
+                i++;
+            }
+            else if (symbols.indexOf(c) > -1 && line.charAt(i - 1) == ' ')    {
+                segments.add(line.substring(start, i));
+                segmentSymbols.add(Character.valueOf(c));
+                start = i + 1;
+            }
+        }
+        segments.add(line.substring(start));
+
+        String[] fields = split((String) segments.get(0), FIELD_SEP);
+        if (fields.length < 2)  {
+            throw new IOException("Missing ID at line " + lines + ": " + line);
+        }
+        String name = unescape(fields[0]);
+        String id   = unescape(split(fields[1], LIST_SEP)[0]);
+        boolean repeat = (builder.indexOf(id) > -1);
+        int index = builder.addTerm(id, name);
+        if (!repeat)    {
+            for (int f = 2; f < fields.length; f++) {
+                String field = fields[f];
+                if (field.startsWith(SYNONYM))  {
+                    builder.addSynonym(index, unescape(field.substring(SYNONYM.length()).trim()));
+                }
+                else if (field.length() > 0) {
+                    String[] xrefs = split(field, LIST_SEP);
+                    for (int x = 0; x < xrefs.length; x++) {
+                        if (xrefs[x].length() > 0)  {
+                            builder.addXref(index, unescape(xrefs[x]));
+                        }
+                    }
+                }
+            }
+        }
+        // Parent from indentation
+        if (depth >= path.length)   {
+            int[] p = new int[path.length * 2];
+            System.arraycopy(path, 0, p, 0, path.length);
+            path = p;
+        }
+        path[depth] = index;
+        if (symbol != ROOT) {
+            builder.addRelationship(index, getType(symbol), builder.getId(path[depth - 1]));
+        }
+        // Extra parents
+        for (int s = 1; s < segments.size(); s++)   {
+            String[] parent = split((String) segments.get(s), FIELD_SEP);
+            if (parent.length < 2)  {
+                throw new IOException("Missing parent ID at line " + lines + ": " + line);
+            }
+            char c = ((Character) segmentSymbols.get(s - 1)).charValue();
+            builder.addRelationship(index, getType(c), unescape(split(parent[1], LIST_SEP)[0]));
+        }
+    }
+
+    private String getType(char symbol) {
+        return (String) types.get(symbols.indexOf(symbol));
+    }
+
+    /**
+     * Splits <code>s</code> at unescaped <code>separator</code> and trims each part.
+     */
+    private static String[] split(String s, char separator)  {
+        List parts = new ArrayList();
+        int start = 0;
+        for (int i = 0; i < s.length(); i++)    {
+            char c = s.charAt(i);
+            if (c == ESCAPE)    {
+                i++;
+            }
+            else if (c == separator)    {
+                parts.add(s.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        parts.add(s.substring(start).trim());
+        return (String[]) parts.toArray(new String[parts.size()]);
+    }
+
+    private static String unescape(String s)    {
+        if (s.indexOf(ESCAPE) < 0)  {
+            return s;
+        }
+        StringBuffer buf = new StringBuffer(s.length());
+        for (int i = 0; i < s.length(); i++)    {
+            char c = s.charAt(i);
+            if (c == ESCAPE && i + 1 < s.length())  {
+                c = s.charAt(++i);
+            }
+            buf.append(c);
+        }
+        return buf.toString();
+    }
+
+}
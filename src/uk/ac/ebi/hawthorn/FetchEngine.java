@@ -0,0 +1,497 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Fetches ontology sources over the network, with per-host concurrency limits, connect and
+ * read timeouts, and retries with exponential backoff and jitter.
+ * <p>
+ * <code>fetch</code> opens the source on the calling thread. <code>fetchOnWorker</code> and work
+ * passed to <code>submit</code> run on virtual threads when the JVM provides them (Java 21 or
+ * later), otherwise on a cached pool of daemon threads, so many slow sources can be fetched at
+ * once without tying up the caller's threads. <code>AbstractOntology.getInputStream</code> opens
+ * URLs with <code>fetchOnWorker</code> on the default engine. The engine can also be used as an <code>InputStreamListener</code>, in which case it
+ * returns null for URIs that are not network URLs so that the class path and file system are
+ * still tried.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     AbstractOntology#getInputStream()
+ */
+public final class FetchEngine implements InputStreamListener {
+
+    public static final int  DEFAULT_CONNECT_TIMEOUT  = 30000;
+    public static final int  DEFAULT_READ_TIMEOUT     = 120000;
+    public static final int  DEFAULT_MAX_PER_HOST     = 4;
+    public static final int  DEFAULT_MAX_ATTEMPTS     = 4;
+    public static final long DEFAULT_INITIAL_BACKOFF  = 500;
+    public static final long DEFAULT_MAX_BACKOFF      = 30000;
+    public static final long DEFAULT_PERMIT_TIMEOUT   = 120000;
+
+    private static final String[] NETWORK_PROTOCOLS = {"http:", "https:", "ftp:"};
+
+    private static FetchEngine defaultEngine;
+
+    private final int  connectTimeout;
+    private final int  readTimeout;
+    private final int  maxPerHost;
+    private final int  maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final long permitTimeout;
+
+    private final ExecutorService executor;
+    private final boolean         virtual;
+    private final Map             hosts  = new HashMap();   // host -> Semaphore
+    private final Random          random = new Random();
+    private final Log             log    = LogFactory.getLog(FetchEngine.class);
+
+    /**
+     * Creates engine with default settings.
+     */
+    public FetchEngine()    {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_MAX_PER_HOST,
+             DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * Creates engine that waits up to {@link #DEFAULT_PERMIT_TIMEOUT} for a connection slot.
+     *
+     * @param   connectTimeout  Connect timeout in milliseconds (0 for none)
+     * @param   readTimeout     Read timeout in milliseconds (0 for none)
+     * @param   maxPerHost      Maximum number of open connections to each host
+     * @param   maxAttempts     Maximum number of attempts per fetch, including the first
+     * @param   initialBackoff  Upper bound of delay before first retry, in milliseconds
+     * @param   maxBackoff      Upper bound of delay before any retry, in milliseconds
+     * @throws  IllegalArgumentException if <code>maxPerHost</code> or <code>maxAttempts</code> is less than 1
+     */
+    public FetchEngine(int connectTimeout, int readTimeout, int maxPerHost,
+                       int maxAttempts, long initialBackoff, long maxBackoff)
+           throws IllegalArgumentException  {
+        this(connectTimeout, readTimeout, maxPerHost, maxAttempts, initialBackoff, maxBackoff, DEFAULT_PERMIT_TIMEOUT);
+    }
+
+    /**
+     * Creates engine.
+     *
+     * @param   connectTimeout  Connect timeout in milliseconds (0 for none)
+     * @param   readTimeout     Read timeout in milliseconds (0 for none)
+     * @param   maxPerHost      Maximum number of open connections to each host
+     * @param   maxAttempts     Maximum number of attempts per fetch, including the first
+     * @param   initialBackoff  Upper bound of delay before first retry, in milliseconds
+     * @param   maxBackoff      Upper bound of delay before any retry, in milliseconds
+     * @param   permitTimeout   Longest wait for a connection slot on a busy host, in milliseconds,
+     *                          so streams that are never closed cannot block a host for good
+     * @throws  IllegalArgumentException if <code>maxPerHost</code> or <code>maxAttempts</code> is less than 1
+     */
+    public FetchEngine(int connectTimeout, int readTimeout, int maxPerHost,
+                       int maxAttempts, long initialBackoff, long maxBackoff, long permitTimeout)
+           throws IllegalArgumentException  {
+        if (maxPerHost < 1 || maxAttempts < 1)   {
+            throw new IllegalArgumentException("maxPerHost and maxAttempts must be at least 1");
+        }
+        this.connectTimeout = connectTimeout;
+        this.readTimeout    = readTimeout;
+        this.maxPerHost     = maxPerHost;
+        this.maxAttempts    = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff     = maxBackoff;
+        this.permitTimeout  = permitTimeout;
+        ExecutorService e = newVirtualThreadExecutor();
+        this.virtual  = (e != null);
+        this.executor = virtual ? e : Executors.newCachedThreadPool(new DaemonThreadFactory());
+    }
+
+    /**
+     * Returns engine shared by all ontologies.
+     *
+     * @return  engine shared by all ontologies
+     */
+    public static synchronized FetchEngine getDefault()  {
+        if (defaultEngine == null)  {
+            defaultEngine = new FetchEngine();
+        }
+        return defaultEngine;
+    }
+
+    /**
+     * Replaces engine shared by all ontologies, for example to change timeouts.
+     *
+     * @param   engine  New default engine
+     */
+    public static synchronized void setDefault(FetchEngine engine)  {
+        defaultEngine = engine;
+    }
+
+    /**
+     * Returns true if work runs on virtual threads.
+     *
+     * @return  true if work runs on virtual threads
+     */
+    public boolean isVirtual()  {
+        return virtual;
+    }
+
+    /**
+     * Returns input stream for <code>uri</code> if it is a network URL, otherwise null.
+     *
+     * @param   uri Resource, file or URL
+     * @return  input stream, or null if <code>uri</code> is not a network URL
+     * @throws  IOException if could not open URL
+     */
+    public InputStream getInputStream(String uri) throws FileNotFoundException, IOException, MalformedURLException  {
+        if (!isNetworkUrl(uri))   {
+            return null;
+        }
+        return fetchOnWorker(new URL(uri), null, null);
+    }
+
+    /**
+     * Opens <code>url</code> on the calling thread. Closing the stream releases the connection
+     * slot for the URL's host. Unknown hosts and missing files are not retried.
+     *
+     * @param   url         URL to open
+     * @param   userName    User name for basic authentication (optional)
+     * @param   password    Password for basic authentication (optional)
+     * @return  input stream
+     * @throws  IOException if could not open URL after all attempts, or no connection slot
+     *          became free in time
+     */
+    public InputStream fetch(URL url, String userName, String password) throws IOException  {
+        try {
+            return open(url, userName, password);
+        }
+        catch (InterruptedException e)  {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+    }
+
+    /**
+     * Opens <code>url</code> like <code>fetch</code>, but on a worker thread, so connecting,
+     * retries and backoff never block the calling thread on the socket. If the wait is
+     * interrupted the fetch is cancelled, and a stream it still opens is closed.
+     *
+     * @param   url         URL to open
+     * @param   userName    User name for basic authentication (optional)
+     * @param   password    Password for basic authentication (optional)
+     * @return  input stream
+     * @throws  IOException if could not open URL after all attempts, or no connection slot
+     *          became free in time
+     * @see     #fetch(URL, String, String)
+     */
+    public InputStream fetchOnWorker(final URL url, final String userName, final String password) throws IOException  {
+        return (InputStream) get(submit(new Callable()  {
+            public Object call() throws IOException   {
+                return fetch(url, userName, password);
+            }
+        }));
+    }
+
+    /**
+     * Runs <code>task</code> on a worker thread. If the task is cancelled while it runs and
+     * still returns a <code>Closeable</code>, such as a stream, the result is closed.
+     *
+     * @param   task    Task to run
+     * @return  future result of <code>task</code>
+     */
+    public Future submit(Callable task)  {
+        FutureTask future = new ClosingFutureTask(task);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Waits for <code>future</code> and returns its result, unwrapping exceptions.
+     *
+     * @param   future  Future result
+     * @return  result
+     * @throws  IOException if the task threw an exception or the wait was interrupted
+     */
+    public static Object get(Future future) throws IOException  {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e)  {
+            if (!future.cancel(true))   {
+                // Finished anyway: nobody will take the result
+                closeResult(future);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for fetch");
+        }
+        catch (ExecutionException e)  {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)   {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException)   {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)   {
+                throw (Error) cause;
+            }
+            IOException io = new IOException(cause.toString());
+            io.initCause(cause);
+            throw io;
+        }
+    }
+
+    private static void closeResult(Future future)  {
+        try {
+            close(future.get());
+        }
+        catch (Exception e) {
+            // No result to close
+        }
+    }
+
+    private static void close(Object result)    {
+        if (result instanceof Closeable)    {
+            try {
+                ((Closeable) result).close();
+            }
+            catch (IOException e)   {
+                // Nothing more to do
+            }
+        }
+    }
+
+    /**
+     * Stops accepting work. Fetches in progress are allowed to finish.
+     */
+    public void shutdown()  {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns true if <code>uri</code> starts with a network protocol such as "http:".
+     *
+     * @param   uri URI
+     * @return  true if <code>uri</code> is a network URL
+     */
+    static boolean isNetworkUrl(String uri)  {
+        if (uri == null)    {
+            return false;
+        }
+        for (int i = 0; i < NETWORK_PROTOCOLS.length; i++)  {
+            if (uri.regionMatches(true, 0, NETWORK_PROTOCOLS[i], 0, NETWORK_PROTOCOLS[i].length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns delay before retry number <code>attempt</code> (starting at 1): a random value
+     * between zero and <code>min(maxBackoff, initialBackoff * 2^(attempt-1))</code>.
+     *
+     * @param   attempt Retry number
+     * @return  delay in milliseconds
+     */
+    long getBackoff(int attempt)   {
+        long ceiling = initialBackoff;
+        for (int i = 1; i < attempt && ceiling < maxBackoff; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxBackoff);
+        synchronized (random)   {
+            return (long) (random.nextDouble() * (ceiling + 1));
+        }
+    }
+
+    private InputStream open(URL url, String userName, String password) throws IOException, InterruptedException  {
+        Semaphore permits = getPermits(url.getHost());
+        if (!permits.tryAcquire(permitTimeout, TimeUnit.MILLISECONDS))  {
+            throw new IOException("Timed out after " + permitTimeout + " ms waiting for one of " + maxPerHost +
+                                  " connections to " + url.getHost() + " (are streams being closed?)");
+        }
+        boolean opened = false;
+        try {
+            IOException last = null;
+            for (int attempt = 1; attempt <= maxAttempts; attempt++)   {
+                if (attempt > 1)    {
+                    long delay = getBackoff(attempt - 1);
+                    log.warn("Retrying " + url + " in " + delay + " ms (attempt " + attempt + " of " + maxAttempts + "): " + last);
+                    Thread.sleep(delay);
+                }
+                try {
+                    InputStream inputStream = connect(url, userName, password);
+                    opened = true;
+                    return new PermitInputStream(inputStream, permits);
+                }
+                catch (FileNotFoundException e)   {
+                    throw e;
+                }
+                catch (UnknownHostException e)   {
+                    throw e;
+                }
+                catch (IOException e)   {
+                    last = e;
+                }
+            }
+            throw last;
+        }
+        finally {
+            if (!opened)    {
+                permits.release();
+            }
+        }
+    }
+
+    private InputStream connect(URL url, String userName, String password) throws IOException  {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        connection.setAllowUserInteraction(false);
+        if (userName != null && userName.length() > 0)  {
+            String credentials = userName + ":" + ((password == null) ? "" : password);
+            connection.setRequestProperty("Authorization", "Basic " + base64(credentials.getBytes("UTF-8")));
+        }
+        if (connection instanceof HttpURLConnection)    {
+            HttpURLConnection http = (HttpURLConnection) connection;
+            int code = http.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE)  {
+                throw new FileNotFoundException(url + " [HTTP " + code + "]");
+            }
+            if (code >= 400 && code < 500 && code != 408 && code != 429) {
+                // Client errors will not go away on retry
+                throw new FileNotFoundException(url + " [HTTP " + code + " " + http.getResponseMessage() + "]");
+            }
+            if (code >= 400)    {
+                throw new IOException(url + " [HTTP " + code + " " + http.getResponseMessage() + "]");
+            }
+        }
+        return connection.getInputStream();
+    }
+
+    private Semaphore getPermits(String host)  {
+        synchronized (hosts)    {
+            Semaphore permits = (Semaphore) hosts.get(host);
+            if (permits == null)    {
+                permits = new Semaphore(maxPerHost, true);
+                hosts.put(host, permits);
+            }
+            return permits;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor()   {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor", new Class[0]);
+            return (ExecutorService) method.invoke(null, new Object[0]);
+        }
+        catch (Exception e) {
+            // Not available before Java 21 (or preview in 19 and 20)
+            return null;
+        }
+    }
+
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    static String base64(byte[] data)  {
+        StringBuffer buf = new StringBuffer(((data.length + 2) / 3) * 4);
+        for (int i = 0; i < data.length; i += 3)    {
+            int b = (data[i] & 0xff) << 16;
+            if (i + 1 < data.length) b |= (data[i + 1] & 0xff) << 8;
+            if (i + 2 < data.length) b |= (data[i + 2] & 0xff);
+            buf.append(BASE64[(b >> 18) & 0x3f]);
+            buf.append(BASE64[(b >> 12) & 0x3f]);
+            buf.append((i + 1 < data.length) ? BASE64[(b >> 6) & 0x3f] : '=');
+            buf.append((i + 2 < data.length) ? BASE64[b & 0x3f] : '=');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Releases host connection slot when closed.
+     */
+    private static final class PermitInputStream extends FilterInputStream   {
+
+        private final Semaphore permits;
+        private boolean released = false;
+
+        PermitInputStream(InputStream in, Semaphore permits) {
+            super(in);
+            this.permits = permits;
+        }
+
+        public void close() throws IOException  {
+            try {
+                super.close();
+            }
+            finally {
+                synchronized (this) {
+                    if (!released)  {
+                        released = true;
+                        permits.release();
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Closes results of tasks that finish after being cancelled.
+     */
+    private static final class ClosingFutureTask extends FutureTask    {
+
+        ClosingFutureTask(Callable task)   {
+            super(task);
+        }
+
+        protected void set(Object result)  {
+            super.set(result);
+            if (isCancelled())  {
+                close(result);
+            }
+        }
+
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private int count = 0;
+
+        public synchronized Thread newThread(Runnable r)    {
+            Thread thread = new Thread(r, "hawthorn-fetch-" + (++count));
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.*;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Coordinates refreshes through a directory shared by all nodes, for example on NFS. Set with
+ * the <code>shared-dir</code> property:
+ * <pre>
+ *  GO.shared-dir=/net/shared/hawthorn
+ * </pre>
+ * For each prefix the directory holds:
+ * <ul>
+ *  <li><code>&lt;prefix&gt;.lock</code>: locked with a file lock by the node checking the
+ *      source, and holding the time the source was last checked</li>
+ *  <li><code>&lt;prefix&gt;.snapshot</code>: the published terms, in the {@link TermExporter}
+ *      binary format after a short header holding the version</li>
+ * </ul>
+ * Snapshots are written under a temporary name and renamed, so readers never see part of one,
+ * and checking the version only reads the header. File locks are held by the process, so they
+ * are released if a node dies while holding one. On NFS, locks need a lock daemon.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public final class FileRefreshCoordinator implements RefreshCoordinator {
+
+    private static final int MAGIC = 0x48575353;     // "HWSS"
+
+    private static final String LOCK_SUFFIX     = ".lock";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String TEMP_SUFFIX     = ".tmp";
+
+    private final File directory;
+    private final Map  locks = new HashMap();    // prefix -> Lock
+
+    /**
+     * Creates coordinator that uses <code>directory</code>, creating it if needed.
+     *
+     * @param   directory   Directory shared by all nodes
+     * @throws  IOException if directory does not exist and could not be created
+     */
+    public FileRefreshCoordinator(File directory) throws IOException  {
+        if (!directory.isDirectory() && !directory.mkdirs())  {
+            throw new IOException("Could not create directory " + directory);
+        }
+        this.directory = directory;
+    }
+
+    public File getDirectory()  {
+        return directory;
+    }
+
+    public synchronized boolean tryLock(String prefix) throws IOException  {
+        if (locks.containsKey(prefix))   {
+            return false;
+        }
+        RandomAccessFile file = new RandomAccessFile(getFile(prefix, LOCK_SUFFIX), "rw");
+        FileLock lock = null;
+        try {
+            lock = file.getChannel().tryLock();
+        }
+        catch (OverlappingFileLockException e)  {
+            // Held by another coordinator in this JVM
+        }
+        finally {
+            if (lock == null)   {
+                file.close();
+            }
+        }
+        if (lock == null)   {
+            return false;
+        }
+        locks.put(prefix, new Lock(file, lock));
+        return true;
+    }
+
+    public synchronized long getLastCheckTime(String prefix) throws IOException  {
+        RandomAccessFile file = getLock(prefix).file;
+        if (file.length() < 8)  {
+            return 0;
+        }
+        file.seek(0);
+        return file.readLong();
+    }
+
+    public synchronized void unlock(String prefix, long checkTime) throws IOException  {
+        Lock lock = getLock(prefix);
+        locks.remove(prefix);
+        try {
+            if (checkTime > 0)  {
+                lock.file.seek(0);
+                lock.file.writeLong(checkTime);
+            }
+            lock.lock.release();
+        }
+        finally {
+            lock.file.close();
+        }
+    }
+
+    public void publish(String prefix, long version, TermStore store) throws IOException  {
+        getLock(prefix);
+        File file = getFile(prefix, SNAPSHOT_SUFFIX);
+        File temp = getFile(prefix, SNAPSHOT_SUFFIX + TEMP_SUFFIX);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeLong(version);
+            TermExporter.writeBinary(store, out);
+        }
+        finally {
+            out.close();
+        }
+        // Rename replaces the old snapshot in one step where the platform allows it
+        if (!temp.renameTo(file))   {
+            if (!file.delete() || !temp.renameTo(file))    {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        }
+    }
+
+    public long getVersion(String prefix) throws IOException  {
+        DataInputStream in = open(prefix);
+        if (in == null) {
+            return NO_VERSION;
+        }
+        try {
+            return in.readLong();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    public Snapshot read(String prefix) throws IOException  {
+        DataInputStream in = open(prefix);
+        if (in == null) {
+            return null;
+        }
+        try {
+            long version = in.readLong();
+            return new Snapshot(version, TermExporter.readBinary(in));
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    public String toString()    {
+        return "FileRefreshCoordinator: " + directory;
+    }
+
+    // Opens snapshot and reads up to the version, or returns null if none published
+    private DataInputStream open(String prefix) throws IOException  {
+        File file = getFile(prefix, SNAPSHOT_SUFFIX);
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+        catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            if (in.readInt() != MAGIC)  {
+                throw new IOException("Not a refresh snapshot: " + file);
+            }
+        }
+        catch (IOException e)   {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    private synchronized Lock getLock(String prefix)  {
+        Lock lock = (Lock) locks.get(prefix);
+        if (lock == null)   {
+            throw new IllegalStateException("Lock not held for prefix '" + prefix + "'");
+        }
+        return lock;
+    }
+
+    private File getFile(String prefix, String suffix)    {
+        return new File(directory, prefix + suffix);
+    }
+
+    /**
+     * Lock file held open while locked.
+     */
+    private static final class Lock {
+
+        private final RandomAccessFile file;
+        private final FileLock         lock;
+
+        Lock(RandomAccessFile file, FileLock lock) {
+            this.file = file;
+            this.lock = lock;
+        }
+
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Limits the heap used by the term snapshots of a set of ontologies, using the estimates from
+ * {@link MemoryUsage}. Each ontology records the size of its current snapshot. When a refresh
+ * finds the source has changed, the ontology reserves room for a second snapshot the size of
+ * the current one before parsing it, since both are held until the new one replaces it. If the
+ * reservation would take usage over the limit, the source is not parsed and the current snapshot
+ * is kept, rather than risking <code>OutOfMemoryError</code>; the source is not counted as
+ * failing, and the next refresh tries again. <code>OntologyMap</code>
+ * estimates the size of ontologies before loading them, and refuses configurations that cannot
+ * fit without parsing them. Set with the <code>heap-budget</code> property, in bytes or with a
+ * suffix of K, M or G:
+ * <pre>
+ *  heap-budget=512M
+ * </pre>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OntologyMap
+ */
+public final class HeapBudget {
+
+    private long limit;
+    private long reserved = 0;
+    private final Map usage = new HashMap();    // owner -> Long
+
+    /**
+     * Creates budget of <code>limit</code> bytes.
+     *
+     * @param   limit   Most bytes, or 0 for no limit
+     */
+    public HeapBudget(long limit) {
+        setLimit(limit);
+    }
+
+    /**
+     * Parses limit in bytes, or with a suffix of K, M or G.
+     *
+     * @param   value   Limit, for example "512M"
+     * @return  limit in bytes
+     * @throws  IllegalArgumentException if <code>value</code> is not a size
+     */
+    public static long parse(String value)  {
+        String s = value.trim().toUpperCase();
+        long unit = 1;
+        if (s.endsWith("K"))    {
+            unit = 1L << 10;
+        }
+        else if (s.endsWith("M"))   {
+            unit = 1L << 20;
+        }
+        else if (s.endsWith("G"))   {
+            unit = 1L << 30;
+        }
+        if (unit > 1)   {
+            s = s.substring(0, s.length() - 1).trim();
+        }
+        try {
+            long n = Long.parseLong(s);
+            if (n < 0)  {
+                throw new NumberFormatException();
+            }
+            return n * unit;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a heap size: " + value);
+        }
+    }
+
+    public synchronized long getLimit() {
+        return limit;
+    }
+
+    public synchronized void setLimit(long limit) {
+        if (limit < 0)  {
+            throw new IllegalArgumentException("Heap budget cannot be negative: " + limit);
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * Returns bytes used by snapshots, not counting reservations.
+     *
+     * @return  bytes used
+     */
+    public synchronized long getUsedBytes()  {
+        long total = 0;
+        for (Iterator i = usage.values().iterator(); i.hasNext(); ) {
+            total += ((Long) i.next()).longValue();
+        }
+        return total;
+    }
+
+    /**
+     * Returns true if <code>bytes</code> more would fit in the budget.
+     *
+     * @param   bytes   Bytes to add
+     * @return  true if there is no limit or <code>bytes</code> fit
+     */
+    public synchronized boolean fits(long bytes)    {
+        return limit == 0 || getUsedBytes() + reserved + bytes <= limit;
+    }
+
+    /**
+     * Reserves <code>bytes</code> for a load, if they fit.
+     *
+     * @param   bytes   Bytes to reserve
+     * @return  true if reserved, false if they do not fit
+     */
+    public synchronized boolean reserve(long bytes)  {
+        if (!fits(bytes))   {
+            return false;
+        }
+        reserved += bytes;
+        return true;
+    }
+
+    /**
+     * Releases a reservation made with {@link #reserve(long)}.
+     *
+     * @param   bytes   Bytes reserved
+     */
+    public synchronized void release(long bytes)  {
+        reserved -= bytes;
+    }
+
+    /**
+     * Records that <code>owner</code> now holds <code>bytes</code>.
+     *
+     * @param   owner   Ontology
+     * @param   bytes   Size of its current snapshot
+     */
+    public synchronized void update(Object owner, long bytes)  {
+        usage.put(owner, Long.valueOf(bytes));
+    }
+
+    /**
+     * Stops counting <code>owner</code>, for example when it is dropped from a map.
+     *
+     * @param   owner   Ontology
+     */
+    public synchronized void remove(Object owner)  {
+        usage.remove(owner);
+    }
+
+    public synchronized String toString()    {
+        return "Heap budget: " + ((limit == 0) ? "none" : (limit >> 10) + " KB") +
+               ", used: " + (getUsedBytes() >> 10) + " KB, reserved: " + (reserved >> 10) + " KB";
+    }
+
+}
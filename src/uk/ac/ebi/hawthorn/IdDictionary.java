@@ -0,0 +1,143 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+/**
+ * Assigns a dense int code to each distinct ID string. Codes are never reused, so
+ * indexes keyed by code stay valid as more IDs are added. Not thread-safe: readers
+ * should use a <code>copy</code>.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+final class IdDictionary {
+
+    private String[] ids;
+    private int[]    slots;
+    private int      size;
+
+    IdDictionary()  {
+        this(1024);
+    }
+
+    IdDictionary(int capacity)  {
+        capacity   = Math.max(capacity, 16);
+        this.ids   = new String[capacity];
+        this.slots = new int[tableSize(capacity)];
+        this.size  = 0;
+    }
+
+    private IdDictionary(IdDictionary d)  {
+        this.ids   = new String[d.size];
+        this.slots = d.slots.clone();
+        this.size  = d.size;
+        System.arraycopy(d.ids, 0, ids, 0, size);
+    }
+
+    /**
+     * Returns code for <code>id</code>, adding it if not already present.
+     *
+     * @param   id  ID
+     * @return  code for <code>id</code>
+     */
+    int intern(String id)   {
+        int code = get(id);
+        if (code > -1)  {
+            return code;
+        }
+        if (size == ids.length) {
+            grow();
+        }
+        code = size++;
+        ids[code] = id;
+        insert(id, code);
+        return code;
+    }
+
+    /**
+     * Returns code for <code>id</code>, or -1 if not present.
+     *
+     * @param   id  ID
+     * @return  code for <code>id</code>, or -1
+     */
+    int get(String id)  {
+        if (id == null) {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        int slot = hash(id) & mask;
+        while (slots[slot] != 0)    {
+            if (ids[slots[slot] - 1].equals(id))    {
+                return slots[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    String getId(int code)  {
+        return ids[code];
+    }
+
+    int size()  {
+        return size;
+    }
+
+    /**
+     * Returns read-only copy trimmed to the current size.
+     *
+     * @return  copy of this dictionary
+     */
+    IdDictionary copy() {
+        return new IdDictionary(this);
+    }
+
+    private void insert(String id, int code)    {
+        int mask = slots.length - 1;
+        int slot = hash(id) & mask;
+        while (slots[slot] != 0)    {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = code + 1;
+    }
+
+    private void grow() {
+        String[] i = new String[ids.length * 2];
+        System.arraycopy(ids, 0, i, 0, size);
+        ids   = i;
+        slots = new int[tableSize(ids.length)];
+        for (int k = 0; k < size; k++)  {
+            insert(ids[k], k);
+        }
+    }
+
+    private static int hash(String id)  {
+        int h = id.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSize(int capacity)    {
+        int s = 4;
+        while (s < capacity * 2)    {
+            s <<= 1;
+        }
+        return s;
+    }
+
+}
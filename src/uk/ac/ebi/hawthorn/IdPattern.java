@@ -0,0 +1,373 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+/**
+ * Pattern that whole ontology IDs must match, for example <code>GO:\d{7}</code>. Patterns are
+ * compiled into a sequence of character sets with repeat counts, and matched on the characters
+ * of the ID without allocating, so checking an ID costs about as much as reading it.
+ * <p>
+ * Patterns use a subset of <code>java.util.regex</code> syntax, which covers the usual ID
+ * formats:
+ * </p>
+ * <ul>
+ *  <li>ASCII characters, and escaped punctuation such as <code>\.</code> or <code>\:</code></li>
+ *  <li><code>\d \D \w \W \s \S</code> and <code>.</code></li>
+ *  <li>Character classes such as <code>[A-Z0-9_]</code> or <code>[^:]</code></li>
+ *  <li>Quantifiers <code>? * + {n} {n,} {n,m}</code></li>
+ *  <li><code>^</code> at the start and <code>$</code> at the end, which are ignored since the
+ *      whole ID must always match</li>
+ * </ul>
+ * Groups, alternation, anchors elsewhere, and lazy or possessive quantifiers are not supported.
+ * Instances are immutable and safe to share between threads.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OntologyMap#isValidID(String)
+ */
+public final class IdPattern {
+
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private final String    pattern;
+    private final long[]    low;        // accepted characters 0-63, one bit each
+    private final long[]    high;       // accepted characters 64-127
+    private final boolean[] other;      // true if characters above 127 are accepted
+    private final int[]     min;
+    private final int[]     max;
+    private final int[]     rest;       // shortest match of atoms from i to the end
+    private final int       count;
+    private final int       maxLength;
+
+    private IdPattern(String pattern, long[] low, long[] high, boolean[] other, int[] min, int[] max, int count) {
+        this.pattern = pattern;
+        this.low     = low;
+        this.high    = high;
+        this.other   = other;
+        this.min     = min;
+        this.max     = max;
+        this.count   = count;
+        this.rest    = new int[count + 1];
+        long longest = 0;
+        for (int i = count - 1; i >= 0; i--)    {
+            rest[i] = rest[i + 1] + min[i];
+            longest += max[i];
+        }
+        this.maxLength = (int) Math.min(longest, UNBOUNDED);
+    }
+
+    /**
+     * Compiles <code>pattern</code>.
+     *
+     * @param   pattern Pattern, for example <code>GO:\d{7}</code>
+     * @return  compiled pattern
+     * @throws  IllegalArgumentException if <code>pattern</code> is not valid or uses
+     *          unsupported syntax
+     */
+    public static IdPattern compile(String pattern) throws IllegalArgumentException  {
+        if (pattern == null)    {
+            throw new IllegalArgumentException("No ID pattern");
+        }
+        int n = pattern.length();
+        int start = 0;
+        if (n > 0 && pattern.charAt(0) == '^')   {
+            start = 1;
+        }
+        if (n > start && pattern.charAt(n - 1) == '$' && !isEscaped(pattern, n - 1))  {
+            n--;
+        }
+        long[]    low   = new long[n];
+        long[]    high  = new long[n];
+        boolean[] other = new boolean[n];
+        int[]     min   = new int[n];
+        int[]     max   = new int[n];
+        int[]     set   = new int[3];
+        int count = 0;
+        int i = start;
+        while (i < n)   {
+            long[] bits = new long[3];
+            char c = pattern.charAt(i);
+            switch (c)  {
+                case '\\':
+                    if (i + 1 >= n) {
+                        throw error(pattern, "trailing backslash");
+                    }
+                    escape(pattern, pattern.charAt(i + 1), bits);
+                    i += 2;
+                    break;
+                case '[':
+                    i = characterClass(pattern, i + 1, n, bits);
+                    break;
+                case '.':
+                    bits[0] = ~((1L << '\n') | (1L << '\r'));
+                    bits[1] = -1L;
+                    bits[2] = 1;
+                    i++;
+                    break;
+                case '(': case ')': case '|': case '^': case '$':
+                    throw error(pattern, "'" + c + "' is not supported");
+                case '*': case '+': case '?': case '{': case '}': case ']':
+                    throw error(pattern, "unexpected '" + c + "'");
+                default:
+                    literal(pattern, c, bits);
+                    i++;
+            }
+            // Quantifier
+            int lo = 1;
+            int hi = 1;
+            if (i < n)  {
+                c = pattern.charAt(i);
+                if (c == '?' || c == '*' || c == '+')    {
+                    lo = (c == '+') ? 1 : 0;
+                    hi = (c == '?') ? 1 : UNBOUNDED;
+                    i++;
+                }
+                else if (c == '{')  {
+                    i = repeat(pattern, i + 1, n, set);
+                    lo = set[0];
+                    hi = set[1];
+                }
+                if (i < n && (lo != 1 || hi != 1) && (pattern.charAt(i) == '?' || pattern.charAt(i) == '+'))  {
+                    throw error(pattern, "lazy and possessive quantifiers are not supported");
+                }
+            }
+            low[count]   = bits[0];
+            high[count]  = bits[1];
+            other[count] = bits[2] != 0;
+            min[count]   = lo;
+            max[count]   = hi;
+            count++;
+        }
+        return new IdPattern(pattern, low, high, other, min, max, count);
+    }
+
+    /**
+     * Returns true if all of <code>id</code> matches this pattern.
+     *
+     * @param   id  Ontology ID
+     * @return  true if <code>id</code> matches
+     */
+    public boolean matches(String id)    {
+        if (id == null)  {
+            return false;
+        }
+        int length = id.length();
+        if (length < rest[0] || length > maxLength)   {
+            return false;
+        }
+        return match(id, 0, 0);
+    }
+
+    /**
+     * Returns the pattern this was compiled from.
+     *
+     * @return  pattern
+     */
+    public String toString()    {
+        return pattern;
+    }
+
+    public boolean equals(Object o)  {
+        return (o instanceof IdPattern) && pattern.equals(((IdPattern) o).pattern);
+    }
+
+    public int hashCode()   {
+        return pattern.hashCode();
+    }
+
+    // Matches atoms from atom onwards against id from pos, backtracking over variable repeats
+    private boolean match(String id, int pos, int atom)   {
+        int length = id.length();
+        // Fixed repeats need no backtracking
+        while (atom < count && min[atom] == max[atom])  {
+            for (int k = min[atom]; k > 0; k--)   {
+                if (pos >= length || !accepts(atom, id.charAt(pos)))   {
+                    return false;
+                }
+                pos++;
+            }
+            atom++;
+        }
+        if (atom == count)  {
+            return pos == length;
+        }
+        int limit = Math.min(max[atom], length - pos - rest[atom + 1]);
+        int n = 0;
+        while (n < limit && accepts(atom, id.charAt(pos + n)))  {
+            n++;
+        }
+        for (; n >= min[atom]; n--)   {
+            if (match(id, pos + n, atom + 1))  {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean accepts(int atom, char c)   {
+        if (c < 64) {
+            return (low[atom] & (1L << c)) != 0;
+        }
+        if (c < 128)    {
+            return (high[atom] & (1L << (c - 64))) != 0;
+        }
+        return other[atom];
+    }
+
+    // Parses class contents from i, after '['; returns index after ']'
+    private static int characterClass(String pattern, int i, int n, long[] bits)   {
+        boolean negate = false;
+        if (i < n && pattern.charAt(i) == '^')    {
+            negate = true;
+            i++;
+        }
+        boolean empty = true;
+        long[] element = new long[3];
+        while (i < n && (pattern.charAt(i) != ']' || empty))  {
+            char c = pattern.charAt(i);
+            element[0] = element[1] = element[2] = 0;
+            if (c == '[' || (c == '&' && i + 1 < n && pattern.charAt(i + 1) == '&'))  {
+                throw error(pattern, "nested classes and intersections are not supported");
+            }
+            if (c == '\\')  {
+                if (i + 1 >= n) {
+                    throw error(pattern, "trailing backslash");
+                }
+                escape(pattern, pattern.charAt(i + 1), element);
+                i += 2;
+            }
+            else if (i + 2 < n && pattern.charAt(i + 1) == '-' && pattern.charAt(i + 2) != ']')  {
+                char to = pattern.charAt(i + 2);
+                if (to == '\\' || to == '[')  {
+                    throw error(pattern, "escaped range ends are not supported");
+                }
+                if (to < c) {
+                    throw error(pattern, "bad range " + c + "-" + to);
+                }
+                for (char k = c; k <= to; k++)  {
+                    literal(pattern, k, element);
+                }
+                i += 3;
+            }
+            else    {
+                literal(pattern, c, element);
+                i++;
+            }
+            bits[0] |= element[0];
+            bits[1] |= element[1];
+            bits[2] |= element[2];
+            empty = false;
+        }
+        if (i >= n) {
+            throw error(pattern, "unclosed character class");
+        }
+        if (negate) {
+            bits[0] = ~bits[0];
+            bits[1] = ~bits[1];
+            bits[2] = (bits[2] == 0) ? 1 : 0;
+        }
+        return i + 1;
+    }
+
+    // Parses "n}", "n,}" or "n,m}" from i, after '{', into set; returns index after '}'
+    private static int repeat(String pattern, int i, int n, int[] set)  {
+        int close = pattern.indexOf('}', i);
+        if (close < 0 || close >= n)  {
+            throw error(pattern, "unclosed repeat");
+        }
+        String s = pattern.substring(i, close);
+        int comma = s.indexOf(',');
+        try {
+            if (comma < 0)  {
+                set[0] = set[1] = Integer.parseInt(s);
+            }
+            else    {
+                set[0] = Integer.parseInt(s.substring(0, comma));
+                set[1] = (comma == s.length() - 1) ? UNBOUNDED : Integer.parseInt(s.substring(comma + 1));
+            }
+        }
+        catch (NumberFormatException e) {
+            throw error(pattern, "bad repeat {" + s + "}");
+        }
+        if (set[0] < 0 || set[1] < set[0])  {
+            throw error(pattern, "bad repeat {" + s + "}");
+        }
+        return close + 1;
+    }
+
+    private static void escape(String pattern, char c, long[] bits)  {
+        switch (c)  {
+            case 'd':
+            case 'D':
+                bits[0] = 0x3FFL << '0';
+                break;
+            case 'w':
+            case 'W':
+                bits[0] = 0x3FFL << '0';
+                bits[1] = (0x3FFFFFFL << ('A' - 64)) | (1L << ('_' - 64)) | (0x3FFFFFFL << ('a' - 64));
+                break;
+            case 's':
+            case 'S':
+                bits[0] = (1L << ' ') | (1L << '\t') | (1L << '\n') | (1L << 0x0B) | (1L << '\f') | (1L << '\r');
+                break;
+            case 't':
+                literal(pattern, '\t', bits);
+                return;
+            case 'n':
+                literal(pattern, '\n', bits);
+                return;
+            default:
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))    {
+                    throw error(pattern, "'\\" + c + "' is not supported");
+                }
+                literal(pattern, c, bits);
+                return;
+        }
+        if (Character.isUpperCase(c))   {
+            bits[0] = ~bits[0];
+            bits[1] = ~bits[1];
+            bits[2] = 1;
+        }
+    }
+
+    private static void literal(String pattern, char c, long[] bits)  {
+        if (c >= 128)   {
+            throw error(pattern, "only ASCII characters are supported");
+        }
+        if (c < 64) {
+            bits[0] |= 1L << c;
+        }
+        else    {
+            bits[1] |= 1L << (c - 64);
+        }
+    }
+
+    private static boolean isEscaped(String pattern, int i)  {
+        int backslashes = 0;
+        while (--i >= 0 && pattern.charAt(i) == '\\')   {
+            backslashes++;
+        }
+        return (backslashes & 1) == 1;
+    }
+
+    private static IllegalArgumentException error(String pattern, String message)  {
+        return new IllegalArgumentException("Bad ID pattern " + pattern + ": " + message);
+    }
+
+}
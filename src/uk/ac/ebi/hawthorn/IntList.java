@@ -0,0 +1,71 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+/**
+ * Growable list of primitive ints.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+final class IntList {
+
+    private int[] values;
+    private int   size;
+
+    IntList()  {
+        this(16);
+    }
+
+    IntList(int capacity)  {
+        this.values = new int[Math.max(capacity, 1)];
+        this.size   = 0;
+    }
+
+    void add(int value)    {
+        if (size == values.length)  {
+            int[] v = new int[values.length * 2];
+            System.arraycopy(values, 0, v, 0, size);
+            values = v;
+        }
+        values[size++] = value;
+    }
+
+    int get(int index)  {
+        if (index >= size)  {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return values[index];
+    }
+
+    int size()  {
+        return size;
+    }
+
+    void clear()    {
+        size = 0;
+    }
+
+    int[] toArray() {
+        int[] v = new int[size];
+        System.arraycopy(values, 0, v, 0, size);
+        return v;
+    }
+
+}
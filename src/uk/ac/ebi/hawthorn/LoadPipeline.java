@@ -0,0 +1,255 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Loads terms in three overlapping stages:
+ * <ol>
+ *  <li>Fetch: a <code>FetchEngine</code> thread reads the source into a bounded queue of chunks,
+ *      so a slow download carries on while earlier bytes are parsed</li>
+ *  <li>Parse: the calling thread parses chunks as they arrive, with an <code>OntologyLoader</code>
+ *      that pushes terms straight into a <code>TermStore.Builder</code></li>
+ *  <li>Index: the builder builds the snapshot, splitting independent columns across processors</li>
+ * </ol>
+ * The queue holds at most {@link #QUEUE_CHUNKS} chunks, so memory stays bounded however far the
+ * download runs ahead of the parser. Each pipeline is used for one load.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     LoadStatistics
+ * @see     OntologyLoader
+ */
+final class LoadPipeline {
+
+    static final int CHUNK_SIZE   = 1 << 16;
+    static final int QUEUE_CHUNKS = 32;
+
+    private final OntologyLoader loader;
+    private final TermStore      previous;
+
+    private LoadStatistics statistics;
+
+    /**
+     * Creates pipeline that uses <code>loader</code> for the parse stage.
+     *
+     * @param   loader  Loader for the source format
+     */
+    LoadPipeline(OntologyLoader loader)  {
+        this(loader, null);
+    }
+
+    /**
+     * Creates pipeline that reloads into a snapshot pre-sized like <code>previous</code>.
+     *
+     * @param   loader      Loader for the source format
+     * @param   previous    Earlier snapshot of the same ontology, or null if none
+     * @see     TermStore.Builder#Builder(TermStore)
+     */
+    LoadPipeline(OntologyLoader loader, TermStore previous)  {
+        this.loader   = loader;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads terms from <code>source</code>, which is closed.
+     *
+     * @param   source  Source bytes
+     * @return  new snapshot of terms
+     * @throws  IOException if could not read or parse source
+     */
+    TermStore load(InputStream source) throws IOException  {
+        long start = System.nanoTime();
+        PrefetchInputStream inputStream = new PrefetchInputStream(source);
+        TermStore store;
+        long parsed;
+        try {
+            TermStore.Builder builder = (previous == null) ? new TermStore.Builder() : new TermStore.Builder(previous);
+            loader.load(inputStream, builder);
+            // Read to the end, so the source's checksum covers all of it
+            inputStream.drain();
+            parsed = System.nanoTime();
+            store = builder.build();
+        }
+        finally {
+            inputStream.close();
+        }
+        long end = System.nanoTime();
+        long wait = inputStream.waitNanos;
+        statistics = new LoadStatistics(inputStream.fetchNanos, parsed - start - wait, wait,
+                                        end - parsed, end - start, inputStream.byteCount, store.size());
+        return store;
+    }
+
+    /**
+     * Returns time spent in each stage of the last load.
+     *
+     * @return  statistics, or null if nothing loaded yet
+     */
+    LoadStatistics getStatistics()    {
+        return statistics;
+    }
+
+    /**
+     * Reads ahead from a source on another thread. Only the reading thread uses the
+     * read methods; the fetch thread only fills the queue.
+     */
+    private static final class PrefetchInputStream extends InputStream  {
+
+        private static final byte[] END = new byte[0];
+
+        private final InputStream   source;
+        private final BlockingQueue queue = new ArrayBlockingQueue(QUEUE_CHUNKS);
+        private final Future        fetch;
+
+        private volatile IOException failure;
+        private volatile long        fetchNanos;
+
+        private byte[]  chunk    = null;
+        private int     position = 0;
+        private boolean done     = false;
+        private long    waitNanos;
+        private long    byteCount;
+
+        PrefetchInputStream(InputStream source)  {
+            this.source = source;
+            this.fetch  = FetchEngine.getDefault().submit(new Callable()  {
+                public Object call() throws Exception   {
+                    fill();
+                    return null;
+                }
+            });
+        }
+
+        // Runs on the fetch thread
+        private void fill() throws InterruptedException  {
+            long time = 0;
+            try {
+                while (true)    {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int length = 0;
+                    long start = System.nanoTime();
+                    int n = 0;
+                    while (length < buffer.length && (n = source.read(buffer, length, buffer.length - length)) > -1)  {
+                        length += n;
+                    }
+                    time += System.nanoTime() - start;
+                    if (length > 0) {
+                        if (length < buffer.length) {
+                            byte[] b = new byte[length];
+                            System.arraycopy(buffer, 0, b, 0, length);
+                            buffer = b;
+                        }
+                        queue.put(buffer);
+                    }
+                    if (n < 0)  {
+                        break;
+                    }
+                }
+            }
+            catch (IOException e)   {
+                failure = e;
+            }
+            finally {
+                fetchNanos = time;
+                queue.put(END);
+            }
+        }
+
+        public int read() throws IOException  {
+            if (!next())    {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException  {
+            if (len == 0)   {
+                return 0;
+            }
+            if (!next())    {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        public int available()  {
+            return (chunk == null) ? 0 : chunk.length - position;
+        }
+
+        // Skips whatever the loader left unread
+        void drain() throws IOException  {
+            while (next())  {
+                position = chunk.length;
+            }
+        }
+
+        public void close() throws IOException  {
+            done = true;
+            chunk = null;
+            fetch.cancel(true);
+            queue.clear();
+            source.close();
+        }
+
+        // Moves to next chunk if current one is used up; returns false at end of source
+        private boolean next() throws IOException  {
+            if (chunk != null && position < chunk.length)   {
+                return true;
+            }
+            if (done)   {
+                return false;
+            }
+            long start = System.nanoTime();
+            try {
+                chunk = (byte[]) queue.take();
+            }
+            catch (InterruptedException e)  {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for source");
+            }
+            finally {
+                waitNanos += System.nanoTime() - start;
+            }
+            position = 0;
+            if (chunk == END)   {
+                done  = true;
+                chunk = null;
+                if (failure != null)    {
+                    throw failure;
+                }
+                return false;
+            }
+            byteCount += chunk.length;
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+/**
+ * Time spent in each stage of the last load of an ontology. Stages overlap, so fetch, parse
+ * and index times can add up to more than the total. Times are in milliseconds.
+ * <ul>
+ *  <li>Fetch: reading bytes from the source</li>
+ *  <li>Parse: parsing terms, not counting time spent waiting for bytes</li>
+ *  <li>Index: building the term snapshot from parsed terms</li>
+ * </ul>
+ * Ontologies that are not read through the load pipeline report their whole load as parse time.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     Ontology#getLoadStatistics()
+ */
+public final class LoadStatistics {
+
+    private final long fetchNanos;
+    private final long parseNanos;
+    private final long waitNanos;
+    private final long indexNanos;
+    private final long totalNanos;
+    private final long byteCount;
+    private final int  termCount;
+
+    LoadStatistics(long fetchNanos, long parseNanos, long waitNanos, long indexNanos,
+                   long totalNanos, long byteCount, int termCount)  {
+        this.fetchNanos = fetchNanos;
+        this.parseNanos = parseNanos;
+        this.waitNanos  = waitNanos;
+        this.indexNanos = indexNanos;
+        this.totalNanos = totalNanos;
+        this.byteCount  = byteCount;
+        this.termCount  = termCount;
+    }
+
+    /**
+     * Returns time spent reading bytes from the source.
+     *
+     * @return  fetch time in milliseconds
+     */
+    public long getFetchTime()  {
+        return fetchNanos / 1000000;
+    }
+
+    /**
+     * Returns time spent parsing, not counting time spent waiting for bytes.
+     *
+     * @return  parse time in milliseconds
+     */
+    public long getParseTime()  {
+        return parseNanos / 1000000;
+    }
+
+    /**
+     * Returns time the parser spent waiting for bytes from the source.
+     *
+     * @return  wait time in milliseconds
+     */
+    public long getWaitTime()  {
+        return waitNanos / 1000000;
+    }
+
+    /**
+     * Returns time spent building the term snapshot.
+     *
+     * @return  index time in milliseconds
+     */
+    public long getIndexTime()  {
+        return indexNanos / 1000000;
+    }
+
+    /**
+     * Returns elapsed time of the whole load.
+     *
+     * @return  total time in milliseconds
+     */
+    public long getTotalTime()  {
+        return totalNanos / 1000000;
+    }
+
+    /**
+     * Returns number of bytes read from the source, or -1 if not known.
+     *
+     * @return  number of bytes read, or -1
+     */
+    public long getByteCount()  {
+        return byteCount;
+    }
+
+    /**
+     * Returns number of terms loaded.
+     *
+     * @return  number of terms loaded
+     */
+    public int getTermCount()   {
+        return termCount;
+    }
+
+    public String toString()    {
+        return "Terms: " + termCount + ", bytes: " + byteCount + ", fetch: " + getFetchTime() +
+               " ms, parse: " + getParseTime() + " ms, wait: " + getWaitTime() +
+               " ms, index: " + getIndexTime() + " ms, total: " + getTotalTime() + " ms";
+    }
+
+}
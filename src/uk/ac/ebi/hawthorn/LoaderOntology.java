@@ -0,0 +1,108 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Provides cached map of terms for any format with an <code>OntologyLoader</code>. Instances
+ * are created by <code>OntologyManager</code> for loaders found on the class path, so a new
+ * format needs only a loader, not a subclass of <code>AbstractOntology</code>.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OntologyManager#registerLoader(OntologyLoader)
+ */
+public final class LoaderOntology extends AbstractOntology implements Ontology {
+
+    static final class LoaderOntologyFactory implements CoordinatedOntologyFactory {
+
+        private final OntologyLoader loader;
+
+        LoaderOntologyFactory(OntologyLoader loader)  {
+            this.loader = loader;
+        }
+
+        public Ontology getInstance(String prefix, String uri, String userName, String password,
+                                    int refreshInterval, boolean tolerateRefreshException,
+                                    InputStreamListener inputStreamListener)
+               throws IOException   {
+            return getInstance(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+        }
+
+        public Ontology getInstance(String prefix, String uri, String userName, String password,
+                                    int refreshInterval, boolean tolerateRefreshException,
+                                    InputStreamListener inputStreamListener,
+                                    RefreshCoordinator coordinator)
+               throws IOException   {
+            return new LoaderOntology(loader, prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
+        }
+
+    }
+
+    /**
+     * Loads terms with <code>loader</code>.
+     *
+     * @param   loader  Loader for the source format
+     * @param   prefix
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval
+     * @param   tolerateRefreshException
+     * @param   inputStreamListener     Listens for calls to obtain input streams
+     * @throws  IOException if could not load terms
+     * @see     AbstractOntology#AbstractOntology(OntologyLoader, String, String, String, String, int, boolean, InputStreamListener)
+     */
+    LoaderOntology(OntologyLoader loader, String prefix, String uri, String userName, String password,
+                   int refreshInterval, boolean tolerateRefreshException,
+                   InputStreamListener inputStreamListener)
+              throws IOException   {
+        this(loader, prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+    }
+
+    /**
+     * Loads terms with <code>loader</code>.
+     *
+     * @param   loader  Loader for the source format
+     * @param   prefix
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval
+     * @param   tolerateRefreshException
+     * @param   inputStreamListener     Listens for calls to obtain input streams
+     * @param   coordinator             Coordinator to share refreshes through, or null for none
+     * @throws  IOException if could not load terms
+     * @see     AbstractOntology#AbstractOntology(OntologyLoader, String, String, String, String, int, boolean, InputStreamListener, RefreshCoordinator)
+     */
+    LoaderOntology(OntologyLoader loader, String prefix, String uri, String userName, String password,
+                   int refreshInterval, boolean tolerateRefreshException,
+                   InputStreamListener inputStreamListener,
+                   RefreshCoordinator coordinator)
+              throws IOException   {
+        super(loader, prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
+    }
+
+    public Map getTerms() throws IOException {
+        return getTermStore().asMap();
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+/**
+ * Estimated heap retained by a snapshot of terms, in bytes. Sizes assume a 64-bit JVM with
+ * compressed references, and strings that store one byte per character where they can, so
+ * they are a guide rather than exact. Parts are:
+ * <ul>
+ *  <li>Keys: term IDs</li>
+ *  <li>Names: term names</li>
+ *  <li>Indexes: ID hash table, ID order and namespaces</li>
+ *  <li>Graph: relationships between terms</li>
+ *  <li>Fields: definitions, synonyms, cross-references and subsets</li>
+ * </ul>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     TermStore#getMemoryUsage()
+ */
+public final class MemoryUsage {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER  = 16;
+    private static final int REFERENCE     = 4;
+    private static final int STRING        = 24;    // String object without its bytes
+
+    private final long keyBytes;
+    private final long nameBytes;
+    private final long indexBytes;
+    private final long graphBytes;
+    private final long fieldBytes;
+
+    MemoryUsage(long keyBytes, long nameBytes, long indexBytes, long graphBytes, long fieldBytes)  {
+        this.keyBytes   = keyBytes;
+        this.nameBytes  = nameBytes;
+        this.indexBytes = indexBytes;
+        this.graphBytes = graphBytes;
+        this.fieldBytes = fieldBytes;
+    }
+
+    public long getKeyBytes()   {
+        return keyBytes;
+    }
+
+    public long getNameBytes()  {
+        return nameBytes;
+    }
+
+    public long getIndexBytes() {
+        return indexBytes;
+    }
+
+    public long getGraphBytes() {
+        return graphBytes;
+    }
+
+    public long getFieldBytes() {
+        return fieldBytes;
+    }
+
+    /**
+     * Returns estimated heap retained by all parts.
+     *
+     * @return  total in bytes
+     */
+    public long getTotalBytes() {
+        return keyBytes + nameBytes + indexBytes + graphBytes + fieldBytes;
+    }
+
+    public String toString()    {
+        return "Total: " + kb(getTotalBytes()) + " KB (keys: " + kb(keyBytes) + ", names: " + kb(nameBytes) +
+               ", indexes: " + kb(indexBytes) + ", graph: " + kb(graphBytes) + ", fields: " + kb(fieldBytes) + ")";
+    }
+
+    private static long kb(long bytes)  {
+        return (bytes + 512) / 1024;
+    }
+
+    // Estimators used by TermStore and PackedColumn
+
+    static long sizeOf(String[] values)  {
+        if (values == null) {
+            return 0;
+        }
+        long bytes = align(ARRAY_HEADER + (long) REFERENCE * values.length);
+        for (int i = 0; i < values.length; i++)  {
+            bytes += sizeOf(values[i]);
+        }
+        return bytes;
+    }
+
+    static long sizeOf(String value)   {
+        if (value == null)  {
+            return 0;
+        }
+        int width = 1;
+        for (int i = 0; i < value.length(); i++)    {
+            if (value.charAt(i) > 0xff) {
+                width = 2;
+                break;
+            }
+        }
+        return STRING + align(ARRAY_HEADER + (long) width * value.length());
+    }
+
+    static long sizeOf(int[] values)  {
+        return (values == null) ? 0 : align(ARRAY_HEADER + 4L * values.length);
+    }
+
+    static long sizeOf(short[] values)  {
+        return (values == null) ? 0 : align(ARRAY_HEADER + 2L * values.length);
+    }
+
+    static long sizeOf(byte[] values)  {
+        return (values == null) ? 0 : align(ARRAY_HEADER + (long) values.length);
+    }
+
+    static long sizeOfObject(int fieldBytes)  {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    private static long align(long bytes)   {
+        return (bytes + 7) & ~7L;
+    }
+
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps copies of network sources in a local mirror directory, so repeated opens and
+ * restarts do not go to the network. For example:
+ * <pre>
+ *  new OntologyMap(new MirrorInputStreamListener(new File("/var/cache/ontologies"), 3600));
+ * </pre>
+ * or <code>mirror-dir</code> and <code>mirror-interval</code> in the properties file.
+ * <p>
+ * Each source is copied from the origin at most once per revalidate interval; other opens
+ * are read from the mirror copy through a memory map. Copies are written under a temporary
+ * name and renamed, and a CRC-32 checksum is kept beside each one and checked the first time
+ * it is used, so a torn or corrupt copy is fetched again rather than served. If the origin
+ * cannot be reached, the mirror copy is served however old it is, so services can start
+ * without the network.
+ * </p>
+ * <p>
+ * Only network URLs are mirrored; for other URIs this listener returns null, so files and
+ * class path resources are read as usual. The origin is given no credentials, so sources
+ * that need a user name and password should not be mirrored.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     FetchEngine
+ */
+public final class MirrorInputStreamListener implements InputStreamListener   {
+
+    public static final int DEFAULT_REVALIDATE_INTERVAL = 3600;
+
+    private static final String DATA_SUFFIX     = ".mirror";
+    private static final String META_SUFFIX     = ".meta";
+    private static final String TEMP_SUFFIX     = ".tmp";
+    private static final int    MAX_NAME_LENGTH = 64;
+
+    private static final String META_URI        = "uri";
+    private static final String META_LENGTH     = "length";
+    private static final String META_CHECKSUM   = "checksum";
+    private static final String META_CHECKED    = "checked";
+
+    private final Log                 log     = LogFactory.getLog(MirrorInputStreamListener.class);
+    private final File                directory;
+    private final long                revalidateMillis;
+    private final InputStreamListener origin;
+    private final Map                 entries = new HashMap();
+
+    /**
+     * Creates mirror in <code>directory</code> that fetches network URLs through the default
+     * <code>FetchEngine</code>.
+     *
+     * @param   directory           Mirror directory, created if it does not exist
+     * @param   revalidateInterval  Seconds before a mirror copy is checked against the origin
+     * @throws  IOException if could not create directory
+     */
+    public MirrorInputStreamListener(File directory, int revalidateInterval) throws IOException  {
+        this(directory, revalidateInterval, null);
+    }
+
+    /**
+     * Creates mirror in <code>directory</code> that fetches sources through <code>origin</code>.
+     *
+     * @param   directory           Mirror directory, created if it does not exist
+     * @param   revalidateInterval  Seconds before a mirror copy is checked against the origin
+     * @param   origin              Listener that opens sources, or null for the default
+     *                              <code>FetchEngine</code>
+     * @throws  IOException if could not create directory
+     */
+    public MirrorInputStreamListener(File directory, int revalidateInterval, InputStreamListener origin)
+           throws IOException  {
+        if (!directory.isDirectory() && !directory.mkdirs())   {
+            throw new IOException("Could not create mirror directory " + directory);
+        }
+        if (revalidateInterval < 0)  {
+            throw new IllegalArgumentException("Revalidate interval must not be negative: " + revalidateInterval);
+        }
+        this.directory        = directory;
+        this.revalidateMillis = revalidateInterval * 1000L;
+        this.origin           = origin;
+    }
+
+    /**
+     * Returns mirror directory.
+     *
+     * @return  mirror directory
+     */
+    public File getDirectory()  {
+        return directory;
+    }
+
+    /**
+     * Returns seconds before a mirror copy is checked against the origin.
+     *
+     * @return  revalidate interval in seconds
+     */
+    public int getRevalidateInterval()  {
+        return (int) (revalidateMillis / 1000);
+    }
+
+    /**
+     * Returns input stream for <code>uri</code> from the mirror, first copying it from the
+     * origin if there is no copy yet or the revalidate interval has passed.
+     *
+     * @param   uri Resource, file or URL
+     * @return  input stream, or null if <code>uri</code> is not a network URL
+     * @throws  IOException if could not open the origin and there is no mirror copy
+     */
+    public InputStream getInputStream(String uri) throws FileNotFoundException, IOException, MalformedURLException  {
+        if (!FetchEngine.isNetworkUrl(uri))   {
+            return null;
+        }
+        Entry entry = getEntry(uri);
+        synchronized (entry)    {
+            long now = System.currentTimeMillis();
+            if (entry.valid && now - entry.checked < revalidateMillis && entry.data.length() == entry.length) {
+                return open(entry);
+            }
+            try {
+                if (!copy(entry, now))   {
+                    return null;
+                }
+            }
+            catch (IOException e)   {
+                if (!entry.valid || entry.data.length() != entry.length)   {
+                    throw e;
+                }
+                // Serve what we have, and leave the origin alone until the next check is due
+                log.warn("Could not revalidate " + uri + ", serving mirror copy from " + new Date(entry.checked) + ": " + e);
+                entry.checked = now;
+            }
+            return open(entry);
+        }
+    }
+
+    /**
+     * Returns file name for mirror copy of <code>uri</code>: the URI without its protocol and
+     * with unsafe characters replaced, followed by the URI's CRC-32 checksum.
+     *
+     * @param   uri URI
+     * @return  file name without suffix
+     */
+    static String getFileName(String uri)    {
+        int start = uri.indexOf("://");
+        start = (start < 0) ? 0 : start + 3;
+        StringBuffer buf = new StringBuffer(MAX_NAME_LENGTH + 9);
+        for (int i = start; i < uri.length() && buf.length() < MAX_NAME_LENGTH; i++)    {
+            char c = uri.charAt(i);
+            boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                           c == '.' || c == '-';
+            buf.append(safe ? c : '_');
+        }
+        CRC32 crc = new CRC32();
+        try {
+            crc.update(uri.getBytes("UTF-8"));
+        }
+        catch (UnsupportedEncodingException e)  {
+            throw new RuntimeException(e);
+        }
+        String hex = Long.toHexString(crc.getValue());
+        buf.append('-');
+        for (int i = hex.length(); i < 8; i++)  {
+            buf.append('0');
+        }
+        return buf.append(hex).toString();
+    }
+
+    // Gets entry for uri, reading and checking any mirror copy on first use
+    private Entry getEntry(String uri)    {
+        Entry entry;
+        synchronized (entries)  {
+            entry = (Entry) entries.get(uri);
+            if (entry == null)  {
+                entry = new Entry(uri, getFileName(uri));
+                entries.put(uri, entry);
+            }
+        }
+        synchronized (entry)    {
+            if (!entry.read)    {
+                entry.read = true;
+                try {
+                    readMeta(entry);
+                }
+                catch (IOException e)   {
+                    log.warn("Discarding mirror copy of " + uri + ": " + e.getMessage());
+                    entry.valid = false;
+                }
+            }
+        }
+        return entry;
+    }
+
+    private void readMeta(Entry entry) throws IOException {
+        if (!entry.meta.isFile() || !entry.data.isFile())   {
+            return;
+        }
+        Properties p = new Properties();
+        InputStream in = new FileInputStream(entry.meta);
+        try {
+            p.load(in);
+        }
+        finally {
+            in.close();
+        }
+        if (!entry.uri.equals(p.getProperty(META_URI)))  {
+            throw new IOException(entry.meta + " is for " + p.getProperty(META_URI));
+        }
+        try {
+            entry.length   = Long.parseLong(p.getProperty(META_LENGTH));
+            entry.checksum = Long.parseLong(p.getProperty(META_CHECKSUM));
+            entry.checked  = Long.parseLong(p.getProperty(META_CHECKED));
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Corrupt " + entry.meta + ": " + e.getMessage());
+        }
+        CRC32 crc = new CRC32();
+        InputStream data = open(entry);
+        try {
+            long length = update(crc, data, null);
+            if (length != entry.length || crc.getValue() != entry.checksum)    {
+                throw new IOException("Checksum mismatch for " + entry.data);
+            }
+        }
+        finally {
+            data.close();
+        }
+        entry.valid = true;
+    }
+
+    // Copies source from origin to a temporary file, and renames it over the mirror copy if changed.
+    // Returns false if the origin does not serve the URI.
+    private boolean copy(Entry entry, long now) throws IOException  {
+        InputStreamListener listener = (origin == null) ? FetchEngine.getDefault() : origin;
+        InputStream in = listener.getInputStream(entry.uri);
+        if (in == null) {
+            return false;
+        }
+        File temp = File.createTempFile(entry.name, TEMP_SUFFIX, directory);
+        CRC32 crc = new CRC32();
+        long length;
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                length = update(crc, in, out);
+                out.getChannel().force(true);
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (IOException e)   {
+            temp.delete();
+            throw e;
+        }
+        finally {
+            in.close();
+        }
+        if (entry.valid && length == entry.length && crc.getValue() == entry.checksum &&
+                entry.data.length() == length)   {
+            temp.delete();
+        }
+        else    {
+            // Data first: if we stop before the metadata is written, the checksum no longer matches
+            entry.valid = false;
+            rename(temp, entry.data);
+            entry.length   = length;
+            entry.checksum = crc.getValue();
+            entry.valid    = true;
+        }
+        entry.checked = now;
+        writeMeta(entry);
+        return true;
+    }
+
+    private void writeMeta(Entry entry) throws IOException {
+        Properties p = new Properties();
+        p.setProperty(META_URI,      entry.uri);
+        p.setProperty(META_LENGTH,   Long.toString(entry.length));
+        p.setProperty(META_CHECKSUM, Long.toString(entry.checksum));
+        p.setProperty(META_CHECKED,  Long.toString(entry.checked));
+        File temp = File.createTempFile(entry.name, TEMP_SUFFIX, directory);
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                p.store(out, "Mirror of " + entry.uri);
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (IOException e)   {
+            temp.delete();
+            throw e;
+        }
+        rename(temp, entry.meta);
+    }
+
+    private static void rename(File from, File to) throws IOException  {
+        if (from.renameTo(to))  {
+            return;
+        }
+        // Some platforms will not rename over an existing file
+        to.delete();
+        if (!from.renameTo(to))   {
+            from.delete();
+            throw new IOException("Could not rename " + from + " to " + to);
+        }
+    }
+
+    // Maps mirror copy, so reads come straight from the page cache
+    private static InputStream open(Entry entry) throws IOException  {
+        RandomAccessFile raf = new RandomAccessFile(entry.data, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ByteBufferInputStream(buffer);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    // Reads in to end, updating crc and writing to out if not null; returns number of bytes read
+    private static long update(CRC32 crc, InputStream in, OutputStream out) throws IOException   {
+        byte[] buffer = new byte[1 << 16];
+        long length = 0;
+        int n;
+        while ((n = in.read(buffer)) > -1) {
+            crc.update(buffer, 0, n);
+            if (out != null)    {
+                out.write(buffer, 0, n);
+            }
+            length += n;
+        }
+        return length;
+    }
+
+    /**
+     * State of the mirror copy of one URI. Guarded by its own monitor.
+     */
+    private final class Entry   {
+
+        private final String uri;
+        private final String name;
+        private final File   data;
+        private final File   meta;
+
+        private boolean read  = false;
+        private boolean valid = false;
+        private long    length;
+        private long    checksum;
+        private long    checked;
+
+        Entry(String uri, String name)  {
+            this.uri  = uri;
+            this.name = name;
+            this.data = new File(directory, name + DATA_SUFFIX);
+            this.meta = new File(directory, name + META_SUFFIX);
+        }
+
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.util.*;
+
+/**
+ * Terms of one namespace in a snapshot, such as GO's biological_process. The view shares the
+ * snapshot's storage: it holds only the indices of its terms, in ID order, and lookups go to
+ * the snapshot and then check the namespace. For example:
+ * <pre>
+ *  NamespaceView process = ontology.getNamespaceView("biological_process");
+ *  int count   = process.size();
+ *  String name = process.getTerm("GO:0008150");
+ * </pre>
+ * Views are immutable and safe to share between threads.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     Ontology#getNamespaceView(String)
+ */
+public final class NamespaceView {
+
+    private final TermStore store;
+    private final String    namespace;
+    private final int       code;
+    private final int[]     members;    // term indices in ID order
+    private final Map       map;
+
+    /**
+     * Creates view of the terms in <code>namespace</code>.
+     *
+     * @param   store       Snapshot of terms
+     * @param   namespace   Namespace name
+     * @return  view of <code>namespace</code> (empty if no term has that namespace)
+     */
+    public static NamespaceView forNamespace(TermStore store, String namespace)   {
+        return new NamespaceView(store, namespace);
+    }
+
+    private NamespaceView(TermStore store, String namespace)   {
+        this.store     = store;
+        this.namespace = namespace;
+        this.code      = store.getNamespaceCode(namespace);
+        this.members   = (code == TermStore.NO_NAMESPACE) ? new int[0] : store.getNamespaceMembers(code);
+        this.map       = new NamespaceMap();
+    }
+
+    public String getNamespace()    {
+        return namespace;
+    }
+
+    public TermStore getTermStore() {
+        return store;
+    }
+
+    /**
+     * Returns number of terms in the namespace.
+     *
+     * @return  number of terms in the namespace
+     */
+    public int size()   {
+        return members.length;
+    }
+
+    /**
+     * Returns index of term with <code>id</code> in the snapshot if it is in this namespace.
+     *
+     * @param   id  Ontology ID
+     * @return  index of term, or -1 if not found or in another namespace
+     */
+    public int indexOf(String id)  {
+        int index = store.indexOf(id);
+        if (index < 0 || code == TermStore.NO_NAMESPACE || store.getNamespaceCode(index) != code)  {
+            return -1;
+        }
+        return index;
+    }
+
+    public boolean contains(String id)  {
+        return indexOf(id) > -1;
+    }
+
+    /**
+     * Returns name of term with <code>id</code>.
+     *
+     * @param   id  Ontology ID
+     * @return  term name
+     * @throws  NoSuchElementException if not found or in another namespace
+     */
+    public String getTerm(String id) throws NoSuchElementException  {
+        return store.getName(find(id));
+    }
+
+    /**
+     * Returns full record of term with <code>id</code>.
+     *
+     * @param   id  Ontology ID
+     * @return  term record
+     * @throws  NoSuchElementException if not found or in another namespace
+     */
+    public TermRecord getTermRecord(String id) throws NoSuchElementException  {
+        return store.getRecord(find(id));
+    }
+
+    /**
+     * Returns cursor over the terms in the namespace, in ID order.
+     *
+     * @return  cursor over the terms in the namespace
+     */
+    public TermCursor cursor()  {
+        return new TermCursor(store, members, 0, members.length);
+    }
+
+    /**
+     * Returns read-only map view with ontology ID as key and term name as value, holding
+     * only the terms in the namespace. No terms are copied.
+     *
+     * @return  read-only map of the terms in the namespace
+     */
+    public Map asMap()  {
+        return map;
+    }
+
+    public String toString()    {
+        return namespace + " (" + members.length + " terms)";
+    }
+
+    private int find(String id) throws NoSuchElementException  {
+        int index = indexOf(id);
+        if (index < 0)  {
+            throw new NoSuchElementException("Could not find term for ontology ID in namespace " +
+                                             namespace + ": " + id);
+        }
+        return index;
+    }
+
+    /**
+     * Read-only map over the terms in the namespace.
+     */
+    private final class NamespaceMap extends AbstractMap   {
+
+        public int size()   {
+            return members.length;
+        }
+
+        public boolean containsKey(Object key)  {
+            return (key instanceof String) && contains((String) key);
+        }
+
+        public Object get(Object key)   {
+            if (!(key instanceof String))   {
+                return null;
+            }
+            int index = indexOf((String) key);
+            return (index < 0) ? null : store.getName(index);
+        }
+
+        public Set entrySet()   {
+            return new AbstractSet()    {
+                public int size()   {
+                    return members.length;
+                }
+                public Iterator iterator()  {
+                    return new Iterator()   {
+                        private int next = 0;
+                        public boolean hasNext()    {
+                            return next < members.length;
+                        }
+                        public Object next()    {
+                            if (next >= members.length) {
+                                throw new NoSuchElementException();
+                            }
+                            return new NamespaceEntry(members[next++]);
+                        }
+                        public void remove()    {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Entry for one term.
+     */
+    private final class NamespaceEntry implements Map.Entry    {
+
+        private final int index;
+
+        NamespaceEntry(int index)    {
+            this.index = index;
+        }
+
+        public Object getKey()  {
+            return store.getId(index);
+        }
+
+        public Object getValue()    {
+            return store.getName(index);
+        }
+
+        public Object setValue(Object value)    {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))  {
+                return false;
+            }
+            Map.Entry that = (Map.Entry) o;
+            return getKey().equals(that.getKey()) &&
+                   ((getValue() == null) ? that.getValue() == null : getValue().equals(that.getValue()));
+        }
+
+        public int hashCode()   {
+            return getKey().hashCode() ^ ((getValue() == null) ? 0 : getValue().hashCode());
+        }
+
+        public String toString()    {
+            return getKey() + "=" + getValue();
+        }
+
+    }
+
+}
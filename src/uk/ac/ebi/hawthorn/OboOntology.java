@@ -18,12 +18,18 @@
 package uk.ac.ebi.hawthorn;
 
 import org.bdgp.apps.dagedit.dataadapter.DEDataAdapterI;
-import org.bdgp.apps.dagedit.dataadapter.GOBOAdapter;
 import org.bdgp.apps.dagedit.datamodel.DEEditHistory;
 import org.bdgp.apps.dagedit.datamodel.Term;
+import org.bdgp.apps.dagedit.datamodel.TermRelationship;
+import org.bdgp.apps.dagedit.datamodel.TermCategory;
+import org.bdgp.apps.dagedit.datamodel.Synonym;
+import org.bdgp.apps.dagedit.datamodel.Dbxref;
 import org.bdgp.io.DataAdapterException;
 
 import java.util.*;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.IOException;
 
 /**
@@ -54,15 +60,42 @@ public final class OboOntology extends AbstractOntology implements Ontology {
         OntologyManager.registerOntology("uk.ac.ebi.hawthorn.OboOntology", new OboOntology.OboOntologyFactory());
     }
 
-    static class OboOntologyFactory implements OntologyFactory {
+    static class OboOntologyFactory implements CoordinatedOntologyFactory {
         public Ontology getInstance(String prefix, String uri, String userName, String password,
                                     int refreshInterval, boolean tolerateRefreshException, 
                                     InputStreamListener inputStreamListener)
                throws IOException   {
-            return new OboOntology(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener);
+            return getInstance(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+        }
+
+        public Ontology getInstance(String prefix, String uri, String userName, String password,
+                                    int refreshInterval, boolean tolerateRefreshException, 
+                                    InputStreamListener inputStreamListener,
+                                    RefreshCoordinator coordinator)
+               throws IOException   {
+            return new OboOntology(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
+        }
+    }
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Reads OBO files, which are UTF-8. Each stanza goes straight into the sink, so no DAG-Edit
+     * object graph is held during a reload.
+     *
+     * @see OboParser
+     */
+    public static final class Loader implements OntologyLoader  {
+        public String getFormat()   {
+            return "obo";
+        }
+        public void load(InputStream inputStream, TermSink sink) throws IOException   {
+            OboParser.parse(new BufferedReader(new InputStreamReader(inputStream, ENCODING)), sink);
         }
     }
 
+    private static final OntologyLoader LOADER = new Loader();
+
     /**
      * Loads terms from OBO-formatted ontology.
      *
@@ -79,31 +112,75 @@ public final class OboOntology extends AbstractOntology implements Ontology {
                           int refreshInterval, boolean tolerateRefreshException, 
                           InputStreamListener inputStreamListener)
               throws IOException    {
-        super(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener);
+        this(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+    }
+
+    /**
+     * Loads terms from OBO-formatted ontology.
+     *
+     * @param   prefix
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval
+     * @param   tolerateRefreshException
+     * @param   coordinator             Coordinator to share refreshes through, or null for none
+     * @throws  IOException
+     * @see     uk.ac.ebi.hawthorn.AbstractOntology#AbstractOntology(OntologyLoader, String, String, String, String, int, boolean, InputStreamListener, RefreshCoordinator)
+     * @since   1.1
+     */
+    protected OboOntology(String prefix, String uri, String userName, String password,
+                          int refreshInterval, boolean tolerateRefreshException, 
+                          InputStreamListener inputStreamListener,
+                          RefreshCoordinator coordinator)
+              throws IOException    {
+        super(LOADER, prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
     }
 
     public Map getTerms() throws IOException {
-        return getTerms(getAdapter());
+        return getTermStore().asMap();
     }
 
     /**
-     * Returns map of terms using ID as key and term as value.
+     * Returns terms read by <code>adapter</code>, including definitions, synonyms, cross-references,
+     * namespaces, subsets and relationships.
      *
      * @param   adapter     DAG-Edit data adapter
-     * @return  map of terms using ID as key and term as value.
+     * @return  terms read by <code>adapter</code>
      * @throws  IOException if could not load terms
      */
-    static Map getTerms(DEDataAdapterI adapter) throws IOException {
+    static TermStore readTermStore(DEDataAdapterI adapter) throws IOException {
         try {
-            Map terms = new HashMap();
             DEEditHistory history = adapter.getRoot();
             Map termsHash = history.getAllTermsHash();
+            TermStore.Builder builder = new TermStore.Builder(termsHash.size());
             for (Iterator t = termsHash.entrySet().iterator(); t.hasNext();)  {
                 Map.Entry entry = (Map.Entry) t.next();
                 Term term = (Term) entry.getValue();
-                terms.put(entry.getKey(), term.getTerm());
+                int index = builder.addTerm((String) entry.getKey(), term.getTerm());
+                builder.setDefinition(index, term.getDefinition());
+                if (term.getNamespace() != null)    {
+                    builder.setNamespace(index, term.getNamespace().getID());
+                }
+                for (Iterator i = term.getSynonyms().iterator(); i.hasNext();)  {
+                    builder.addSynonym(index, ((Synonym) i.next()).getText());
+                }
+                for (Iterator i = term.getDbxrefs().iterator(); i.hasNext();)  {
+                    Dbxref xref = (Dbxref) i.next();
+                    builder.addXref(index, xref.getDatabase() + ":" + xref.getID());
+                }
+                for (Iterator i = term.getCategories().iterator(); i.hasNext();)  {
+                    builder.addSubset(index, ((TermCategory) i.next()).getName());
+                }
+                for (Iterator i = term.getParents().iterator(); i.hasNext();)  {
+                    TermRelationship relationship = (TermRelationship) i.next();
+                    if (relationship.getParent() != null)   {
+                        builder.addRelationship(index, relationship.getType().getID(),
+                                                relationship.getParent().getID());
+                    }
+                }
             }
-            return Collections.unmodifiableMap(terms);
+            return builder.build();
         }
         catch (DataAdapterException e)  {
             String message = "Could not load terms from " + adapter.getName();
@@ -118,14 +195,4 @@ public final class OboOntology extends AbstractOntology implements Ontology {
         }
     }
 
-    private DEDataAdapterI getAdapter()    {
-        GOBOAdapter adaptor = new GOBOAdapter();
-        GOBOAdapter.IOProfile profile = new GOBOAdapter.IOProfile("");
-        Vector v = new Vector();
-        v.add(getUri());
-        profile.setFiles(v);
-        adaptor.setIOProfile(profile);
-        return adaptor;
-    }
-
  }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Streaming parser for OBO-formatted ontologies, versions 1.0 and 1.2. Each
+ * <code>[Term]</code> stanza is added to the builder as soon as it is read, so no object
+ * graph is built for the whole ontology:
+ * <pre>
+ *  [Term]
+ *  id: GO:0000001
+ *  name: mitochondrion inheritance
+ *  namespace: biological_process
+ *  def: "The distribution of mitochondria..." [GO:mcc, PMID:10873824]
+ *  synonym: "mitochondrial inheritance" EXACT []
+ *  xref: MetaCyc:PWY-1
+ *  subset: goslim_generic
+ *  is_a: GO:0048308 ! organelle inheritance
+ *  relationship: part_of GO:0048311 ! mitochondrion distribution
+ * </pre>
+ * Other stanzas and tags are skipped. Terms without a namespace take the
+ * <code>default-namespace</code> from the header.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OboOntology
+ */
+final class OboParser {
+
+    private static final char   COMMENT           = '!';
+    private static final char   ESCAPE            = '\\';
+    private static final char   QUOTE             = '"';
+    private static final String TERM_STANZA       = "[Term]";
+    private static final String DEFAULT_NAMESPACE = "default-namespace";
+    private static final String IS_A              = "is_a";
+
+    private final BufferedReader    reader;
+    private final TermSink builder;
+
+    private String  defaultNamespace = null;
+    private boolean header = true;
+    private int     lines  = 0;
+
+    // Current term stanza
+    private boolean inTerm    = false;
+    private String  id        = null;
+    private int     index     = -1;
+    private boolean repeat    = false;
+    private boolean namespace = false;
+
+    private OboParser(BufferedReader reader, TermSink builder)    {
+        this.reader  = reader;
+        this.builder = builder;
+    }
+
+    /**
+     * Reads all terms from <code>reader</code> into <code>builder</code>.
+     *
+     * @param   reader  OBO-formatted ontology
+     * @param   builder Receives terms and relationships
+     * @throws  IOException if could not read or parse ontology
+     */
+    static void parse(BufferedReader reader, TermSink builder) throws IOException   {
+        new OboParser(reader, builder).parse();
+    }
+
+    private void parse() throws IOException  {
+        String line;
+        while ((line = reader.readLine()) != null)  {
+            lines++;
+            line = line.trim();
+            if (line.length() == 0 || line.charAt(0) == COMMENT)    {
+                continue;
+            }
+            if (line.charAt(0) == '[')  {
+                endTerm();
+                header = false;
+                inTerm = line.equals(TERM_STANZA);
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon < 1)  {
+                throw new IOException("Missing tag at line " + lines + ": " + line);
+            }
+            String tag   = line.substring(0, colon);
+            String value = line.substring(colon + 1).trim();
+            if (inTerm) {
+                parseTag(tag, value, line);
+            }
+            else if (header && tag.equals(DEFAULT_NAMESPACE))  {
+                defaultNamespace = value;
+            }
+        }
+        endTerm();
+    }
+
+    private void parseTag(String tag, String value, String line) throws IOException  {
+        if (tag.equals("id"))   {
+            if (index > -1) {
+                throw new IOException("Second id in stanza at line " + lines + ": " + line);
+            }
+            id     = stripComment(value);
+            index  = builder.indexOf(id);
+            repeat = (index > -1);
+            if (!repeat)    {
+                index = builder.addTerm(id, "");
+            }
+            return;
+        }
+        if (index < 0)  {
+            throw new IOException("Tag before id at line " + lines + ": " + line);
+        }
+        if (repeat && !tag.equals(IS_A) && !tag.equals("relationship"))  {
+            // Fields of repeated stanzas would be out of term order, so only edges are kept
+            return;
+        }
+        if (tag.equals("name")) {
+            builder.addTerm(id, unescape(stripComment(value)));
+        }
+        else if (tag.equals("namespace"))   {
+            builder.setNamespace(index, stripComment(value));
+            namespace = true;
+        }
+        else if (tag.equals("def")) {
+            builder.setDefinition(index, quoted(value, line));
+        }
+        else if (tag.equals("synonym") || tag.endsWith("_synonym"))   {
+            builder.addSynonym(index, quoted(value, line));
+        }
+        else if (tag.equals("xref") || tag.startsWith("xref_"))   {
+            builder.addXref(index, firstToken(value));
+        }
+        else if (tag.equals("subset"))  {
+            builder.addSubset(index, firstToken(value));
+        }
+        else if (tag.equals(IS_A))  {
+            builder.addRelationship(index, IS_A, firstToken(value));
+        }
+        else if (tag.equals("relationship"))    {
+            String s = stripComment(value);
+            int space = s.indexOf(' ');
+            if (space < 0)  {
+                throw new IOException("Missing parent at line " + lines + ": " + line);
+            }
+            builder.addRelationship(index, s.substring(0, space), firstToken(s.substring(space + 1)));
+        }
+    }
+
+    private void endTerm()   {
+        if (index > -1 && !repeat && !namespace && defaultNamespace != null)  {
+            builder.setNamespace(index, defaultNamespace);
+        }
+        inTerm    = false;
+        id        = null;
+        index     = -1;
+        repeat    = false;
+        namespace = false;
+    }
+
+    // Returns text between first pair of unescaped quotes, unescaped
+    private String quoted(String value, String line) throws IOException  {
+        if (value.length() == 0 || value.charAt(0) != QUOTE)  {
+            throw new IOException("Missing quoted text at line " + lines + ": " + line);
+        }
+        for (int i = 1; i < value.length(); i++)    {
+            char c = value.charAt(i);
+            if (c == ESCAPE)    {
+                i++;
+            }
+            else if (c == QUOTE)    {
+                return unescape(value.substring(1, i));
+            }
+        }
+        throw new IOException("Unterminated quoted text at line " + lines + ": " + line);
+    }
+
+    // Returns value up to first whitespace, comment or trailing modifier
+    private static String firstToken(String value)  {
+        String s = stripComment(value);
+        for (int i = 0; i < s.length(); i++)    {
+            char c = s.charAt(i);
+            if (c == ' ' || c == '\t' || c == '{' || c == QUOTE)    {
+                return unescape(s.substring(0, i));
+            }
+            if (c == ESCAPE)    {
+                i++;
+            }
+        }
+        return unescape(s);
+    }
+
+    // Removes unescaped " ! comment" outside quotes
+    private static String stripComment(String value)  {
+        boolean quoted = false;
+        for (int i = 0; i < value.length(); i++)    {
+            char c = value.charAt(i);
+            if (c == ESCAPE)    {
+                i++;
+            }
+            else if (c == QUOTE)    {
+                quoted = !quoted;
+            }
+            else if (c == COMMENT && !quoted && (i == 0 || value.charAt(i - 1) == ' '))   {
+                return value.substring(0, i).trim();
+            }
+        }
+        return value;
+    }
+
+    private static String unescape(String s)    {
+        if (s.indexOf(ESCAPE) < 0)  {
+            return s;
+        }
+        StringBuffer buf = new StringBuffer(s.length());
+        for (int i = 0; i < s.length(); i++)    {
+            char c = s.charAt(i);
+            if (c == ESCAPE && i + 1 < s.length())  {
+                c = s.charAt(++i);
+                switch (c)  {
+                    case 'n':   c = '\n';   break;
+                    case 't':   c = '\t';   break;
+                    case 'W':   c = ' ';    break;
+                    default:    break;
+                }
+            }
+            buf.append(c);
+        }
+        return buf.toString();
+    }
+
+}
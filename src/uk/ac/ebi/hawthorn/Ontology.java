@@ -79,13 +79,85 @@ public interface Ontology {
     public String getTerm(String id) throws IOException, NoSuchElementException;
 
     /**
-     * Returns ontology terms with ontology ID as key and ontology term as value
+     * Returns ontology terms with ontology ID as key and ontology term as value. The map is a
+     * read-only view of the current snapshot, so the source is not read again; use
+     * {@link TermStore#cursor()} to visit terms in ID order.
      *
      * @return  ontology terms with ontology ID as key and term as value
      * @throws  IOException if could not access URL
      */
     public Map getTerms() throws IOException;
 
+    /**
+     * Returns full record for <code>id</code>, including definition, synonyms, cross-references,
+     * namespace, subsets and relationships where the ontology format provides them.
+     *
+     * @param   id  Ontology ID, for example GO:0000001
+     * @return  term record
+     * @throws  IOException             if could not access URL
+     * @throws  NoSuchElementException  if <code>id</code> not recognised
+     * @since   1.1
+     */
+    public TermRecord getTermRecord(String id) throws IOException, NoSuchElementException;
+
+    /**
+     * Returns current snapshot of terms, reloading first if the ontology has been updated.
+     *
+     * @return  current snapshot of terms
+     * @throws  IOException if could not access URL
+     * @since   1.1
+     */
+    public TermStore getTermStore() throws IOException;
+
+    /**
+     * Returns projection of the current snapshot onto the terms in <code>subset</code>, for
+     * example "goslim_generic". The projection is reused until the ontology is reloaded.
+     *
+     * @param   subset  Subset name
+     * @return  projection onto <code>subset</code>
+     * @throws  IOException if could not access URL
+     * @see     SlimProjection#projectToSlim(String[])
+     * @since   1.1
+     */
+    public SlimProjection getSlimProjection(String subset) throws IOException;
+
+    /**
+     * Returns the terms of the current snapshot in <code>namespace</code>, for example
+     * "biological_process". The view shares the snapshot's storage and is reused until the
+     * ontology is reloaded.
+     *
+     * @param   namespace   Namespace name
+     * @return  view of <code>namespace</code>
+     * @throws  IOException if could not access URL
+     * @see     NamespaceView
+     * @since   1.1
+     */
+    public NamespaceView getNamespaceView(String namespace) throws IOException;
+
+    /**
+     * Returns health of the ontology source, for monitoring.
+     *
+     * @return  health of the ontology source
+     * @since   1.1
+     */
+    public SourceHealth getHealth();
+
+    /**
+     * Returns time spent fetching, parsing and indexing in the last load, for monitoring.
+     *
+     * @return  statistics for the last load
+     * @since   1.1
+     */
+    public LoadStatistics getLoadStatistics();
+
+    /**
+     * Returns estimated heap retained by the current snapshot of terms, for monitoring.
+     *
+     * @return  estimated memory usage
+     * @since   1.1
+     */
+    public MemoryUsage getMemoryUsage();
+
     /**
      * Returns true if refresh exceptions are tolerated (expceptions are written to log as warnings),
      * otherwise false (exceptions are thrown)
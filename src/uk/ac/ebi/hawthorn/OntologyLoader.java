@@ -0,0 +1,67 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.InputStream;
+import java.io.IOException;
+
+/**
+ * Reads one ontology format. Loaders push records into a <code>TermSink</code> supplied by
+ * the engine rather than returning a map of terms, so every format shares the same load
+ * pipeline, storage, indexes and reloading.
+ * <p>
+ * Loaders are found with <code>java.util.ServiceLoader</code>: list the implementing class in
+ * <code>META-INF/services/uk.ac.ebi.hawthorn.OntologyLoader</code> on the class path, then use
+ * its format name or class name as the <code>class</code> setting of an
+ * <code>OntologyMap</code>. For example:
+ * </p>
+ * <pre>
+ *  GO.uri=http://www.geneontology.org/ontology/gene_ontology.obo
+ *  GO.class=obo
+ * </pre>
+ * <p>
+ * Implementations need a public no-argument constructor. One instance serves every ontology
+ * of its format, possibly on several threads at once, so it should keep no state between
+ * calls to <code>load</code>.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OntologyManager#registerLoader(OntologyLoader)
+ */
+public interface OntologyLoader {
+
+    /**
+     * Returns short name of format, for example "obo".
+     *
+     * @return  format name
+     */
+    public String getFormat();
+
+    /**
+     * Reads all terms from <code>inputStream</code> into <code>sink</code>. The stream is
+     * closed by the caller.
+     *
+     * @param   inputStream Source bytes
+     * @param   sink        Receives terms and relationships
+     * @throws  IOException if could not read or parse source
+     */
+    public void load(InputStream inputStream, TermSink sink) throws IOException;
+
+}
@@ -17,13 +17,29 @@
 
 package uk.ac.ebi.hawthorn;
 
-import java.util.HashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import java.util.Map;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.IOException;
 
 /**
  * Manages a set of ontology instances.
+ * <p>
+ * The registry is safe for concurrent use: ontology classes may register themselves from
+ * their static initialisers while other threads are creating ontologies, and readers never
+ * take a lock.
+ * </p>
+ * <p>
+ * Ontology loaders listed in <code>META-INF/services/uk.ac.ebi.hawthorn.OntologyLoader</code>
+ * are found with <code>java.util.ServiceLoader</code> the first time an ontology is created,
+ * and registered under both their format name and class name.
+ * </p>
  *
  * @author  Antony Quinn
  * @version $Id: OntologyManager.java,v 1.2 2005/06/21 14:49:11 aquinn Exp $
@@ -31,8 +47,12 @@ import java.io.IOException;
  */
 public class OntologyManager {
 
+    private static final Log log = LogFactory.getLog(OntologyManager.class);
+
     // Registered ontology factories
-    private static Map ontologyFactories = new HashMap();
+    private static final Map ontologyFactories = new ConcurrentHashMap();
+
+    private static volatile boolean loadersFound = false;
 
     /**
      * Remove ontology from list of registered ontologies.
@@ -55,6 +75,21 @@ public class OntologyManager {
         ontologyFactories.put(className, ontologyFactory);
     }
 
+    /**
+     * Registers loader under its format name and class name, so either can be used as the
+     * class name of an ontology. Loaders on the class path are registered automatically.
+     *
+     * @param loader    Loader for one format
+     * @see   OntologyLoader
+     * @see   LoaderOntology
+     * @since 1.1
+     */
+    public static void registerLoader(OntologyLoader loader)  {
+        OntologyFactory ontologyFactory = new LoaderOntology.LoaderOntologyFactory(loader);
+        ontologyFactories.put(loader.getFormat(), ontologyFactory);
+        ontologyFactories.put(loader.getClass().getName(), ontologyFactory);
+    }
+
     /**
      * Returns ontology instance.
      *
@@ -79,13 +114,59 @@ public class OntologyManager {
                                        boolean tolerateRefreshException, 
                                        InputStreamListener inputStreamListener)
                            throws IOException, ClassNotFoundException {
-        if (ontologyFactories.containsKey(className))  {
-            OntologyFactory ontologyFactory = (OntologyFactory) ontologyFactories.get(className);
+        findLoaders();
+        OntologyFactory ontologyFactory = (OntologyFactory) ontologyFactories.get(className);
+        if (ontologyFactory != null)  {
             return ontologyFactory.getInstance(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener);
         }
         throw new ClassNotFoundException("Could not find " + className);
     }
 
+    /**
+     * Returns ontology instance that shares loads and refreshes with other nodes through
+     * <code>coordinator</code>.
+     *
+     * @param   className               Ontology class name
+     * @param   prefix                  Ontology prefix
+     * @param   uri                     URL or relative path to ontology
+     * @param   userName                User name to access secured ontologies (optional)
+     * @param   password                Password to access secured ontologies (optional)
+     * @param   refreshInterval         How often to check ontology for updates
+     * @param   tolerateRefreshException Allow refresh exceptions to be logged or thrown
+     * @param   inputStreamListener     Listens for calls to obtain input streams
+     * @param   coordinator             Coordinator, or null to fetch the source directly
+     * @return  ontology instance
+     * @throws  IOException             if could not load ontology
+     * @throws  ClassNotFoundException  if could not find <code>className</code>
+     * @throws  IllegalArgumentException if <code>className</code> cannot share refreshes
+     * @see     CoordinatedOntologyFactory
+     * @since   1.1
+     */
+    public static Ontology getOntology(String className,
+                                       String prefix,
+                                       String uri,
+                                       String userName,
+                                       String password,
+                                       int refreshInterval,
+                                       boolean tolerateRefreshException,
+                                       InputStreamListener inputStreamListener,
+                                       RefreshCoordinator coordinator)
+                           throws IOException, ClassNotFoundException {
+        if (coordinator == null)    {
+            return getOntology(className, prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener);
+        }
+        findLoaders();
+        OntologyFactory ontologyFactory = (OntologyFactory) ontologyFactories.get(className);
+        if (ontologyFactory == null)  {
+            throw new ClassNotFoundException("Could not find " + className);
+        }
+        if (!(ontologyFactory instanceof CoordinatedOntologyFactory))   {
+            throw new IllegalArgumentException(className + " cannot share refreshes through a coordinator");
+        }
+        return ((CoordinatedOntologyFactory) ontologyFactory).getInstance(prefix, uri, userName, password,
+                refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
+    }
+
     /**
      * Returns map of all registered ontology factories
      *
@@ -93,7 +174,40 @@ public class OntologyManager {
      * @see     OntologyFactory
      */
     public static Map getOntologyFactories()  {
+        findLoaders();
         return Collections.unmodifiableMap(ontologyFactories);
     }
 
+    /**
+     * Registers loaders on the class path, once. Factories registered explicitly are kept, and
+     * a loader that cannot be created is logged and skipped.
+     */
+    private static void findLoaders()  {
+        // Checked before locking, so lookups only contend while the class path is scanned
+        if (loadersFound)   {
+            return;
+        }
+        synchronized (OntologyManager.class)    {
+            if (loadersFound)   {
+                return;
+            }
+            Iterator i = ServiceLoader.load(OntologyLoader.class).iterator();
+            while (true)    {
+                try {
+                    if (!i.hasNext())   {
+                        break;
+                    }
+                    OntologyLoader loader = (OntologyLoader) i.next();
+                    if (!ontologyFactories.containsKey(loader.getFormat()))   {
+                        registerLoader(loader);
+                    }
+                }
+                catch (ServiceConfigurationError e) {
+                    log.warn("Could not register ontology loader", e);
+                }
+            }
+            loadersFound = true;
+        }
+    }
+
 }
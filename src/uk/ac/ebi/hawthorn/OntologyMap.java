@@ -20,6 +20,8 @@ package uk.ac.ebi.hawthorn;
 import java.util.*;
 import java.io.*;
 import java.net.MalformedURLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Provides a map of ontologies. Key is ontology name, value is <code>Ontology</code>.
@@ -31,7 +33,15 @@ import java.net.MalformedURLException;
  * &lt;ontology-prefix&gt;.username=&lt;user name&gt;
  * &lt;ontology-prefix&gt;.password=&lt;password&gt;
  * &lt;ontology-prefix&gt;.refresh-interval=&lt;refresh interval&gt;
- * &lt;ontology-prefix&gt;.class=&lt;class implementing Ontology&gt;
+ * &lt;ontology-prefix&gt;.class=&lt;class implementing Ontology, or format or class of an OntologyLoader&gt;
+ * &lt;ontology-prefix&gt;.failure-threshold=&lt;consecutive refresh failures before source is left alone&gt;
+ * &lt;ontology-prefix&gt;.retry-interval=&lt;seconds before failed source is first retried&gt;
+ * &lt;ontology-prefix&gt;.max-retry-interval=&lt;most seconds between retries of failed source&gt;
+ * &lt;ontology-prefix&gt;.shared-dir=&lt;directory shared with other nodes, so only one fetches the source&gt;
+ * &lt;ontology-prefix&gt;.id-pattern=&lt;pattern that IDs must match (see IdPattern)&gt;
+ * heap-budget=&lt;most heap for all ontologies, in bytes or with a suffix of K, M or G&gt;
+ * mirror-dir=&lt;directory keeping local copies of network sources&gt;
+ * mirror-interval=&lt;seconds before a local copy is checked against its source&gt;
  *
  * </pre>
  * For example:
@@ -41,7 +51,9 @@ import java.net.MalformedURLException;
  *  GO.password=
  *  GO.refresh-interval=600
  *  GO.class=uk.ac.ebi.hawthorn.TabOntology
+ *  GO.id-pattern=GO:\\d{7}
  * </pre>
+ * Backslashes in properties files must be doubled, as above.
  *
  * @author  Antony Quinn
  * @version $Id: OntologyMap.java,v 1.3 2005/11/23 15:32:57 aquinn Exp $
@@ -50,8 +62,32 @@ import java.net.MalformedURLException;
  */
 public class OntologyMap    {
 
+    /**
+     * ID has no prefix separator or does not match the pattern for its prefix.
+     * @see #validateID(String)
+     */
+    public static final int MALFORMED_ID   = 0;
+
+    /**
+     * ID is well formed but its prefix is not in the map.
+     */
+    public static final int UNKNOWN_PREFIX = 1;
+
+    /**
+     * ID is well formed and its prefix is in the map, but its ontology has no such term.
+     */
+    public static final int UNKNOWN_ID     = 2;
+
+    /**
+     * ID is a term in its ontology.
+     */
+    public static final int VALID_ID       = 3;
+
     private static final String PREFIX_SEPARATOR            = ":";
 
+    // Smallest batch of IDs worth validating on another thread
+    private static final int    VALIDATE_CHUNK              = 1 << 14;
+
     private static final String PROPERTIES_FILE             = "ontologies.properties";
     private static final String PROPERTY_SEP                = ".";
     private static final String PROPERTY_URI                = "uri";
@@ -60,15 +96,32 @@ public class OntologyMap    {
     private static final String PROPERTY_REFRESH_INTERVAL   = "refresh-interval";
     private static final String PROPERTY_TOLERATE_REFRESH_EXCEPTION   = "tolerate-refresh-exception";
     private static final String PROPERTY_CLASS              = "class";
+    private static final String PROPERTY_FAILURE_THRESHOLD  = "failure-threshold";
+    private static final String PROPERTY_RETRY_INTERVAL     = "retry-interval";
+    private static final String PROPERTY_MAX_RETRY_INTERVAL = "max-retry-interval";
+    private static final String PROPERTY_SHARED_DIR         = "shared-dir";
+    private static final String PROPERTY_ID_PATTERN         = "id-pattern";
+    private static final String PROPERTY_HEAP_BUDGET        = "heap-budget";
+    private static final String PROPERTY_MIRROR_DIR         = "mirror-dir";
+    private static final String PROPERTY_MIRROR_INTERVAL    = "mirror-interval";
 
     private static final String DEFAULT_USER_NAME           = "";
     private static final String DEFAULT_PASSWORD            = "";
     private static final String DEFAULT_REFRESH_INTERVAL    = "60";
     private static final String DEFAULT_CLASS               = "uk.ac.ebi.hawthorn.GoOntology";
     private static final boolean DEFAULT_TOLERATE_REFRESH_EXCEPTION = false;
+    private static final String DEFAULT_FAILURE_THRESHOLD   = "3";
+    private static final String DEFAULT_RETRY_INTERVAL      = "30";
+    private static final String DEFAULT_MAX_RETRY_INTERVAL  = "3600";
+    private static final String DEFAULT_HEAP_BUDGET         = "0";
+    private static final String DEFAULT_MIRROR_INTERVAL     = String.valueOf(MirrorInputStreamListener.DEFAULT_REVALIDATE_INTERVAL);
 
-    private final Map map;
     private final InputStreamListener inputStreamListener;
+    private final Object reconfigureLock = new Object();
+    private volatile Configuration configuration = new Configuration(new HashMap(), new HashMap(), new HashMap(), null);
+    private final HeapBudget heapBudget = new HeapBudget(0);
+    private XrefIndex xrefIndex;
+    private ConceptTagger conceptTagger;
 
     /**
      * Loads ontology map using default properties file
@@ -122,27 +175,159 @@ public class OntologyMap    {
     public OntologyMap(InputStream propertiesInputStream, InputStreamListener inputStreamListener)
            throws ClassNotFoundException, FileNotFoundException, IOException   {
         this.inputStreamListener = inputStreamListener;
-        this.map = new HashMap();
         Properties p = new Properties();
         p.load(propertiesInputStream);
-        // Get prefixes
-        Set prefixes = new HashSet();
-        for (Iterator i=p.keySet().iterator(); i.hasNext(); )    {
-            String key = (String) i.next();
-            int sep = key.indexOf(PROPERTY_SEP);
-            if (sep > -1)   {
-                String prefix = key.substring(0, sep);
-                if (!prefixes.contains(prefix))   {
-                    prefixes.add(prefix);
+        reconfigure(p);
+    }
+
+    /**
+     * Applies new ontology settings. Prefixes that are new, or whose settings have changed, are
+     * loaded in parallel while the current ontologies carry on serving lookups; the new set of
+     * ontologies then replaces the current set in a single step. Ontologies whose settings are
+     * unchanged are kept as they are, and prefixes missing from <code>p</code> are dropped.
+     * If any ontology fails to load, the current configuration is left in place.
+     *
+     * @param   p   Ontology settings, in the same format as the properties file
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load an ontology
+     * @since   1.1
+     */
+    public void reconfigure(Properties p) throws ClassNotFoundException, IOException  {
+        synchronized (reconfigureLock)  {
+            Configuration current = configuration;
+            long limit = HeapBudget.parse(p.getProperty(PROPERTY_HEAP_BUDGET, DEFAULT_HEAP_BUDGET));
+            MirrorInputStreamListener mirror = getMirror(p, current);
+            // Get settings for each prefix
+            Map settings = new HashMap();
+            for (Iterator i=p.keySet().iterator(); i.hasNext(); )    {
+                String key = (String) i.next();
+                int sep = key.indexOf(PROPERTY_SEP);
+                if (sep > -1)   {
+                    String prefix = key.substring(0, sep);
+                    if (!settings.containsKey(prefix))   {
+                        settings.put(prefix, new Settings(prefix, p));
+                    }
+                }
+            }
+            Map patterns = new HashMap();
+            for (Iterator i=settings.entrySet().iterator(); i.hasNext(); )    {
+                Map.Entry entry = (Map.Entry) i.next();
+                IdPattern pattern = ((Settings) entry.getValue()).idPattern;
+                if (pattern != null)    {
+                    patterns.put(entry.getKey(), pattern);
+                }
+            }
+            // Keep unchanged ontologies, and register classes of the rest before loading in parallel
+            Map map = new HashMap();
+            Map pending = new HashMap();
+            for (Iterator i=settings.entrySet().iterator(); i.hasNext(); )    {
+                Map.Entry entry = (Map.Entry) i.next();
+                if (entry.getValue().equals(current.settings.get(entry.getKey())))  {
+                    map.put(entry.getKey(), current.map.get(entry.getKey()));
+                }
+                else    {
+                    register(((Settings) entry.getValue()).className);
+                    pending.put(entry.getKey(), entry.getValue());
                 }
             }
+            // Refuse before parsing if the estimated size cannot fit the heap budget
+            if (limit > 0)  {
+                long estimate = 0;
+                for (Iterator i=settings.entrySet().iterator(); i.hasNext(); )    {
+                    Map.Entry entry = (Map.Entry) i.next();
+                    estimate += estimateBytes((Ontology) current.map.get(entry.getKey()), (Settings) entry.getValue());
+                }
+                if (estimate > limit)   {
+                    throw new IOException("Ontologies need an estimated " + (estimate >> 10) + " KB, more than heap budget of " +
+                                          (limit >> 10) + " KB");
+                }
+            }
+            // Get ontologies: each source is fetched and parsed on its own worker thread, through
+            // the new mirror
+            Map futures = new HashMap();
+            List listeners = new ArrayList();
+            for (Iterator i=pending.entrySet().iterator(); i.hasNext(); )    {
+                Map.Entry entry = (Map.Entry) i.next();
+                final String   prefix = (String) entry.getKey();
+                final Settings s      = (Settings) entry.getValue();
+                final InputStreamListenerImpl listener = new InputStreamListenerImpl(mirror);
+                listeners.add(listener);
+                futures.put(prefix, FetchEngine.getDefault().submit(new Callable()  {
+                    public Object call() throws Exception   {
+                        return getOntology(prefix, s, listener);
+                    }
+                }));
+            }
+            IOException failure = null;
+            for (Iterator i=futures.entrySet().iterator(); i.hasNext(); )    {
+                Map.Entry entry = (Map.Entry) i.next();
+                try {
+                    map.put(entry.getKey(), FetchEngine.get((Future) entry.getValue()));
+                }
+                catch (IOException e)   {
+                    if (failure == null)    {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null)    {
+                throw failure;
+            }
+            // Estimates can be low, so check the loaded ontologies too, keeping the current ones
+            if (limit > 0)  {
+                long total = 0;
+                for (Iterator i=map.values().iterator(); i.hasNext(); )    {
+                    total += ((Ontology) i.next()).getMemoryUsage().getTotalBytes();
+                }
+                if (total > limit)  {
+                    throw new IOException("Ontologies need " + (total >> 10) + " KB, more than heap budget of " +
+                                          (limit >> 10) + " KB");
+                }
+            }
+            heapBudget.setLimit(limit);
+            if (pending.isEmpty() && map.size() == current.map.size() && patterns.equals(current.patterns) &&
+                    mirror == current.mirror)    {
+                return;
+            }
+            for (Iterator i=current.map.entrySet().iterator(); i.hasNext(); )    {
+                Map.Entry entry = (Map.Entry) i.next();
+                if (map.get(entry.getKey()) != entry.getValue())  {
+                    heapBudget.remove(entry.getValue());
+                }
+            }
+            for (Iterator i=pending.keySet().iterator(); i.hasNext(); )    {
+                Object ontology = map.get(i.next());
+                if (ontology instanceof AbstractOntology)   {
+                    ((AbstractOntology) ontology).setHeapBudget(heapBudget);
+                }
+            }
+            configuration = new Configuration(map, settings, patterns, mirror);
+            for (Iterator i=listeners.iterator(); i.hasNext(); )    {
+                ((InputStreamListenerImpl) i.next()).installed();
+            }
         }
-        // Get ontologies
-        for (Iterator i=prefixes.iterator(); i.hasNext(); )    {
-            String name     = (String) i.next();
-            Ontology ontology = getOntology(name, p);
-            this.map.put(name, ontology);
+        // Re-index cross-references and names for added, changed and removed prefixes
+        refreshIndices();
+    }
+
+    /**
+     * Reads ontology settings from <code>propertiesInputStream</code> and applies them.
+     *
+     * @param   propertiesInputStream    Properties file
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not read properties file or load an ontology
+     * @see     #reconfigure(Properties)
+     * @since   1.1
+     */
+    public void reconfigure(InputStream propertiesInputStream) throws ClassNotFoundException, IOException  {
+        Properties p = new Properties();
+        try {
+            p.load(propertiesInputStream);
+        }
+        finally {
+            propertiesInputStream.close();
         }
+        reconfigure(p);
     }
 
     /**
@@ -151,7 +336,7 @@ public class OntologyMap    {
      * @return  ontology map
      */
     public Map getMap() {
-        return Collections.unmodifiableMap(map);
+        return configuration.map;
     }
 
     /**
@@ -165,36 +350,266 @@ public class OntologyMap    {
      */
     public String getTerm(String id)
                   throws IllegalArgumentException, NoSuchElementException, IOException  {
-        if (isValidID(id)) {
-            int sep = id.indexOf(PREFIX_SEPARATOR);
-            final String prefix = id.substring(0, sep);
-            if (map.containsKey(prefix))   {
-                final Ontology ontology = (Ontology) map.get(prefix);
-                return ontology.getTerm(id);
+        return getOntologyForId(id).getTerm(id);
+    }
+
+    /**
+     * Returns full ontology term record from map.
+     *
+     * @param   id  Ontology ID
+     * @return  ontology term record
+     * @throws  IllegalArgumentException if id is not a recognised ontology identifier
+     * @throws  NoSuchElementException   if id is unrecognised
+     * @throws  IOException              if ontology could not be loaded
+     * @see     Ontology#getTermRecord(String)
+     * @since   1.1
+     */
+    public TermRecord getTermRecord(String id)
+                  throws IllegalArgumentException, NoSuchElementException, IOException  {
+        return getOntologyForId(id).getTermRecord(id);
+    }
+
+    /**
+     * Returns ontology for prefix of <code>id</code>.
+     *
+     * @param   id  Ontology ID
+     * @return  ontology for prefix of <code>id</code>
+     * @throws  IllegalArgumentException if id is not a recognised ontology identifier
+     * @throws  NoSuchElementException   if prefix is unrecognised
+     */
+    private Ontology getOntologyForId(String id)
+                  throws IllegalArgumentException, NoSuchElementException  {
+        Configuration c = configuration;
+        int sep = (id == null) ? -1 : id.indexOf(PREFIX_SEPARATOR);
+        if (sep < 0)    {
+            String message = "ID (" + id + ") does not contain the prefix separator '" + PREFIX_SEPARATOR + "'";
+            throw new IllegalArgumentException(message);
+        }
+        IdPattern pattern = (IdPattern) c.patternRouter.get(id, sep);
+        if (pattern != null && !pattern.matches(id))    {
+            throw new IllegalArgumentException("ID (" + id + ") does not match pattern " + pattern);
+        }
+        Ontology ontology = (Ontology) c.router.get(id, sep);
+        if (ontology != null)   {
+            return ontology;
+        }
+        else    {
+            throw new NoSuchElementException("Unrecogised prefix: " + id.substring(0, sep));
+        }
+    }
+
+    /**
+     * Returns ontology for the first <code>length</code> characters of <code>id</code>,
+     * or null if the prefix is not recognised.
+     *
+     * @param   id      Ontology ID
+     * @param   length  Length of prefix in <code>id</code>
+     * @return  ontology, or null
+     */
+    Ontology getOntology(String id, int length)    {
+        return (Ontology) configuration.router.get(id, length);
+    }
+
+    /**
+     * Returns budget limiting heap used by the ontologies in this map, set with the
+     * <code>heap-budget</code> property.
+     *
+     * @return  heap budget, with a limit of 0 if none set
+     * @since   1.1
+     */
+    public HeapBudget getHeapBudget()  {
+        return heapBudget;
+    }
+
+    /**
+     * Returns cross-reference index over all ontologies in this map, building it on first use.
+     *
+     * @return  cross-reference index
+     * @throws  IOException if could not load an ontology
+     * @see     XrefIndex#mapIds(String[], String)
+     * @since   1.1
+     */
+    public synchronized XrefIndex getXrefIndex() throws IOException   {
+        if (xrefIndex == null)  {
+            xrefIndex = new XrefIndex(this);
+        }
+        return xrefIndex;
+    }
+
+    /**
+     * Returns tagger that finds term names and synonyms from all ontologies in this map in
+     * free text, building it on first use. The tagger is rebuilt by <code>refresh</code> and
+     * <code>reconfigure</code> when terms change.
+     *
+     * @return  concept tagger
+     * @throws  IOException if could not load an ontology
+     * @see     ConceptTagger#tagLongest(String)
+     * @since   1.1
+     */
+    public synchronized ConceptTagger getConceptTagger() throws IOException   {
+        if (conceptTagger == null)  {
+            conceptTagger = new ConceptTagger(this);
+        }
+        return conceptTagger;
+    }
+
+    /**
+     * Checks every ontology for updates at once, reloading those that have changed, and
+     * waits for all checks to finish. Each check runs on its own worker thread, so slow
+     * sources do not hold up the others. The cross-reference index and concept tagger, if
+     * built, are then brought up to date.
+     *
+     * @throws  IOException if an ontology could not be refreshed (the first failure is
+     *                      thrown once all other checks have finished)
+     * @see     FetchEngine
+     * @since   1.1
+     */
+    public void refresh() throws IOException   {
+        Map map = getMap();
+        List futures = new ArrayList(map.size());
+        for (Iterator i=map.values().iterator(); i.hasNext(); )    {
+            final Ontology ontology = (Ontology) i.next();
+            futures.add(FetchEngine.getDefault().submit(new Callable()  {
+                public Object call() throws Exception   {
+                    return ontology.getTermStore();
+                }
+            }));
+        }
+        IOException failure = null;
+        for (Iterator i=futures.iterator(); i.hasNext(); )    {
+            try {
+                FetchEngine.get((Future) i.next());
             }
-            else    {
-                throw new NoSuchElementException("Unrecogised prefix: " + prefix);
+            catch (IOException e)   {
+                if (failure == null)    {
+                    failure = e;
+                }
             }
         }
-        else    {
-            String message = "ID (" + id + ") does not contain the prefix separator '" + PREFIX_SEPARATOR + "'";
-            throw new IllegalArgumentException(message);
+        if (failure != null)    {
+            throw failure;
         }
+        refreshIndices();
+    }
 
+    /**
+     * Returns health of each ontology source, for monitoring.
+     *
+     * @return  map with ontology prefix as key and <code>SourceHealth</code> as value
+     * @see     Ontology#getHealth()
+     * @since   1.1
+     */
+    public Map getHealth()  {
+        Map health = new TreeMap();
+        for (Iterator i=getMap().entrySet().iterator(); i.hasNext(); )    {
+            Map.Entry entry = (Map.Entry) i.next();
+            health.put(entry.getKey(), ((Ontology) entry.getValue()).getHealth());
+        }
+        return health;
     }
 
     /**
-     * Returns true if <code>id</code> contains a valid prefix separator.
-     * For example, "GO:0001" is a valid ontology ID, "GO-0001" is not a valid ontology ID.
+     * Returns true if <code>id</code> contains a valid prefix separator and, if an
+     * <code>id-pattern</code> is set for its prefix, matches the pattern.
+     * For example, "GO:0001" is a valid ontology ID, "GO-0001" is not a valid ontology ID,
+     * and "GO:0001" is not valid if <code>GO.id-pattern=GO:\d{7}</code>.
      *
      * @param   id  Ontology identifier
-     * @return  true if <code>id</code> contains a valid prefix separator
+     * @return  true if <code>id</code> is well formed
      */
     public boolean isValidID(String id)  {
         if (id == null) {
             return false;
         }
-        return (id.indexOf(PREFIX_SEPARATOR) > -1);
+        int sep = id.indexOf(PREFIX_SEPARATOR);
+        if (sep < 0)    {
+            return false;
+        }
+        IdPattern pattern = (IdPattern) configuration.patternRouter.get(id, sep);
+        return (pattern == null || pattern.matches(id));
+    }
+
+    /**
+     * Classifies <code>id</code> as {@link #MALFORMED_ID}, {@link #UNKNOWN_PREFIX},
+     * {@link #UNKNOWN_ID} or {@link #VALID_ID}. Unlike <code>getTerm</code>, no exception is
+     * thrown for bad IDs.
+     *
+     * @param   id  Ontology identifier
+     * @return  classification of <code>id</code>
+     * @throws  IOException if an ontology could not be loaded
+     * @since   1.1
+     */
+    public int validateID(String id) throws IOException  {
+        Configuration c = configuration;
+        int sep = (id == null) ? -1 : id.indexOf(PREFIX_SEPARATOR);
+        if (sep < 0)    {
+            return MALFORMED_ID;
+        }
+        Ontology ontology = (Ontology) c.router.get(id, sep);
+        return validateID(id, sep, c, (ontology == null) ? null : ontology.getTermStore());
+    }
+
+    /**
+     * Classifies each of <code>ids</code> as {@link #MALFORMED_ID}, {@link #UNKNOWN_PREFIX},
+     * {@link #UNKNOWN_ID} or {@link #VALID_ID}.
+     *
+     * @param   ids Ontology identifiers
+     * @return  classification of each ID
+     * @throws  IOException if an ontology could not be loaded
+     * @see     #validateIDs(String[], byte[])
+     * @since   1.1
+     */
+    public byte[] validateIDs(String[] ids) throws IOException  {
+        byte[] results = new byte[ids.length];
+        validateIDs(ids, results);
+        return results;
+    }
+
+    /**
+     * Classifies each of <code>ids</code> into <code>results</code>, so callers validating
+     * many batches can reuse one array. Each ontology's snapshot is looked up once per batch,
+     * IDs are checked without allocating, and large batches are split across processors.
+     *
+     * @param   ids     Ontology identifiers
+     * @param   results Classification of each ID, at the same index
+     * @throws  IllegalArgumentException if <code>results</code> is shorter than <code>ids</code>
+     * @throws  IOException if an ontology could not be loaded
+     * @see     #validateID(String)
+     * @since   1.1
+     */
+    public void validateIDs(final String[] ids, final byte[] results) throws IOException  {
+        if (results.length < ids.length)    {
+            throw new IllegalArgumentException("Need " + ids.length + " results, not " + results.length);
+        }
+        final Configuration c = configuration;
+        Map stores = new HashMap();
+        for (Iterator i=c.map.entrySet().iterator(); i.hasNext(); )    {
+            Map.Entry entry = (Map.Entry) i.next();
+            stores.put(entry.getKey(), ((Ontology) entry.getValue()).getTermStore());
+        }
+        final PrefixRouter router = new PrefixRouter(stores);
+        Parallel.run(ids.length, VALIDATE_CHUNK, new Parallel.Range()   {
+            public void run(int from, int to)   {
+                for (int i = from; i < to; i++)  {
+                    String id = ids[i];
+                    int sep = (id == null) ? -1 : id.indexOf(PREFIX_SEPARATOR);
+                    results[i] = (byte) ((sep < 0) ? MALFORMED_ID :
+                                         validateID(id, sep, c, (TermStore) router.get(id, sep)));
+                }
+            }
+        });
+    }
+
+    // Classifies id with prefix separator at sep, given the snapshot for its prefix or null
+    private static int validateID(String id, int sep, Configuration c, TermStore store)  {
+        IdPattern pattern = (IdPattern) c.patternRouter.get(id, sep);
+        if (pattern != null && !pattern.matches(id))    {
+            return MALFORMED_ID;
+        }
+        if (store == null)  {
+            return UNKNOWN_PREFIX;
+        }
+        return (store.indexOf(id) < 0) ? UNKNOWN_ID : VALID_ID;
     }
 
     /**
@@ -205,7 +620,7 @@ public class OntologyMap    {
      */
     public String toString()   {
         StringBuffer buffer = new StringBuffer("OntologyMap:\n");
-        for (Iterator i=map.keySet().iterator(); i.hasNext();)  {
+        for (Iterator i=getMap().entrySet().iterator(); i.hasNext();)  {
             Map.Entry entry = (Map.Entry) i.next();
             String name = (String) entry.getKey();
             Ontology ontology = (Ontology) entry.getValue();
@@ -215,47 +630,199 @@ public class OntologyMap    {
         return buffer.toString();
     }
 
+    /**
+     * Makes sure <code>className</code> is registered with <code>OntologyManager</code>, by
+     * loading the class so its static initialiser runs, unless it names a loader.
+     *
+     * @param   className   Ontology class name, or format or class name of a loader
+     * @throws  ClassNotFoundException  if class is unrecognised
+     * @see     OntologyLoader
+     */
+    private static void register(String className) throws ClassNotFoundException  {
+        if (!OntologyManager.getOntologyFactories().containsKey(className))  {
+            Class.forName(className);
+        }
+    }
+
     /**
      * Intialises and returns ontology based on setting in properties file.
      *
      * @param   prefix  Ontology prefix
-     * @param   p       Properties file
+     * @param   s       Ontology settings
+     * @param   listener    Listener for the ontology's input streams
      * @return
      * @throws  ClassNotFoundException  if class is unrecognised
      * @throws  IOException             if could not load ontology terms
      */
-    private Ontology getOntology(String prefix, Properties p)
+    private Ontology getOntology(String prefix, Settings s, InputStreamListener listener)
             throws ClassNotFoundException, IOException  {
-        // Get properties
-        String s   = prefix + PROPERTY_SEP;
-        String userName = p.getProperty(s + PROPERTY_USER_NAME, DEFAULT_USER_NAME);
-        String password = p.getProperty(s + PROPERTY_PASSWORD, DEFAULT_PASSWORD);
-        String className = p.getProperty(s + PROPERTY_CLASS, DEFAULT_CLASS);
-        boolean tolerate = getBooleanProperty(p, s + PROPERTY_TOLERATE_REFRESH_EXCEPTION, DEFAULT_TOLERATE_REFRESH_EXCEPTION);
-        String uri       = p.getProperty(s + PROPERTY_URI);
-        // Can override URI in file with system property
-        uri = System.getProperty(s + PROPERTY_URI, uri);
-        String refInt = p.getProperty(s + PROPERTY_REFRESH_INTERVAL, DEFAULT_REFRESH_INTERVAL);
-        int refreshInterval = Integer.parseInt(refInt);
-        // Return class
-        Class.forName(className);
-        return OntologyManager.getOntology(className, prefix, uri, userName, password, refreshInterval, tolerate, new InputStreamListenerImpl());
+        register(s.className);
+        // Coordinator is passed in when the ontology is created, so it shares the first load too
+        RefreshCoordinator coordinator = (s.sharedDir == null) ? null : new FileRefreshCoordinator(new File(s.sharedDir));
+        Ontology ontology = OntologyManager.getOntology(s.className, prefix, s.uri, s.userName, s.password,
+                                                        s.refreshInterval, s.tolerate, listener, coordinator);
+        if (ontology instanceof AbstractOntology)   {
+            ((AbstractOntology) ontology).setFailurePolicy(s.failureThreshold, s.retryInterval, s.maxRetryInterval);
+        }
+        return ontology;
+    }
+
+    // Estimates heap for ontology with settings s from its current snapshot, or if there is none
+    // from the size of its source; sources that are not local files count as 0 until loaded
+    private static long estimateBytes(Ontology current, Settings s)   {
+        if (current != null)    {
+            return current.getMemoryUsage().getTotalBytes();
+        }
+        File file = (s.uri == null) ? null : new File(s.uri);
+        return (file != null && file.isFile()) ? file.length() : 0;
+    }
+
+    // Brings cross-reference index and concept tagger, if built, up to date with the ontologies
+    private void refreshIndices() throws IOException   {
+        XrefIndex index;
+        ConceptTagger tagger;
+        synchronized (this) {
+            index  = xrefIndex;
+            tagger = conceptTagger;
+        }
+        if (index != null)  {
+            index.refresh();
+        }
+        if (tagger != null)  {
+            tagger.refresh();
+        }
+    }
+
+    // Returns mirror for the mirror-dir property, keeping the current one if unchanged
+    private MirrorInputStreamListener getMirror(Properties p, Configuration c) throws IOException  {
+        String dir = p.getProperty(PROPERTY_MIRROR_DIR);
+        if (dir == null || dir.trim().length() == 0)    {
+            return null;
+        }
+        int interval = Integer.parseInt(p.getProperty(PROPERTY_MIRROR_INTERVAL, DEFAULT_MIRROR_INTERVAL).trim());
+        File directory = new File(dir.trim());
+        MirrorInputStreamListener current = c.mirror;
+        if (current != null && current.getDirectory().equals(directory) && current.getRevalidateInterval() == interval)  {
+            return current;
+        }
+        return new MirrorInputStreamListener(directory, interval);
     }
 
-    private boolean getBooleanProperty(Properties p, String key, boolean defaultValue)    {
+    private static boolean getBooleanProperty(Properties p, String key, boolean defaultValue)    {
         String value = p.getProperty(key, Boolean.toString(defaultValue));
         return Boolean.valueOf(value).booleanValue();
     }
 
+    /**
+     * Tries the user's listener, then the mirror. Until its configuration is in place, an
+     * ontology being loaded uses the mirror of that configuration rather than the current one.
+     */
     private class InputStreamListenerImpl implements InputStreamListener    {
+
+        private final MirrorInputStreamListener pendingMirror;
+        private volatile boolean                pending = true;
+
+        InputStreamListenerImpl(MirrorInputStreamListener pendingMirror)  {
+            this.pendingMirror = pendingMirror;
+        }
+
+        // Called once the configuration holding the ontology has replaced the current one
+        void installed()    {
+            pending = false;
+        }
+
         public InputStream getInputStream(String uri) throws FileNotFoundException, IOException, MalformedURLException {
-            if (inputStreamListener == null)    {
-                return null;
+            InputStream inputStream = null;
+            if (inputStreamListener != null)    {
+                inputStream = inputStreamListener.getInputStream(uri);
+            }
+            MirrorInputStreamListener m = pending ? pendingMirror : configuration.mirror;
+            if (inputStream == null && m != null)    {
+                inputStream = m.getInputStream(uri);
             }
-            else    {
-                return inputStreamListener.getInputStream(uri);
+            return inputStream;
+        }
+    }
+
+    /**
+     * Settings for one prefix, read from properties file.
+     */
+    private static final class Settings    {
+
+        private final String  className;
+        private final String  uri;
+        private final String  userName;
+        private final String  password;
+        private final int     refreshInterval;
+        private final boolean tolerate;
+        private final int     failureThreshold;
+        private final int     retryInterval;
+        private final int     maxRetryInterval;
+        private final String  sharedDir;
+        private final IdPattern idPattern;     // Not compared: a new pattern does not need a reload
+
+        Settings(String prefix, Properties p)  {
+            String s   = prefix + PROPERTY_SEP;
+            this.userName = p.getProperty(s + PROPERTY_USER_NAME, DEFAULT_USER_NAME);
+            this.password = p.getProperty(s + PROPERTY_PASSWORD, DEFAULT_PASSWORD);
+            this.className = p.getProperty(s + PROPERTY_CLASS, DEFAULT_CLASS);
+            this.tolerate  = getBooleanProperty(p, s + PROPERTY_TOLERATE_REFRESH_EXCEPTION, DEFAULT_TOLERATE_REFRESH_EXCEPTION);
+            // Can override URI in file with system property
+            this.uri = System.getProperty(s + PROPERTY_URI, p.getProperty(s + PROPERTY_URI));
+            String refInt = p.getProperty(s + PROPERTY_REFRESH_INTERVAL, DEFAULT_REFRESH_INTERVAL);
+            this.refreshInterval = Integer.parseInt(refInt);
+            this.failureThreshold = Integer.parseInt(p.getProperty(s + PROPERTY_FAILURE_THRESHOLD, DEFAULT_FAILURE_THRESHOLD));
+            this.retryInterval    = Integer.parseInt(p.getProperty(s + PROPERTY_RETRY_INTERVAL, DEFAULT_RETRY_INTERVAL));
+            this.maxRetryInterval = Integer.parseInt(p.getProperty(s + PROPERTY_MAX_RETRY_INTERVAL, DEFAULT_MAX_RETRY_INTERVAL));
+            this.sharedDir        = p.getProperty(s + PROPERTY_SHARED_DIR);
+            String pattern        = p.getProperty(s + PROPERTY_ID_PATTERN);
+            this.idPattern        = (pattern == null || pattern.trim().length() == 0) ? null : IdPattern.compile(pattern.trim());
+        }
+
+        public boolean equals(Object o)  {
+            if (!(o instanceof Settings))   {
+                return false;
             }
+            Settings that = (Settings) o;
+            return className.equals(that.className) &&
+                   ((uri == null) ? that.uri == null : uri.equals(that.uri)) &&
+                   userName.equals(that.userName) &&
+                   password.equals(that.password) &&
+                   refreshInterval == that.refreshInterval &&
+                   tolerate == that.tolerate &&
+                   failureThreshold == that.failureThreshold &&
+                   retryInterval == that.retryInterval &&
+                   maxRetryInterval == that.maxRetryInterval &&
+                   ((sharedDir == null) ? that.sharedDir == null : sharedDir.equals(that.sharedDir));
         }
+
+        public int hashCode()   {
+            return className.hashCode() * 31 + ((uri == null) ? 0 : uri.hashCode());
+        }
+
+    }
+
+    /**
+     * Ontologies and their settings, replaced as a whole on reconfiguration.
+     */
+    private static final class Configuration    {
+
+        private final Map          map;         // prefix -> Ontology (read-only)
+        private final Map          settings;    // prefix -> Settings
+        private final PrefixRouter router;
+        private final Map          patterns;    // prefix -> IdPattern
+        private final PrefixRouter patternRouter;
+        private final MirrorInputStreamListener mirror;
+
+        Configuration(Map map, Map settings, Map patterns, MirrorInputStreamListener mirror)    {
+            this.map      = Collections.unmodifiableMap(map);
+            this.settings = settings;
+            this.router   = new PrefixRouter(map);
+            this.patterns = patterns;
+            this.patternRouter = new PrefixRouter(patterns);
+            this.mirror   = mirror;
+        }
+
     }
 
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Provides cached map of terms for OWL ontologies in RDF/XML. For example:
+ * <pre>
+ *  &lt;owl:Class rdf:about="http://purl.obolibrary.org/obo/GO_0000001"&gt;
+ *      &lt;rdfs:label&gt;mitochondrion inheritance&lt;/rdfs:label&gt;
+ *      &lt;rdfs:subClassOf rdf:resource="http://purl.obolibrary.org/obo/GO_0048308"/&gt;
+ *  &lt;/owl:Class&gt;
+ * </pre>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OwlParser
+ * @see     <a href="http://purl.obolibrary.org/obo/go.owl">Example</a>
+ */
+public final class OwlOntology extends AbstractOntology implements Ontology {
+
+    /**
+     * Register class with OntologyManager
+     * @see OntologyManager#registerOntology(String, OntologyFactory)
+     */
+    static  {
+        OntologyManager.registerOntology("uk.ac.ebi.hawthorn.OwlOntology", new OwlOntologyFactory());
+    }
+
+    static class OwlOntologyFactory implements CoordinatedOntologyFactory {
+        public Ontology getInstance(String prefix, String uri, String userName,
+                                    String password, int refreshInterval,
+                                    boolean tolerateRefreshException,
+                                    InputStreamListener inputStreamListener)
+               throws IOException   {
+            return getInstance(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+        }
+
+        public Ontology getInstance(String prefix, String uri, String userName,
+                                    String password, int refreshInterval,
+                                    boolean tolerateRefreshException,
+                                    InputStreamListener inputStreamListener,
+                                    RefreshCoordinator coordinator)
+               throws IOException   {
+            return new OwlOntology(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
+        }
+    }
+
+    /**
+     * Reads OWL (RDF/XML) files.
+     *
+     * @see OwlParser
+     */
+    public static final class Loader implements OntologyLoader  {
+        public String getFormat()   {
+            return "owl";
+        }
+        public void load(InputStream inputStream, TermSink sink) throws IOException   {
+            OwlParser.parse(inputStream, sink);
+        }
+    }
+
+    private static final OntologyLoader LOADER = new Loader();
+
+    /**
+     * Loads terms from OWL ontology.
+     *
+     * @param   prefix
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval
+     * @param   tolerateRefreshException
+     * @param   inputStreamListener     Listens for calls to obtain input streams
+     * @throws  IOException if could not load terms
+     * @see     AbstractOntology#AbstractOntology(String, String, String, String, int, boolean, InputStreamListener)
+     */
+    protected OwlOntology(String prefix, String uri, String userName, String password,
+                          int refreshInterval, boolean tolerateRefreshException,
+                          InputStreamListener inputStreamListener)
+              throws IOException   {
+        this(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+    }
+
+    /**
+     * Loads terms from OWL ontology.
+     *
+     * @param   prefix
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval
+     * @param   tolerateRefreshException
+     * @param   inputStreamListener     Listens for calls to obtain input streams
+     * @param   coordinator             Coordinator to share refreshes through, or null for none
+     * @throws  IOException if could not load terms
+     * @see     AbstractOntology#AbstractOntology(OntologyLoader, String, String, String, String, int, boolean, InputStreamListener, RefreshCoordinator)
+     */
+    protected OwlOntology(String prefix, String uri, String userName, String password,
+                          int refreshInterval, boolean tolerateRefreshException,
+                          InputStreamListener inputStreamListener,
+                          RefreshCoordinator coordinator)
+              throws IOException   {
+        super(LOADER, prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
+    }
+
+    public Map getTerms() throws IOException {
+        return getTermStore().asMap();
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming StAX parser for OWL ontologies in RDF/XML, as published by OBO Foundry projects.
+ * Only the current class is held in memory while the document is read. For example:
+ * <pre>
+ *  &lt;owl:Class rdf:about="http://purl.obolibrary.org/obo/GO_0000001"&gt;
+ *      &lt;rdfs:label&gt;mitochondrion inheritance&lt;/rdfs:label&gt;
+ *      &lt;rdfs:subClassOf rdf:resource="http://purl.obolibrary.org/obo/GO_0048308"/&gt;
+ *      &lt;rdfs:subClassOf&gt;
+ *          &lt;owl:Restriction&gt;
+ *              &lt;owl:onProperty rdf:resource="http://purl.obolibrary.org/obo/BFO_0000050"/&gt;
+ *              &lt;owl:someValuesFrom rdf:resource="http://purl.obolibrary.org/obo/GO_0005739"/&gt;
+ *          &lt;/owl:Restriction&gt;
+ *      &lt;/rdfs:subClassOf&gt;
+ *      &lt;oboInOwl:hasOBONamespace&gt;biological_process&lt;/oboInOwl:hasOBONamespace&gt;
+ *  &lt;/owl:Class&gt;
+ * </pre>
+ * Class IRIs are converted to IDs by taking the last path segment and replacing the first
+ * underscore with a colon, so ".../obo/GO_0000001" becomes "GO:0000001". Named superclasses
+ * become "is_a" relationships; existential restrictions become relationships named after their
+ * property. Classes without a label are skipped, as are anonymous classes.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OwlOntology
+ */
+final class OwlParser {
+
+    private static final String RDF      = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String RDFS     = "http://www.w3.org/2000/01/rdf-schema#";
+    private static final String OWL      = "http://www.w3.org/2002/07/owl#";
+    private static final String OBO      = "http://purl.obolibrary.org/obo/";
+    private static final String OBO_OWL  = "http://www.geneontology.org/formats/oboInOwl#";
+
+    private static final String IS_A     = "is_a";
+    private static final String PART_OF  = "BFO:0000050";
+
+    // Depth of top-level class elements below the document element
+    private static final int CLASS_DEPTH = 2;
+
+    private final XMLStreamReader   reader;
+    private final TermSink builder;
+
+    // Current class
+    private String id;
+    private String label;
+    private String definition;
+    private String namespace;
+    private final List synonyms      = new ArrayList();
+    private final List xrefs         = new ArrayList();
+    private final List subsets       = new ArrayList();
+    private final List relationTypes = new ArrayList();
+    private final List relationIds   = new ArrayList();
+
+    // Current restriction
+    private String property;
+    private String filler;
+
+    private OwlParser(XMLStreamReader reader, TermSink builder)  {
+        this.reader  = reader;
+        this.builder = builder;
+    }
+
+    /**
+     * Reads all labelled classes from <code>inputStream</code> into <code>builder</code>.
+     *
+     * @param   inputStream OWL ontology in RDF/XML
+     * @param   builder     Receives terms and relationships
+     * @throws  IOException if could not read or parse ontology
+     */
+    static void parse(InputStream inputStream, TermSink builder) throws IOException   {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(inputStream);
+            new OwlParser(reader, builder).parse();
+        }
+        catch (XMLStreamException e)    {
+            throw new IOException("Could not parse OWL: " + e.toString());
+        }
+        finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                }
+                catch (XMLStreamException e)    {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts class IRI to ID, for example "http://purl.obolibrary.org/obo/GO_0000001" to "GO:0000001".
+     *
+     * @param   iri Class IRI
+     * @return  ID
+     */
+    static String toId(String iri) {
+        int start = Math.max(iri.lastIndexOf('/'), iri.lastIndexOf('#')) + 1;
+        String local = iri.substring(start);
+        int sep = local.indexOf('_');
+        if (sep < 1 || local.indexOf(':') > -1)   {
+            return local;
+        }
+        return local.substring(0, sep) + ':' + local.substring(sep + 1);
+    }
+
+    private void parse() throws XMLStreamException  {
+        int depth = 0;
+        boolean inClass = false;
+        while (reader.hasNext())    {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)  {
+                depth++;
+                if (depth == CLASS_DEPTH)  {
+                    inClass = isElement(OWL, "Class") && startClass();
+                }
+                else if (inClass && startElement(depth))  {
+                    // Element text has been read up to and including its end tag
+                    depth--;
+                }
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)  {
+                if (inClass && depth == CLASS_DEPTH)  {
+                    endClass();
+                    inClass = false;
+                }
+                else if (inClass)   {
+                    endElement(depth);
+                }
+                depth--;
+            }
+        }
+    }
+
+    private boolean startClass()   {
+        String about = reader.getAttributeValue(RDF, "about");
+        if (about == null)  {
+            return false;
+        }
+        id = toId(about);
+        label = definition = namespace = null;
+        synonyms.clear();
+        xrefs.clear();
+        subsets.clear();
+        relationTypes.clear();
+        relationIds.clear();
+        return true;
+    }
+
+    /**
+     * Reads start of element within current class.
+     *
+     * @return  true if the element's text and end tag have been consumed
+     */
+    private boolean startElement(int depth) throws XMLStreamException  {
+        if (depth == CLASS_DEPTH + 1)   {
+            String resource = reader.getAttributeValue(RDF, "resource");
+            if (isElement(RDFS, "subClassOf"))  {
+                if (resource != null)   {
+                    addRelationship(IS_A, toId(resource));
+                }
+                property = filler = null;
+            }
+            else if (isElement(RDFS, "label"))  {
+                // Keep first label only
+                String text = reader.getElementText();
+                if (label == null)  {
+                    label = text;
+                }
+                return true;
+            }
+            else if (isElement(OBO, "IAO_0000115"))  {
+                definition = reader.getElementText();
+                return true;
+            }
+            else if (isElement(OBO_OWL, "id"))  {
+                id = reader.getElementText();
+                return true;
+            }
+            else if (isElement(OBO_OWL, "hasOBONamespace"))  {
+                namespace = reader.getElementText();
+                return true;
+            }
+            else if (isElement(OBO_OWL, "hasExactSynonym") ||
+                     isElement(OBO_OWL, "hasRelatedSynonym") ||
+                     isElement(OBO_OWL, "hasNarrowSynonym") ||
+                     isElement(OBO_OWL, "hasBroadSynonym"))  {
+                synonyms.add(reader.getElementText());
+                return true;
+            }
+            else if (isElement(OBO_OWL, "hasDbXref"))  {
+                xrefs.add(reader.getElementText());
+                return true;
+            }
+            else if (isElement(OBO_OWL, "inSubset") && resource != null)  {
+                int sep = Math.max(resource.lastIndexOf('#'), resource.lastIndexOf('/'));
+                subsets.add(resource.substring(sep + 1));
+            }
+        }
+        else if (depth == CLASS_DEPTH + 3)  {
+            // rdfs:subClassOf/owl:Restriction/*
+            String resource = reader.getAttributeValue(RDF, "resource");
+            if (resource != null)   {
+                if (isElement(OWL, "onProperty"))   {
+                    property = toId(resource);
+                }
+                else if (isElement(OWL, "someValuesFrom"))   {
+                    filler = toId(resource);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void endElement(int depth)  {
+        if (depth == CLASS_DEPTH + 1 && isElement(RDFS, "subClassOf"))  {
+            if (property != null && filler != null) {
+                addRelationship(PART_OF.equals(property) ? "part_of" : property, filler);
+            }
+            property = filler = null;
+        }
+    }
+
+    private void endClass() {
+        if (label == null)  {
+            return;
+        }
+        boolean repeat = (builder.indexOf(id) > -1);
+        int index = builder.addTerm(id, label);
+        if (!repeat)    {
+            builder.setDefinition(index, definition);
+            builder.setNamespace(index, namespace);
+            for (int i = 0; i < synonyms.size(); i++)   {
+                builder.addSynonym(index, (String) synonyms.get(i));
+            }
+            for (int i = 0; i < xrefs.size(); i++)   {
+                builder.addXref(index, (String) xrefs.get(i));
+            }
+            for (int i = 0; i < subsets.size(); i++)   {
+                builder.addSubset(index, (String) subsets.get(i));
+            }
+        }
+        for (int i = 0; i < relationTypes.size(); i++)   {
+            builder.addRelationship(index, (String) relationTypes.get(i), (String) relationIds.get(i));
+        }
+    }
+
+    private void addRelationship(String type, String parentId)  {
+        relationTypes.add(type);
+        relationIds.add(parentId);
+    }
+
+    private boolean isElement(String namespaceUri, String localName)   {
+        return localName.equals(reader.getLocalName()) && namespaceUri.equals(reader.getNamespaceURI());
+    }
+
+}
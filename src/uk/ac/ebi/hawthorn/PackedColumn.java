@@ -0,0 +1,255 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Stores one string field for every term in a single UTF-8 byte array.
+ * Values are only decoded into <code>String</code>s when they are requested.
+ * Multi-valued fields are stored as one entry with values separated by a NUL byte.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+final class PackedColumn {
+
+    private static final String ENCODING  = "UTF-8";
+    private static final byte   SEPARATOR = 0;
+
+    // Pre-sized data arrays are made 1/16 larger than expected, and kept if no more is unused
+    private static final int    SLACK_SHIFT = 4;
+
+    static final String[] EMPTY = new String[0];
+
+    private final byte[] data;
+    private final int[]  offsets;
+
+    private PackedColumn(byte[] data, int[] offsets)  {
+        this.data    = data;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Returns true if term at <code>index</code> has no value.
+     *
+     * @param   index   Term index
+     * @return  true if term at <code>index</code> has no value
+     */
+    boolean isEmpty(int index)    {
+        return offsets[index] == offsets[index + 1];
+    }
+
+    /**
+     * Returns single value for term at <code>index</code>, or null if no value.
+     *
+     * @param   index   Term index
+     * @return  value for term at <code>index</code>, or null if no value
+     */
+    String getString(int index)    {
+        int start = offsets[index];
+        int end   = offsets[index + 1];
+        if (start == end)   {
+            return null;
+        }
+        return decode(start, end);
+    }
+
+    /**
+     * Returns all values for term at <code>index</code>.
+     *
+     * @param   index   Term index
+     * @return  all values for term at <code>index</code> (never null)
+     */
+    String[] getStrings(int index)    {
+        int start = offsets[index];
+        int end   = offsets[index + 1];
+        if (start == end)   {
+            return EMPTY;
+        }
+        int count = 1;
+        for (int i = start; i < end; i++)   {
+            if (data[i] == SEPARATOR)   {
+                count++;
+            }
+        }
+        String[] values = new String[count];
+        int n = 0;
+        int from = start;
+        for (int i = start; i <= end; i++)   {
+            if (i == end || data[i] == SEPARATOR)   {
+                values[n++] = decode(from, i);
+                from = i + 1;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns approximate number of bytes held by this column.
+     *
+     * @return  approximate number of bytes held by this column
+     */
+    long getByteCount()   {
+        return MemoryUsage.sizeOfObject(8) + MemoryUsage.sizeOf(data) + MemoryUsage.sizeOf(offsets);
+    }
+
+    /**
+     * Returns true if this column holds the arrays of <code>builder</code> rather than copies.
+     *
+     * @param   builder Builder this column was built with
+     * @return  true if the column was built without copying
+     */
+    boolean sharesArrays(Builder builder)  {
+        return data == builder.data && offsets == builder.offsets;
+    }
+
+    private String decode(int start, int end)  {
+        try {
+            return new String(data, start, end - start, ENCODING);
+        }
+        catch (UnsupportedEncodingException e)  {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    /**
+     * Builds a packed column. Values must be added in ascending term order.
+     */
+    static final class Builder    {
+
+        private byte[] data;
+        private int[]  offsets;
+        private int    length  = 0;
+        private int    last    = -1;
+
+        Builder()   {
+            this(15, 256);
+        }
+
+        /**
+         * Creates builder pre-sized for <code>size</code> terms and <code>byteCount</code>
+         * bytes of values. If the number of terms is exact and the bytes are within the slack
+         * allowed, the column is built without copying.
+         *
+         * @param   size        Expected number of terms
+         * @param   byteCount   Expected number of bytes
+         */
+        Builder(int size, int byteCount)   {
+            this.data    = new byte[Math.max(byteCount + (byteCount >> SLACK_SHIFT), 16)];
+            // One more than the column needs, so closing the last entry does not grow it
+            this.offsets = new int[Math.max(size, 1) + 2];
+        }
+
+        /**
+         * Creates builder pre-sized like <code>column</code>.
+         *
+         * @param   column  Column of the same field from an earlier load
+         * @param   size    Expected number of terms
+         * @return  pre-sized builder, or null if <code>column</code> is null
+         */
+        static Builder sizedLike(PackedColumn column, int size)  {
+            // Last offset is the end of the values, leaving out any slack
+            return (column == null) ? null : new Builder(size, column.offsets[column.offsets.length - 1]);
+        }
+
+        /**
+         * Appends <code>value</code> to the values for term at <code>index</code>.
+         *
+         * @param   index   Term index
+         * @param   value   Value to append (ignored if null or empty)
+         * @throws  IllegalArgumentException if <code>index</code> is before the last term added
+         */
+        void add(int index, String value) throws IllegalArgumentException  {
+            if (value == null || value.length() == 0)   {
+                return;
+            }
+            if (index < last)   {
+                throw new IllegalArgumentException("Values must be added in term order [last=" +
+                                                   last + " index=" + index + "]");
+            }
+            boolean append = (index == last);
+            advance(index);
+            byte[] bytes = encode(value);
+            ensureData(length + bytes.length + (append ? 1 : 0));
+            if (append) {
+                data[length++] = SEPARATOR;
+            }
+            System.arraycopy(bytes, 0, data, length, bytes.length);
+            length += bytes.length;
+        }
+
+        /**
+         * Returns column holding values for <code>size</code> terms.
+         *
+         * @param   size    Number of terms
+         * @return  column holding values for <code>size</code> terms
+         */
+        PackedColumn build(int size)   {
+            advance(size);
+            int[] o = offsets;
+            if (o.length > size + 2)   {
+                o = new int[size + 1];
+                System.arraycopy(offsets, 0, o, 0, size + 1);
+            }
+            o[o.length - 1] = length;
+            byte[] d = data;
+            if (d.length - length > (d.length >> SLACK_SHIFT)) {
+                d = new byte[length];
+                System.arraycopy(data, 0, d, 0, length);
+            }
+            return new PackedColumn(d, o);
+        }
+
+        // Closes entries up to and including index - 1, and opens entry for index
+        private void advance(int index)    {
+            if (index <= last)  {
+                return;
+            }
+            if (offsets.length < index + 2)    {
+                int[] o = new int[Math.max(offsets.length * 2, index + 2)];
+                System.arraycopy(offsets, 0, o, 0, offsets.length);
+                offsets = o;
+            }
+            for (int i = last + 1; i <= index; i++)   {
+                offsets[i] = length;
+            }
+            last = index;
+        }
+
+        private void ensureData(int capacity)  {
+            if (data.length < capacity)    {
+                byte[] d = new byte[Math.max(data.length * 2, capacity)];
+                System.arraycopy(data, 0, d, 0, length);
+                data = d;
+            }
+        }
+
+        private static byte[] encode(String value) {
+            try {
+                return value.getBytes(ENCODING);
+            }
+            catch (UnsupportedEncodingException e)  {
+                throw new IllegalStateException(e.toString());
+            }
+        }
+
+    }
+
+}
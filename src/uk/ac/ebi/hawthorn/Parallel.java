@@ -0,0 +1,148 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Splits CPU-bound work over index ranges across a shared pool with one daemon thread per
+ * processor. The calling thread works on the first range itself, and calls made from pool
+ * threads run on the calling thread, so nested use cannot exhaust the pool.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+final class Parallel {
+
+    /**
+     * Work over a range of indices.
+     */
+    interface Range {
+        /**
+         * Processes indices from <code>from</code> (inclusive) to <code>to</code> (exclusive).
+         *
+         * @param   from    First index
+         * @param   to      Index after last
+         */
+        void run(int from, int to);
+    }
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, new ThreadFactory()  {
+        private int count = 0;
+        public synchronized Thread newThread(Runnable r)    {
+            Thread thread = new Worker(r, "hawthorn-parallel-" + (++count));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private Parallel()  {
+    }
+
+    /**
+     * Returns number of worker threads.
+     *
+     * @return  number of worker threads
+     */
+    static int getThreadCount()  {
+        return THREADS;
+    }
+
+    /**
+     * Runs <code>task</code> on the pool. Tasks should not wait for other pool tasks.
+     *
+     * @param   task    Task to run
+     * @return  future result of <code>task</code>
+     */
+    static Future submit(Callable task)  {
+        return POOL.submit(task);
+    }
+
+    /**
+     * Runs <code>range</code> over indices 0 to <code>size</code>, in chunks of at least
+     * <code>minChunk</code> indices, and waits for all chunks to finish.
+     *
+     * @param   size        Number of indices
+     * @param   minChunk    Smallest number of indices worth running on another thread
+     * @param   range       Work to run
+     * @throws  RuntimeException if <code>range</code> threw an exception
+     */
+    static void run(int size, int minChunk, final Range range)  {
+        int chunks = Math.min(THREADS * 4, (size + minChunk - 1) / Math.max(minChunk, 1));
+        if (chunks <= 1 || THREADS == 1 || Thread.currentThread() instanceof Worker)    {
+            if (size > 0)   {
+                range.run(0, size);
+            }
+            return;
+        }
+        int chunk = (size + chunks - 1) / chunks;
+        List futures = new ArrayList(chunks);
+        for (int from = chunk; from < size; from += chunk)   {
+            final int f = from;
+            final int t = Math.min(size, from + chunk);
+            futures.add(POOL.submit(new Runnable()  {
+                public void run()   {
+                    range.run(f, t);
+                }
+            }));
+        }
+        RuntimeException failure = null;
+        try {
+            range.run(0, Math.min(size, chunk));
+        }
+        catch (RuntimeException e)  {
+            failure = e;
+        }
+        for (int i = 0; i < futures.size(); i++)    {
+            try {
+                ((Future) futures.get(i)).get();
+            }
+            catch (InterruptedException e)  {
+                Thread.currentThread().interrupt();
+                if (failure == null)    {
+                    failure = new IllegalStateException("Interrupted");
+                }
+            }
+            catch (ExecutionException e)  {
+                if (failure == null)    {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error)  {
+                        throw (Error) cause;
+                    }
+                    failure = (cause instanceof RuntimeException) ?
+                              (RuntimeException) cause : new IllegalStateException(cause.toString());
+                }
+            }
+        }
+        if (failure != null)    {
+            throw failure;
+        }
+    }
+
+    private static final class Worker extends Thread {
+        Worker(Runnable r, String name)  {
+            super(r, name);
+        }
+    }
+
+}
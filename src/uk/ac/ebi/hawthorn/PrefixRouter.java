@@ -0,0 +1,125 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Immutable table from ontology prefix to value, looked up directly on the characters of an
+ * ID so that routing "GO:0000001" to the GO ontology does not allocate a prefix substring.
+ * <p>
+ * The table is sized when built so that, where possible, every prefix hashes to its own slot
+ * (a perfect hash for the configured prefixes); otherwise collisions are resolved by linear
+ * probing. Instances are safe to share between threads.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OntologyMap#getTerm(String)
+ */
+final class PrefixRouter {
+
+    // Largest table tried when looking for a collision-free size, as a multiple of the prefix count
+    private static final int MAX_SPREAD = 64;
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int      mask;
+
+    /**
+     * Builds router from map of prefix to value.
+     *
+     * @param   map Map of prefix (String) to value
+     */
+    PrefixRouter(Map map)  {
+        int n = Math.max(map.size(), 1);
+        int size = 2;
+        while (size < n * 2)    {
+            size <<= 1;
+        }
+        while (size < n * MAX_SPREAD && !isPerfect(map, size - 1))   {
+            size <<= 1;
+        }
+        this.keys   = new String[size];
+        this.values = new Object[size];
+        this.mask   = size - 1;
+        for (Iterator i = map.entrySet().iterator(); i.hasNext(); )   {
+            Map.Entry entry = (Map.Entry) i.next();
+            String key = (String) entry.getKey();
+            int slot = hash(key, key.length()) & mask;
+            while (keys[slot] != null)  {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot]   = key;
+            values[slot] = entry.getValue();
+        }
+    }
+
+    /**
+     * Returns value for the prefix formed by the first <code>length</code> characters of
+     * <code>id</code>, or null if the prefix is not known.
+     *
+     * @param   id      Ontology ID, for example "GO:0000001"
+     * @param   length  Length of prefix in <code>id</code>, for example 2
+     * @return  value for prefix, or null if not known
+     */
+    Object get(String id, int length)  {
+        int slot = hash(id, length) & mask;
+        String key;
+        while ((key = keys[slot]) != null)  {
+            if (key.length() == length && id.regionMatches(0, key, 0, length))  {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns number of slots in the table.
+     *
+     * @return  number of slots in the table
+     */
+    int capacity()  {
+        return keys.length;
+    }
+
+    private static boolean isPerfect(Map map, int mask) {
+        boolean[] used = new boolean[mask + 1];
+        for (Iterator i = map.keySet().iterator(); i.hasNext(); )   {
+            String key = (String) i.next();
+            int slot = hash(key, key.length()) & mask;
+            if (used[slot]) {
+                return false;
+            }
+            used[slot] = true;
+        }
+        return true;
+    }
+
+    private static int hash(String s, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++)   {
+            h = 31 * h + s.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.IOException;
+
+/**
+ * Shares refreshes of an ontology between nodes, so only one node fetches each source.
+ * <p>
+ * When an ontology is due a refresh, its node tries to take the lock for the prefix. The node
+ * that gets it checks the source, unless another node has done so within the refresh interval,
+ * and publishes a snapshot of the terms if they changed. Every node then compares the version of
+ * the published snapshot with the one it has, and reads the snapshot if they differ. Nodes that
+ * cannot get the lock never touch the source.
+ * </p>
+ * <p>
+ * Versions are the checksum of the source the snapshot was loaded from, so all nodes agree on
+ * them. Implementations must make checking the version cheap, since every node does it on every
+ * refresh, and must publish snapshots atomically.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     FileRefreshCoordinator
+ * @see     CoordinatedOntologyFactory
+ */
+public interface RefreshCoordinator {
+
+    /**
+     * Version returned when no snapshot has been published.
+     */
+    long NO_VERSION = -1;
+
+    /**
+     * Tries to take the lock for <code>prefix</code> without waiting.
+     *
+     * @param   prefix  Ontology prefix
+     * @return  true if this node now holds the lock, false if another node holds it
+     * @throws  IOException if could not reach the lock
+     */
+    boolean tryLock(String prefix) throws IOException;
+
+    /**
+     * Returns when any node last checked the source for <code>prefix</code>. Only called while
+     * holding the lock.
+     *
+     * @param   prefix  Ontology prefix
+     * @return  time in milliseconds, or 0 if never checked
+     * @throws  IOException if could not read time
+     */
+    long getLastCheckTime(String prefix) throws IOException;
+
+    /**
+     * Releases the lock for <code>prefix</code>.
+     *
+     * @param   prefix      Ontology prefix
+     * @param   checkTime   Time in milliseconds the source was checked, or 0 if it was not
+     * @throws  IOException if could not release lock
+     */
+    void unlock(String prefix, long checkTime) throws IOException;
+
+    /**
+     * Publishes <code>store</code> as the snapshot for <code>prefix</code>, replacing any
+     * earlier one. Only called while holding the lock.
+     *
+     * @param   prefix  Ontology prefix
+     * @param   version Checksum of the source <code>store</code> was loaded from
+     * @param   store   Terms to publish
+     * @throws  IOException if could not publish snapshot
+     */
+    void publish(String prefix, long version, TermStore store) throws IOException;
+
+    /**
+     * Returns version of the snapshot published for <code>prefix</code>.
+     *
+     * @param   prefix  Ontology prefix
+     * @return  version, or {@link #NO_VERSION} if none published
+     * @throws  IOException if could not read version
+     */
+    long getVersion(String prefix) throws IOException;
+
+    /**
+     * Reads the snapshot published for <code>prefix</code>.
+     *
+     * @param   prefix  Ontology prefix
+     * @return  snapshot, or null if none published
+     * @throws  IOException if could not read snapshot
+     */
+    Snapshot read(String prefix) throws IOException;
+
+    /**
+     * Published terms and the version they were published under.
+     */
+    final class Snapshot   {
+
+        private final long      version;
+        private final TermStore store;
+
+        public Snapshot(long version, TermStore store)  {
+            this.version = version;
+            this.store   = store;
+        }
+
+        public long getVersion()    {
+            return version;
+        }
+
+        public TermStore getTermStore() {
+            return store;
+        }
+
+    }
+
+}
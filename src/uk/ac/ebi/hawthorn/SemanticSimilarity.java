@@ -0,0 +1,337 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Semantic similarity between terms of one ontology, based on the hierarchy and on the
+ * information content (IC) of each term in an annotation corpus.
+ * <p>
+ * An annotation to a term counts towards the term and all its ancestors, and the IC of a term
+ * is <code>-ln(count / total)</code>, where <code>total</code> is the number of annotations
+ * in the corpus. Terms with no annotations below them have an IC of zero. Three measures are
+ * provided:
+ * </p>
+ * <ul>
+ *  <li>{@link #RESNIK}: IC of the most informative common ancestor (MICA)</li>
+ *  <li>{@link #LIN}: <code>2 * IC(MICA) / (IC(a) + IC(b))</code></li>
+ *  <li>{@link #JACCARD}: shared ancestors divided by all ancestors of either term</li>
+ * </ul>
+ * <p>
+ * Ancestors are looked up once, when the engine is created, and each term's are ordered by
+ * decreasing IC. A query marks the ancestors of one term in a bitset
+ * and scans the ancestors of the other, so the first marked ancestor found is the MICA.
+ * Instances are immutable and safe to share between threads.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     TermStore
+ */
+public final class SemanticSimilarity {
+
+    /**
+     * Resnik similarity: information content of the most informative common ancestor.
+     */
+    public static final int RESNIK  = 0;
+
+    /**
+     * Lin similarity: Resnik similarity scaled by the information content of both terms, from 0 to 1.
+     */
+    public static final int LIN     = 1;
+
+    /**
+     * Jaccard similarity of the ancestor sets of both terms, from 0 to 1.
+     */
+    public static final int JACCARD = 2;
+
+    // Smallest number of cells worth splitting across threads
+    private static final int MIN_CELLS = 4096;
+
+    private final TermStore store;
+    private final int[]     offsets;    // term index -> start in ancestors
+    private final int[]     ancestors;  // ancestors of each term, most informative first
+    private final double[]  ic;
+    private final long      total;
+
+    /**
+     * Creates similarity engine for a corpus given as annotation counts.
+     *
+     * @param   store               Snapshot of terms
+     * @param   annotationCounts    Number of annotations (<code>Number</code>) for each ontology ID;
+     *                              IDs not in <code>store</code> are ignored
+     * @param   relationshipTypes   Relationship types to follow, or null to follow all
+     */
+    public SemanticSimilarity(TermStore store, Map annotationCounts, String[] relationshipTypes)   {
+        this(store, toCounts(store, annotationCounts), relationshipTypes);
+    }
+
+    /**
+     * Creates similarity engine for a corpus given as a list of annotated IDs, with one entry
+     * per annotation.
+     *
+     * @param   store               Snapshot of terms
+     * @param   annotatedIds        ID of each annotation; IDs not in <code>store</code> are ignored
+     * @param   relationshipTypes   Relationship types to follow, or null to follow all
+     */
+    public SemanticSimilarity(TermStore store, String[] annotatedIds, String[] relationshipTypes)   {
+        this(store, toCounts(store, annotatedIds), relationshipTypes);
+    }
+
+    private SemanticSimilarity(TermStore store, long[] direct, String[] relationshipTypes)   {
+        this.store = store;
+        int n = store.size();
+        boolean[] follow = store.getRelationshipTypeMask(relationshipTypes);
+
+        TermStore.AncestorTable table = store.getAncestorTable(follow);
+        this.offsets   = table.offsets;
+        this.ancestors = table.ancestors;
+
+        // Propagate annotation counts to ancestors
+        long[] counts = new long[n];
+        long sum = 0;
+        for (int t = 0; t < n; t++) {
+            if (direct[t] > 0)  {
+                sum += direct[t];
+                for (int j = offsets[t]; j < offsets[t + 1]; j++)    {
+                    counts[ancestors[j]] += direct[t];
+                }
+            }
+        }
+        this.total = sum;
+        this.ic = new double[n];
+        for (int t = 0; t < n; t++) {
+            ic[t] = (counts[t] == 0) ? 0 : -Math.log((double) counts[t] / sum);
+        }
+
+        // Most informative ancestor first
+        double[] keys = new double[n];
+        for (int t = 0; t < n; t++) {
+            keys[t] = -ic[t];
+        }
+        int[] scratch = new int[ancestors.length];
+        for (int t = 0; t < n; t++) {
+            TermStore.sortByKey(ancestors, offsets[t], offsets[t + 1], keys, null, scratch);
+        }
+    }
+
+    /**
+     * Returns snapshot this engine was created from.
+     *
+     * @return  snapshot this engine was created from
+     */
+    public TermStore getTermStore() {
+        return store;
+    }
+
+    /**
+     * Returns number of annotations in the corpus that matched terms in the snapshot.
+     *
+     * @return  number of annotations
+     */
+    public long getAnnotationCount()    {
+        return total;
+    }
+
+    /**
+     * Returns information content of <code>id</code>.
+     *
+     * @param   id  Ontology ID, for example GO:0000001
+     * @return  information content (natural log), or zero if not annotated
+     * @throws  NoSuchElementException if <code>id</code> not recognised
+     */
+    public double getInformationContent(String id) throws NoSuchElementException  {
+        return ic[getIndex(id)];
+    }
+
+    /**
+     * Returns most informative common ancestor of <code>a</code> and <code>b</code>.
+     *
+     * @param   a   Ontology ID
+     * @param   b   Ontology ID
+     * @return  ID of most informative common ancestor, or null if the terms share no ancestor
+     * @throws  NoSuchElementException if <code>a</code> or <code>b</code> not recognised
+     */
+    public String getMostInformativeCommonAncestor(String a, String b) throws NoSuchElementException  {
+        int ia = getIndex(a);
+        int ib = getIndex(b);
+        long[] marks = new long[(store.size() + 63) >>> 6];
+        mark(ia, marks, true);
+        int mica = mica(ib, marks);
+        return (mica < 0) ? null : store.getId(mica);
+    }
+
+    /**
+     * Returns similarity of <code>a</code> and <code>b</code>.
+     *
+     * @param   a       Ontology ID
+     * @param   b       Ontology ID
+     * @param   measure {@link #RESNIK}, {@link #LIN} or {@link #JACCARD}
+     * @return  similarity
+     * @throws  NoSuchElementException   if <code>a</code> or <code>b</code> not recognised
+     * @throws  IllegalArgumentException if <code>measure</code> not recognised
+     */
+    public double getSimilarity(String a, String b, int measure)
+                  throws NoSuchElementException, IllegalArgumentException  {
+        checkMeasure(measure);
+        int ia = getIndex(a);
+        int ib = getIndex(b);
+        long[] marks = new long[(store.size() + 63) >>> 6];
+        mark(ia, marks, true);
+        return similarity(ia, ib, marks, measure);
+    }
+
+    /**
+     * Returns similarity of every term in <code>rows</code> with every term in
+     * <code>columns</code>. Rows are split across threads for large matrices.
+     *
+     * @param   rows    Ontology IDs
+     * @param   columns Ontology IDs
+     * @param   measure {@link #RESNIK}, {@link #LIN} or {@link #JACCARD}
+     * @return  matrix of <code>rows.length</code> by <code>columns.length</code>; cells for
+     *          unrecognised IDs hold <code>Double.NaN</code>
+     * @throws  IllegalArgumentException if <code>measure</code> not recognised
+     */
+    public double[][] getSimilarityMatrix(String[] rows, String[] columns, final int measure)
+                      throws IllegalArgumentException  {
+        checkMeasure(measure);
+        final int[] r = toIndices(rows);
+        final int[] c = toIndices(columns);
+        final double[][] matrix = new double[r.length][c.length];
+        int minRows = Math.max(1, MIN_CELLS / Math.max(1, c.length));
+        Parallel.run(r.length, minRows, new Parallel.Range()   {
+            public void run(int from, int to)  {
+                long[] marks = new long[(store.size() + 63) >>> 6];
+                for (int i = from; i < to; i++)  {
+                    double[] row = matrix[i];
+                    if (r[i] < 0)   {
+                        Arrays.fill(row, Double.NaN);
+                        continue;
+                    }
+                    mark(r[i], marks, true);
+                    for (int j = 0; j < c.length; j++) {
+                        row[j] = (c[j] < 0) ? Double.NaN : similarity(r[i], c[j], marks, measure);
+                    }
+                    mark(r[i], marks, false);
+                }
+            }
+        });
+        return matrix;
+    }
+
+    // Requires ancestors of a to be marked
+    private double similarity(int a, int b, long[] marks, int measure)  {
+        if (measure == JACCARD) {
+            int shared = 0;
+            for (int j = offsets[b]; j < offsets[b + 1]; j++)   {
+                if (isMarked(ancestors[j], marks))  {
+                    shared++;
+                }
+            }
+            int union = (offsets[a + 1] - offsets[a]) + (offsets[b + 1] - offsets[b]) - shared;
+            return (double) shared / union;
+        }
+        int mica = mica(b, marks);
+        double resnik = (mica < 0) ? 0 : ic[mica];
+        if (measure == RESNIK)  {
+            return resnik;
+        }
+        if (a == b) {
+            return 1;
+        }
+        double sum = ic[a] + ic[b];
+        return (sum == 0) ? 0 : (2 * resnik) / sum;
+    }
+
+    // Returns first ancestor of b marked as an ancestor of a, or -1
+    private int mica(int b, long[] marks)  {
+        for (int j = offsets[b]; j < offsets[b + 1]; j++)   {
+            if (isMarked(ancestors[j], marks))  {
+                return ancestors[j];
+            }
+        }
+        return -1;
+    }
+
+    private void mark(int t, long[] marks, boolean set)    {
+        for (int j = offsets[t]; j < offsets[t + 1]; j++)   {
+            int a = ancestors[j];
+            if (set)    {
+                marks[a >>> 6] |= 1L << a;
+            }
+            else    {
+                marks[a >>> 6] &= ~(1L << a);
+            }
+        }
+    }
+
+    private static boolean isMarked(int t, long[] marks) {
+        return (marks[t >>> 6] & (1L << t)) != 0;
+    }
+
+    private int getIndex(String id) throws NoSuchElementException   {
+        int index = store.indexOf(id);
+        if (index < 0)  {
+            throw new NoSuchElementException("Could not find term for ontology ID: " + id);
+        }
+        return index;
+    }
+
+    private int[] toIndices(String[] ids)   {
+        int[] indices = new int[ids.length];
+        for (int i = 0; i < ids.length; i++)    {
+            indices[i] = store.indexOf(ids[i]);
+        }
+        return indices;
+    }
+
+    private static void checkMeasure(int measure) throws IllegalArgumentException {
+        if (measure != RESNIK && measure != LIN && measure != JACCARD)  {
+            throw new IllegalArgumentException("Unrecognised similarity measure: " + measure);
+        }
+    }
+
+    private static long[] toCounts(TermStore store, Map annotationCounts)   {
+        long[] counts = new long[store.size()];
+        for (Iterator i = annotationCounts.entrySet().iterator(); i.hasNext(); )  {
+            Map.Entry entry = (Map.Entry) i.next();
+            int index = store.indexOf((String) entry.getKey());
+            if (index > -1) {
+                counts[index] += ((Number) entry.getValue()).longValue();
+            }
+        }
+        return counts;
+    }
+
+    private static long[] toCounts(TermStore store, String[] annotatedIds)   {
+        long[] counts = new long[store.size()];
+        for (int i = 0; i < annotatedIds.length; i++)   {
+            int index = store.indexOf(annotatedIds[i]);
+            if (index > -1) {
+                counts[index]++;
+            }
+        }
+        return counts;
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Maps terms onto a slim: a subset of terms such as a GO slim. Each term is mapped to its
+ * nearest slim ancestors, that is, the slim terms reached by following relationships upwards
+ * that are not themselves ancestors of another slim term reached. Slim terms map to themselves.
+ * <p>
+ * The mapping for every term in the snapshot is worked out when the projection is created,
+ * using one bitset of slim ancestors per term, so creation time is linear in the number of
+ * relationships and each lookup is an array read. Projections are immutable and safe to share
+ * between threads.
+ * </p>
+ * For example, to map annotations onto the terms tagged <code>subset: goslim_generic</code>:
+ * <pre>
+ *  SlimProjection slim = ontology.getSlimProjection("goslim_generic");
+ *  String[][] mapped   = slim.projectToSlim(annotatedIds);
+ * </pre>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     Ontology#getSlimProjection(String)
+ */
+public final class SlimProjection {
+
+    /**
+     * Relationship types followed by default: "is_a" and "part_of".
+     */
+    public static final String[] DEFAULT_RELATIONSHIP_TYPES = {"is_a", "part_of"};
+
+    // Smallest batch worth splitting across threads
+    private static final int MIN_CHUNK = 4096;
+
+    private final TermStore store;
+    private final int[]     slimTerms;      // slim position -> term index
+    private final int[]     offsets;        // term index -> start in targets
+    private final int[]     targets;        // term indices of nearest slim ancestors
+
+    /**
+     * Creates projection onto the terms in <code>subset</code>, following
+     * <code>is_a</code> and <code>part_of</code> relationships.
+     *
+     * @param   store   Snapshot of terms
+     * @param   subset  Subset name, for example "goslim_generic"
+     * @return  projection onto <code>subset</code> (maps every term to nothing if subset is empty)
+     */
+    public static SlimProjection forSubset(TermStore store, String subset)    {
+        IntList slim = new IntList();
+        for (int i = 0; i < store.size(); i++)  {
+            String[] subsets = store.getSubsets(i);
+            for (int j = 0; j < subsets.length; j++)    {
+                if (subsets[j].equals(subset))  {
+                    slim.add(i);
+                    break;
+                }
+            }
+        }
+        return new SlimProjection(store, slim.toArray(), DEFAULT_RELATIONSHIP_TYPES);
+    }
+
+    /**
+     * Creates projection onto a custom slim.
+     *
+     * @param   store               Snapshot of terms
+     * @param   slimIds             IDs of slim terms
+     * @param   relationshipTypes   Relationship types to follow, or null to follow all
+     * @throws  NoSuchElementException if a slim ID is not in <code>store</code>
+     */
+    public SlimProjection(TermStore store, String[] slimIds, String[] relationshipTypes)
+           throws NoSuchElementException  {
+        this(store, toIndices(store, slimIds), relationshipTypes);
+    }
+
+    private SlimProjection(TermStore store, int[] slimTerms, String[] relationshipTypes)  {
+        this.store     = store;
+        this.slimTerms = slimTerms;
+        final int n     = store.size();
+        final int words = (slimTerms.length + 63) >>> 6;
+
+        final boolean[] follow = store.getRelationshipTypeMask(relationshipTypes);
+
+        final int[] slimOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            slimOf[i] = -1;
+        }
+        for (int s = 0; s < slimTerms.length; s++) {
+            slimOf[slimTerms[s]] = s;
+        }
+
+        // Slim ancestors (including self) of every term, visiting parents before children
+        final long[] ancestors = new long[n * words];
+        int[] order = store.getTopologicalOrder(follow);
+        for (int k = 0; k < order.length; k++)  {
+            int t = order[k];
+            int base = t * words;
+            if (slimOf[t] > -1) {
+                ancestors[base + (slimOf[t] >>> 6)] |= 1L << slimOf[t];
+            }
+            for (int p = 0; p < store.getParentCount(t); p++)  {
+                if (follow[store.getParentType(t, p)])  {
+                    int parentBase = store.getParent(t, p) * words;
+                    for (int w = 0; w < words; w++) {
+                        ancestors[base + w] |= ancestors[parentBase + w];
+                    }
+                }
+            }
+        }
+
+        // Strict slim ancestors of each slim term
+        final long[] above = new long[slimTerms.length * words];
+        for (int s = 0; s < slimTerms.length; s++) {
+            int t = slimTerms[s];
+            for (int p = 0; p < store.getParentCount(t); p++)  {
+                if (follow[store.getParentType(t, p)])  {
+                    int parentBase = store.getParent(t, p) * words;
+                    for (int w = 0; w < words; w++) {
+                        above[s * words + w] |= ancestors[parentBase + w];
+                    }
+                }
+            }
+        }
+
+        // Nearest = slim ancestors that are not above another slim ancestor
+        final int[] counts = new int[n + 1];
+        Parallel.run(n, MIN_CHUNK, new Parallel.Range()    {
+            public void run(int from, int to)  {
+                long[] nearest = new long[words];
+                for (int t = from; t < to; t++) {
+                    counts[t + 1] = nearest(t, slimOf, ancestors, above, words, nearest);
+                }
+            }
+        });
+        for (int t = 0; t < n; t++) {
+            counts[t + 1] += counts[t];
+        }
+        this.offsets = counts;
+        this.targets = new int[counts[n]];
+        Parallel.run(n, MIN_CHUNK, new Parallel.Range()    {
+            public void run(int from, int to)  {
+                long[] nearest = new long[words];
+                for (int t = from; t < to; t++) {
+                    nearest(t, slimOf, ancestors, above, words, nearest);
+                    int j = offsets[t];
+                    for (int w = 0; w < words; w++) {
+                        long bits = nearest[w];
+                        while (bits != 0)   {
+                            int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+                            targets[j++] = SlimProjection.this.slimTerms[s];
+                            bits &= bits - 1;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns snapshot this projection was created from.
+     *
+     * @return  snapshot this projection was created from
+     */
+    public TermStore getTermStore() {
+        return store;
+    }
+
+    /**
+     * Returns number of terms in the slim.
+     *
+     * @return  number of terms in the slim
+     */
+    public int getSlimSize()    {
+        return slimTerms.length;
+    }
+
+    /**
+     * Returns IDs of terms in the slim.
+     *
+     * @return  IDs of terms in the slim
+     */
+    public String[] getSlimIds()    {
+        String[] ids = new String[slimTerms.length];
+        for (int i = 0; i < ids.length; i++)    {
+            ids[i] = store.getId(slimTerms[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns number of nearest slim ancestors of term at <code>index</code>.
+     *
+     * @param   index   Term index in snapshot
+     * @return  number of nearest slim ancestors
+     */
+    public int getSlimAncestorCount(int index)  {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Returns index of the <code>n</code>th nearest slim ancestor of term at <code>index</code>.
+     *
+     * @param   index   Term index in snapshot
+     * @param   n       Ancestor number, from 0 to <code>getSlimAncestorCount(index) - 1</code>
+     * @return  index of slim term in snapshot
+     */
+    public int getSlimAncestor(int index, int n)    {
+        return targets[offsets[index] + n];
+    }
+
+    /**
+     * Returns IDs of nearest slim ancestors of <code>id</code>.
+     *
+     * @param   id  Ontology ID, for example GO:0000001
+     * @return  IDs of nearest slim ancestors (empty if none or if <code>id</code> is unknown)
+     */
+    public String[] project(String id)  {
+        int index = store.indexOf(id);
+        if (index < 0)  {
+            return PackedColumn.EMPTY;
+        }
+        int start = offsets[index];
+        String[] mapped = new String[offsets[index + 1] - start];
+        for (int i = 0; i < mapped.length; i++) {
+            mapped[i] = store.getId(targets[start + i]);
+        }
+        return mapped;
+    }
+
+    /**
+     * Maps each of <code>ids</code> onto the slim. Large batches are split across threads.
+     *
+     * @param   ids IDs to map, for example from an annotation file
+     * @return  array with one entry per ID, holding IDs of nearest slim ancestors
+     *          (empty if none or if the ID is unknown)
+     */
+    public String[][] projectToSlim(final String[] ids)    {
+        final String[][] mapped = new String[ids.length][];
+        Parallel.run(ids.length, MIN_CHUNK, new Parallel.Range()    {
+            public void run(int from, int to)  {
+                for (int i = from; i < to; i++) {
+                    mapped[i] = project(ids[i]);
+                }
+            }
+        });
+        return mapped;
+    }
+
+    // Writes nearest slim ancestors of t into result and returns their number
+    private static int nearest(int t, int[] slimOf, long[] ancestors, long[] above, int words, long[] result)  {
+        for (int w = 0; w < words; w++) {
+            result[w] = 0;
+        }
+        if (slimOf[t] > -1) {
+            result[slimOf[t] >>> 6] = 1L << slimOf[t];
+            return 1;
+        }
+        int base = t * words;
+        for (int w = 0; w < words; w++) {
+            long bits = ancestors[base + w];
+            while (bits != 0)   {
+                int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+                for (int v = 0; v < words; v++) {
+                    result[v] |= above[s * words + v];
+                }
+                bits &= bits - 1;
+            }
+        }
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            result[w] = ancestors[base + w] & ~result[w];
+            count += Long.bitCount(result[w]);
+        }
+        return count;
+    }
+
+    private static int[] toIndices(TermStore store, String[] ids) throws NoSuchElementException  {
+        int[] indices = new int[ids.length];
+        for (int i = 0; i < ids.length; i++)    {
+            indices[i] = store.indexOf(ids[i]);
+            if (indices[i] < 0) {
+                throw new NoSuchElementException("Could not find slim term for ontology ID: " + ids[i]);
+            }
+        }
+        return indices;
+    }
+
+}
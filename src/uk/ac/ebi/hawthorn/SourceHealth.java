@@ -0,0 +1,169 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.util.Date;
+
+/**
+ * Health of an ontology source at a point in time, for monitoring.
+ * <p>
+ * A source is {@link #CLOSED} while refreshes succeed. Each failure puts off the next check
+ * by a retry interval, which doubles each time the source stays down, and lookups meanwhile
+ * are served from the last snapshot. After a number of consecutive failures the source
+ * becomes {@link #OPEN}. The first lookup after its retry interval is a {@link #HALF_OPEN}
+ * probe, which closes the circuit if it succeeds and opens it again if it fails.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     Ontology#getHealth()
+ */
+public final class SourceHealth {
+
+    /**
+     * Source is healthy and checked for updates every refresh interval.
+     */
+    public static final int CLOSED    = 0;
+
+    /**
+     * Source has failed and is not being checked; lookups use the last snapshot.
+     */
+    public static final int OPEN      = 1;
+
+    /**
+     * Source is being probed after a retry interval.
+     */
+    public static final int HALF_OPEN = 2;
+
+    private static final String[] STATE_NAMES = {"closed", "open", "half-open"};
+
+    private final int    state;
+    private final int    consecutiveFailures;
+    private final long   failureCount;
+    private final String lastFailure;
+    private final long   lastFailureTime;
+    private final long   lastSuccessTime;
+    private final long   nextCheckTime;
+
+    SourceHealth(int state, int consecutiveFailures, long failureCount, String lastFailure,
+                 long lastFailureTime, long lastSuccessTime, long nextCheckTime)  {
+        this.state               = state;
+        this.consecutiveFailures = consecutiveFailures;
+        this.failureCount        = failureCount;
+        this.lastFailure         = lastFailure;
+        this.lastFailureTime     = lastFailureTime;
+        this.lastSuccessTime     = lastSuccessTime;
+        this.nextCheckTime       = nextCheckTime;
+    }
+
+    /**
+     * Returns {@link #CLOSED}, {@link #OPEN} or {@link #HALF_OPEN}.
+     *
+     * @return  circuit state
+     */
+    public int getState()   {
+        return state;
+    }
+
+    /**
+     * Returns "closed", "open" or "half-open".
+     *
+     * @return  name of circuit state
+     */
+    public String getStateName()   {
+        return STATE_NAMES[state];
+    }
+
+    /**
+     * Returns true if the circuit is closed.
+     *
+     * @return  true if the circuit is closed
+     */
+    public boolean isHealthy()  {
+        return (state == CLOSED);
+    }
+
+    /**
+     * Returns number of failures since the last successful refresh.
+     *
+     * @return  number of consecutive failures
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Returns number of failed refreshes since the ontology was created.
+     *
+     * @return  total number of failures
+     */
+    public long getFailureCount()   {
+        return failureCount;
+    }
+
+    /**
+     * Returns description of the last failure, or null if there has been none.
+     *
+     * @return  description of the last failure
+     */
+    public String getLastFailure()  {
+        return lastFailure;
+    }
+
+    /**
+     * Returns time of the last failure in milliseconds, or 0 if there has been none.
+     *
+     * @return  time of the last failure
+     */
+    public long getLastFailureTime()    {
+        return lastFailureTime;
+    }
+
+    /**
+     * Returns time of the last successful load or check in milliseconds.
+     *
+     * @return  time of the last success
+     */
+    public long getLastSuccessTime()    {
+        return lastSuccessTime;
+    }
+
+    /**
+     * Returns earliest time in milliseconds at which the source will next be checked.
+     *
+     * @return  time of the next check
+     */
+    public long getNextCheckTime()  {
+        return nextCheckTime;
+    }
+
+    public String toString()    {
+        StringBuffer buf = new StringBuffer();
+        buf.append("State:\t"                + getStateName()          + "\n");
+        buf.append("Consecutive failures:\t" + consecutiveFailures     + "\n");
+        buf.append("Failures:\t"             + failureCount            + "\n");
+        if (lastFailure != null)    {
+            buf.append("Last failure:\t"     + new Date(lastFailureTime) + " " + lastFailure + "\n");
+        }
+        buf.append("Last success:\t"         + new Date(lastSuccessTime) + "\n");
+        buf.append("Next check:\t"           + new Date(nextCheckTime)   + "\n");
+        return buf.toString();
+    }
+
+}
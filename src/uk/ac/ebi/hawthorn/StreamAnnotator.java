@@ -0,0 +1,323 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.*;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Adds term names to tab-separated text such as GAF annotation files. For each line, the
+ * ontology IDs in the chosen columns are looked up in an <code>OntologyMap</code> and one
+ * column per chosen column is appended, holding the term name, or {@link #UNKNOWN} if the
+ * prefix is recognised but the ID is not. Cells that do not hold an ID with a recognised
+ * prefix get an empty column. Cells with several IDs separated by '|' (as in the GAF "with"
+ * column) get their names separated by '|'. Lines starting with '!' or '#' are copied
+ * unchanged. For example, with column 4:
+ * <pre>
+ *  UniProtKB  P12345  ABC1  GO:0005739  ...  -&gt;  UniProtKB  P12345  ABC1  GO:0005739  ...  mitochondrion
+ * </pre>
+ * <p>
+ * Input is read in chunks of lines that are annotated in parallel and written in their
+ * original order. At most a fixed number of chunks are in flight, so memory stays bounded
+ * and reading waits for annotation to catch up. Each chunk uses the ontology snapshots current
+ * when it starts. Instances are immutable and safe to share between threads.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OntologyMap#getTerm(String)
+ */
+public final class StreamAnnotator {
+
+    /**
+     * Written for IDs with a recognised prefix that are not in the ontology.
+     */
+    public static final String UNKNOWN = "!unknown";
+
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private static final String ENCODING  = "UTF-8";
+    private static final char   SEPARATOR = '\t';
+    private static final char   MULTIPLE  = '|';
+
+    private final OntologyMap ontologyMap;
+    private final int[]       columns;
+    private final int         chunkSize;
+    private final int         maxChunks;
+
+    /**
+     * Creates annotator with default chunk size and two chunks in flight per processor.
+     *
+     * @param   ontologyMap Ontologies to look IDs up in
+     * @param   columns     Zero-based indices of columns holding IDs
+     */
+    public StreamAnnotator(OntologyMap ontologyMap, int[] columns)    {
+        this(ontologyMap, columns, DEFAULT_CHUNK_SIZE, Parallel.getThreadCount() * 2);
+    }
+
+    /**
+     * Creates annotator.
+     *
+     * @param   ontologyMap Ontologies to look IDs up in
+     * @param   columns     Zero-based indices of columns holding IDs
+     * @param   chunkSize   Number of lines annotated together
+     * @param   maxChunks   Maximum number of chunks held in memory at once
+     * @throws  IllegalArgumentException if <code>chunkSize</code> or <code>maxChunks</code> is less than 1
+     */
+    public StreamAnnotator(OntologyMap ontologyMap, int[] columns, int chunkSize, int maxChunks)
+           throws IllegalArgumentException  {
+        if (chunkSize < 1 || maxChunks < 1)   {
+            throw new IllegalArgumentException("chunkSize and maxChunks must be at least 1");
+        }
+        this.ontologyMap = ontologyMap;
+        this.columns     = columns.clone();
+        this.chunkSize   = chunkSize;
+        this.maxChunks   = maxChunks;
+    }
+
+    /**
+     * Annotates <code>in</code> and writes result to <code>out</code>.
+     *
+     * @param   in  Input file
+     * @param   out Output file
+     * @return  summary of lines and IDs processed
+     * @throws  IOException if could not read, write or load an ontology
+     */
+    public Summary annotate(File in, File out) throws IOException  {
+        InputStream inputStream = new FileInputStream(in);
+        try {
+            OutputStream outputStream = new FileOutputStream(out);
+            try {
+                return annotate(inputStream, outputStream);
+            }
+            finally {
+                outputStream.close();
+            }
+        }
+        finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Annotates UTF-8 text from <code>in</code> and writes result to <code>out</code>.
+     * Neither stream is closed; <code>out</code> is flushed.
+     *
+     * @param   in  Input stream
+     * @param   out Output stream
+     * @return  summary of lines and IDs processed
+     * @throws  IOException if could not read, write or load an ontology
+     */
+    public Summary annotate(InputStream in, OutputStream out) throws IOException  {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, ENCODING), 1 << 16);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, ENCODING), 1 << 16);
+        Summary summary = new Summary();
+        LinkedList pending = new LinkedList();
+        try {
+            boolean more = true;
+            while (more)  {
+                String[] lines = new String[chunkSize];
+                int count = 0;
+                String line;
+                while (count < chunkSize && (line = reader.readLine()) != null)   {
+                    lines[count++] = line;
+                }
+                more = (count == chunkSize);
+                if (count > 0)  {
+                    pending.addLast(Parallel.submit(new Chunk(lines, count)));
+                }
+                // Back-pressure: wait for oldest chunk before reading more
+                while (pending.size() >= maxChunks || (!more && !pending.isEmpty()))  {
+                    Chunk chunk = (Chunk) FetchEngine.get((Future) pending.removeFirst());
+                    writer.write(chunk.out.toString());
+                    summary.add(chunk);
+                }
+            }
+            writer.flush();
+        }
+        finally {
+            for (int i = 0; i < pending.size(); i++)   {
+                ((Future) pending.get(i)).cancel(true);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Annotates one line.
+     *
+     * @param   line    Tab-separated line
+     * @return  annotated line
+     * @throws  IOException if could not load an ontology
+     */
+    public String annotate(String line) throws IOException  {
+        Chunk chunk = new Chunk(new String[]{line}, 1);
+        chunk.call();
+        String out = chunk.out.toString();
+        return out.substring(0, out.length() - 1);
+    }
+
+    /**
+     * Counts of lines and IDs processed.
+     */
+    public static final class Summary   {
+
+        private long lines;
+        private long resolved;
+        private long unknown;
+
+        private void add(Chunk chunk) {
+            lines    += chunk.count;
+            resolved += chunk.resolved;
+            unknown  += chunk.unknown;
+        }
+
+        /**
+         * Returns number of lines read.
+         *
+         * @return  number of lines read
+         */
+        public long getLineCount()  {
+            return lines;
+        }
+
+        /**
+         * Returns number of IDs found.
+         *
+         * @return  number of IDs found
+         */
+        public long getResolvedCount()  {
+            return resolved;
+        }
+
+        /**
+         * Returns number of IDs with a recognised prefix that were not found.
+         *
+         * @return  number of unknown IDs
+         */
+        public long getUnknownCount()  {
+            return unknown;
+        }
+
+        public String toString()    {
+            return "Lines: " + lines + ", resolved: " + resolved + ", unknown: " + unknown;
+        }
+
+    }
+
+    /**
+     * Lines annotated as one task.
+     */
+    private final class Chunk implements Callable   {
+
+        private final String[]     lines;
+        private final int          count;
+        private final StringBuffer out;
+        private final Map          stores = new IdentityHashMap();    // Ontology -> TermStore
+        private int resolved;
+        private int unknown;
+
+        Chunk(String[] lines, int count)    {
+            this.lines = lines;
+            this.count = count;
+            this.out   = new StringBuffer(count * 128);
+        }
+
+        public Object call() throws IOException   {
+            int[] starts = new int[columns.length];
+            int[] ends   = new int[columns.length];
+            for (int i = 0; i < count; i++)    {
+                String line = lines[i];
+                lines[i] = null;
+                out.append(line);
+                if (line.length() == 0 || line.charAt(0) == '!' || line.charAt(0) == '#')   {
+                    out.append('\n');
+                    continue;
+                }
+                findColumns(line, starts, ends);
+                for (int c = 0; c < columns.length; c++)    {
+                    out.append(SEPARATOR);
+                    int start = starts[c];
+                    while (start < ends[c])  {
+                        int end = line.indexOf(MULTIPLE, start);
+                        if (end < 0 || end > ends[c])   {
+                            end = ends[c];
+                        }
+                        if (start > starts[c])  {
+                            out.append(MULTIPLE);
+                        }
+                        appendName(line, start, end);
+                        start = end + 1;
+                    }
+                }
+                out.append('\n');
+            }
+            return this;
+        }
+
+        // Finds start and end of each chosen column; missing columns are empty
+        private void findColumns(String line, int[] starts, int[] ends)    {
+            for (int c = 0; c < columns.length; c++)    {
+                starts[c] = ends[c] = 0;
+                int start = 0;
+                for (int col = 0; col < columns[c] && start > -1; col++)   {
+                    start = line.indexOf(SEPARATOR, start);
+                    start = (start < 0) ? -1 : start + 1;
+                }
+                if (start > -1) {
+                    int end = line.indexOf(SEPARATOR, start);
+                    starts[c] = start;
+                    ends[c]   = (end < 0) ? line.length() : end;
+                }
+            }
+        }
+
+        private void appendName(String line, int start, int end) throws IOException  {
+            int sep = line.indexOf(':', start);
+            if (sep < 0 || sep >= end)  {
+                return;
+            }
+            String id = line.substring(start, end);
+            Ontology ontology = ontologyMap.getOntology(id, sep - start);
+            if (ontology == null)   {
+                return;
+            }
+            TermStore store = (TermStore) stores.get(ontology);
+            if (store == null)  {
+                store = ontology.getTermStore();
+                stores.put(ontology, store);
+            }
+            int index = store.indexOf(id);
+            if (index < 0)  {
+                out.append(UNKNOWN);
+                unknown++;
+            }
+            else    {
+                out.append(store.getName(index));
+                resolved++;
+            }
+        }
+
+    }
+
+}
@@ -19,8 +19,6 @@ package uk.ac.ebi.hawthorn;
 
 import java.io.*;
 import java.util.Map;
-import java.util.HashMap;
-import java.util.Collections;
 
 /**
  * Provides cached map of terms for tab-delimited ontologies.
@@ -54,15 +52,37 @@ public final class TabOntology extends AbstractOntology implements Ontology {
         OntologyManager.registerOntology("uk.ac.ebi.hawthorn.TabOntology", new TabOntology.TabOntologyFactory());
     }    
 
-    static class TabOntologyFactory implements OntologyFactory {
+    static class TabOntologyFactory implements CoordinatedOntologyFactory {
         public Ontology getInstance(String prefix, String uri, String userName, String password,
                                     int refreshInterval, boolean tolerateRefreshException, 
                                     InputStreamListener inputStreamListener)
                throws IOException   {
-            return new TabOntology(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener);
+            return getInstance(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+        }
+
+        public Ontology getInstance(String prefix, String uri, String userName, String password,
+                                    int refreshInterval, boolean tolerateRefreshException, 
+                                    InputStreamListener inputStreamListener,
+                                    RefreshCoordinator coordinator)
+               throws IOException   {
+            return new TabOntology(prefix, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
         }
     }
 
+    /**
+     * Reads tab-delimited files of IDs and names.
+     */
+    public static final class Loader implements OntologyLoader  {
+        public String getFormat()   {
+            return "tab";
+        }
+        public void load(InputStream inputStream, TermSink sink) throws IOException   {
+            TabOntology.parse(inputStream, sink);
+        }
+    }
+
+    private static final OntologyLoader LOADER = new Loader();
+
     /**
      * Loads terms from tab-delimited ontology.
      *
@@ -79,12 +99,37 @@ public final class TabOntology extends AbstractOntology implements Ontology {
                           int refreshInterval, boolean tolerateRefreshException, 
                           InputStreamListener inputStreamListener)
               throws IOException   {
-        super(name, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener);
+        this(name, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, null);
+    }
+
+    /**
+     * Loads terms from tab-delimited ontology.
+     *
+     * @param   name
+     * @param   uri
+     * @param   userName
+     * @param   password
+     * @param   refreshInterval
+     * @param   tolerateRefreshException
+     * @param   coordinator             Coordinator to share refreshes through, or null for none
+     * @throws  IOException
+     * @see     uk.ac.ebi.hawthorn.AbstractOntology#AbstractOntology(OntologyLoader, String, String, String, String, int, boolean, InputStreamListener, RefreshCoordinator)
+     * @since   1.1
+     */
+    protected TabOntology(String name, String uri, String userName, String password,
+                          int refreshInterval, boolean tolerateRefreshException, 
+                          InputStreamListener inputStreamListener,
+                          RefreshCoordinator coordinator)
+              throws IOException   {
+        super(LOADER, name, uri, userName, password, refreshInterval, tolerateRefreshException, inputStreamListener, coordinator);
     }
 
     public Map getTerms() throws IOException, IndexOutOfBoundsException {
-        Map terms = new HashMap();
-        InputStream inputStream = getInputStream();
+        return getTermStore().asMap();
+    }
+
+    private static void parse(InputStream inputStream, TermSink builder)
+            throws IOException, IndexOutOfBoundsException {
         BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
         String line = null;
         while ((line = reader.readLine()) != null)    {
@@ -96,12 +141,9 @@ public final class TabOntology extends AbstractOntology implements Ontology {
                     message += " found=" + Integer.toString(columns.length) + "]";
                     throw new IndexOutOfBoundsException(message);
                 }
-                String id = columns[COLUMN_ID];
-                String term = columns[COLUMN_TERM];
-                terms.put(id, term);
+                builder.addTerm(columns[COLUMN_ID], columns[COLUMN_TERM]);
             }
         }
-        return Collections.unmodifiableMap(terms);
     }
 
 }
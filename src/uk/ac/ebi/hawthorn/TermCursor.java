@@ -0,0 +1,123 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+/**
+ * Moves through terms of a snapshot in ID order without copying them. For example:
+ * <pre>
+ *  TermCursor cursor = ontology.getTermStore().cursor();
+ *  while (cursor.next())   {
+ *      System.out.println(cursor.getId() + "\t" + cursor.getName());
+ *  }
+ * </pre>
+ * Cursors can also cover a range of IDs, or the IDs with a given prefix.
+ * A cursor is not thread-safe, but any number of cursors can be used on one snapshot at once.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     TermStore#cursor()
+ * @see     TermStore#prefixCursor(String)
+ */
+public final class TermCursor {
+
+    private final TermStore store;
+    private final int[]     order;
+    private final int       start;
+    private final int       end;
+    private int             position;
+
+    TermCursor(TermStore store, int[] order, int from, int to)  {
+        this.store    = store;
+        this.order    = order;
+        this.start    = from;
+        this.position = from - 1;
+        this.end      = to;
+    }
+
+    /**
+     * Moves to the next term.
+     *
+     * @return  true if there is a next term, false if the cursor has passed the last term
+     */
+    public boolean next()   {
+        if (position < end) {
+            position++;
+        }
+        return (position < end);
+    }
+
+    /**
+     * Returns number of terms the cursor moves through.
+     *
+     * @return  number of terms
+     */
+    public int getCount()   {
+        return end - start;
+    }
+
+    /**
+     * Returns index of the current term in the snapshot.
+     *
+     * @return  index of the current term
+     * @throws  IllegalStateException if <code>next</code> has not returned true
+     */
+    public int getIndex() throws IllegalStateException   {
+        if (position < start || position >= end)    {
+            throw new IllegalStateException("Cursor is not on a term");
+        }
+        return order[position];
+    }
+
+    /**
+     * Returns ID of the current term.
+     *
+     * @return  ID of the current term
+     */
+    public String getId()   {
+        return store.getId(getIndex());
+    }
+
+    /**
+     * Returns name of the current term.
+     *
+     * @return  name of the current term
+     */
+    public String getName() {
+        return store.getName(getIndex());
+    }
+
+    /**
+     * Returns full record of the current term.
+     *
+     * @return  record of the current term
+     */
+    public TermRecord getRecord()   {
+        return store.getRecord(getIndex());
+    }
+
+    /**
+     * Returns snapshot the cursor moves through.
+     *
+     * @return  snapshot
+     */
+    public TermStore getTermStore() {
+        return store;
+    }
+
+}
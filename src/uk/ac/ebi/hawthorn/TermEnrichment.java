@@ -0,0 +1,364 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+/**
+ * Finds terms over-represented in a study set of entities, such as genes, compared with a
+ * background of annotated entities. For example:
+ * <pre>
+ *  AnnotationRollup rollup = new AnnotationRollup(ontology.getTermStore(), new String[]{"is_a", "part_of"});
+ *  TermEnrichment enrichment = new TermEnrichment(rollup.count(new FileReader("gene_association.goa"), 1, 4));
+ *  TermEnrichment.Result[] results = enrichment.analyse(genes);
+ * </pre>
+ * <p>
+ * Annotations are propagated up the hierarchy, so an entity counts towards a term if it is
+ * annotated to the term or any of its descendants. For each term annotated in the study set,
+ * the p-value is the chance of seeing at least as many study entities on the term if the study
+ * set were drawn at random from the background: the upper tail of the hypergeometric
+ * distribution, which is also the one-sided Fisher's exact test. P-values are worked out in
+ * log space, so very small values do not underflow, and are adjusted for the number of terms
+ * tested with the Benjamini-Hochberg method. Study entities not in the background are ignored.
+ * </p>
+ * <p>
+ * Background counts and a table of log factorials are computed once, so each study set only
+ * costs a walk over the ancestors of its entities' terms. Batches of study sets are split
+ * across processors. Instances are immutable and safe to share between threads.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     AnnotationRollup
+ */
+public final class TermEnrichment {
+
+    // Largest relative size of a tail term still worth adding
+    private static final double EPSILON = 1e-17;
+
+    private final AnnotationRollup.Counts background;
+    private final TermStore               store;
+    private final int[]                   entityOffsets;
+    private final int[]                   entityTerms;
+    private final int[]                   offsets;
+    private final int[]                   ancestors;
+    private final int[]                   ranks;        // term index -> position in ID order
+    private final double[]                logFactorials;
+
+    /**
+     * Creates enrichment analysis against <code>background</code>.
+     *
+     * @param   background  Propagated counts of all annotated entities
+     */
+    public TermEnrichment(AnnotationRollup.Counts background)  {
+        AnnotationRollup rollup = background.getRollup();
+        this.background    = background;
+        this.store         = background.getTermStore();
+        this.entityOffsets = background.getEntityOffsets();
+        this.entityTerms   = background.getEntityTerms();
+        this.ancestors     = rollup.getAncestors();
+        this.offsets       = new int[store.size() + 1];
+        for (int t = 0; t <= store.size(); t++) {
+            offsets[t] = rollup.getAncestorOffset(t);
+        }
+        this.ranks = new int[store.size()];
+        int[] sorted = store.getSortedIndices();
+        for (int i = 0; i < sorted.length; i++) {
+            ranks[sorted[i]] = i;
+        }
+        int n = background.getEntityCount();
+        this.logFactorials = new double[n + 1];
+        for (int i = 2; i <= n; i++)    {
+            logFactorials[i] = logFactorials[i - 1] + Math.log(i);
+        }
+    }
+
+    /**
+     * Returns background counts.
+     *
+     * @return  background counts
+     */
+    public AnnotationRollup.Counts getBackground()  {
+        return background;
+    }
+
+    /**
+     * Returns terms annotated in <code>study</code>, most significant first.
+     *
+     * @param   study   Study entities; repeats and entities not in the background are ignored
+     * @return  result for each term annotated in the study set, by increasing p-value
+     */
+    public Result[] analyse(String[] study)  {
+        return analyse(study, new Workspace());
+    }
+
+    /**
+     * Analyses each of <code>studies</code>, splitting them across processors.
+     *
+     * @param   studies Study sets
+     * @return  results for each study set, at the same index
+     * @see     #analyse(String[])
+     */
+    public Result[][] analyse(final String[][] studies)  {
+        final Result[][] results = new Result[studies.length][];
+        Parallel.run(studies.length, 1, new Parallel.Range()   {
+            public void run(int from, int to)  {
+                Workspace workspace = new Workspace();
+                for (int i = from; i < to; i++)  {
+                    results[i] = analyse(studies[i], workspace);
+                }
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Returns natural log of the chance of drawing at least <code>k</code> marked items in
+     * <code>n</code> draws without replacement from <code>total</code> items, of which
+     * <code>marked</code> are marked.
+     *
+     * @param   k       Marked items drawn
+     * @param   n       Number of draws
+     * @param   marked  Marked items
+     * @param   total   All items
+     * @return  log of upper tail probability, at most zero
+     * @throws  IllegalArgumentException if the counts are not consistent or
+     *          <code>total</code> is larger than the background
+     */
+    public double getLogPValue(int k, int n, int marked, int total) throws IllegalArgumentException  {
+        if (total >= logFactorials.length || n > total || marked > total || k > n || k > marked || k < 0 || n < 0 || marked < 0)   {
+            throw new IllegalArgumentException("Bad counts: " + k + " of " + n + " draws, " + marked + " of " + total + " marked");
+        }
+        return getLogPValue(k, n, marked, total, logChoose(total, n));
+    }
+
+    // As above, given log of the number of ways to make n draws
+    private double getLogPValue(int k, int n, int marked, int total, double logDraws)  {
+        int lowest = Math.max(0, n + marked - total);
+        if (k <= lowest)    {
+            return 0;
+        }
+        double logFirst = logChoose(marked, k) + logChoose(total - marked, n - k) - logDraws;
+        // Add terms relative to the first, rescaling before they overflow
+        double scale = 0;
+        double term  = 1;
+        double sum   = 1;
+        int highest = Math.min(n, marked);
+        for (int i = k; i < highest; i++)   {
+            double ratio = ((double) (marked - i) * (n - i)) / ((double) (i + 1) * (total - marked - n + i + 1));
+            term *= ratio;
+            sum  += term;
+            if (sum > 1e200)    {
+                scale += Math.log(sum);
+                term  /= sum;
+                sum    = 1;
+            }
+            // Past the mode terms only get smaller
+            if (ratio < 1 && term < sum * EPSILON)    {
+                break;
+            }
+        }
+        return Math.min(0, logFirst + scale + Math.log(sum));
+    }
+
+    private double logChoose(int n, int k)  {
+        return logFactorials[n] - logFactorials[k] - logFactorials[n - k];
+    }
+
+    private Result[] analyse(String[] study, Workspace w)  {
+        // Count distinct study entities on each term and its ancestors
+        int size = 0;
+        w.touched.clear();
+        w.members.clear();
+        for (int s = 0; s < study.length; s++)  {
+            int e = background.getEntityCode(study[s]);
+            if (e < 0 || !AnnotationRollup.mark(e, w.entityMarks))   {
+                continue;
+            }
+            w.members.add(e);
+            size++;
+            for (int j = entityOffsets[e]; j < entityOffsets[e + 1]; j++) {
+                int t = entityTerms[j];
+                if ((w.termMarks[t >>> 6] & (1L << t)) != 0)    {
+                    continue;   // ancestors already marked for this entity
+                }
+                for (int k = offsets[t]; k < offsets[t + 1]; k++)  {
+                    int a = ancestors[k];
+                    if (AnnotationRollup.mark(a, w.termMarks))  {
+                        if (w.counts[a]++ == 0) {
+                            w.touched.add(a);
+                        }
+                        w.entityTouched.add(a);
+                    }
+                }
+            }
+            for (int k = 0; k < w.entityTouched.size(); k++)    {
+                int a = w.entityTouched.get(k);
+                w.termMarks[a >>> 6] &= ~(1L << a);
+            }
+            w.entityTouched.clear();
+        }
+        for (int k = 0; k < w.members.size(); k++)  {
+            int e = w.members.get(k);
+            w.entityMarks[e >>> 6] &= ~(1L << e);
+        }
+
+        // Test each annotated term, then sort by p-value and adjust
+        int total = background.getEntityCount();
+        double logDraws = logChoose(total, size);
+        int m = w.touched.size();
+        int[] order = w.touched.toArray();
+        double[] logPValues = w.logPValues;
+        for (int k = 0; k < m; k++) {
+            int t = order[k];
+            logPValues[t] = getLogPValue(w.counts[t], size, background.getCount(t), total, logDraws);
+        }
+        // Increasing log p-value, then by ID
+        TermStore.sortByKey(order, 0, m, logPValues, ranks, w.scratch);
+        Result[] results = new Result[m];
+        double min = 1;
+        for (int k = m - 1; k >= 0; k--)    {
+            int t = order[k];
+            results[k] = new Result(store.getId(t), w.counts[t], size, background.getCount(t), total, logPValues[t]);
+            min = Math.min(min, results[k].getPValue() * m / (k + 1));
+            results[k].adjustedPValue = min;
+            w.counts[t] = 0;
+        }
+        return results;
+    }
+
+    /**
+     * Scratch space for one thread, cleared after each study set.
+     */
+    private final class Workspace   {
+
+        private final int[]    counts       = new int[store.size()];
+        private final double[] logPValues   = new double[store.size()];
+        private final int[]    scratch      = new int[store.size()];
+        private final long[]   termMarks    = new long[(store.size() + 63) >>> 6];
+        private final long[]   entityMarks  = new long[(background.getEntityCount() + 63) >>> 6];
+        private final IntList  touched      = new IntList();
+        private final IntList  entityTouched = new IntList();
+        private final IntList  members      = new IntList();
+
+    }
+
+    /**
+     * Enrichment of one term in a study set.
+     */
+    public static final class Result   {
+
+        private final String id;
+        private final int    studyCount;
+        private final int    studySize;
+        private final int    backgroundCount;
+        private final int    backgroundSize;
+        private final double logPValue;
+        private double       adjustedPValue;    // set once, before the result is returned
+
+        Result(String id, int studyCount, int studySize, int backgroundCount, int backgroundSize, double logPValue)  {
+            this.id              = id;
+            this.studyCount      = studyCount;
+            this.studySize       = studySize;
+            this.backgroundCount = backgroundCount;
+            this.backgroundSize  = backgroundSize;
+            this.logPValue       = logPValue;
+        }
+
+        /**
+         * Returns ontology ID of term.
+         *
+         * @return  ontology ID
+         */
+        public String getId()   {
+            return id;
+        }
+
+        /**
+         * Returns number of study entities on the term or its descendants.
+         *
+         * @return  number of study entities on the term
+         */
+        public int getStudyCount()  {
+            return studyCount;
+        }
+
+        /**
+         * Returns number of study entities found in the background.
+         *
+         * @return  size of study set
+         */
+        public int getStudySize()   {
+            return studySize;
+        }
+
+        /**
+         * Returns number of background entities on the term or its descendants.
+         *
+         * @return  number of background entities on the term
+         */
+        public int getBackgroundCount() {
+            return backgroundCount;
+        }
+
+        /**
+         * Returns number of entities in the background.
+         *
+         * @return  size of background
+         */
+        public int getBackgroundSize()  {
+            return backgroundSize;
+        }
+
+        /**
+         * Returns chance of at least this many study entities on the term by chance.
+         *
+         * @return  p-value
+         */
+        public double getPValue()   {
+            return Math.exp(logPValue);
+        }
+
+        /**
+         * Returns natural log of the p-value, which stays accurate when the p-value is too
+         * small for a double.
+         *
+         * @return  log of p-value
+         */
+        public double getLogPValue()    {
+            return logPValue;
+        }
+
+        /**
+         * Returns p-value adjusted for the number of terms tested, by the Benjamini-Hochberg
+         * method, so results with an adjusted value below <i>q</i> have a false discovery rate of
+         * at most <i>q</i>.
+         *
+         * @return  adjusted p-value
+         */
+        public double getAdjustedPValue()   {
+            return adjustedPValue;
+        }
+
+        public String toString()    {
+            return id + "\t" + studyCount + "/" + studySize + "\t" + backgroundCount + "/" + backgroundSize +
+                   "\t" + getPValue() + "\t" + adjustedPValue;
+        }
+
+    }
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.*;
+
+/**
+ * Writes snapshots of terms in ID order, streaming straight from the snapshot so the source is
+ * not read again and no copy of the terms is made. Three formats are supported:
+ * <ul>
+ *  <li>TSV: ID and name, plus relationships as "type parent" separated by '|' if requested</li>
+ *  <li>OBO 1.2: one [Term] stanza per term with all fields held in the snapshot</li>
+ *  <li>Binary: compact format holding all fields, read back with {@link #readBinary(InputStream)}</li>
+ * </ul>
+ * Output is UTF-8. Streams are flushed but not closed.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     TermStore#cursor()
+ */
+public final class TermExporter {
+
+    private static final String ENCODING = "UTF-8";
+
+    // Binary format: magic number, version, then sections described in writeBinary
+    private static final int MAGIC   = 0x48575453;     // "HWTS"
+    private static final int VERSION = 1;
+
+    private TermExporter()  {
+    }
+
+    /**
+     * Writes ID and name of each term, and optionally its relationships, as tab-separated lines.
+     * Relationships are written is_a first, then by type and parent ID.
+     *
+     * @param   store           Snapshot of terms
+     * @param   out             Output stream
+     * @param   relationships   True to add a column of relationships
+     * @throws  IOException if could not write
+     */
+    public static void writeTsv(TermStore store, OutputStream out, boolean relationships) throws IOException  {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, ENCODING), 1 << 16);
+        TermCursor cursor = store.cursor();
+        while (cursor.next())   {
+            int index = cursor.getIndex();
+            writer.write(store.getId(index));
+            writer.write('\t');
+            writer.write(store.getName(index));
+            if (relationships)  {
+                writer.write('\t');
+                int[] parents = getParentOrder(store, index);
+                for (int p = 0; p < parents.length; p++)  {
+                    if (p > 0)  {
+                        writer.write('|');
+                    }
+                    writer.write(store.getRelationshipTypeName(store.getParentType(index, parents[p])));
+                    writer.write(' ');
+                    writer.write(store.getId(store.getParent(index, parents[p])));
+                }
+            }
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes terms as an OBO 1.2 file. Synonyms are written with RELATED scope, as the snapshot
+     * does not hold synonym scope.
+     *
+     * @param   store   Snapshot of terms
+     * @param   out     Output stream
+     * @throws  IOException if could not write
+     */
+    public static void writeObo(TermStore store, OutputStream out) throws IOException  {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, ENCODING), 1 << 16);
+        writer.write("format-version: 1.2\n");
+        TermCursor cursor = store.cursor();
+        while (cursor.next())   {
+            int index = cursor.getIndex();
+            writer.write("\n[Term]\nid: ");
+            writer.write(store.getId(index));
+            writer.write("\nname: ");
+            writer.write(escape(store.getName(index), false));
+            writer.write('\n');
+            int namespace = store.getNamespaceCode(index);
+            if (namespace != TermStore.NO_NAMESPACE)    {
+                writeTag(writer, "namespace", store.getNamespaceName(namespace));
+            }
+            String definition = store.getDefinition(index);
+            if (definition != null) {
+                writer.write("def: \"");
+                writer.write(escape(definition, true));
+                writer.write("\" []\n");
+            }
+            String[] values = store.getSynonyms(index);
+            for (int i = 0; i < values.length; i++) {
+                writer.write("synonym: \"");
+                writer.write(escape(values[i], true));
+                writer.write("\" RELATED []\n");
+            }
+            writeTags(writer, "xref", store.getXrefs(index));
+            writeTags(writer, "subset", store.getSubsets(index));
+            int[] parents = getParentOrder(store, index);
+            for (int p = 0; p < parents.length; p++)  {
+                String type   = store.getRelationshipTypeName(store.getParentType(index, parents[p]));
+                int    parent = store.getParent(index, parents[p]);
+                writer.write("is_a".equals(type) ? "is_a: " : "relationship: " + type + " ");
+                writer.write(store.getId(parent));
+                writer.write(" ! ");
+                writer.write(escape(store.getName(parent), false));
+                writer.write('\n');
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Returns positions of the parents of term at <code>index</code>, with is_a first, then by
+     * relationship type and parent ID, so exports do not depend on the order of the source.
+     *
+     * @param   store   Snapshot of terms
+     * @param   index   Term index
+     * @return  parent positions in export order
+     */
+    private static int[] getParentOrder(TermStore store, int index)  {
+        int[] parents = new int[store.getParentCount(index)];
+        for (int p = 0; p < parents.length; p++)    {
+            int v = p;
+            int j = p - 1;
+            while (j >= 0 && compareParents(store, index, v, parents[j]) < 0)  {
+                parents[j + 1] = parents[j];
+                j--;
+            }
+            parents[j + 1] = v;
+        }
+        return parents;
+    }
+
+    private static int compareParents(TermStore store, int index, int a, int b)  {
+        String typeA = store.getRelationshipTypeName(store.getParentType(index, a));
+        String typeB = store.getRelationshipTypeName(store.getParentType(index, b));
+        if (!typeA.equals(typeB))   {
+            if ("is_a".equals(typeA))   {
+                return -1;
+            }
+            if ("is_a".equals(typeB))   {
+                return 1;
+            }
+            return typeA.compareTo(typeB);
+        }
+        return store.getId(store.getParent(index, a)).compareTo(store.getId(store.getParent(index, b)));
+    }
+
+    /**
+     * Writes all fields of all terms in a compact binary format.
+     *
+     * @param   store   Snapshot of terms
+     * @param   out     Output stream
+     * @throws  IOException if could not write
+     * @see     #readBinary(InputStream)
+     */
+    public static void writeBinary(TermStore store, OutputStream out) throws IOException  {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        // Lookup tables
+        writeVarInt(data, store.getNamespaceCount());
+        for (int i = 0; i < store.getNamespaceCount(); i++)   {
+            writeString(data, store.getNamespaceName(i));
+        }
+        writeVarInt(data, store.getRelationshipTypeCount());
+        for (int i = 0; i < store.getRelationshipTypeCount(); i++)   {
+            writeString(data, store.getRelationshipTypeName(i));
+        }
+        // Terms in ID order; parents are referred to by position in this order
+        int[] order = store.getSortedIndices();
+        int[] position = new int[order.length];
+        for (int i = 0; i < order.length; i++)  {
+            position[order[i]] = i;
+        }
+        writeVarInt(data, order.length);
+        for (int i = 0; i < order.length; i++)  {
+            int index = order[i];
+            writeString(data, store.getId(index));
+            writeString(data, store.getName(index));
+            writeVarInt(data, store.getNamespaceCode(index) + 1);
+            String definition = store.getDefinition(index);
+            writeString(data, (definition == null) ? "" : definition);
+            writeStrings(data, store.getSynonyms(index));
+            writeStrings(data, store.getXrefs(index));
+            writeStrings(data, store.getSubsets(index));
+            writeVarInt(data, store.getParentCount(index));
+            for (int p = 0; p < store.getParentCount(index); p++)  {
+                writeVarInt(data, store.getParentType(index, p));
+                writeVarInt(data, position[store.getParent(index, p)]);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads snapshot written by {@link #writeBinary(TermStore, OutputStream)}.
+     *
+     * @param   in  Input stream
+     * @return  snapshot of terms
+     * @throws  IOException if could not read, or stream is not in the expected format
+     */
+    public static TermStore readBinary(InputStream in) throws IOException  {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if (data.readInt() != MAGIC)    {
+            throw new IOException("Not a term snapshot");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported term snapshot version: " + version);
+        }
+        String[] namespaces = new String[readVarInt(data)];
+        for (int i = 0; i < namespaces.length; i++)   {
+            namespaces[i] = readString(data);
+        }
+        String[] types = new String[readVarInt(data)];
+        for (int i = 0; i < types.length; i++)   {
+            types[i] = readString(data);
+        }
+        int size = readVarInt(data);
+        TermStore.Builder builder = new TermStore.Builder(size);
+        // Parents may come later in ID order, so hold edges until all IDs are known
+        IntList children = new IntList(size);
+        IntList edgeTypes = new IntList(size);
+        IntList parents  = new IntList(size);
+        for (int i = 0; i < size; i++)  {
+            int index = builder.addTerm(readString(data), readString(data));
+            int namespace = readVarInt(data) - 1;
+            if (namespace > -1) {
+                builder.setNamespace(index, namespaces[namespace]);
+            }
+            String definition = readString(data);
+            if (definition.length() > 0)    {
+                builder.setDefinition(index, definition);
+            }
+            for (int n = readVarInt(data); n > 0; n--)  {
+                builder.addSynonym(index, readString(data));
+            }
+            for (int n = readVarInt(data); n > 0; n--)  {
+                builder.addXref(index, readString(data));
+            }
+            for (int n = readVarInt(data); n > 0; n--)  {
+                builder.addSubset(index, readString(data));
+            }
+            for (int n = readVarInt(data); n > 0; n--)  {
+                children.add(index);
+                edgeTypes.add(readVarInt(data));
+                parents.add(readVarInt(data));
+            }
+        }
+        for (int i = 0; i < children.size(); i++)   {
+            builder.addRelationship(children.get(i), types[edgeTypes.get(i)], builder.getId(parents.get(i)));
+        }
+        return builder.build();
+    }
+
+    private static void writeTag(Writer writer, String tag, String value) throws IOException  {
+        writer.write(tag);
+        writer.write(": ");
+        writer.write(escape(value, false));
+        writer.write('\n');
+    }
+
+    private static void writeTags(Writer writer, String tag, String[] values) throws IOException  {
+        for (int i = 0; i < values.length; i++) {
+            writeTag(writer, tag, values[i]);
+        }
+    }
+
+    // Escapes OBO special characters; quotes only matter inside quoted strings
+    private static String escape(String s, boolean quoted)   {
+        StringBuffer buf = null;
+        for (int i = 0; i < s.length(); i++)    {
+            char c = s.charAt(i);
+            String replacement = null;
+            if (c == '\n')  {
+                replacement = "\\n";
+            }
+            else if (c == '\\') {
+                replacement = "\\\\";
+            }
+            else if (c == '"' && quoted)    {
+                replacement = "\\\"";
+            }
+            else if (c == '!' && !quoted)   {
+                replacement = "\\!";
+            }
+            if (replacement != null && buf == null) {
+                buf = new StringBuffer(s.length() + 8);
+                buf.append(s.substring(0, i));
+            }
+            if (buf != null)    {
+                if (replacement == null)    {
+                    buf.append(c);
+                }
+                else    {
+                    buf.append(replacement);
+                }
+            }
+        }
+        return (buf == null) ? s : buf.toString();
+    }
+
+    private static void writeStrings(DataOutputStream data, String[] values) throws IOException  {
+        writeVarInt(data, values.length);
+        for (int i = 0; i < values.length; i++) {
+            writeString(data, values[i]);
+        }
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException  {
+        byte[] bytes = value.getBytes(ENCODING);
+        writeVarInt(data, bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInputStream data) throws IOException  {
+        byte[] bytes = new byte[readVarInt(data)];
+        data.readFully(bytes);
+        return new String(bytes, ENCODING);
+    }
+
+    // Seven bits per byte, high bit set on all but the last byte
+    private static void writeVarInt(DataOutputStream data, int value) throws IOException  {
+        while ((value & ~0x7f) != 0)    {
+            data.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data.write(value);
+    }
+
+    private static int readVarInt(DataInputStream data) throws IOException  {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7)   {
+            int b = data.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)    {
+                return value;
+            }
+        }
+        throw new IOException("Malformed term snapshot");
+    }
+
+}
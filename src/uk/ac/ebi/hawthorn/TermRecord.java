@@ -0,0 +1,196 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+/**
+ * Full view of a single ontology term. Records are lightweight views onto a <code>TermStore</code>:
+ * each field is decoded from the store when its getter is called, and is not cached.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     TermStore#getRecord(int)
+ */
+public final class TermRecord {
+
+    private final TermStore store;
+    private final int       index;
+
+    TermRecord(TermStore store, int index)    {
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * Returns ontology ID, for example GO:0000001
+     *
+     * @return  ontology ID
+     */
+    public String getId()   {
+        return store.getId(index);
+    }
+
+    /**
+     * Returns term name, for example "mitochondrion inheritance"
+     *
+     * @return  term name
+     */
+    public String getName() {
+        return store.getName(index);
+    }
+
+    /**
+     * Returns definition, or null if none.
+     *
+     * @return  definition, or null if none
+     */
+    public String getDefinition()   {
+        return store.getDefinition(index);
+    }
+
+    /**
+     * Returns namespace, for example "biological_process", or null if none.
+     *
+     * @return  namespace, or null if none
+     */
+    public String getNamespace()    {
+        return store.getNamespaceName(store.getNamespaceCode(index));
+    }
+
+    /**
+     * Returns synonyms (empty if none).
+     *
+     * @return  synonyms
+     */
+    public String[] getSynonyms()   {
+        return store.getSynonyms(index);
+    }
+
+    /**
+     * Returns cross-references in the form "database:ID", for example "EC:1.1.1.1" (empty if none).
+     *
+     * @return  cross-references
+     */
+    public String[] getXrefs()   {
+        return store.getXrefs(index);
+    }
+
+    /**
+     * Returns names of subsets the term belongs to, for example "goslim_generic" (empty if none).
+     *
+     * @return  subset names
+     */
+    public String[] getSubsets()   {
+        return store.getSubsets(index);
+    }
+
+    /**
+     * Returns relationships to parent terms (empty if none).
+     *
+     * @return  relationships to parent terms
+     */
+    public Relationship[] getRelationships()    {
+        int count = store.getParentCount(index);
+        Relationship[] relationships = new Relationship[count];
+        for (int i = 0; i < count; i++)   {
+            String type = store.getRelationshipTypeName(store.getParentType(index, i));
+            relationships[i] = new Relationship(type, store.getId(store.getParent(index, i)));
+        }
+        return relationships;
+    }
+
+    /**
+     * Returns index of term in its store.
+     *
+     * @return  index of term in its store
+     */
+    public int getIndex()   {
+        return index;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof TermRecord)) {
+            return false;
+        }
+        TermRecord r = (TermRecord) o;
+        return (store == r.store) && (index == r.index);
+    }
+
+    public int hashCode()   {
+        return getId().hashCode();
+    }
+
+    /**
+     * Returns ID and name.
+     *
+     * @return  ID and name
+     */
+    public String toString()    {
+        return getId() + "\t" + getName();
+    }
+
+    /**
+     * Relationship from a term to one of its parents.
+     */
+    public static final class Relationship    {
+
+        private final String type;
+        private final String targetId;
+
+        Relationship(String type, String targetId)    {
+            this.type     = type;
+            this.targetId = targetId;
+        }
+
+        /**
+         * Returns relationship type, for example "is_a" or "part_of"
+         *
+         * @return  relationship type
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Returns ID of parent term
+         *
+         * @return  ID of parent term
+         */
+        public String getTargetId() {
+            return targetId;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Relationship))   {
+                return false;
+            }
+            Relationship r = (Relationship) o;
+            return type.equals(r.type) && targetId.equals(r.targetId);
+        }
+
+        public int hashCode()   {
+            return type.hashCode() * 31 + targetId.hashCode();
+        }
+
+        public String toString()    {
+            return type + " " + targetId;
+        }
+
+    }
+
+}
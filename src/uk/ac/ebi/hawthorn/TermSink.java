@@ -0,0 +1,112 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+/**
+ * Receives terms from an <code>OntologyLoader</code>. Each term is added before its fields,
+ * and a term's fields are added before any later term's, which suits stanza-based formats.
+ * Relationships may be added in any order and name parents that have not been added yet;
+ * relationships to terms that are never added are dropped.
+ * <p>
+ * The engine supplies the sink, so records go straight into the snapshot being built.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     OntologyLoader
+ * @see     TermStore.Builder
+ */
+public interface TermSink {
+
+    /**
+     * Adds term and returns its index. If a term with the same ID has already been added,
+     * its name is replaced and its existing index is returned.
+     *
+     * @param   id      Ontology ID
+     * @param   name    Term name
+     * @return  index of term
+     */
+    public int addTerm(String id, String name);
+
+    /**
+     * Returns index of term with <code>id</code>, or -1 if not added yet.
+     *
+     * @param   id  Ontology ID
+     * @return  index of term with <code>id</code>, or -1
+     */
+    public int indexOf(String id);
+
+    /**
+     * Returns ID of term at <code>index</code>.
+     *
+     * @param   index   Term index
+     * @return  ID of term at <code>index</code>
+     */
+    public String getId(int index);
+
+    /**
+     * Sets definition of term at <code>index</code>.
+     *
+     * @param   index       Term index
+     * @param   definition  Definition
+     */
+    public void setDefinition(int index, String definition);
+
+    /**
+     * Sets namespace of term at <code>index</code>; null or empty namespaces are ignored.
+     *
+     * @param   index       Term index
+     * @param   namespace   Namespace, for example "biological_process"
+     */
+    public void setNamespace(int index, String namespace);
+
+    /**
+     * Adds synonym to term at <code>index</code>.
+     *
+     * @param   index   Term index
+     * @param   synonym Synonym
+     */
+    public void addSynonym(int index, String synonym);
+
+    /**
+     * Adds cross-reference to term at <code>index</code>.
+     *
+     * @param   index   Term index
+     * @param   xref    Cross-reference, for example "EC:3.1.1.4"
+     */
+    public void addXref(int index, String xref);
+
+    /**
+     * Adds term at <code>index</code> to a subset.
+     *
+     * @param   index   Term index
+     * @param   subset  Subset name, for example "goslim_generic"
+     */
+    public void addSubset(int index, String subset);
+
+    /**
+     * Adds relationship from term at <code>index</code> to its parent.
+     *
+     * @param   index       Index of child term
+     * @param   type        Relationship type, for example "is_a" or "part_of"
+     * @param   parentId    ID of parent term
+     */
+    public void addRelationship(int index, String type, String parentId);
+
+}
@@ -0,0 +1,1247 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.util.*;
+
+/**
+ * Immutable snapshot of the terms loaded from an ontology.
+ * <p>
+ * Each term is identified by an index from 0 to <code>size() - 1</code>. IDs and names are held in
+ * arrays and looked up through an open-addressing hash table, so name lookups do not allocate.
+ * Definitions, synonyms, cross-references and subsets are held in packed columns that are only
+ * decoded when requested through <code>TermRecord</code>. Relationships are held as arrays of
+ * parent indices per term.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     TermRecord
+ */
+public final class TermStore {
+
+    /** Namespace code for terms without a namespace */
+    public static final int NO_NAMESPACE = -1;
+
+    // Smallest store worth building on several threads
+    private static final int PARALLEL_BUILD_SIZE = 16384;
+
+    private final String[] ids;
+    private final String[] names;
+    private final int[]    slots;
+
+    private final PackedColumn definitions;
+    private final PackedColumn synonyms;
+    private final PackedColumn xrefs;
+    private final PackedColumn subsets;
+
+    private final short[]  namespaces;
+    private final String[] namespaceNames;
+
+    private final int[]    relationshipOffsets;
+    private final int[]    relationshipTargets;
+    private final short[]  relationshipTypes;
+    private final String[] relationshipTypeNames;
+
+    private final Map map;
+
+    // Term indices in ID order
+    private final int[] sorted;
+
+    private volatile MemoryUsage memoryUsage;
+
+    // Term indices of each namespace in ID order, worked out on first use
+    private volatile int[][] namespaceMembers;
+
+    private TermStore(final Builder b)  {
+        final int size             = b.size;
+        this.ids                   = trim(b.ids, size);
+        this.names                 = trim(b.names, size);
+        this.namespaceNames        = (String[]) b.namespaceNames.toArray(new String[b.namespaceNames.size()]);
+        this.namespaces            = (namespaceNames.length == 0) ? null : trim(b.namespaces, size);
+        this.relationshipTypeNames = (String[]) b.relationshipTypeNames.toArray(new String[b.relationshipTypeNames.size()]);
+        // The ID table and edges, each column and the ID order are independent so large stores build them at once
+        final Object[] parts = new Object[6];
+        Parallel.run(parts.length, (size < PARALLEL_BUILD_SIZE) ? parts.length : 1, new Parallel.Range()  {
+            public void run(int from, int to)  {
+                for (int part = from; part < to; part++) {
+                    switch (part)   {
+                        case 0:  parts[0] = buildEdges(b, ids);            break;
+                        case 1:  parts[1] = buildColumn(b.definitions, size); break;
+                        case 2:  parts[2] = buildColumn(b.synonyms, size);    break;
+                        case 3:  parts[3] = buildColumn(b.xrefs, size);       break;
+                        case 4:  parts[4] = buildColumn(b.subsets, size);     break;
+                        default: parts[5] = sortById(ids);                    break;
+                    }
+                }
+            }
+        });
+        Edges edges                = (Edges) parts[0];
+        this.slots                 = edges.slots;
+        this.definitions           = (PackedColumn) parts[1];
+        this.synonyms              = (PackedColumn) parts[2];
+        this.xrefs                 = (PackedColumn) parts[3];
+        this.subsets               = (PackedColumn) parts[4];
+        this.sorted                = (int[]) parts[5];
+        this.relationshipOffsets   = edges.offsets;
+        this.relationshipTargets   = edges.targets;
+        this.relationshipTypes     = edges.types;
+        this.map = new TermMap();
+    }
+
+    private static PackedColumn buildColumn(PackedColumn.Builder column, int size)  {
+        return (column == null) ? null : column.build(size);
+    }
+
+    // Creates ID table, then resolves parent IDs and groups edges by child
+    private static Edges buildEdges(Builder b, String[] ids)  {
+        int size = ids.length;
+        int[] slots = createSlots(ids);
+        int edgeCount = b.edgeChildren.size();
+        int[] targets = new int[edgeCount];
+        int[] offsets = new int[size + 1];
+        int resolved = 0;
+        for (int i = 0; i < edgeCount; i++)   {
+            targets[i] = find(ids, slots, (String) b.edgeParents.get(i));
+            if (targets[i] > -1)    {
+                offsets[b.edgeChildren.get(i) + 1]++;
+                resolved++;
+            }
+        }
+        for (int i = 0; i < size; i++)   {
+            offsets[i + 1] += offsets[i];
+        }
+        int[]   edgeTargets = new int[resolved];
+        short[] edgeTypes   = new short[resolved];
+        int[]   next        = new int[size];
+        for (int i = 0; i < edgeCount; i++)   {
+            int child = b.edgeChildren.get(i);
+            int type  = b.edgeTypes.get(i);
+            if (targets[i] > -1 && !containsEdge(edgeTargets, edgeTypes, offsets[child], next[child], targets[i], type))    {
+                int pos = offsets[child] + next[child]++;
+                edgeTargets[pos] = targets[i];
+                edgeTypes[pos]   = (short) type;
+            }
+        }
+        // Close gaps left by duplicate edges
+        int pos = 0;
+        for (int i = 0; i < size; i++)   {
+            int from = offsets[i];
+            offsets[i] = pos;
+            System.arraycopy(edgeTargets, from, edgeTargets, pos, next[i]);
+            System.arraycopy(edgeTypes, from, edgeTypes, pos, next[i]);
+            pos += next[i];
+        }
+        offsets[size] = pos;
+        return new Edges(slots, offsets, trim(edgeTargets, pos), trimTypes(edgeTypes, pos));
+    }
+
+    /**
+     * Returns a store holding the IDs and names in <code>terms</code>.
+     *
+     * @param   terms   Map with ontology ID as key and term as value
+     * @return  store holding the IDs and names in <code>terms</code>
+     */
+    public static TermStore fromMap(Map terms)    {
+        Builder builder = new Builder(terms.size());
+        for (Iterator i = terms.entrySet().iterator(); i.hasNext(); )   {
+            Map.Entry entry = (Map.Entry) i.next();
+            builder.addTerm((String) entry.getKey(), (String) entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns number of terms.
+     *
+     * @return  number of terms
+     */
+    public int size()   {
+        return ids.length;
+    }
+
+    /**
+     * Returns index of term with <code>id</code>, or -1 if not found.
+     *
+     * @param   id  Ontology ID, for example GO:0000001
+     * @return  index of term with <code>id</code>, or -1 if not found
+     */
+    public int indexOf(String id)  {
+        return find(ids, slots, id);
+    }
+
+    private static int find(String[] ids, int[] slots, String id)  {
+        if (id == null) {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        int slot = hash(id) & mask;
+        while (true)    {
+            int value = slots[slot];
+            if (value == 0) {
+                return -1;
+            }
+            if (ids[value - 1].equals(id))   {
+                return value - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns ID of term at <code>index</code>.
+     *
+     * @param   index   Term index
+     * @return  ID of term at <code>index</code>
+     */
+    public String getId(int index)  {
+        return ids[index];
+    }
+
+    /**
+     * Returns name of term at <code>index</code>.
+     *
+     * @param   index   Term index
+     * @return  name of term at <code>index</code>
+     */
+    public String getName(int index)    {
+        return names[index];
+    }
+
+    /**
+     * Returns record for term at <code>index</code>.
+     *
+     * @param   index   Term index
+     * @return  record for term at <code>index</code>
+     */
+    public TermRecord getRecord(int index)  {
+        if (index < 0 || index >= ids.length)   {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + ids.length);
+        }
+        return new TermRecord(this, index);
+    }
+
+    /**
+     * Returns namespace code for term at <code>index</code>, or <code>NO_NAMESPACE</code>.
+     *
+     * @param   index   Term index
+     * @return  namespace code for term at <code>index</code>, or <code>NO_NAMESPACE</code>
+     * @see     #getNamespaceName(int)
+     */
+    public int getNamespaceCode(int index)  {
+        return (namespaces == null) ? NO_NAMESPACE : namespaces[index];
+    }
+
+    /**
+     * Returns number of distinct namespaces.
+     *
+     * @return  number of distinct namespaces
+     */
+    public int getNamespaceCount()  {
+        return namespaceNames.length;
+    }
+
+    /**
+     * Returns name of namespace for <code>code</code>.
+     *
+     * @param   code    Namespace code
+     * @return  name of namespace for <code>code</code>, or null if <code>NO_NAMESPACE</code>
+     */
+    public String getNamespaceName(int code)    {
+        return (code == NO_NAMESPACE) ? null : namespaceNames[code];
+    }
+
+    /**
+     * Returns code for namespace called <code>name</code>.
+     *
+     * @param   name    Namespace name, for example "biological_process"
+     * @return  namespace code, or <code>NO_NAMESPACE</code> if no term has that namespace
+     */
+    public int getNamespaceCode(String name)  {
+        for (int i = 0; i < namespaceNames.length; i++) {
+            if (namespaceNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return NO_NAMESPACE;
+    }
+
+    /**
+     * Returns number of terms in namespace <code>code</code>.
+     *
+     * @param   code    Namespace code
+     * @return  number of terms in the namespace, or 0 if <code>NO_NAMESPACE</code>
+     */
+    public int getNamespaceSize(int code)  {
+        return (code == NO_NAMESPACE) ? 0 : getNamespaceMembers(code).length;
+    }
+
+    /**
+     * Returns number of parents of term at <code>index</code>.
+     *
+     * @param   index   Term index
+     * @return  number of parents of term at <code>index</code>
+     */
+    public int getParentCount(int index)    {
+        return relationshipOffsets[index + 1] - relationshipOffsets[index];
+    }
+
+    /**
+     * Returns index of the <code>n</code>th parent of term at <code>index</code>.
+     *
+     * @param   index   Term index
+     * @param   n       Parent number, from 0 to <code>getParentCount(index) - 1</code>
+     * @return  index of parent term
+     */
+    public int getParent(int index, int n)  {
+        return relationshipTargets[relationshipOffsets[index] + n];
+    }
+
+    /**
+     * Returns relationship type code of the <code>n</code>th parent of term at <code>index</code>.
+     *
+     * @param   index   Term index
+     * @param   n       Parent number, from 0 to <code>getParentCount(index) - 1</code>
+     * @return  relationship type code
+     * @see     #getRelationshipTypeName(int)
+     */
+    public int getParentType(int index, int n)  {
+        return relationshipTypes[relationshipOffsets[index] + n];
+    }
+
+    /**
+     * Returns number of distinct relationship types.
+     *
+     * @return  number of distinct relationship types
+     */
+    public int getRelationshipTypeCount()   {
+        return relationshipTypeNames.length;
+    }
+
+    /**
+     * Returns name of relationship type for <code>code</code>, for example "is_a" or "part_of".
+     *
+     * @param   code    Relationship type code
+     * @return  name of relationship type
+     */
+    public String getRelationshipTypeName(int code)   {
+        return relationshipTypeNames[code];
+    }
+
+    /**
+     * Returns code for relationship type <code>name</code>, or -1 if not used in this store.
+     *
+     * @param   name    Relationship type, for example "is_a"
+     * @return  code for relationship type <code>name</code>, or -1
+     */
+    public int getRelationshipTypeCode(String name)   {
+        for (int i = 0; i < relationshipTypeNames.length; i++)    {
+            if (relationshipTypeNames[i].equals(name))  {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns cursor over all terms in ID order. The order is worked out when the snapshot
+     * is built and shared by all cursors; no terms are copied.
+     *
+     * @return  cursor over all terms in ID order
+     */
+    public TermCursor cursor()  {
+        return new TermCursor(this, sorted, 0, sorted.length);
+    }
+
+    /**
+     * Returns cursor over terms with IDs from <code>fromId</code>, inclusive, to
+     * <code>toId</code>, exclusive, in ID order. IDs are compared as strings.
+     *
+     * @param   fromId  Lowest ID, or null to start at the first term
+     * @param   toId    ID to stop before, or null to carry on to the last term
+     * @return  cursor over terms in the range
+     */
+    public TermCursor cursor(String fromId, String toId)  {
+        int from = (fromId == null) ? 0 : lowerBound(fromId);
+        int to   = (toId == null) ? sorted.length : Math.max(from, lowerBound(toId));
+        return new TermCursor(this, sorted, from, to);
+    }
+
+    /**
+     * Returns cursor over terms whose IDs start with <code>prefix</code>, in ID order.
+     * For example, "GO:00081" gives GO:0008100 to GO:0008199.
+     *
+     * @param   prefix  ID prefix
+     * @return  cursor over terms whose IDs start with <code>prefix</code>
+     */
+    public TermCursor prefixCursor(String prefix)  {
+        return cursor(prefix, successor(prefix));
+    }
+
+    /**
+     * Returns cursor over terms whose IDs are <code>prefix</code> followed by a number from
+     * <code>from</code> to <code>to</code> inclusive, in ID order. Numbers must be padded
+     * with zeros to the same width, as in GO, so that ID order is numeric order; the width
+     * is taken from the first ID with <code>prefix</code>. For example,
+     * <code>numericCursor("GO:", 8100, 8199)</code> gives GO:0008100 to GO:0008199.
+     *
+     * @param   prefix  ID prefix, for example "GO:"
+     * @param   from    Lowest number
+     * @param   to      Highest number
+     * @return  cursor over terms in the range
+     * @throws  IllegalArgumentException if <code>from</code> is negative
+     */
+    public TermCursor numericCursor(String prefix, long from, long to) throws IllegalArgumentException  {
+        if (from < 0)   {
+            throw new IllegalArgumentException("Numbers cannot be negative: " + from);
+        }
+        int first = lowerBound(prefix);
+        int width = 0;
+        if (first < sorted.length && ids[sorted[first]].startsWith(prefix))  {
+            width = ids[sorted[first]].length() - prefix.length();
+        }
+        if (from > to || width == 0)    {
+            return new TermCursor(this, sorted, first, first);
+        }
+        String end = pad(to + 1, width);
+        return cursor(prefix + pad(from, width), (end.length() > width) ? successor(prefix) : prefix + end);
+    }
+
+    // Returns first string after all those starting with prefix, or null if there is none
+    private static String successor(String prefix)  {
+        String s = prefix;
+        while (s.length() > 0 && s.charAt(s.length() - 1) == Character.MAX_VALUE)  {
+            s = s.substring(0, s.length() - 1);
+        }
+        if (s.length() == 0)    {
+            return null;
+        }
+        return s.substring(0, s.length() - 1) + (char) (s.charAt(s.length() - 1) + 1);
+    }
+
+    private static String pad(long n, int width)  {
+        String s = Long.toString(n);
+        if (s.length() >= width)    {
+            return s;
+        }
+        StringBuffer buf = new StringBuffer(width);
+        for (int i = s.length(); i < width; i++)    {
+            buf.append('0');
+        }
+        return buf.append(s).toString();
+    }
+
+    /**
+     * Returns estimated heap retained by this snapshot.
+     *
+     * @return  estimated heap retained by this snapshot
+     */
+    public MemoryUsage getMemoryUsage()  {
+        MemoryUsage usage = memoryUsage;
+        if (usage == null)  {
+            long fields = 0;
+            PackedColumn[] columns = {definitions, synonyms, xrefs, subsets};
+            for (int i = 0; i < columns.length; i++)    {
+                if (columns[i] != null) {
+                    fields += columns[i].getByteCount();
+                }
+            }
+            long indexes = MemoryUsage.sizeOf(slots) + MemoryUsage.sizeOf(sorted) +
+                           MemoryUsage.sizeOf(namespaces) + MemoryUsage.sizeOf(namespaceNames);
+            long graph = MemoryUsage.sizeOf(relationshipOffsets) + MemoryUsage.sizeOf(relationshipTargets) +
+                         MemoryUsage.sizeOf(relationshipTypes) + MemoryUsage.sizeOf(relationshipTypeNames);
+            usage = new MemoryUsage(MemoryUsage.sizeOf(ids), MemoryUsage.sizeOf(names), indexes, graph, fields);
+            memoryUsage = usage;
+        }
+        return usage;
+    }
+
+    /**
+     * Returns read-only map view with ontology ID as key and term as value.
+     * The view is backed by this store, so no terms are copied.
+     *
+     * @return  read-only map view with ontology ID as key and term as value
+     */
+    public Map asMap()  {
+        return map;
+    }
+
+    // Package-private column access for TermRecord
+
+    String getDefinition(int index)    {
+        return (definitions == null) ? null : definitions.getString(index);
+    }
+
+    String[] getSynonyms(int index)    {
+        return (synonyms == null) ? PackedColumn.EMPTY : synonyms.getStrings(index);
+    }
+
+    String[] getXrefs(int index)    {
+        return (xrefs == null) ? PackedColumn.EMPTY : xrefs.getStrings(index);
+    }
+
+    String[] getSubsets(int index)    {
+        return (subsets == null) ? PackedColumn.EMPTY : subsets.getStrings(index);
+    }
+
+    /**
+     * Returns indices of terms in namespace <code>code</code>, sorted by ID. The arrays for
+     * all namespaces are built together on first use. The array is shared and must not be
+     * modified.
+     *
+     * @param   code    Namespace code
+     * @return  term indices sorted by ID
+     */
+    int[] getNamespaceMembers(int code)    {
+        int[][] members = namespaceMembers;
+        if (members == null)    {
+            int[] counts = new int[namespaceNames.length];
+            for (int i = 0; i < ids.length; i++)    {
+                if (getNamespaceCode(i) != NO_NAMESPACE)    {
+                    counts[getNamespaceCode(i)]++;
+                }
+            }
+            members = new int[namespaceNames.length][];
+            for (int n = 0; n < members.length; n++)    {
+                members[n] = new int[counts[n]];
+                counts[n] = 0;
+            }
+            for (int k = 0; k < sorted.length; k++) {
+                int n = getNamespaceCode(sorted[k]);
+                if (n != NO_NAMESPACE)  {
+                    members[n][counts[n]++] = sorted[k];
+                }
+            }
+            namespaceMembers = members;
+        }
+        return members[code];
+    }
+
+    /**
+     * Returns term indices sorted by ID. The array is shared and must not be modified.
+     *
+     * @return  term indices sorted by ID
+     */
+    int[] getSortedIndices()    {
+        return sorted;
+    }
+
+    // Returns position in ID order of first ID not less than id
+    private int lowerBound(String id)   {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high)  {
+            int mid = (low + high) >>> 1;
+            if (ids[sorted[mid]].compareTo(id) < 0) {
+                low = mid + 1;
+            }
+            else    {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[] sortById(String[] ids)  {
+        int[] order = new int[ids.length];
+        for (int i = 0; i < order.length; i++)  {
+            order[i] = i;
+        }
+        sortById(ids, order, 0, order.length, new int[order.length]);
+        return order;
+    }
+
+    // Merge sort of term indices by ID
+    private static void sortById(String[] ids, int[] values, int from, int to, int[] scratch)  {
+        if (to - from < 12) {
+            for (int i = from + 1; i < to; i++) {
+                int v = values[i];
+                int j = i - 1;
+                while (j >= from && ids[v].compareTo(ids[values[j]]) < 0)   {
+                    values[j + 1] = values[j];
+                    j--;
+                }
+                values[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sortById(ids, values, from, mid, scratch);
+        sortById(ids, values, mid, to, scratch);
+        if (ids[values[mid - 1]].compareTo(ids[values[mid]]) <= 0)    {
+            return;
+        }
+        System.arraycopy(values, from, scratch, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to)   {
+            values[k++] = (ids[scratch[j]].compareTo(ids[scratch[i]]) < 0) ? scratch[j++] : scratch[i++];
+        }
+        while (i < mid) {
+            values[k++] = scratch[i++];
+        }
+        while (j < to)  {
+            values[k++] = scratch[j++];
+        }
+    }
+
+    /**
+     * Merge sorts term indices in <code>values[from..to)</code> by increasing key, then by
+     * increasing rank, or by index if there are no ranks. Shared by the engines that order
+     * terms by a computed score.
+     *
+     * @param   values  Term indices to sort
+     * @param   from    First position to sort
+     * @param   to      Position after the last to sort
+     * @param   keys    Sort key, indexed by term index
+     * @param   ranks   Tie-breaking rank, indexed by term index, or null to break ties by index
+     * @param   scratch Work space at least <code>to</code> long
+     */
+    static void sortByKey(int[] values, int from, int to, double[] keys, int[] ranks, int[] scratch)  {
+        if (to - from < 12) {
+            for (int i = from + 1; i < to; i++) {
+                int v = values[i];
+                int j = i - 1;
+                while (j >= from && before(v, values[j], keys, ranks))   {
+                    values[j + 1] = values[j];
+                    j--;
+                }
+                values[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sortByKey(values, from, mid, keys, ranks, scratch);
+        sortByKey(values, mid, to, keys, ranks, scratch);
+        if (!before(values[mid], values[mid - 1], keys, ranks))    {
+            return;
+        }
+        System.arraycopy(values, from, scratch, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to)   {
+            values[k++] = before(scratch[j], scratch[i], keys, ranks) ? scratch[j++] : scratch[i++];
+        }
+        while (i < mid) {
+            values[k++] = scratch[i++];
+        }
+        while (j < to)  {
+            values[k++] = scratch[j++];
+        }
+    }
+
+    private static boolean before(int a, int b, double[] keys, int[] ranks)  {
+        if (keys[a] != keys[b]) {
+            return keys[a] < keys[b];
+        }
+        return (ranks == null) ? a < b : ranks[a] < ranks[b];
+    }
+
+    // Package-private graph helpers for SlimProjection, SemanticSimilarity and AnnotationRollup
+
+    /**
+     * Returns flags, indexed by relationship type code, marking the types in <code>names</code>.
+     *
+     * @param   names   Relationship types to follow, or null for all
+     * @return  flags indexed by relationship type code
+     */
+    boolean[] getRelationshipTypeMask(String[] names)   {
+        boolean[] follow = new boolean[relationshipTypeNames.length];
+        for (int i = 0; i < follow.length; i++) {
+            follow[i] = (names == null);
+        }
+        if (names != null)  {
+            for (int i = 0; i < names.length; i++) {
+                int code = getRelationshipTypeCode(names[i]);
+                if (code > -1)  {
+                    follow[code] = true;
+                }
+            }
+        }
+        return follow;
+    }
+
+    /**
+     * Returns term indices ordered so that parents come before children, following only
+     * relationship types flagged in <code>follow</code>. Edges that would close a cycle are ignored.
+     *
+     * @param   follow  Flags indexed by relationship type code
+     * @return  term indices, parents first
+     */
+    int[] getTopologicalOrder(boolean[] follow)  {
+        int n = size();
+        int[] order = new int[n];
+        byte[] state = new byte[n];     // 0 = new, 1 = on stack, 2 = done
+        int[] stack = new int[16];
+        int[] next  = new int[16];      // next parent to visit for each stack entry
+        int count = 0;
+        for (int root = 0; root < n; root++)   {
+            if (state[root] != 0)   {
+                continue;
+            }
+            int top = 0;
+            stack[0] = root;
+            next[0]  = 0;
+            state[root] = 1;
+            while (top >= 0)    {
+                int t = stack[top];
+                if (next[top] < getParentCount(t))   {
+                    int p = next[top]++;
+                    int parent = getParent(t, p);
+                    if (follow[getParentType(t, p)] && state[parent] == 0)  {
+                        if (++top == stack.length)  {
+                            int[] s = new int[top * 2];
+                            System.arraycopy(stack, 0, s, 0, top);
+                            stack = s;
+                            s = new int[top * 2];
+                            System.arraycopy(next, 0, s, 0, top);
+                            next = s;
+                        }
+                        stack[top] = parent;
+                        next[top]  = 0;
+                        state[parent] = 1;
+                    }
+                }
+                else    {
+                    state[t] = 2;
+                    order[count++] = t;
+                    top--;
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Works out the ancestors of every term, including the term itself, following only
+     * relationship types flagged in <code>follow</code>, and flattens them into one int array
+     * so engines that query ancestors repeatedly hold no per-term arrays. Edges that would
+     * close a cycle are ignored.
+     *
+     * @param   follow  Flags indexed by relationship type code
+     * @return  ancestors of every term
+     */
+    AncestorTable getAncestorTable(boolean[] follow)  {
+        int n = size();
+        int[][] sets = getAncestorSets(follow);
+        int[] offsets = new int[n + 1];
+        for (int t = 0; t < n; t++) {
+            offsets[t + 1] = offsets[t] + sets[t].length;
+        }
+        int[] ancestors = new int[offsets[n]];
+        for (int t = 0; t < n; t++) {
+            System.arraycopy(sets[t], 0, ancestors, offsets[t], sets[t].length);
+            sets[t] = null;
+        }
+        return new AncestorTable(offsets, ancestors);
+    }
+
+    // Ancestors of each term, including the term itself, indexed by term index
+    private int[][] getAncestorSets(boolean[] follow)  {
+        int n = size();
+        int[] order = getTopologicalOrder(follow);
+        int[][] sets = new int[n][];
+        int[] stamp = new int[n];
+        IntList buffer = new IntList();
+        for (int k = 0; k < order.length; k++)  {
+            int t = order[k];
+            buffer.clear();
+            buffer.add(t);
+            stamp[t] = t + 1;
+            for (int p = 0; p < getParentCount(t); p++)  {
+                if (follow[getParentType(t, p)])  {
+                    int[] parentSet = sets[getParent(t, p)];
+                    if (parentSet == null)  {
+                        continue;   // edge closing a cycle
+                    }
+                    for (int j = 0; j < parentSet.length; j++)  {
+                        if (stamp[parentSet[j]] != t + 1)  {
+                            stamp[parentSet[j]] = t + 1;
+                            buffer.add(parentSet[j]);
+                        }
+                    }
+                }
+            }
+            sets[t] = buffer.toArray();
+        }
+        return sets;
+    }
+
+    private static int hash(String id)  {
+        int h = id.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] createSlots(String[] ids)    {
+        int capacity = 4;
+        while (capacity < ids.length * 2)   {
+            capacity <<= 1;
+        }
+        int[] slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < ids.length; i++)  {
+            int slot = hash(ids[i]) & mask;
+            while (slots[slot] != 0)    {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+        return slots;
+    }
+
+    private static boolean containsEdge(int[] targets, short[] types, int from, int count, int target, int type)   {
+        for (int i = from; i < from + count; i++)   {
+            if (targets[i] == target && types[i] == type)   {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] trim(int[] values, int size)   {
+        if (values.length == size)  {
+            return values;
+        }
+        int[] v = new int[size];
+        System.arraycopy(values, 0, v, 0, size);
+        return v;
+    }
+
+    private static short[] trimTypes(short[] values, int size)   {
+        if (values.length == size)  {
+            return values;
+        }
+        short[] v = new short[size];
+        System.arraycopy(values, 0, v, 0, size);
+        return v;
+    }
+
+    private static String[] trim(String[] values, int size)   {
+        if (values.length == size)  {
+            return values;
+        }
+        String[] v = new String[size];
+        System.arraycopy(values, 0, v, 0, size);
+        return v;
+    }
+
+    private static short[] trim(short[] values, int size)   {
+        if (values.length == size)  {
+            return values;
+        }
+        short[] v = new short[size];
+        System.arraycopy(values, 0, v, 0, Math.min(size, values.length));
+        for (int i = values.length; i < size; i++)    {
+            v[i] = NO_NAMESPACE;
+        }
+        return v;
+    }
+
+    /**
+     * Read-only map view over the ID and name arrays.
+     */
+    private final class TermMap extends AbstractMap   {
+
+        public int size()   {
+            return ids.length;
+        }
+
+        public boolean containsKey(Object key)  {
+            return (key instanceof String) && indexOf((String) key) > -1;
+        }
+
+        public Object get(Object key)   {
+            if (!(key instanceof String))   {
+                return null;
+            }
+            int index = indexOf((String) key);
+            return (index < 0) ? null : names[index];
+        }
+
+        public Set entrySet()   {
+            return new AbstractSet()    {
+                public int size()   {
+                    return ids.length;
+                }
+                public Iterator iterator()  {
+                    return new Iterator()   {
+                        private int next = 0;
+                        public boolean hasNext()    {
+                            return next < ids.length;
+                        }
+                        public Object next()    {
+                            if (next >= ids.length) {
+                                throw new NoSuchElementException();
+                            }
+                            return new TermEntry(next++);
+                        }
+                        public void remove()    {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+
+    }
+
+    private final class TermEntry implements Map.Entry    {
+
+        private final int index;
+
+        TermEntry(int index)    {
+            this.index = index;
+        }
+
+        public Object getKey()  {
+            return ids[index];
+        }
+
+        public Object getValue()    {
+            return names[index];
+        }
+
+        public Object setValue(Object value)    {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))  {
+                return false;
+            }
+            Map.Entry e = (Map.Entry) o;
+            return ids[index].equals(e.getKey()) &&
+                   (names[index] == null ? e.getValue() == null : names[index].equals(e.getValue()));
+        }
+
+        public int hashCode()   {
+            return ids[index].hashCode() ^ (names[index] == null ? 0 : names[index].hashCode());
+        }
+
+        public String toString()    {
+            return ids[index] + "=" + names[index];
+        }
+
+    }
+
+    /**
+     * Ancestors of every term: those of term <code>t</code> are
+     * <code>ancestors[offsets[t]]</code> up to but not including <code>ancestors[offsets[t + 1]]</code>.
+     *
+     * @see TermStore#getAncestorTable(boolean[])
+     */
+    static final class AncestorTable    {
+
+        final int[] offsets;
+        final int[] ancestors;
+
+        AncestorTable(int[] offsets, int[] ancestors)  {
+            this.offsets   = offsets;
+            this.ancestors = ancestors;
+        }
+
+    }
+
+    /**
+     * ID table and relationships, built together as edges are resolved through the table.
+     */
+    private static final class Edges    {
+
+        private final int[]   slots;
+        private final int[]   offsets;
+        private final int[]   targets;
+        private final short[] types;
+
+        Edges(int[] slots, int[] offsets, int[] targets, short[] types)  {
+            this.slots   = slots;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.types   = types;
+        }
+
+    }
+
+    /**
+     * Builds a <code>TermStore</code> one term at a time. Field values for a term must be added
+     * after the term itself and before any later term's fields, which suits stanza-based parsers.
+     * Relationships may be added in any order and refer to terms that have not been added yet;
+     * relationships to terms that are never added are dropped when the store is built.
+     * The store may share the builder's arrays, so no terms can be added once it is built.
+     */
+    public static final class Builder implements TermSink  {
+
+        private String[] ids;
+        private String[] names;
+        private int[]    slots;
+        private int      size;
+
+        private PackedColumn.Builder definitions;
+        private PackedColumn.Builder synonyms;
+        private PackedColumn.Builder xrefs;
+        private PackedColumn.Builder subsets;
+
+        private short[]   namespaces;
+        private final List namespaceNames        = new ArrayList();
+        private final List relationshipTypeNames = new ArrayList();
+
+        private IntList edgeChildren = new IntList();
+        private IntList edgeTypes    = new IntList();
+        private List    edgeParents  = new ArrayList();
+
+        private boolean built;
+
+        public Builder()    {
+            this(1024);
+        }
+
+        /**
+         * Creates builder pre-sized for <code>expectedSize</code> terms.
+         *
+         * @param   expectedSize    Expected number of terms
+         */
+        public Builder(int expectedSize)    {
+            int capacity = Math.max(expectedSize, 16);
+            this.ids   = new String[capacity];
+            this.names = new String[capacity];
+            this.slots = new int[tableSize(capacity)];
+            this.size  = 0;
+        }
+
+        /**
+         * Creates builder pre-sized to hold as much as <code>previous</code>, for reloading an
+         * ontology that has changed little. Columns that come out the same size as before are
+         * used without copying when the store is built, so a reload needs little more than
+         * the old and new snapshots.
+         *
+         * @param   previous    Earlier snapshot of the same ontology
+         */
+        public Builder(TermStore previous)    {
+            this(previous.size());
+            int n = ids.length;
+            this.definitions = PackedColumn.Builder.sizedLike(previous.definitions, n);
+            this.synonyms    = PackedColumn.Builder.sizedLike(previous.synonyms, n);
+            this.xrefs       = PackedColumn.Builder.sizedLike(previous.xrefs, n);
+            this.subsets     = PackedColumn.Builder.sizedLike(previous.subsets, n);
+            int edges = previous.relationshipTargets.length;
+            this.edgeChildren = new IntList(edges);
+            this.edgeTypes    = new IntList(edges);
+            this.edgeParents  = new ArrayList(edges);
+        }
+
+        /**
+         * Returns number of terms added so far.
+         *
+         * @return  number of terms added so far
+         */
+        public int size()   {
+            return size;
+        }
+
+        /**
+         * Adds term and returns its index. If a term with the same ID has already been added,
+         * its name is replaced and its existing index is returned.
+         *
+         * @param   id      Ontology ID
+         * @param   name    Term name
+         * @return  index of term
+         */
+        public int addTerm(String id, String name)   {
+            checkNotBuilt();
+            int index = find(id);
+            if (index > -1) {
+                names[index] = name;
+                return index;
+            }
+            if (size == ids.length) {
+                grow();
+            }
+            index = size++;
+            ids[index]   = id;
+            names[index] = name;
+            insert(id, index);
+            return index;
+        }
+
+        /**
+         * Returns ID of term at <code>index</code>.
+         *
+         * @param   index   Term index
+         * @return  ID of term at <code>index</code>
+         */
+        public String getId(int index)  {
+            if (index >= size)  {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return ids[index];
+        }
+
+        /**
+         * Returns index of term with <code>id</code>, or -1 if not added yet.
+         *
+         * @param   id  Ontology ID
+         * @return  index of term with <code>id</code>, or -1
+         */
+        public int indexOf(String id)  {
+            return find(id);
+        }
+
+        public void setDefinition(int index, String definition)   {
+            checkNotBuilt();
+            if (definitions == null)    {
+                definitions = new PackedColumn.Builder();
+            }
+            definitions.add(index, definition);
+        }
+
+        public void addSynonym(int index, String synonym)   {
+            checkNotBuilt();
+            if (synonyms == null)    {
+                synonyms = new PackedColumn.Builder();
+            }
+            synonyms.add(index, synonym);
+        }
+
+        public void addXref(int index, String xref)   {
+            checkNotBuilt();
+            if (xrefs == null)    {
+                xrefs = new PackedColumn.Builder();
+            }
+            xrefs.add(index, xref);
+        }
+
+        public void addSubset(int index, String subset)   {
+            checkNotBuilt();
+            if (subsets == null)    {
+                subsets = new PackedColumn.Builder();
+            }
+            subsets.add(index, subset);
+        }
+
+        public void setNamespace(int index, String namespace)   {
+            checkNotBuilt();
+            if (namespace == null || namespace.length() == 0)   {
+                return;
+            }
+            int code = namespaceNames.indexOf(namespace);
+            if (code < 0)   {
+                if (namespaceNames.size() == Short.MAX_VALUE)   {
+                    throw new IllegalStateException("Too many namespaces: " + namespaceNames.size());
+                }
+                code = namespaceNames.size();
+                namespaceNames.add(namespace);
+            }
+            if (namespaces == null || namespaces.length <= index)  {
+                short[] n = new short[Math.max(ids.length, index + 1)];
+                int from = 0;
+                if (namespaces != null) {
+                    System.arraycopy(namespaces, 0, n, 0, namespaces.length);
+                    from = namespaces.length;
+                }
+                for (int i = from; i < n.length; i++)    {
+                    n[i] = NO_NAMESPACE;
+                }
+                namespaces = n;
+            }
+            namespaces[index] = (short) code;
+        }
+
+        /**
+         * Adds relationship from term at <code>index</code> to its parent.
+         *
+         * @param   index       Index of child term
+         * @param   type        Relationship type, for example "is_a" or "part_of"
+         * @param   parentId    ID of parent term
+         */
+        public void addRelationship(int index, String type, String parentId)   {
+            checkNotBuilt();
+            int code = relationshipTypeNames.indexOf(type);
+            if (code < 0)   {
+                code = relationshipTypeNames.size();
+                relationshipTypeNames.add(type);
+            }
+            // Share the parent's ID string if it has already been added
+            int parent = find(parentId);
+            edgeChildren.add(index);
+            edgeTypes.add(code);
+            edgeParents.add((parent > -1) ? ids[parent] : parentId);
+        }
+
+        /**
+         * Returns store holding all terms added so far. Arrays that are already the right size
+         * are shared with the store rather than copied, so the builder cannot be changed
+         * afterwards.
+         *
+         * @return  store holding all terms added so far
+         */
+        public TermStore build()    {
+            built = true;
+            return new TermStore(this);
+        }
+
+        // Stops changes reaching a store that shares the builder's arrays
+        private void checkNotBuilt()    {
+            if (built)  {
+                throw new IllegalStateException("Store already built");
+            }
+        }
+
+        private int find(String id)    {
+            int mask = slots.length - 1;
+            int slot = hash(id) & mask;
+            while (slots[slot] != 0)    {
+                if (ids[slots[slot] - 1].equals(id))    {
+                    return slots[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void insert(String id, int index)    {
+            int mask = slots.length - 1;
+            int slot = hash(id) & mask;
+            while (slots[slot] != 0)    {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            String[] i = new String[capacity];
+            String[] n = new String[capacity];
+            System.arraycopy(ids, 0, i, 0, size);
+            System.arraycopy(names, 0, n, 0, size);
+            ids   = i;
+            names = n;
+            slots = new int[tableSize(capacity)];
+            for (int k = 0; k < size; k++)  {
+                insert(ids[k], k);
+            }
+        }
+
+        private static int tableSize(int capacity)    {
+            int s = 4;
+            while (s < capacity * 2)    {
+                s <<= 1;
+            }
+            return s;
+        }
+
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.util.*;
+import java.io.IOException;
+
+/**
+ * Bidirectional cross-reference index over all ontologies in an <code>OntologyMap</code>.
+ * <p>
+ * Each xref read from an ontology, for example <code>xref_analog: EC:1.1.1.1</code> on GO:0004022,
+ * links the term to the xref ID in both directions, so GO IDs can be mapped to EC and EC IDs back
+ * to GO. IDs are interned to int codes and links are held in int arrays.
+ * </p>
+ * <p>
+ * The links from each prefix are kept separately. <code>refresh</code> only re-reads prefixes whose
+ * term snapshot has changed since the last refresh, then re-links the index, dropping IDs that
+ * are no longer linked. Lookups use an immutable snapshot of the index, so they are safe during
+ * a refresh.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     TermRecord#getXrefs()
+ */
+public final class XrefIndex {
+
+    private static final String PREFIX_SEPARATOR = ":";
+    private static final int[]  NO_CODES         = new int[0];
+
+    private final OntologyMap  ontologyMap;
+    private final Map          segments;    // prefix -> Segment
+
+    private IdDictionary       dictionary;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Builds xref index over all ontologies in <code>ontologyMap</code>.
+     *
+     * @param   ontologyMap Ontologies to index
+     * @throws  IOException if could not load an ontology
+     */
+    public XrefIndex(OntologyMap ontologyMap) throws IOException  {
+        this.ontologyMap = ontologyMap;
+        this.dictionary  = new IdDictionary();
+        this.segments    = new HashMap();
+        this.snapshot    = new Snapshot(dictionary.copy(), new IntList(0), new IntList(0));
+        refresh();
+    }
+
+    /**
+     * Re-indexes prefixes that have been refreshed, added or removed since the last call.
+     *
+     * @throws  IOException if could not load an ontology
+     */
+    public synchronized void refresh() throws IOException  {
+        Map ontologies = ontologyMap.getMap();
+        boolean changed = segments.keySet().retainAll(ontologies.keySet());
+        for (Iterator i = ontologies.entrySet().iterator(); i.hasNext(); )   {
+            Map.Entry entry = (Map.Entry) i.next();
+            if (index((String) entry.getKey(), (Ontology) entry.getValue()))    {
+                changed = true;
+            }
+        }
+        if (changed)    {
+            link();
+        }
+    }
+
+    /**
+     * Re-indexes <code>prefix</code> if its terms have been refreshed since the last call.
+     *
+     * @param   prefix  Ontology prefix, for example "GO"
+     * @throws  NoSuchElementException  if prefix is not in the ontology map
+     * @throws  IOException             if could not load the ontology
+     */
+    public synchronized void refresh(String prefix) throws NoSuchElementException, IOException  {
+        Ontology ontology = (Ontology) ontologyMap.getMap().get(prefix);
+        if (ontology == null)   {
+            throw new NoSuchElementException("Unrecogised prefix: " + prefix);
+        }
+        if (index(prefix, ontology))   {
+            link();
+        }
+    }
+
+    /**
+     * Returns all IDs linked to <code>id</code> by an xref, in either direction.
+     *
+     * @param   id  Ontology or xref ID, for example GO:0004022 or EC:1.1.1.1
+     * @return  linked IDs (empty if none)
+     */
+    public String[] getXrefs(String id)    {
+        return snapshot.map(id, null);
+    }
+
+    /**
+     * Maps each of <code>ids</code> to the IDs with <code>targetPrefix</code> that are linked to it
+     * by an xref, in either direction. Refreshes the index first.
+     *
+     * @param   ids             IDs to map, for example GO:0004022
+     * @param   targetPrefix    Prefix of IDs to map to, for example "EC"
+     * @return  array with one entry per ID, holding mapped IDs (empty if none)
+     * @throws  IOException if could not load an ontology
+     */
+    public String[][] mapIds(String[] ids, String targetPrefix) throws IOException  {
+        refresh();
+        Snapshot s = snapshot;
+        String target = targetPrefix + PREFIX_SEPARATOR;
+        String[][] mapped = new String[ids.length][];
+        for (int i = 0; i < ids.length; i++)  {
+            mapped[i] = s.map(ids[i], target);
+        }
+        return mapped;
+    }
+
+    /**
+     * Returns number of distinct xref links.
+     *
+     * @return  number of distinct xref links
+     */
+    public int size()   {
+        return snapshot.forwardTargets.length;
+    }
+
+    /**
+     * Returns number of distinct IDs in the index.
+     *
+     * @return  number of distinct IDs
+     */
+    int getIdCount()    {
+        return snapshot.dictionary.size();
+    }
+
+    /**
+     * Reads xrefs for <code>prefix</code> if its term snapshot has changed.
+     *
+     * @return  true if changed
+     */
+    private boolean index(String prefix, Ontology ontology) throws IOException   {
+        TermStore store = ontology.getTermStore();
+        Segment segment = (Segment) segments.get(prefix);
+        if (segment != null && segment.store == store)  {
+            return false;
+        }
+        IntList from = new IntList();
+        IntList to   = new IntList();
+        for (int i = 0; i < store.size(); i++)    {
+            String[] xrefs = store.getXrefs(i);
+            if (xrefs.length > 0)   {
+                int code = dictionary.intern(store.getId(i));
+                for (int x = 0; x < xrefs.length; x++) {
+                    from.add(code);
+                    to.add(dictionary.intern(xrefs[x]));
+                }
+            }
+        }
+        segments.put(prefix, new Segment(store, from.toArray(), to.toArray()));
+        return true;
+    }
+
+    // Merges all segments into a new snapshot, re-coding them into a new dictionary so IDs
+    // from removed or changed terms do not build up
+    private void link() {
+        IdDictionary linked = new IdDictionary(dictionary.size());
+        int[] codes = new int[dictionary.size()];
+        Arrays.fill(codes, -1);
+        IntList from = new IntList();
+        IntList to   = new IntList();
+        for (Iterator i = segments.entrySet().iterator(); i.hasNext(); )   {
+            Map.Entry entry = (Map.Entry) i.next();
+            Segment segment = (Segment) entry.getValue();
+            int[] f = recode(segment.from, codes, linked);
+            int[] t = recode(segment.to, codes, linked);
+            for (int k = 0; k < f.length; k++)   {
+                from.add(f[k]);
+                to.add(t[k]);
+            }
+            entry.setValue(new Segment(segment.store, f, t));
+        }
+        dictionary = linked;
+        snapshot = new Snapshot(dictionary.copy(), from, to);
+    }
+
+    private int[] recode(int[] values, int[] codes, IdDictionary linked)  {
+        int[] recoded = new int[values.length];
+        for (int k = 0; k < values.length; k++) {
+            int c = values[k];
+            if (codes[c] < 0)   {
+                codes[c] = linked.intern(dictionary.getId(c));
+            }
+            recoded[k] = codes[c];
+        }
+        return recoded;
+    }
+
+    /**
+     * Xref links read from one ontology snapshot.
+     */
+    private static final class Segment  {
+
+        private final TermStore store;
+        private final int[]     from;
+        private final int[]     to;
+
+        Segment(TermStore store, int[] from, int[] to)   {
+            this.store = store;
+            this.from  = from;
+            this.to    = to;
+        }
+
+    }
+
+    /**
+     * Immutable view of the index: a frozen dictionary plus forward and reverse adjacency arrays.
+     */
+    private static final class Snapshot {
+
+        private final IdDictionary dictionary;
+        private final int[] forwardOffsets;
+        private final int[] forwardTargets;
+        private final int[] reverseOffsets;
+        private final int[] reverseTargets;
+
+        Snapshot(IdDictionary dictionary, IntList from, IntList to)   {
+            this.dictionary     = dictionary;
+            int n = dictionary.size();
+            this.forwardOffsets = new int[n + 1];
+            this.reverseOffsets = new int[n + 1];
+            this.forwardTargets = group(from, to, forwardOffsets);
+            this.reverseTargets = group(to, from, reverseOffsets);
+        }
+
+        /**
+         * Returns IDs linked to <code>id</code> that start with <code>target</code>
+         * (or all linked IDs if <code>target</code> is null).
+         */
+        String[] map(String id, String target)  {
+            int code = dictionary.get(id);
+            if (code < 0)   {
+                return PackedColumn.EMPTY;
+            }
+            IntList codes = new IntList(4);
+            collect(code, forwardOffsets, forwardTargets, target, codes);
+            collect(code, reverseOffsets, reverseTargets, target, codes);
+            String[] ids = new String[codes.size()];
+            for (int i = 0; i < ids.length; i++)   {
+                ids[i] = dictionary.getId(codes.get(i));
+            }
+            return ids;
+        }
+
+        private void collect(int code, int[] offsets, int[] targets, String target, IntList codes) {
+            for (int i = offsets[code]; i < offsets[code + 1]; i++)   {
+                int c = targets[i];
+                if (target == null || dictionary.getId(c).startsWith(target))  {
+                    boolean seen = false;
+                    for (int k = 0; k < codes.size() && !seen; k++)   {
+                        seen = (codes.get(k) == c);
+                    }
+                    if (!seen)  {
+                        codes.add(c);
+                    }
+                }
+            }
+        }
+
+        // Counting sort of (key, value) pairs by key; fills offsets and returns values
+        private static int[] group(IntList keys, IntList values, int[] offsets)  {
+            int size = keys.size();
+            for (int i = 0; i < size; i++)  {
+                offsets[keys.get(i) + 1]++;
+            }
+            for (int i = 1; i < offsets.length; i++) {
+                offsets[i] += offsets[i - 1];
+            }
+            int[] grouped = new int[size];
+            int[] next = new int[offsets.length];
+            for (int i = 0; i < size; i++)  {
+                int key = keys.get(i);
+                grouped[offsets[key] + next[key]++] = values.get(i);
+            }
+            return grouped;
+        }
+
+    }
+
+}
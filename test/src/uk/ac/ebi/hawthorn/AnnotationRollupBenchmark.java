@@ -0,0 +1,160 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures annotation rollup over a generated GO-sized hierarchy, against propagating each
+ * entity's annotations through a set of ancestor IDs, and enrichment of a batch of study sets
+ * against the result.
+ * <p>
+ * Usage: <code>AnnotationRollupBenchmark [annotations] [entities] [terms]</code>
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class AnnotationRollupBenchmark {
+
+    private static final int DEFAULT_ANNOTATIONS = 5000000;
+    private static final int DEFAULT_ENTITIES    = 400000;
+    private static final int DEFAULT_TERMS       = 45000;
+    private static final int ROUNDS              = 3;
+    private static final int STUDIES             = 2000;
+    private static final int STUDY_SIZE          = 200;
+
+    public static void main(String[] args) {
+        int annotations = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_ANNOTATIONS;
+        int entities    = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ENTITIES;
+        int terms       = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_TERMS;
+        run(annotations, entities, terms, System.out);
+        System.exit(0);
+    }
+
+    /**
+     * Generates a hierarchy and annotations, and prints time taken to count them.
+     *
+     * @param   annotations Number of annotations
+     * @param   entities    Number of annotated entities
+     * @param   terms       Number of terms
+     * @param   out         Output stream
+     */
+    public static void run(int annotations, int entities, int terms, PrintStream out)  {
+        Random random = new Random(48);
+        TermStore store = generate(terms, random);
+        String[] e   = new String[annotations];
+        String[] ids = new String[annotations];
+        for (int i = 0; i < annotations; i++)   {
+            e[i]   = "G" + random.nextInt(entities);
+            // Most annotations are to specific terms, deep in the hierarchy
+            ids[i] = store.getId(terms - 1 - (int) Math.min(terms - 1, Math.abs(random.nextGaussian()) * terms / 3));
+        }
+        out.println("Terms:\t" + terms + ", entities: " + entities + ", annotations: " + annotations +
+                    ", processors: " + Parallel.getThreadCount());
+
+        long start = System.nanoTime();
+        AnnotationRollup rollup = new AnnotationRollup(store, null);
+        out.println("Ancestors:\t" + (System.nanoTime() - start) / 1000000 + " ms");
+
+        AnnotationRollup.Counts counts = null;
+        for (int r = 0; r < ROUNDS; r++)    {
+            start = System.nanoTime();
+            counts = rollup.count(e, ids);
+            long nanos = System.nanoTime() - start;
+            out.println("Rollup:\t" + nanos / 1000000 + " ms (" + (long) (annotations * 1e9 / nanos) + " annotations/s)");
+        }
+
+        // Baseline: a set of ancestor IDs for each entity, over one tenth of the annotations
+        int sample = annotations / 10;
+        start = System.nanoTime();
+        int[] baseline = countWithSets(store, e, ids, sample);
+        long nanos = System.nanoTime() - start;
+        out.println("Sets:\t" + nanos / 1000000 + " ms for " + sample + " (" + (long) (sample * 1e9 / nanos) + " annotations/s)");
+        out.println("Root:\t" + counts.getCount(0) + " entities (sample " + baseline[0] + ")");
+
+        start = System.nanoTime();
+        TermEnrichment enrichment = new TermEnrichment(counts);
+        out.println("Background:\t" + (System.nanoTime() - start) / 1000000 + " ms");
+        String[][] studies = new String[STUDIES][STUDY_SIZE];
+        for (int i = 0; i < STUDIES; i++)   {
+            for (int j = 0; j < STUDY_SIZE; j++)    {
+                studies[i][j] = e[random.nextInt(annotations)];
+            }
+        }
+        for (int r = 0; r < ROUNDS; r++)    {
+            start = System.nanoTime();
+            TermEnrichment.Result[][] results = enrichment.analyse(studies);
+            nanos = System.nanoTime() - start;
+            out.println("Enrichment:\t" + nanos / 1000000 + " ms for " + STUDIES + " sets of " + STUDY_SIZE +
+                        " (" + results[0].length + " terms in first)");
+        }
+    }
+
+    // Counts first n annotations by walking ancestors into a set per entity; entities are in order
+    private static int[] countWithSets(TermStore store, String[] entities, String[] ids, int n)   {
+        Map sets = new HashMap();
+        for (int i = 0; i < n; i++) {
+            Set set = (Set) sets.get(entities[i]);
+            if (set == null)    {
+                set = new HashSet();
+                sets.put(entities[i], set);
+            }
+            addAncestors(store, store.indexOf(ids[i]), set);
+        }
+        int[] counts = new int[store.size()];
+        for (Iterator i = sets.values().iterator(); i.hasNext(); )    {
+            for (Iterator j = ((Set) i.next()).iterator(); j.hasNext(); ) {
+                counts[store.indexOf((String) j.next())]++;
+            }
+        }
+        return counts;
+    }
+
+    private static void addAncestors(TermStore store, int t, Set set)  {
+        if (set.add(store.getId(t)))    {
+            for (int p = 0; p < store.getParentCount(t); p++)   {
+                addAncestors(store, store.getParent(t, p), set);
+            }
+        }
+    }
+
+    // Each term after the root has a parent about half way to the root, and a quarter have a
+    // second parent, so depth and ancestor counts are like GO's
+    private static TermStore generate(int terms, Random random)  {
+        TermStore.Builder builder = new TermStore.Builder(terms);
+        for (int i = 0; i < terms; i++) {
+            String id = "GO:" + String.valueOf(10000000 + i).substring(1);
+            int t = builder.addTerm(id, "term " + i);
+            int parents = (i == 0) ? 0 : (random.nextInt(4) == 0 ? 2 : 1);
+            for (int p = 0; p < parents; p++)   {
+                int parent = i / 2 - random.nextInt(i / 4 + 1);
+                builder.addRelationship(t, (p == 0) ? "is_a" : "part_of", builder.getId(Math.max(0, parent)));
+            }
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * AnnotationRollup Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class AnnotationRollupTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+
+    private TermStore store;
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(AnnotationRollupTest.class);
+        return suite;
+    }
+
+    public AnnotationRollupTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        store = ((Ontology) ontologyMap.getMap().get("HW")).getTermStore();
+    }
+
+    /**
+     * Checks entities count once towards each ancestor of their terms.
+     */
+    public void testCount()  {
+        String[] entities = {"leaf1", "leaf1", "bough1", "bough1", "trunk1", "lost"};
+        String[] ids      = {"HW:005", "HW:006", "HW:003", "HW:003", "HW:001", "XX:999"};
+        AnnotationRollup.Counts counts = new AnnotationRollup(store, null).count(entities, ids);
+        assertEquals("Entities", 3, counts.getEntityCount());
+        assertEquals("Annotations", 5, counts.getAnnotationCount());
+        assertEquals("Unknown", 1, counts.getUnknownCount());
+        assertEquals("Root", 3, counts.getCount("HW:000"));
+        assertEquals("Branch", 2, counts.getCount("HW:002"));
+        assertEquals("Twig via part_of", 1, counts.getCount("HW:004"));
+        assertEquals("Bough", 1, counts.getCount("HW:003"));
+        assertEquals("Direct", 1, counts.getDirectCount("HW:003"));
+        assertEquals("Not direct", 0, counts.getDirectCount("HW:000"));
+
+        counts = new AnnotationRollup(store, new String[]{"is_a"}).count(entities, ids);
+        assertEquals("Twig by is_a", 0, counts.getCount("HW:004"));
+        assertEquals("Branch by is_a", 1, counts.getCount("HW:002"));
+        try {
+            counts.getCount("HW:999");
+            fail("Expected NoSuchElementException");
+        }
+        catch (NoSuchElementException e)    {
+            // Expected
+        }
+    }
+
+    /**
+     * Checks annotations are read from tab-separated columns.
+     *
+     * @throws  IOException if could not read annotations
+     */
+    public void testReader() throws IOException  {
+        String lines = "!gaf-version: 2.0\n" +
+                       "HW\tleaf1\tleaf\t\tHW:005\n" +
+                       "\n" +
+                       "HW\ttrunk1\ttrunk\t\tHW:001\n" +
+                       "HW\tshort\n";
+        AnnotationRollup rollup = new AnnotationRollup(store, null);
+        AnnotationRollup.Counts counts = rollup.count(new StringReader(lines), 1, 4);
+        assertEquals("Entities", 2, counts.getEntityCount());
+        assertEquals("Root", 2, counts.getCount("HW:000"));
+        assertEquals("Trunk", 1, counts.getCount("HW:001"));
+    }
+
+    /**
+     * Checks counts over enough entities to run in parallel against sets of ancestors.
+     */
+    public void testParallel()  {
+        AnnotationRollup rollup = new AnnotationRollup(store, null);
+        Map ancestors = new HashMap();
+        for (int t = 0; t < store.size(); t++)  {
+            ancestors.put(store.getId(t), getAncestors(t, new HashSet()));
+        }
+        Random random = new Random(48);
+        AnnotationRollup.Counter counter = rollup.newCounter();
+        Map expected = new HashMap();
+        for (int e = 0; e < 20000; e++) {
+            String entity = "G" + e;
+            Set seen = new HashSet();
+            int k = random.nextInt(4);
+            for (int j = 0; j < k; j++) {
+                String id = store.getId(random.nextInt(store.size()));
+                assertTrue(counter.add(entity, id));
+                seen.addAll((Set) ancestors.get(id));
+            }
+            for (Iterator i = seen.iterator(); i.hasNext(); )   {
+                Object id = i.next();
+                Integer n = (Integer) expected.get(id);
+                expected.put(id, Integer.valueOf((n == null) ? 1 : n.intValue() + 1));
+            }
+        }
+        AnnotationRollup.Counts counts = counter.getCounts();
+        for (int t = 0; t < store.size(); t++)  {
+            Integer n = (Integer) expected.get(store.getId(t));
+            assertEquals(store.getId(t), (n == null) ? 0 : n.intValue(), counts.getCount(t));
+        }
+    }
+
+    private Set getAncestors(int t, Set set)    {
+        if (set.add(store.getId(t)))    {
+            for (int p = 0; p < store.getParentCount(t); p++)   {
+                getAncestors(store.getParent(t, p), set);
+            }
+        }
+        return set;
+    }
+
+}
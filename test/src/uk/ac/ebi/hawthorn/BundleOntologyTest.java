@@ -0,0 +1,158 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * BundleOntology Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class BundleOntologyTest extends TestCase   {
+
+    private static final String TEST_FILE   = "hawthorn.properties";
+    private static final String BUNDLE_FILE = "hawthorn.bundle";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(BundleOntologyTest.class);
+        return suite;
+    }
+
+    public BundleOntologyTest(String name) {
+        super(name);
+    }
+
+    protected void tearDown()   {
+        new File(BUNDLE_FILE).delete();
+    }
+
+    /**
+     * Compiles hawthorn.properties into a bundle and reads every prefix back.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     * @see     BundleCompiler#compile(OntologyMap, File, String)
+     */
+    public void testCompile() throws ClassNotFoundException, IOException  {
+        OntologyMap source = new OntologyMap(new FileInputStream(TEST_FILE));
+        Map counts = BundleCompiler.compile(source, new File(BUNDLE_FILE), "test");
+        assertEquals("Prefixes", source.getMap().keySet(), counts.keySet());
+
+        OntologyMap bundled = new OntologyMap(getProperties("HW", "HD", "HO"));
+        for (Iterator i = source.getMap().keySet().iterator(); i.hasNext(); )   {
+            String prefix = (String) i.next();
+            TermStore expected = ((Ontology) source.getMap().get(prefix)).getTermStore();
+            Ontology ontology  = (Ontology) bundled.getMap().get(prefix);
+            assertTrue(prefix, ontology instanceof BundleOntology);
+            TermStore actual = ontology.getTermStore();
+            assertEquals(prefix, expected.size(), actual.size());
+            for (int k = 0; k < expected.size(); k++)   {
+                TermRecord record = actual.getRecord(actual.indexOf(expected.getId(k)));
+                assertEquals(expected.getRecord(k).toString(), record.toString());
+                assertEquals(record.getId(), Arrays.asList(expected.getRecord(k).getRelationships()),
+                             Arrays.asList(record.getRelationships()));
+            }
+        }
+        assertEquals("Lookup", "twig", bundled.getTerm("HW:004"));
+        assertEquals("Synonym", Arrays.asList(new String[]{"limb"}),
+                     Arrays.asList(bundled.getTermRecord("HW:002").getSynonyms()));
+    }
+
+    /**
+     * Checks corrupt bundles and missing prefixes are reported.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testCorrupt() throws ClassNotFoundException, IOException  {
+        OntologyMap source = new OntologyMap(new FileInputStream(TEST_FILE));
+        BundleCompiler.compile(source, new File(BUNDLE_FILE), "test");
+        try {
+            new OntologyMap(getProperties("XX"));
+            fail("Expected IOException for missing prefix");
+        }
+        catch (IOException e)   {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("No section") > -1);
+        }
+
+        // Flip last byte, which is in the last section
+        RandomAccessFile file = new RandomAccessFile(BUNDLE_FILE, "rw");
+        try {
+            file.seek(file.length() - 1);
+            int b = file.read();
+            file.seek(file.length() - 1);
+            file.write(b ^ 0xff);
+        }
+        finally {
+            file.close();
+        }
+        try {
+            new OntologyMap(getProperties("HW"));
+            fail("Expected IOException for checksum");
+        }
+        catch (IOException e)   {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("Checksum") > -1);
+        }
+
+        // Truncate, so last section runs past the end
+        file = new RandomAccessFile(BUNDLE_FILE, "rw");
+        try {
+            file.setLength(file.length() - 1);
+        }
+        finally {
+            file.close();
+        }
+        try {
+            new OntologyMap(getProperties("HW"));
+            fail("Expected IOException for truncated bundle");
+        }
+        catch (IOException e)   {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("outside the bundle") > -1);
+        }
+    }
+
+    private static InputStream getProperties(String p1, String p2, String p3)  {
+        return getProperties(new String[]{p1, p2, p3});
+    }
+
+    private static InputStream getProperties(String prefix)  {
+        return getProperties(new String[]{prefix});
+    }
+
+    private static InputStream getProperties(String[] prefixes)  {
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < prefixes.length; i++)   {
+            buf.append(prefixes[i]).append(".uri=").append(BUNDLE_FILE).append('\n');
+            buf.append(prefixes[i]).append(".class=uk.ac.ebi.hawthorn.BundleOntology\n");
+        }
+        return new ByteArrayInputStream(buf.toString().getBytes());
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * ConceptTagger Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class ConceptTaggerTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(ConceptTaggerTest.class);
+        return suite;
+    }
+
+    public ConceptTaggerTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Finds names and synonyms from HW, HD and HO, including overlapping matches.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     * @see     ConceptTagger#tag(String)
+     */
+    public void testTag() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        ConceptTagger tagger = ontologyMap.getConceptTagger();
+        assertSame("Cached", tagger, ontologyMap.getConceptTagger());
+        assertTrue("Size", tagger.size() > 0);
+
+        String text = "A Main\n  Branch bears a Twig, twigs and a haw.";
+        ConceptTagger.Match[] matches = tagger.tag(text);
+        assertEquals("Matches", Arrays.asList(new String[]{"HW:003", "HW:002", "HW:004", "HO:0000001", "HW:006"}),
+                     toIds(matches));
+        assertEquals("Start", 2, matches[0].getStart());
+        assertEquals("End", text.indexOf("Branch") + 6, matches[0].getEnd());
+        assertEquals("Synonym gives term name", "bough", matches[0].getName());
+        assertEquals("Nested", text.indexOf("Branch"), matches[1].getStart());
+        assertEquals("Twig", "Twig", text.substring(matches[2].getStart(), matches[2].getEnd()));
+
+        assertEquals("Empty", 0, tagger.tag("").length);
+        assertEquals("Word boundary", 0, tagger.tag("twigs branches").length);
+    }
+
+    /**
+     * Keeps only leftmost longest matches, and tags batches of documents.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     * @see     ConceptTagger#tagLongest(String)
+     */
+    public void testTagLongest() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        ConceptTagger tagger = ontologyMap.getConceptTagger();
+        assertEquals("Longest", Arrays.asList(new String[]{"HW:003", "HO:0000001", "HW:006"}),
+                     toIds(tagger.tagLongest("main branch of haw")));
+
+        String[] texts = new String[100];
+        for (int i = 0; i < texts.length; i++)  {
+            texts[i] = (i % 2 == 0) ? "flower and thorn" : "nothing here";
+        }
+        ConceptTagger.Match[][] matches = tagger.tag(texts, true);
+        assertEquals("Batch", Arrays.asList(new String[]{"HD:0001", "HD:0006"}), toIds(matches[0]));
+        assertEquals("Batch", 0, matches[99].length);
+    }
+
+    private static List toIds(ConceptTagger.Match[] matches)   {
+        List ids = new ArrayList();
+        for (int i = 0; i < matches.length; i++)    {
+            ids.add(matches[i].getId());
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import org.bdgp.apps.dagedit.dataadapter.GOFlatFileAdapter;
+
+import java.io.*;
+
+/**
+ * Compares load time, allocation and retained heap of DagParser with DAG-Edit's GOFlatFileAdapter.
+ * <p>
+ * Usage: <code>DagOntologyBenchmark [dag-file] [runs]</code>. If no file is given, a GO-sized
+ * DAG file is generated in the temporary directory.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class DagOntologyBenchmark {
+
+    private static final int DEFAULT_TERMS = 20000;
+    private static final int DEFAULT_RUNS  = 3;
+
+    public static void main(String[] args) {
+        try {
+            File file = (args.length > 0) ? new File(args[0]) : generate(DEFAULT_TERMS);
+            int runs  = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+            run(file, runs, System.out);
+        }
+        catch (Exception e)    {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads <code>file</code> <code>runs</code> times with each loader and prints results.
+     *
+     * @param   file    DAG file
+     * @param   runs    Number of runs per loader
+     * @param   out     Output stream
+     * @throws  IOException if could not load file
+     */
+    public static void run(final File file, int runs, PrintStream out) throws IOException  {
+        out.println("File:\t" + file + " (" + file.length() + " bytes)");
+        Loader adapter = new Loader()   {
+            public TermStore load() throws IOException  {
+                GOFlatFileAdapter adapter = new GOFlatFileAdapter();
+                adapter.setPath(file.getPath());
+                return OboOntology.readTermStore(adapter);
+            }
+        };
+        Loader parser = new Loader()   {
+            public TermStore load() throws IOException  {
+                TermStore.Builder builder = new TermStore.Builder();
+                Reader reader = new FileReader(file);
+                try {
+                    DagParser.parse(new BufferedReader(reader), builder);
+                }
+                finally {
+                    reader.close();
+                }
+                return builder.build();
+            }
+        };
+        for (int r = 0; r < runs; r++)  {
+            measure(out, "GOFlatFileAdapter", adapter);
+            measure(out, "DagParser", parser);
+        }
+    }
+
+    /**
+     * Reports load time, bytes allocated during the load (where the JVM can report it)
+     * and heap retained by the resulting store.
+     */
+    private static void measure(PrintStream out, String name, Loader loader) throws IOException  {
+        long heap      = usedHeap();
+        long allocated = allocatedBytes();
+        long time      = System.currentTimeMillis();
+        TermStore store = loader.load();
+        time      = System.currentTimeMillis() - time;
+        allocated = allocatedBytes() - allocated;
+        long retained = usedHeap() - heap;
+        out.println(name + ":\tterms=" + store.size() + "\ttime=" + time + " ms" +
+                    "\tallocated=" + ((allocated < 0) ? "n/a" : (allocated / 1024) + " KB") +
+                    "\tretained=" + (retained / 1024) + " KB");
+    }
+
+    private static long usedHeap()  {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)  {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Uses com.sun.management.ThreadMXBean if available, otherwise returns -1
+    private static long allocatedBytes()    {
+        try {
+            Object bean = java.lang.management.ManagementFactory.getThreadMXBean();
+            Class type = Class.forName("com.sun.management.ThreadMXBean");
+            java.lang.reflect.Method method = type.getMethod("getThreadAllocatedBytes", new Class[]{long.class});
+            Object bytes = method.invoke(bean, new Object[]{Long.valueOf(Thread.currentThread().getId())});
+            return ((Long) bytes).longValue();
+        }
+        catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private interface Loader    {
+        public TermStore load() throws IOException;
+    }
+
+    /**
+     * Writes a DAG file of <code>count</code> terms, four levels deep, with synonyms, xrefs
+     * and extra part_of parents.
+     *
+     * @param   count   Number of terms
+     * @return  generated file
+     * @throws  IOException if could not write file
+     */
+    static File generate(int count) throws IOException {
+        File file = File.createTempFile("hawthorn", ".dag");
+        file.deleteOnExit();
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        writer.println("!type: % is_a is a");
+        writer.println("!type: < part_of part of");
+        writer.println("$Benchmark ontology ; BM:0000000");
+        for (int i = 1; i < count; i++)   {
+            int depth = 1 + ((i - 1) % 4);
+            StringBuffer line = new StringBuffer();
+            for (int d = 0; d < depth; d++) {
+                line.append(' ');
+            }
+            line.append('%').append("benchmark term number ").append(i);
+            line.append(" ; ").append(id(i));
+            line.append(" ; EC:1.1.1.").append(i % 300);
+            line.append(" ; synonym:synonym of term ").append(i);
+            if (i > 10) {
+                line.append(" < part of parent ; ").append(id(i / 2));
+            }
+            writer.println(line);
+        }
+        writer.close();
+        return file;
+    }
+
+    private static String id(int i) {
+        String s = "000000" + i;
+        return "BM:" + s.substring(s.length() - 7);
+    }
+
+}
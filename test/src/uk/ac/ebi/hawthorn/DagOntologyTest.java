@@ -0,0 +1,110 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+import org.bdgp.apps.dagedit.dataadapter.GOFlatFileAdapter;
+
+/**
+ * DagOntology Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class DagOntologyTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+    private static final String DAG_FILE  = "hawthorn.dag";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(DagOntologyTest.class);
+        return suite;
+    }
+
+    public DagOntologyTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Checks terms read by DagParser against those read by DAG-Edit's GOFlatFileAdapter.
+     *
+     * @throws  IOException if could not load ontology
+     */
+    public void testSameAsFlatFileAdapter() throws IOException  {
+        GOFlatFileAdapter adapter = new GOFlatFileAdapter();
+        adapter.setPath(DAG_FILE);
+        TermStore expected = OboOntology.readTermStore(adapter);
+        TermStore.Builder builder = new TermStore.Builder();
+        DagParser.parse(new BufferedReader(new FileReader(DAG_FILE)), builder);
+        TermStore actual = builder.build();
+
+        assertEquals("Terms", expected.asMap(), actual.asMap());
+        for (int i = 0; i < expected.size(); i++)   {
+            String id = expected.getId(i);
+            TermRecord e = expected.getRecord(i);
+            TermRecord a = actual.getRecord(actual.indexOf(id));
+            assertEquals(id + " synonyms", toSet(e.getSynonyms()), toSet(a.getSynonyms()));
+            assertEquals(id + " xrefs", toSet(e.getXrefs()), toSet(a.getXrefs()));
+            assertEquals(id + " relationships", toSet(e.getRelationships()), toSet(a.getRelationships()));
+        }
+    }
+
+    /**
+     * Checks DAG ontology loads through OntologyMap using relative path.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testGetTerm() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        assertEquals("Name", "stamen", ontologyMap.getTerm("HD:0003"));
+        assertEquals("Escaped name", "may, blossom time", ontologyMap.getTerm("HD:0008"));
+        TermRecord record = ontologyMap.getTermRecord("HD:0001");
+        assertEquals("Relationships", 2, record.getRelationships().length);
+        assertEquals("Xrefs", Arrays.asList(new String[]{"HW:000"}), Arrays.asList(record.getXrefs()));
+    }
+
+    /**
+     * Checks the loader reads UTF-8 whatever the platform's default encoding.
+     *
+     * @throws  IOException if could not read terms
+     */
+    public void testEncoding() throws IOException  {
+        String dag = "$root ; HD:0000\n %caf\u00e9 ; HD:0001\n";
+        TermStore.Builder builder = new TermStore.Builder();
+        new DagOntology.Loader().load(new ByteArrayInputStream(dag.getBytes("UTF-8")), builder);
+        TermStore store = builder.build();
+        assertEquals("Name", "caf\u00e9", store.getName(store.indexOf("HD:0001")));
+    }
+
+    private static Set toSet(Object[] values)   {
+        return new HashSet(Arrays.asList(values));
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.concurrent.*;
+
+/**
+ * FetchEngine Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class FetchEngineTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(FetchEngineTest.class);
+        return suite;
+    }
+
+    public FetchEngineTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Opens local file through the engine and checks the host slot is released on close.
+     *
+     * @throws  IOException if could not open file
+     */
+    public void testFetch() throws IOException  {
+        FetchEngine engine = new FetchEngine(1000, 1000, 1, 1, 10, 10);
+        URL url = new File(TEST_FILE).toURI().toURL();
+        for (int i = 0; i < 3; i++) {
+            // Would block on second pass if the single slot were not released
+            InputStream in = engine.fetch(url, null, null);
+            assertTrue("Content", in.read() > -1);
+            in.close();
+        }
+        try {
+            engine.fetch(new File("missing.obo").toURI().toURL(), null, null);
+            fail("Expected FileNotFoundException");
+        }
+        catch (FileNotFoundException e)   {
+            // Expected: not retried
+        }
+        assertNull("Not a network URL", engine.getInputStream(TEST_FILE));
+        engine.shutdown();
+    }
+
+    /**
+     * Opens local file on a worker thread and checks the host slot is released on close.
+     *
+     * @throws  IOException if could not open file
+     */
+    public void testFetchOnWorker() throws IOException  {
+        FetchEngine engine = new FetchEngine(1000, 1000, 1, 1, 10, 10, 1000);
+        URL url = new File(TEST_FILE).toURI().toURL();
+        for (int i = 0; i < 3; i++) {
+            InputStream in = engine.fetchOnWorker(url, null, null);
+            assertTrue("Content", in.read() > -1);
+            in.close();
+        }
+        try {
+            engine.fetchOnWorker(new File("missing.obo").toURI().toURL(), null, null);
+            fail("Expected FileNotFoundException");
+        }
+        catch (FileNotFoundException e)   {
+            // Unwrapped from the worker
+        }
+        engine.shutdown();
+    }
+
+    /**
+     * Checks a host whose slots are held by unclosed streams fails after the permit timeout
+     * rather than blocking for good, and unknown hosts are not retried.
+     *
+     * @throws  IOException if could not open file
+     */
+    public void testPermitTimeout() throws IOException  {
+        FetchEngine engine = new FetchEngine(1000, 1000, 1, 4, 60000, 60000, 100);
+        URL url = new File(TEST_FILE).toURI().toURL();
+        InputStream leaked = engine.fetch(url, null, null);
+        try {
+            engine.fetch(url, null, null);
+            fail("Expected IOException");
+        }
+        catch (IOException e)   {
+            // Expected
+        }
+        leaked.close();
+        engine.fetch(url, null, null).close();
+
+        long start = System.currentTimeMillis();
+        try {
+            engine.fetch(new URL("http://no-such-host.invalid/go.obo"), null, null);
+            fail("Expected UnknownHostException");
+        }
+        catch (UnknownHostException e)  {
+            assertTrue("Not retried", System.currentTimeMillis() - start < 30000);
+        }
+        engine.shutdown();
+    }
+
+    /**
+     * Checks a stream returned by a task that was cancelled while running is closed.
+     *
+     * @throws  Exception if interrupted
+     */
+    public void testCancelledResultClosed() throws Exception  {
+        FetchEngine engine = new FetchEngine();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final CountDownLatch closed  = new CountDownLatch(1);
+        Future future = engine.submit(new Callable()    {
+            public Object call()    {
+                started.countDown();
+                while (true)    {
+                    try {
+                        proceed.await();
+                        break;
+                    }
+                    catch (InterruptedException e)  {
+                        // Carry on, like a blocking connect
+                    }
+                }
+                return new ByteArrayInputStream(new byte[1])   {
+                    public void close() {
+                        closed.countDown();
+                    }
+                };
+            }
+        });
+        started.await();
+        assertTrue("Cancelled", future.cancel(true));
+        proceed.countDown();
+        assertTrue("Closed", closed.await(10, TimeUnit.SECONDS));
+        engine.shutdown();
+    }
+
+    public void testBackoff()  {
+        FetchEngine engine = new FetchEngine(1000, 1000, 1, 5, 100, 250);
+        for (int i = 0; i < 20; i++) {
+            assertTrue("First retry", engine.getBackoff(1) <= 100);
+            assertTrue("Second retry", engine.getBackoff(2) <= 200);
+            assertTrue("Capped", engine.getBackoff(4) <= 250);
+        }
+        engine.shutdown();
+    }
+
+    public void testBase64() throws IOException  {
+        assertEquals("QWxhZGRpbjpvcGVuIHNlc2FtZQ==", FetchEngine.base64("Aladdin:open sesame".getBytes("UTF-8")));
+        assertEquals("dXNlcjpw", FetchEngine.base64("user:p".getBytes("UTF-8")));
+        assertEquals("dXNlcjpwdw==", FetchEngine.base64("user:pw".getBytes("UTF-8")));
+        assertTrue(FetchEngine.isNetworkUrl("HTTP://example.org/go.obo"));
+        assertFalse(FetchEngine.isNetworkUrl("file:/tmp/go.obo"));
+    }
+
+    /**
+     * Loads and refreshes all local ontologies concurrently.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testRefresh() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        assertEquals("Ontologies", 3, ontologyMap.getMap().size());
+        ontologyMap.refresh();
+        assertEquals("Term", "Hawthorn test ontology", ontologyMap.getTerm("HW:000"));
+    }
+
+}
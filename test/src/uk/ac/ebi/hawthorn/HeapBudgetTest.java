@@ -0,0 +1,152 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+
+/**
+ * HeapBudget and MemoryUsage Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class HeapBudgetTest extends TestCase   {
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(HeapBudgetTest.class);
+        return suite;
+    }
+
+    public HeapBudgetTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Checks estimates grow with content and add up to the total.
+     */
+    public void testMemoryUsage()  {
+        TermStore.Builder builder = new TermStore.Builder();
+        builder.addTerm("HW:001", "trunk");
+        MemoryUsage small = builder.build().getMemoryUsage();
+        builder = new TermStore.Builder();
+        builder.addTerm("HW:001", "trunk");
+        int branch = builder.addTerm("HW:002", "a much longer name for a branch");
+        builder.addRelationship(branch, "is_a", "HW:001");
+        builder.setDefinition(branch, "Grows from the trunk");
+        MemoryUsage large = builder.build().getMemoryUsage();
+
+        assertTrue("Keys", large.getKeyBytes() > small.getKeyBytes());
+        assertTrue("Names", large.getNameBytes() > small.getNameBytes());
+        assertTrue("Graph", large.getGraphBytes() > small.getGraphBytes());
+        assertTrue("Fields", large.getFieldBytes() > small.getFieldBytes());
+        assertEquals("Total", large.getKeyBytes() + large.getNameBytes() + large.getIndexBytes() +
+                     large.getGraphBytes() + large.getFieldBytes(), large.getTotalBytes());
+    }
+
+    /**
+     * Checks sizes are parsed with and without suffixes.
+     */
+    public void testParse()  {
+        assertEquals(1000, HeapBudget.parse("1000"));
+        assertEquals(2048, HeapBudget.parse("2k"));
+        assertEquals(512L << 20, HeapBudget.parse("512M"));
+        assertEquals(3L << 30, HeapBudget.parse(" 3G "));
+        try {
+            HeapBudget.parse("lots");
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)  {
+        }
+    }
+
+    /**
+     * Checks loads over the budget are refused before the source is read, and refreshes of a
+     * changed source are refused before it is parsed while two snapshots would not fit in the
+     * budget, without counting against the source.
+     *
+     * @throws  Exception if could not load ontology
+     */
+    public void testBudget() throws Exception  {
+        File file = File.createTempFile("hawthorn", ".obo");
+        TestFiles.copy(new File("hawthorn.obo"), file);
+        final int[] opened = new int[1];
+        InputStreamListener listener = new InputStreamListener()    {
+            public InputStream getInputStream(String uri)   {
+                opened[0]++;
+                return null;
+            }
+        };
+        try {
+            new OntologyMap(getProperties("1K", file), listener);
+            fail("Expected IOException for heap budget");
+        }
+        catch (IOException e)   {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("heap budget") > -1);
+        }
+        assertEquals("Refused before reading source", 0, opened[0]);
+
+        OntologyMap map = new OntologyMap(getProperties("0", file));
+        Ontology ontology = (Ontology) map.getMap().get("HW");
+        long bytes = ontology.getMemoryUsage().getTotalBytes();
+        assertEquals("Used", bytes, map.getHeapBudget().getUsedBytes());
+
+        // Room for one snapshot but not two
+        map.reconfigure(getProperties(Long.toString(bytes + bytes / 2), file));
+        assertSame("Ontology kept", ontology, map.getMap().get("HW"));
+        assertEquals("Unchanged source", "trunk", map.getTerm("HW:001"));
+        OutputStream out = new FileOutputStream(file, true);
+        out.write("\n[Term]\nid: HW:099\nname: bud\n".getBytes("UTF-8"));
+        out.close();
+        LoadStatistics statistics = ontology.getLoadStatistics();
+        try {
+            map.getTerm("HW:001");
+            fail("Expected IOException for refresh over heap budget");
+        }
+        catch (IOException e)   {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("Heap budget") > -1);
+        }
+        assertSame("Not parsed", statistics, ontology.getLoadStatistics());
+        assertEquals("Reservation released", bytes, map.getHeapBudget().getUsedBytes());
+        assertEquals("Not a source failure", 0, ontology.getHealth().getFailureCount());
+        map.getHeapBudget().setLimit(bytes * 3);
+        assertEquals("Refreshed", "bud", map.getTerm("HW:099"));
+        assertEquals("Used after refresh", ontology.getMemoryUsage().getTotalBytes(), map.getHeapBudget().getUsedBytes());
+
+        map.reconfigure(new ByteArrayInputStream(new byte[0]));
+        assertEquals("Dropped", 0, map.getHeapBudget().getUsedBytes());
+        file.delete();
+    }
+
+    private static InputStream getProperties(String budget, File file)  {
+        String p = "heap-budget=" + budget + "\n" +
+                   "HW.uri=" + file.getPath() + "\n" +
+                   "HW.class=uk.ac.ebi.hawthorn.OboOntology\n" +
+                   "HW.refresh-interval=0\n";
+        return new ByteArrayInputStream(p.getBytes());
+    }
+
+}
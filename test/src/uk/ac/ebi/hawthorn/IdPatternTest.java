@@ -0,0 +1,152 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * IdPattern Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class IdPatternTest extends TestCase   {
+
+    private static final String[] PATTERNS = {
+        "GO:\\d{7}", "^HW:\\d{3}$", "[A-Z]+:\\d+", "[A-Za-z_]\\w*:[^:]{1,5}", "a?b*c+", "x.y",
+        "\\d{2,4}-\\d{2,}", "[-a-c]+\\.", "\\D\\S\\W", "a{0}b", "[^\\d]*0", "\\s?\\.\\:"
+    };
+
+    private static final String ALPHABET = "GO:0123456789abcxyHW-._ \n\u00e9";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(IdPatternTest.class);
+        return suite;
+    }
+
+    public IdPatternTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Checks patterns match the same IDs as <code>java.util.regex</code>.
+     */
+    public void testMatches()   {
+        assertTrue("GO", IdPattern.compile("GO:\\d{7}").matches("GO:0008150"));
+        assertFalse("Short", IdPattern.compile("GO:\\d{7}").matches("GO:1"));
+        assertFalse("Letters", IdPattern.compile("GO:\\d{7}").matches("GO:abcdefg"));
+        assertFalse("Null", IdPattern.compile("GO:\\d{7}").matches(null));
+        assertEquals("toString", "GO:\\d{7}", IdPattern.compile("GO:\\d{7}").toString());
+
+        Random random = new Random(47);
+        for (int p = 0; p < PATTERNS.length; p++)   {
+            IdPattern pattern = IdPattern.compile(PATTERNS[p]);
+            Pattern regex = Pattern.compile(PATTERNS[p]);
+            for (int i = 0; i < 20000; i++) {
+                StringBuffer buf = new StringBuffer();
+                int length = random.nextInt(12);
+                for (int k = 0; k < length; k++)    {
+                    buf.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+                String id = buf.toString();
+                assertEquals(PATTERNS[p] + " on '" + id + "'", regex.matcher(id).matches(), pattern.matches(id));
+            }
+        }
+    }
+
+    /**
+     * Checks unsupported syntax is refused when compiled.
+     */
+    public void testBadPatterns()   {
+        String[] bad = {"(GO):\\d", "GO|HW", "\\d{2", "[a-", "\\p{L}", "\\d*?", "\\d{3,1}", "*", "a\\", "\u00e9"};
+        for (int i = 0; i < bad.length; i++)    {
+            try {
+                IdPattern.compile(bad[i]);
+                fail("Expected IllegalArgumentException for " + bad[i]);
+            }
+            catch (IllegalArgumentException e)  {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Checks IDs are classified against patterns and ontologies, singly and in batches.
+     *
+     * @throws  Exception if could not load ontologies
+     */
+    public void testValidate() throws Exception   {
+        OntologyMap map = new OntologyMap(getProperties("HW:\\\\d{3}"));
+        assertTrue("Valid", map.isValidID("HW:001"));
+        assertFalse("Pattern", map.isValidID("HW:1"));
+        assertFalse("Separator", map.isValidID("HW-001"));
+        assertTrue("No pattern", map.isValidID("HD:1"));
+        try {
+            map.getTerm("HW:1");
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)  {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("HW:\\d{3}") > -1);
+        }
+
+        String[] ids     = {"HW:001", "HW:999", "HW:1", "HW-001", null, "XX:001", "HD:0000", "HD:9"};
+        int[]    classes = {OntologyMap.VALID_ID, OntologyMap.UNKNOWN_ID, OntologyMap.MALFORMED_ID,
+                            OntologyMap.MALFORMED_ID, OntologyMap.MALFORMED_ID, OntologyMap.UNKNOWN_PREFIX,
+                            OntologyMap.VALID_ID, OntologyMap.UNKNOWN_ID};
+        for (int i = 0; i < ids.length; i++)    {
+            assertEquals(ids[i], classes[i], map.validateID(ids[i]));
+        }
+        // Large enough to be split across processors
+        String[] batch = new String[100000];
+        for (int i = 0; i < batch.length; i++)  {
+            batch[i] = ids[i % ids.length];
+        }
+        byte[] results = map.validateIDs(batch);
+        for (int i = 0; i < batch.length; i++)  {
+            assertEquals(batch[i], classes[i % ids.length], results[i]);
+        }
+
+        // New pattern applies without reloading the ontology
+        Object ontology = map.getMap().get("HW");
+        map.reconfigure(getProperties("HW:\\\\d+"));
+        assertSame("Not reloaded", ontology, map.getMap().get("HW"));
+        assertEquals("New pattern", OntologyMap.UNKNOWN_ID, map.validateID("HW:1"));
+    }
+
+    private static InputStream getProperties(String pattern)  {
+        String p = "HW.uri=hawthorn.obo\n" +
+                   "HW.class=uk.ac.ebi.hawthorn.OboOntology\n" +
+                   "HW.id-pattern=" + pattern + "\n" +
+                   "HD.uri=hawthorn.dag\n" +
+                   "HD.class=uk.ac.ebi.hawthorn.DagOntology\n";
+        return new ByteArrayInputStream(p.getBytes());
+    }
+
+}
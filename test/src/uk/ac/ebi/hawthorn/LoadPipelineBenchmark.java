@@ -0,0 +1,125 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.*;
+
+/**
+ * Compares wall-clock load time of a DAG file read straight into DagParser with the same file
+ * read through LoadPipeline, over a source throttled to simulate a download.
+ * <p>
+ * Usage: <code>LoadPipelineBenchmark [dag-file] [kb-per-second] [runs]</code>. If no file is
+ * given, a GO-sized DAG file is generated in the temporary directory.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class LoadPipelineBenchmark {
+
+    private static final int DEFAULT_TERMS = 40000;
+    private static final int DEFAULT_RATE  = 20000;     // KB per second
+    private static final int DEFAULT_RUNS  = 3;
+
+    private static final OntologyLoader LOADER = new DagOntology.Loader();
+
+    public static void main(String[] args) {
+        try {
+            File file = (args.length > 0) ? new File(args[0]) : DagOntologyBenchmark.generate(DEFAULT_TERMS);
+            int rate  = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_RATE;
+            int runs  = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+            run(file, rate, runs, System.out);
+        }
+        catch (Exception e)    {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads <code>file</code> <code>runs</code> times each way and prints results.
+     *
+     * @param   file    DAG file
+     * @param   rate    Simulated download rate in KB per second
+     * @param   runs    Number of runs each way
+     * @param   out     Output stream
+     * @throws  IOException if could not load file
+     */
+    public static void run(File file, int rate, int runs, PrintStream out) throws IOException  {
+        out.println("File:\t" + file + " (" + file.length() + " bytes) at " + rate + " KB/s");
+        for (int r = 0; r < runs; r++)  {
+            long time = System.currentTimeMillis();
+            TermStore.Builder builder = new TermStore.Builder();
+            InputStream in = new ThrottledInputStream(new FileInputStream(file), rate * 1024L);
+            try {
+                LOADER.load(in, builder);
+            }
+            finally {
+                in.close();
+            }
+            TermStore store = builder.build();
+            time = System.currentTimeMillis() - time;
+            out.println("Sequential:\tterms=" + store.size() + "\ttime=" + time + " ms");
+
+            LoadPipeline pipeline = new LoadPipeline(LOADER);
+            time = System.currentTimeMillis();
+            pipeline.load(new ThrottledInputStream(new FileInputStream(file), rate * 1024L));
+            time = System.currentTimeMillis() - time;
+            out.println("Pipelined:\t" + pipeline.getStatistics() + "\ttime=" + time + " ms");
+        }
+    }
+
+    /**
+     * Delivers bytes at a fixed rate while they are being read, in network-sized reads.
+     * Bytes do not build up while the reader is busy, as with a connection whose receive
+     * window is full, so time spent parsing adds to download time unless reads run ahead.
+     */
+    private static final class ThrottledInputStream extends FilterInputStream   {
+
+        private static final int PACKET = 8192;
+
+        private final long bytesPerSecond;
+
+        ThrottledInputStream(InputStream in, long bytesPerSecond)  {
+            super(in);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        public int read() throws IOException  {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException  {
+            int n = super.read(b, off, Math.min(len, PACKET));
+            if (n > 0)  {
+                long wait = n * 1000000000L / bytesPerSecond;
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+                catch (InterruptedException e)  {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            return n;
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+
+/**
+ * LoadPipeline Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class LoadPipelineTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+    private static final String DAG_FILE  = "hawthorn.dag";
+
+    private static final OntologyLoader DAG_LOADER = new DagOntology.Loader();
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(LoadPipelineTest.class);
+        return suite;
+    }
+
+    public LoadPipelineTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Loads hawthorn.dag through the pipeline and compares with a direct parse.
+     *
+     * @throws  IOException if could not load file
+     */
+    public void testLoad() throws IOException  {
+        TermStore.Builder builder = new TermStore.Builder();
+        Reader reader = new FileReader(DAG_FILE);
+        try {
+            DagParser.parse(new BufferedReader(reader), builder);
+        }
+        finally {
+            reader.close();
+        }
+        TermStore expected = builder.build();
+
+        LoadPipeline pipeline = new LoadPipeline(DAG_LOADER);
+        assertNull("No statistics before load", pipeline.getStatistics());
+        TermStore store = pipeline.load(new FileInputStream(DAG_FILE));
+        assertEquals("Size", expected.size(), store.size());
+        for (int i = 0; i < expected.size(); i++)   {
+            int index = store.indexOf(expected.getId(i));
+            assertEquals(expected.getId(i), expected.getName(i), store.getName(index));
+            assertEquals(expected.getId(i), expected.getParentCount(i), store.getParentCount(index));
+        }
+        LoadStatistics statistics = pipeline.getStatistics();
+        assertEquals("Bytes", new File(DAG_FILE).length(), statistics.getByteCount());
+        assertEquals("Terms", store.size(), statistics.getTermCount());
+        assertTrue("Total", statistics.getTotalTime() >= statistics.getIndexTime());
+    }
+
+    /**
+     * Checks a failure while fetching reaches the parser.
+     */
+    public void testFetchFailure()   {
+        InputStream source = new InputStream()  {
+            private int count = 0;
+            public int read() throws IOException   {
+                if (count++ < 10)   {
+                    return ' ';
+                }
+                throw new IOException("Connection reset");
+            }
+        };
+        try {
+            new LoadPipeline(DAG_LOADER).load(source);
+            fail("Expected IOException");
+        }
+        catch (IOException e)   {
+            assertEquals("Message", "Connection reset", e.getMessage());
+        }
+    }
+
+    /**
+     * Checks ontologies report load statistics.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     * @see     Ontology#getLoadStatistics()
+     */
+    public void testGetLoadStatistics() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        LoadStatistics dag = ((Ontology) ontologyMap.getMap().get("HD")).getLoadStatistics();
+        assertEquals("Pipelined bytes", new File(DAG_FILE).length(), dag.getByteCount());
+        LoadStatistics obo = ((Ontology) ontologyMap.getMap().get("HW")).getLoadStatistics();
+        assertEquals("Pipelined OBO bytes", new File("hawthorn.obo").length(), obo.getByteCount());
+        assertEquals("Terms", 7, obo.getTermCount());
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.util.Arrays;
+
+/**
+ * MirrorInputStreamListener Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class MirrorInputStreamListenerTest extends TestCase   {
+
+    private static final String MIRROR_DIR  = "mirror";
+    private static final String ORIGIN_FILE = "origin.obo";
+    private static final String TEST_FILE   = "hawthorn.obo";
+    private static final String URI         = "http://example.org/ontology/hawthorn.obo";
+
+    private Origin origin;
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(MirrorInputStreamListenerTest.class);
+        return suite;
+    }
+
+    public MirrorInputStreamListenerTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        delete(new File(MIRROR_DIR));
+        write(ORIGIN_FILE, read(new FileInputStream(TEST_FILE)));
+        origin = new Origin();
+    }
+
+    public void tearDown() throws Exception {
+        delete(new File(MIRROR_DIR));
+        new File(ORIGIN_FILE).delete();
+        super.tearDown();
+    }
+
+    /**
+     * Checks repeated opens and restarts are served from the mirror, including when the
+     * origin cannot be reached.
+     *
+     * @throws  IOException if could not read source
+     */
+    public void testMirror() throws IOException  {
+        byte[] expected = read(new FileInputStream(TEST_FILE));
+        MirrorInputStreamListener listener = new MirrorInputStreamListener(new File(MIRROR_DIR), 3600, origin);
+        for (int i = 0; i < 3; i++) {
+            assertTrue("Open " + i, Arrays.equals(expected, read(listener.getInputStream(URI))));
+        }
+        assertEquals("Fetched once", 1, origin.count);
+        assertNull("Not a network URL", listener.getInputStream(TEST_FILE));
+        assertEquals("File name", "example.org_ontology_hawthorn.obo-",
+                     MirrorInputStreamListener.getFileName(URI).substring(0, 34));
+
+        // Restart with no network: copy is still served, however old
+        origin.offline = true;
+        listener = new MirrorInputStreamListener(new File(MIRROR_DIR), 0, origin);
+        assertTrue("Offline", Arrays.equals(expected, read(listener.getInputStream(URI))));
+        assertEquals("Tried origin", 2, origin.count);
+
+        // Never mirrored
+        try {
+            listener.getInputStream(URI + ".missing");
+            fail("Expected IOException");
+        }
+        catch (IOException e)   {
+            // Expected: nothing to serve
+        }
+        assertEquals("No temporary files", 2, new File(MIRROR_DIR).list().length);
+    }
+
+    /**
+     * Checks changes at the origin reach the mirror once the revalidate interval has passed,
+     * and ontologies load through the mirror.
+     *
+     * @throws  Exception if could not load ontology
+     */
+    public void testRevalidate() throws Exception  {
+        Class.forName("uk.ac.ebi.hawthorn.OboOntology");
+        MirrorInputStreamListener listener = new MirrorInputStreamListener(new File(MIRROR_DIR), 0, origin);
+        Ontology ontology = OntologyManager.getOntology("uk.ac.ebi.hawthorn.OboOntology", "HW", URI,
+                                                        "", "", 60, false, listener);
+        assertEquals("Name", "trunk", ontology.getTerm("HW:001"));
+        String changed = new String(read(new FileInputStream(ORIGIN_FILE)), "UTF-8").replaceAll("name: trunk\n", "name: stem\n");
+        write(ORIGIN_FILE, changed.getBytes("UTF-8"));
+        assertTrue("Changed", new String(read(listener.getInputStream(URI)), "UTF-8").indexOf("name: stem\n") > -1);
+
+        // Loads without the network
+        origin.offline = true;
+        ontology = OntologyManager.getOntology("uk.ac.ebi.hawthorn.OboOntology", "HW", URI,
+                                               "", "", 60, false, new MirrorInputStreamListener(new File(MIRROR_DIR), 0, origin));
+        assertEquals("Offline name", "stem", ontology.getTerm("HW:001"));
+    }
+
+    /**
+     * Checks a corrupt mirror copy is not served.
+     *
+     * @throws  IOException if could not read source
+     */
+    public void testCorrupt() throws IOException  {
+        MirrorInputStreamListener listener = new MirrorInputStreamListener(new File(MIRROR_DIR), 3600, origin);
+        read(listener.getInputStream(URI));
+        File data = new File(MIRROR_DIR, MirrorInputStreamListener.getFileName(URI) + ".mirror");
+        byte[] bytes = read(new FileInputStream(data));
+        bytes[bytes.length / 2] ^= 1;
+        write(data.getPath(), bytes);
+
+        origin.offline = true;
+        listener = new MirrorInputStreamListener(new File(MIRROR_DIR), 3600, origin);
+        try {
+            listener.getInputStream(URI);
+            fail("Expected IOException");
+        }
+        catch (IOException e)   {
+            // Expected: corrupt copy discarded and origin offline
+        }
+        origin.offline = false;
+        assertTrue("Fetched again", Arrays.equals(read(new FileInputStream(TEST_FILE)),
+                                                  read(listener.getInputStream(URI))));
+        assertEquals("Fetches", 3, origin.count);
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > -1)  {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static void write(String path, byte[] bytes) throws IOException {
+        OutputStream out = new FileOutputStream(path);
+        try {
+            out.write(bytes);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File dir)    {
+        File[] files = dir.listFiles();
+        if (files != null)  {
+            for (int i = 0; i < files.length; i++)  {
+                files[i].delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Serves the test URI from a local file, counting opens.
+     */
+    private static final class Origin implements InputStreamListener    {
+
+        private int     count   = 0;
+        private boolean offline = false;
+
+        public InputStream getInputStream(String uri) throws FileNotFoundException, IOException, MalformedURLException {
+            count++;
+            if (offline)    {
+                throw new IOException("Network unreachable");
+            }
+            if (!uri.equals(URI))   {
+                throw new FileNotFoundException(uri);
+            }
+            return new FileInputStream(ORIGIN_FILE);
+        }
+
+    }
+
+}
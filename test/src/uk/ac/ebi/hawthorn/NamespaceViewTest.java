@@ -0,0 +1,107 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * NamespaceView Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class NamespaceViewTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(NamespaceViewTest.class);
+        return suite;
+    }
+
+    public NamespaceViewTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Checks lookups, counts and enumeration are limited to the namespace.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testNamespaceView() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        Ontology ontology = (Ontology) ontologyMap.getMap().get("HW");
+        NamespaceView wood = ontology.getNamespaceView("wood");
+        assertEquals("Size", 4, wood.size());
+        assertEquals("Term", "bough", wood.getTerm("HW:003"));
+        assertEquals("Record", "limb", wood.getTermRecord("HW:002").getSynonyms()[0]);
+        assertFalse("Other namespace", wood.contains("HW:005"));
+        try {
+            wood.getTerm("HW:005");
+            fail("Expected NoSuchElementException for term in other namespace");
+        }
+        catch (NoSuchElementException e)    {
+        }
+
+        List ids = new ArrayList();
+        TermCursor cursor = wood.cursor();
+        while (cursor.next())   {
+            ids.add(cursor.getId());
+        }
+        assertEquals("Cursor", Arrays.asList(new String[]{"HW:001", "HW:002", "HW:003", "HW:004"}), ids);
+
+        Map expected = new HashMap();
+        expected.put("HW:005", "leaf");
+        assertEquals("Map", expected, ontology.getNamespaceView("foliage").asMap());
+        assertEquals("Default namespace", "Hawthorn test ontology",
+                     ontology.getNamespaceView("default_namespace").getTerm("HW:000"));
+        assertEquals("Unknown namespace", 0, ontology.getNamespaceView("roots").size());
+        assertSame("Reused", wood, ontology.getNamespaceView("wood"));
+    }
+
+    /**
+     * Checks namespace counts add up to the number of terms.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testNamespaceSize() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        TermStore store = ((Ontology) ontologyMap.getMap().get("HW")).getTermStore();
+        int total = 0;
+        for (int i = 0; i < store.getNamespaceCount(); i++) {
+            total += store.getNamespaceSize(i);
+        }
+        assertEquals("Total", store.size(), total);
+        assertEquals("Fruit", 1, store.getNamespaceSize(store.getNamespaceCode("fruit")));
+        assertEquals("Unknown", TermStore.NO_NAMESPACE, store.getNamespaceCode("roots"));
+        assertEquals("No namespace", 0, store.getNamespaceSize(TermStore.NO_NAMESPACE));
+    }
+
+}
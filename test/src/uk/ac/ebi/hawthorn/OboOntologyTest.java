@@ -0,0 +1,200 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+import org.bdgp.apps.dagedit.dataadapter.GOBOAdapter;
+
+/**
+ * OboOntology Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class OboOntologyTest extends TestCase   {
+
+    private static final String OBO_FILE   = "hawthorn.obo";
+    private static final String EXTRA_FILE = "extra.obo";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(OboOntologyTest.class);
+        return suite;
+    }
+
+    public OboOntologyTest(String name) {
+        super(name);
+    }
+
+    protected void tearDown()   {
+        new File(EXTRA_FILE).delete();
+    }
+
+    /**
+     * Checks terms read by OboParser against those read by DAG-Edit's GOBOAdapter.
+     *
+     * @throws  IOException if could not load ontology
+     */
+    public void testSameAsGoboAdapter() throws IOException  {
+        assertSame(OBO_FILE);
+    }
+
+    /**
+     * Checks the loader reads UTF-8 whatever the platform's default encoding.
+     *
+     * @throws  IOException if could not read terms
+     */
+    public void testEncoding() throws IOException  {
+        String obo = "[Term]\nid: HW:001\nname: caf\u00e9\n";
+        TermStore.Builder builder = new TermStore.Builder();
+        new OboOntology.Loader().load(new ByteArrayInputStream(obo.getBytes("UTF-8")), builder);
+        TermStore store = builder.build();
+        assertEquals("Name", "caf\u00e9", store.getName(store.indexOf("HW:001")));
+    }
+
+    /**
+     * Checks escapes, comments, trailing modifiers, OBO 1.2 tags and other stanzas against
+     * GOBOAdapter.
+     *
+     * @throws  IOException if could not load ontology
+     */
+    public void testSyntax() throws IOException  {
+        Writer writer = new FileWriter(EXTRA_FILE);
+        try {
+            writer.write("format-version: 1.2\n" +
+                         "default-namespace: extra\n" +
+                         "subsetdef: slim \"Slim\"\n" +
+                         "\n" +
+                         "[Term]\n" +
+                         "id: EX:1\n" +
+                         "name: root\n" +
+                         "subset: slim\n" +
+                         "\n" +
+                         "[Term]\n" +
+                         "id: EX:2\n" +
+                         "name: first\\, child\n" +
+                         "namespace: other\n" +
+                         "def: \"Quoted \\\"text\\\"\\, with a comma.\" [EX:curator, PMID:1]\n" +
+                         "synonym: \"premier\" EXACT []\n" +
+                         "xref_analog: DB:123 \"description\"\n" +
+                         "is_a: EX:1 ! root\n" +
+                         "\n" +
+                         "[Term]\n" +
+                         "id: EX:3\n" +
+                         "name: second\n" +
+                         "relationship: part_of EX:2 ! first, child\n" +
+                         "is_a: EX:1 {cardinality=1}\n" +
+                         "\n" +
+                         "[Typedef]\n" +
+                         "id: part_of\n" +
+                         "name: part of\n");
+        }
+        finally {
+            writer.close();
+        }
+        TermStore store = assertSame(EXTRA_FILE);
+        TermRecord record = store.getRecord(store.indexOf("EX:2"));
+        assertEquals("Name", "first, child", record.getName());
+        assertEquals("Definition", "Quoted \"text\", with a comma.", record.getDefinition());
+        assertEquals("Xref", Arrays.asList(new String[]{"DB:123"}), Arrays.asList(record.getXrefs()));
+        assertEquals("Size", 3, store.size());
+    }
+
+    /**
+     * Checks reloading into a builder pre-sized from the previous snapshot gives the same
+     * terms in the same space.
+     *
+     * @throws  IOException if could not load ontology
+     */
+    public void testReload() throws IOException  {
+        TermStore previous = parse(OBO_FILE, new TermStore.Builder());
+        TermStore reloaded = parse(OBO_FILE, new TermStore.Builder(previous));
+        assertEquals("Terms", previous.asMap(), reloaded.asMap());
+        for (int i = 0; i < previous.size(); i++)   {
+            TermRecord record = reloaded.getRecord(i);
+            assertEquals(record.getId() + " definition", previous.getRecord(i).getDefinition(), record.getDefinition());
+            assertEquals(record.getId() + " relationships", toSet(previous.getRecord(i).getRelationships()),
+                         toSet(record.getRelationships()));
+        }
+        assertEquals("Memory", previous.getMemoryUsage().getTotalBytes(), reloaded.getMemoryUsage().getTotalBytes());
+    }
+
+    /**
+     * Checks OBO ontology loads through OntologyMap.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testGetTerm() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream("hawthorn.properties"));
+        assertEquals("Name", "twig", ontologyMap.getTerm("HW:004"));
+        Ontology ontology = (Ontology) ontologyMap.getMap().get("HW");
+        assertTrue("Loaded through pipeline", ontology.getLoadStatistics().getByteCount() > 0);
+    }
+
+    private static TermStore assertSame(String file) throws IOException  {
+        GOBOAdapter adapter = new GOBOAdapter();
+        GOBOAdapter.IOProfile profile = new GOBOAdapter.IOProfile("");
+        Vector v = new Vector();
+        v.add(file);
+        profile.setFiles(v);
+        adapter.setIOProfile(profile);
+        TermStore expected = OboOntology.readTermStore(adapter);
+        TermStore actual = parse(file, new TermStore.Builder());
+
+        assertEquals("Terms", expected.asMap(), actual.asMap());
+        for (int i = 0; i < expected.size(); i++)   {
+            String id = expected.getId(i);
+            TermRecord e = expected.getRecord(i);
+            TermRecord a = actual.getRecord(actual.indexOf(id));
+            assertEquals(id + " definition", e.getDefinition(), a.getDefinition());
+            assertEquals(id + " namespace", e.getNamespace(), a.getNamespace());
+            assertEquals(id + " synonyms", toSet(e.getSynonyms()), toSet(a.getSynonyms()));
+            assertEquals(id + " xrefs", toSet(e.getXrefs()), toSet(a.getXrefs()));
+            assertEquals(id + " subsets", toSet(e.getSubsets()), toSet(a.getSubsets()));
+            assertEquals(id + " relationships", toSet(e.getRelationships()), toSet(a.getRelationships()));
+        }
+        return actual;
+    }
+
+    private static TermStore parse(String file, TermStore.Builder builder) throws IOException  {
+        Reader reader = new FileReader(file);
+        try {
+            OboParser.parse(new BufferedReader(reader), builder);
+        }
+        finally {
+            reader.close();
+        }
+        return builder.build();
+    }
+
+    private static Set toSet(Object[] values)   {
+        return new HashSet(Arrays.asList(values));
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * OntologyLoader Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class OntologyLoaderTest extends TestCase   {
+
+    private static final String OBO_FILE = "hawthorn.obo";
+    private static final String CSV_FILE = "loader.csv";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(OntologyLoaderTest.class);
+        return suite;
+    }
+
+    public OntologyLoaderTest(String name) {
+        super(name);
+    }
+
+    protected void tearDown()   {
+        new File(CSV_FILE).delete();
+    }
+
+    /**
+     * Checks built-in formats are found on the class path and load the same terms as the
+     * ontology classes.
+     *
+     * @throws  ClassNotFoundException   if format is unrecognised
+     * @throws  IOException              if could not load ontology
+     */
+    public void testServiceLoader() throws ClassNotFoundException, IOException  {
+        Map factories = OntologyManager.getOntologyFactories();
+        String[] formats = {"obo", "dag", "owl", "tab", "uk.ac.ebi.hawthorn.OboOntology$Loader"};
+        for (int i = 0; i < formats.length; i++)    {
+            assertTrue(formats[i], factories.containsKey(formats[i]));
+        }
+        Properties p = new Properties();
+        p.setProperty("HW.uri", OBO_FILE);
+        p.setProperty("HW.class", "obo");
+        p.setProperty("HX.uri", OBO_FILE);
+        p.setProperty("HX.class", "uk.ac.ebi.hawthorn.OboOntology");
+        OntologyMap ontologyMap = new OntologyMap(toInputStream(p));
+        Ontology loaded = (Ontology) ontologyMap.getMap().get("HW");
+        Ontology obo    = (Ontology) ontologyMap.getMap().get("HX");
+        assertTrue("Loader ontology", loaded instanceof LoaderOntology);
+        assertEquals("Format", "obo", ((LoaderOntology) loaded).getLoader().getFormat());
+        assertEquals("Terms", obo.getTerms(), loaded.getTerms());
+        TermRecord expected = obo.getTermRecord("HW:005");
+        TermRecord actual   = loaded.getTermRecord("HW:005");
+        assertEquals("Relationships", Arrays.asList(expected.getRelationships()), Arrays.asList(actual.getRelationships()));
+        assertEquals("Namespace", expected.getNamespace(), actual.getNamespace());
+        assertNotNull("Statistics", ((AbstractOntology) loaded).getLoadStatistics());
+    }
+
+    /**
+     * Checks a loader registered at run time gets its records into the store, including
+     * relationships to terms added later.
+     *
+     * @throws  ClassNotFoundException   if format is unrecognised
+     * @throws  IOException              if could not load ontology
+     */
+    public void testRegisterLoader() throws ClassNotFoundException, IOException  {
+        Writer writer = new FileWriter(CSV_FILE);
+        try {
+            writer.write("CS:2,child,CS:1\n" +
+                         "CS:1,parent,\n" +
+                         "CS:3,orphan,CS:9\n");
+        }
+        finally {
+            writer.close();
+        }
+        OntologyManager.registerLoader(new CsvLoader());
+        Properties p = new Properties();
+        p.setProperty("CS.uri", CSV_FILE);
+        p.setProperty("CS.class", "csv");
+        OntologyMap ontologyMap = new OntologyMap(toInputStream(p));
+        assertEquals("Name", "child", ontologyMap.getTerm("CS:2"));
+        TermStore store = ((Ontology) ontologyMap.getMap().get("CS")).getTermStore();
+        int child = store.indexOf("CS:2");
+        assertEquals("Parents", 1, store.getParentCount(child));
+        assertEquals("Parent", "CS:1", store.getId(store.getParent(child, 0)));
+        assertEquals("Dropped", 0, store.getParentCount(store.indexOf("CS:3")));
+    }
+
+    private static InputStream toInputStream(Properties p) throws IOException  {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        p.store(out, null);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    /**
+     * Lines of ID, name and optional is_a parent.
+     */
+    public static final class CsvLoader implements OntologyLoader  {
+        public String getFormat()   {
+            return "csv";
+        }
+        public void load(InputStream inputStream, TermSink sink) throws IOException   {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+            String line;
+            while ((line = reader.readLine()) != null)  {
+                String[] fields = line.split(",", -1);
+                int index = sink.addTerm(fields[0], fields[1]);
+                if (fields[2].length() > 0) {
+                    sink.addRelationship(index, "is_a", fields[2]);
+                }
+            }
+        }
+    }
+
+}
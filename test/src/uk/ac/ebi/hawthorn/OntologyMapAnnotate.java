@@ -0,0 +1,90 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import java.io.*;
+import java.util.StringTokenizer;
+
+/**
+ * Adds term names to tab-separated text using the default ontology properties file.
+ * <p>
+ * Usage: <code>OntologyMapAnnotate columns [input-file [output-file]]</code>, where
+ * <code>columns</code> is a comma-separated list of one-based column numbers, for example
+ * "5" for the GO ID column of a GAF file. Reads standard input and writes standard output
+ * if no files are given. A summary is written to standard error.
+ * </p>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ * @see     StreamAnnotator
+ */
+public class OntologyMapAnnotate {
+
+    public static void main (String[] args) {
+        if (args.length < 1)    {
+            System.err.println("Usage: OntologyMapAnnotate columns [input-file [output-file]]");
+            return;
+        }
+        try {
+            InputStream  in  = (args.length > 1) ? new FileInputStream(args[1]) : System.in;
+            OutputStream out = (args.length > 2) ? new FileOutputStream(args[2]) : (OutputStream) System.out;
+            StreamAnnotator.Summary summary = annotate(new OntologyMap(), parseColumns(args[0]), in, out);
+            out.close();
+            System.err.println(summary);
+        }
+        catch (Exception e)    {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Annotates <code>in</code> and writes result to <code>out</code>.
+     *
+     * @param   ontologyMap Ontologies to look IDs up in
+     * @param   columns     Zero-based indices of columns holding IDs
+     * @param   in          Input stream
+     * @param   out         Output stream
+     * @return  summary of lines and IDs processed
+     * @throws  IOException if could not read, write or load an ontology
+     */
+    public static StreamAnnotator.Summary annotate(OntologyMap ontologyMap, int[] columns,
+                                                   InputStream in, OutputStream out) throws IOException  {
+        return new StreamAnnotator(ontologyMap, columns).annotate(in, out);
+    }
+
+    /**
+     * Converts comma-separated list of one-based column numbers to zero-based indices.
+     *
+     * @param   s   Column numbers, for example "2,5"
+     * @return  zero-based column indices
+     * @throws  NumberFormatException if a column number is not a positive integer
+     */
+    static int[] parseColumns(String s) throws NumberFormatException  {
+        StringTokenizer tokens = new StringTokenizer(s, ",");
+        int[] columns = new int[tokens.countTokens()];
+        for (int i = 0; i < columns.length; i++)    {
+            columns[i] = Integer.parseInt(tokens.nextToken().trim()) - 1;
+            if (columns[i] < 0) {
+                throw new NumberFormatException("Column numbers start at 1: " + s);
+            }
+        }
+        return columns;
+    }
+
+}
@@ -130,6 +130,58 @@ public class OntologyMapTest extends TestCase   {
         testTerms(getTestProperties(), ontologyMap);
     }
 
+    /**
+     * Drops, changes and adds prefixes in the local test ontologies, checking unchanged
+     * ontologies are kept.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     * @see     OntologyMap#reconfigure(Properties)
+     */
+    public void testReconfigure() throws ClassNotFoundException, IOException  {
+        Properties p = new Properties();
+        p.load(new FileInputStream("hawthorn.properties"));
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream("hawthorn.properties"));
+        Map before = ontologyMap.getMap();
+        XrefIndex index = ontologyMap.getXrefIndex();
+
+        Properties withoutHO = new Properties();
+        withoutHO.putAll(p);
+        withoutHO.remove("HO.uri");
+        withoutHO.remove("HO.refresh-interval");
+        withoutHO.remove("HO.class");
+        withoutHO.setProperty("HD.refresh-interval", "300");
+        ontologyMap.reconfigure(withoutHO);
+        Map after = ontologyMap.getMap();
+        assertEquals("Prefixes", new HashSet(Arrays.asList(new String[]{"HW", "HD"})), after.keySet());
+        assertSame("Unchanged", before.get("HW"), after.get("HW"));
+        assertNotSame("Changed", before.get("HD"), after.get("HD"));
+        try {
+            ontologyMap.getTerm("HO:0000001");
+            fail("Expected NoSuchElementException");
+        }
+        catch (NoSuchElementException e)  {
+            // Expected
+        }
+        assertEquals("Removed xrefs", 0, index.getXrefs("HO:0000001").length);
+
+        ontologyMap.reconfigure(p);
+        assertEquals("Added", "haw", ontologyMap.getTerm("HO:0000001"));
+        assertSame("Unchanged", after.get("HW"), ontologyMap.getMap().get("HW"));
+        assertEquals("Added xrefs", 1, index.getXrefs("HO:0000001").length);
+
+        after = ontologyMap.getMap();
+        p.setProperty("HX.uri", "hawthorn.obo");
+        p.setProperty("HX.class", "uk.ac.ebi.hawthorn.NoSuchOntology");
+        try {
+            ontologyMap.reconfigure(p);
+            fail("Expected ClassNotFoundException");
+        }
+        catch (ClassNotFoundException e)  {
+            assertSame("Configuration kept", after, ontologyMap.getMap());
+        }
+    }
+
     /**
      * Checks the same ontology terms as <code>testGetMap</code> by calling <code>OntologyMap.getTerm</code>
      *
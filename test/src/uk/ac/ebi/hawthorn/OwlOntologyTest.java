@@ -0,0 +1,87 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * OwlOntology Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class OwlOntologyTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(OwlOntologyTest.class);
+        return suite;
+    }
+
+    public OwlOntologyTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Checks classes, labels and subClassOf edges read from hawthorn.owl
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testGetTerm() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        Ontology ontology = (Ontology) ontologyMap.getMap().get("HO");
+        assertEquals("Term count (unlabelled class skipped)", 3, ontology.getTerms().size());
+        assertEquals("Label", "haw", ontologyMap.getTerm("HO:0000001"));
+
+        TermRecord record = ontologyMap.getTermRecord("HO:0000001");
+        assertEquals("Definition", "The red pome of the hawthorn.", record.getDefinition());
+        assertEquals("Namespace", "fruit", record.getNamespace());
+        assertEquals("Synonyms", Arrays.asList(new String[]{"haw berry"}), Arrays.asList(record.getSynonyms()));
+        assertEquals("Xrefs", Arrays.asList(new String[]{"HW:006"}), Arrays.asList(record.getXrefs()));
+        assertEquals("Subsets", Arrays.asList(new String[]{"ho_slim"}), Arrays.asList(record.getSubsets()));
+        assertEquals("is_a", "is_a HO:0000000", record.getRelationships()[0].toString());
+
+        Set relationships = new HashSet();
+        TermRecord.Relationship[] r = ontologyMap.getTermRecord("HO:0000002").getRelationships();
+        for (int i = 0; i < r.length; i++)  {
+            relationships.add(r[i].toString());
+        }
+        assertEquals("Restriction and named superclass, no anonymous class",
+                     new HashSet(Arrays.asList(new String[]{"part_of HO:0000001", "is_a HO:0000000"})),
+                     relationships);
+    }
+
+    public void testToId()  {
+        assertEquals("OBO", "GO:0000001", OwlParser.toId("http://purl.obolibrary.org/obo/GO_0000001"));
+        assertEquals("Hash", "CHEBI:15377", OwlParser.toId("http://example.org/onto#CHEBI_15377"));
+        assertEquals("No underscore", "Thing", OwlParser.toId("http://www.w3.org/2002/07/owl#Thing"));
+    }
+
+}
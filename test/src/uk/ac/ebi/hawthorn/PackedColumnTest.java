@@ -0,0 +1,108 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+
+/**
+ * PackedColumn Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class PackedColumnTest extends TestCase   {
+
+    private static final String   LONG   = "The main woody axis of a tree, from which the branches grow";
+    private static final String[] VALUES = {LONG, null, "branch", LONG + " upwards"};
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(PackedColumnTest.class);
+        return suite;
+    }
+
+    public PackedColumnTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Checks builders pre-sized like an earlier column keep their arrays, including over
+     * repeated reloads and when values grow a little, and copy them when far off.
+     */
+    public void testReuse()  {
+        PackedColumn.Builder builder = new PackedColumn.Builder();
+        PackedColumn column = build(builder, VALUES);
+        assertFalse("Default size copied", column.sharesArrays(builder));
+
+        for (int i = 0; i < 3; i++) {
+            builder = PackedColumn.Builder.sizedLike(column, VALUES.length);
+            column = build(builder, VALUES);
+            assertTrue("Same values reused, reload " + i, column.sharesArrays(builder));
+            assertValues(column, VALUES);
+        }
+
+        String[] grown = {LONG, null, "branches", LONG + " upwards"};
+        builder = PackedColumn.Builder.sizedLike(column, grown.length);
+        column = build(builder, grown);
+        assertTrue("Within slack", column.sharesArrays(builder));
+        assertValues(column, grown);
+
+        String[] shrunk = {"t", null, null, null};
+        builder = PackedColumn.Builder.sizedLike(column, shrunk.length);
+        column = build(builder, shrunk);
+        assertFalse("Mostly unused", column.sharesArrays(builder));
+        assertValues(column, shrunk);
+        assertNull("sizedLike(null)", PackedColumn.Builder.sizedLike(null, 4));
+    }
+
+    /**
+     * Checks multiple values per term are kept apart.
+     */
+    public void testStrings()  {
+        PackedColumn.Builder builder = new PackedColumn.Builder(2, 16);
+        builder.add(0, "limb");
+        builder.add(0, "bough");
+        builder.add(1, "");
+        PackedColumn column = builder.build(2);
+        assertEquals(Arrays.asList(new String[]{"limb", "bough"}), Arrays.asList(column.getStrings(0)));
+        assertTrue("Empty", column.isEmpty(1));
+        assertEquals("No values", 0, column.getStrings(1).length);
+    }
+
+    private static PackedColumn build(PackedColumn.Builder builder, String[] values)  {
+        for (int i = 0; i < values.length; i++) {
+            builder.add(i, values[i]);
+        }
+        return builder.build(values.length);
+    }
+
+    private static void assertValues(PackedColumn column, String[] values)  {
+        for (int i = 0; i < values.length; i++) {
+            assertEquals("Value " + i, values[i], column.getString(i));
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+
+/**
+ * PrefixRouter Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class PrefixRouterTest extends TestCase   {
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(PrefixRouterTest.class);
+        return suite;
+    }
+
+    public PrefixRouterTest(String name) {
+        super(name);
+    }
+
+    public void testGet()  {
+        String[] prefixes = {"GO", "MI", "ECO", "PO", "SO", "CHEBI", "UBERON", "NCBITaxon", "HW", "HD", "HO"};
+        Map map = new HashMap();
+        for (int i = 0; i < prefixes.length; i++)   {
+            map.put(prefixes[i], Integer.valueOf(i));
+        }
+        PrefixRouter router = new PrefixRouter(map);
+        for (int i = 0; i < prefixes.length; i++)   {
+            String id = prefixes[i] + ":0000001";
+            assertEquals(prefixes[i], Integer.valueOf(i), router.get(id, prefixes[i].length()));
+        }
+        assertNull("Unknown prefix", router.get("XX:0000001", 2));
+        assertNull("Longer prefix", router.get("GOX:0000001", 3));
+        assertNull("Shorter prefix", router.get("G:0000001", 1));
+        assertNull("Empty prefix", router.get(":0000001", 0));
+        assertNull("Empty router", new PrefixRouter(new HashMap()).get("GO:1", 2));
+    }
+
+}
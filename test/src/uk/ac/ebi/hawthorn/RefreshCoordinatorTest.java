@@ -0,0 +1,270 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+
+/**
+ * RefreshCoordinator Tester. Other nodes are simulated by other coordinators on the same
+ * directory, and by separate JVMs started with {@link Node}.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class RefreshCoordinatorTest extends TestCase   {
+
+    private static final String SHARED_DIR = "shared";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(RefreshCoordinatorTest.class);
+        return suite;
+    }
+
+    public RefreshCoordinatorTest(String name) {
+        super(name);
+    }
+
+    protected void tearDown()   {
+        File dir = new File(SHARED_DIR);
+        File[] files = dir.listFiles();
+        for (int i = 0; files != null && i < files.length; i++)  {
+            files[i].delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Checks only one coordinator holds the lock, and snapshots are published and read back.
+     *
+     * @throws  IOException if could not use shared directory
+     */
+    public void testFileRefreshCoordinator() throws IOException  {
+        FileRefreshCoordinator a = new FileRefreshCoordinator(new File(SHARED_DIR));
+        FileRefreshCoordinator b = new FileRefreshCoordinator(new File(SHARED_DIR));
+        assertEquals("No version", RefreshCoordinator.NO_VERSION, a.getVersion("HW"));
+        assertNull("No snapshot", a.read("HW"));
+
+        assertTrue("A locks", a.tryLock("HW"));
+        assertFalse("B cannot lock", b.tryLock("HW"));
+        assertFalse("A cannot lock twice", a.tryLock("HW"));
+        assertTrue("B locks other prefix", b.tryLock("HD"));
+        b.unlock("HD", 0);
+        assertEquals("Never checked", 0, a.getLastCheckTime("HW"));
+        TermStore.Builder builder = new TermStore.Builder();
+        builder.addTerm("HW:001", "trunk");
+        builder.addTerm("HW:002", "branch");
+        a.publish("HW", 42, builder.build());
+        a.unlock("HW", 1000);
+
+        assertTrue("B locks", b.tryLock("HW"));
+        assertEquals("Check time", 1000, b.getLastCheckTime("HW"));
+        b.unlock("HW", 0);
+        assertEquals("Version", 42, b.getVersion("HW"));
+        RefreshCoordinator.Snapshot snapshot = b.read("HW");
+        assertEquals("Snapshot version", 42, snapshot.getVersion());
+        assertEquals("Size", 2, snapshot.getTermStore().size());
+        assertEquals("Name", "branch", snapshot.getTermStore().getName(snapshot.getTermStore().indexOf("HW:002")));
+        try {
+            b.publish("HW", 43, snapshot.getTermStore());
+            fail("Expected IllegalStateException when publishing without lock");
+        }
+        catch (IllegalStateException e) {
+        }
+    }
+
+    /**
+     * Checks the first map fetches and publishes the source, and a second map, in this JVM
+     * and in another, loads the published snapshot without fetching.
+     *
+     * @throws  Exception if could not load ontologies or run other JVM
+     */
+    public void testSharedLoad() throws Exception  {
+        CountingListener first = new CountingListener();
+        OntologyMap map = new OntologyMap(getProperties(), first);
+        assertTrue("First map fetched source", first.count > 0);
+        Ontology ontology = ((Ontology) map.getMap().get("HW"));
+        assertNotNull("Coordinator", ((AbstractOntology) ontology).getRefreshCoordinator());
+        assertTrue("Snapshot published", new File(SHARED_DIR, "HW.snapshot").isFile());
+
+        CountingListener second = new CountingListener();
+        OntologyMap other = new OntologyMap(getProperties(), second);
+        assertEquals("Second map fetched source", 0, second.count);
+        assertEquals("Term", "twig", other.getTerm("HW:004"));
+        assertEquals("Size", ontology.getTermStore().size(), ((Ontology) other.getMap().get("HW")).getTermStore().size());
+
+        assertEquals("Other JVM", "0 " + ontology.getTermStore().size(), runNode("load"));
+    }
+
+    /**
+     * Checks ontologies whose factory cannot take a coordinator are refused rather than
+     * silently fetching the source on every node.
+     *
+     * @throws  Exception if could not load ontology
+     */
+    public void testUncoordinatedFactory() throws Exception  {
+        OntologyManager.registerOntology("test.Uncoordinated", new OntologyFactory()  {
+            public Ontology getInstance(String prefix, String uri, String userName, String password,
+                                        int refreshInterval, boolean tolerateRefreshException,
+                                        InputStreamListener inputStreamListener)    {
+                throw new UnsupportedOperationException();
+            }
+        });
+        try {
+            OntologyManager.getOntology("test.Uncoordinated", "HW", "hawthorn.obo", "", "", 0, false, null,
+                                        new FileRefreshCoordinator(new File(SHARED_DIR)));
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)  {
+            // Expected
+        }
+        finally {
+            OntologyManager.deregisterOntology("test.Uncoordinated");
+        }
+    }
+
+    /**
+     * Checks a map waits for a snapshot while another JVM holds the lock, rather than fetching.
+     *
+     * @throws  Exception if could not load ontologies or run other JVM
+     */
+    public void testLockedByOtherJvm() throws Exception  {
+        Process process = startNode("lock");
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            assertEquals("Other JVM locked", "locked", reader.readLine());
+            assertFalse("Lock held by other JVM", new FileRefreshCoordinator(new File(SHARED_DIR)).tryLock("HW"));
+
+            // Start loading while the other JVM holds the lock, then let it publish
+            final CountingListener listener = new CountingListener();
+            final OntologyMap[] map = new OntologyMap[1];
+            final Exception[] failure = new Exception[1];
+            Thread loader = new Thread()   {
+                public void run()   {
+                    try {
+                        map[0] = new OntologyMap(getProperties(), listener);
+                    }
+                    catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            loader.start();
+            Thread.sleep(1000);
+            assertNull("Still waiting for snapshot", map[0]);
+            process.getOutputStream().close();
+            assertEquals("Other JVM published", "published", reader.readLine());
+            loader.join();
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            assertEquals("Fetched source", 0, listener.count);
+            assertEquals("Term", "twig", map[0].getTerm("HW:004"));
+            FileRefreshCoordinator coordinator = new FileRefreshCoordinator(new File(SHARED_DIR));
+            assertTrue("Lock free", coordinator.tryLock("HW"));
+            coordinator.unlock("HW", 0);
+        }
+        finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static String runNode(String mode) throws IOException, InterruptedException  {
+        Process process = startNode(mode);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line = reader.readLine();
+            assertEquals("Exit code", 0, process.waitFor());
+            return line;
+        }
+        finally {
+            process.destroy();
+        }
+    }
+
+    private static Process startNode(String mode) throws IOException  {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(new String[]{java, "-cp", System.getProperty("java.class.path"),
+                                                                 Node.class.getName(), mode});
+        builder.redirectErrorStream(true);
+        return builder.start();
+    }
+
+    private static InputStream getProperties()  {
+        String p = "HW.uri=hawthorn.obo\n" +
+                   "HW.class=uk.ac.ebi.hawthorn.OboOntology\n" +
+                   "HW.shared-dir=" + SHARED_DIR + "\n";
+        return new ByteArrayInputStream(p.getBytes());
+    }
+
+    /**
+     * Counts requests for input streams, leaving the ontology to open them.
+     */
+    private static final class CountingListener implements InputStreamListener  {
+
+        private int count = 0;
+
+        public InputStream getInputStream(String uri)   {
+            count++;
+            return null;
+        }
+
+    }
+
+    /**
+     * Another node, run in its own JVM. With "load", loads the shared ontology and prints the
+     * number of fetches and terms. With "lock", holds the lock for HW until standard input is
+     * closed, then publishes a snapshot.
+     */
+    public static final class Node  {
+
+        public static void main(String[] args) throws Exception  {
+            if (args[0].equals("lock"))  {
+                FileRefreshCoordinator coordinator = new FileRefreshCoordinator(new File(SHARED_DIR));
+                if (!coordinator.tryLock("HW")) {
+                    System.exit(1);
+                }
+                System.out.println("locked");
+                System.out.flush();
+                while (System.in.read() > -1)   {
+                }
+                OboOntology source = new OboOntology("HW", "hawthorn.obo", "", "", 600, false, null);
+                coordinator.publish("HW", 1, source.getTermStore());
+                coordinator.unlock("HW", System.currentTimeMillis());
+                System.out.println("published");
+            }
+            else    {
+                CountingListener listener = new CountingListener();
+                OntologyMap map = new OntologyMap(getProperties(), listener);
+                System.out.println(listener.count + " " + ((Ontology) map.getMap().get("HW")).getTermStore().size());
+            }
+            System.out.flush();
+        }
+
+    }
+
+}
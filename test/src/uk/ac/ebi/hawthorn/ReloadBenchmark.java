@@ -0,0 +1,231 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import org.bdgp.apps.dagedit.dataadapter.GOBOAdapter;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Measures peak heap while an OBO ontology is reloaded and the old snapshot is still held,
+ * comparing DAG-Edit's GOBOAdapter with OboParser streaming into a pre-sized builder.
+ * <p>
+ * Usage: <code>ReloadBenchmark [obo-file] [terms]</code>. If no file is given, a GO-sized
+ * OBO file is generated in the temporary directory. Peaks are the live heap seen after each
+ * garbage collection, so run with a small young generation for finer readings, for example:
+ * </p>
+ * <pre>
+ *  java -Xmx512m -Xmn8m uk.ac.ebi.hawthorn.ReloadBenchmark
+ * </pre>
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class ReloadBenchmark {
+
+    private static final int DEFAULT_TERMS = 45000;
+
+    public static void main(String[] args) {
+        try {
+            int terms = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_TERMS;
+            File file = (args.length > 0 && args[0].length() > 0) ? new File(args[0]) : generate(terms);
+            run(file, System.out);
+        }
+        catch (Exception e)    {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reloads <code>file</code> with each loader while holding a snapshot of it, and prints
+     * the steady-state heap and the peak during each reload.
+     *
+     * @param   file    OBO file
+     * @param   out     Output stream
+     * @throws  Exception if could not load file
+     */
+    public static void run(final File file, PrintStream out) throws Exception  {
+        out.println("File:\t" + file + " (" + file.length() + " bytes)");
+        final TermStore[] held = new TermStore[1];
+        Loader adapter = new Loader()   {
+            public TermStore load() throws IOException  {
+                GOBOAdapter adapter = new GOBOAdapter();
+                GOBOAdapter.IOProfile profile = new GOBOAdapter.IOProfile("");
+                Vector v = new Vector();
+                v.add(file.getPath());
+                profile.setFiles(v);
+                adapter.setIOProfile(profile);
+                return OboOntology.readTermStore(adapter);
+            }
+        };
+        Loader parser = new Loader()   {
+            public TermStore load() throws IOException  {
+                TermStore.Builder builder = (held[0] == null) ? new TermStore.Builder() : new TermStore.Builder(held[0]);
+                Reader reader = new FileReader(file);
+                try {
+                    OboParser.parse(new BufferedReader(reader), builder);
+                }
+                finally {
+                    reader.close();
+                }
+                return builder.build();
+            }
+        };
+
+        long base = liveHeap();
+        held[0] = parser.load();
+        long steady = liveHeap() - base;
+        out.println("Snapshot:\tterms=" + held[0].size() + "\tretained=" + (steady / 1024) + " KB" +
+                    "\testimated=" + (held[0].getMemoryUsage().getTotalBytes() / 1024) + " KB");
+        measure(out, "GOBOAdapter", adapter, base, steady);
+        measure(out, "OboParser", parser, base, steady);
+    }
+
+    // Reloads while the old snapshot is held, sampling the live heap after each collection
+    private static void measure(PrintStream out, String name, Loader loader, long base, long steady) throws Exception  {
+        liveHeap();
+        Sampler sampler = new Sampler();
+        sampler.start();
+        long time = System.currentTimeMillis();
+        TermStore store = loader.load();
+        time = System.currentTimeMillis() - time;
+        long end = liveHeap() - base;
+        sampler.finish();
+        long peak = Math.max(sampler.peak - base, end);
+        out.println(name + ":\tterms=" + store.size() + "\ttime=" + time + " ms" +
+                    "\tpeak=" + (peak / 1024) + " KB (" + (peak * 100 / Math.max(steady, 1)) + "% of one snapshot)" +
+                    "\tcollections=" + sampler.collections);
+    }
+
+    private static long liveHeap()  {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)  {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface Loader    {
+        public TermStore load() throws IOException;
+    }
+
+    /**
+     * Polls heap used after the last collection of each pool, keeping the largest total.
+     */
+    private static final class Sampler extends Thread  {
+
+        private volatile boolean done = false;
+        private long peak = 0;
+        private int  collections = 0;
+
+        Sampler()   {
+            setDaemon(true);
+        }
+
+        public void run()   {
+            List pools = ManagementFactory.getMemoryPoolMXBeans();
+            long last = -1;
+            while (!done)   {
+                long total = 0;
+                for (Iterator i = pools.iterator(); i.hasNext(); )  {
+                    MemoryPoolMXBean pool = (MemoryPoolMXBean) i.next();
+                    if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null)  {
+                        total += pool.getCollectionUsage().getUsed();
+                    }
+                }
+                if (total != last)  {
+                    collections++;
+                    last = total;
+                }
+                peak = Math.max(peak, total);
+                try {
+                    Thread.sleep(1);
+                }
+                catch (InterruptedException e)  {
+                    return;
+                }
+            }
+        }
+
+        void finish() throws InterruptedException   {
+            done = true;
+            join();
+        }
+
+    }
+
+    /**
+     * Writes an OBO file of <code>count</code> terms in three namespaces, with definitions,
+     * synonyms, xrefs, subsets and is_a and part_of parents.
+     *
+     * @param   count   Number of terms
+     * @return  generated file
+     * @throws  IOException if could not write file
+     */
+    static File generate(int count) throws IOException {
+        File file = File.createTempFile("hawthorn", ".obo");
+        file.deleteOnExit();
+        String[] namespaces = {"biological_process", "molecular_function", "cellular_component"};
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        writer.println("format-version: 1.0");
+        writer.println("default-namespace: benchmark");
+        writer.println("subsetdef: bm_slim \"Benchmark slim\"");
+        writer.println();
+        for (int i = 0; i < count; i++)   {
+            writer.println("[Term]");
+            writer.println("id: " + id(i));
+            writer.println("name: benchmark term number " + i);
+            writer.println("namespace: " + namespaces[i % 3]);
+            writer.println("def: \"The benchmark process or component numbered " + i +
+                           " in a generated ontology.\" [BM:curator, PMID:" + (10000 + i) + "]");
+            writer.println("exact_synonym: \"synonym of term " + i + "\" []");
+            if (i % 4 == 0) {
+                writer.println("related_synonym: \"related term " + i + "\" []");
+            }
+            writer.println("xref_analog: EC:1.1.1." + (i % 300));
+            if (i % 20 == 0)    {
+                writer.println("subset: bm_slim");
+            }
+            if (i > 0)  {
+                writer.println("is_a: " + id((i - 1) / 3) + " ! parent");
+            }
+            if (i > 10) {
+                writer.println("relationship: part_of " + id(i / 2) + " ! whole");
+            }
+            writer.println();
+        }
+        writer.println("[Typedef]");
+        writer.println("id: part_of");
+        writer.println("name: part of");
+        writer.close();
+        return file;
+    }
+
+    private static String id(int i) {
+        String s = "000000" + i;
+        return "BM:" + s.substring(s.length() - 7);
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * SemanticSimilarity Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class SemanticSimilarityTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+    private static final double DELTA     = 1e-9;
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(SemanticSimilarityTest.class);
+        return suite;
+    }
+
+    public SemanticSimilarityTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Checks information content and similarity measures over hawthorn.obo.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testSimilarity() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        TermStore store = ((Ontology) ontologyMap.getMap().get("HW")).getTermStore();
+        String[] corpus = {"HW:003", "HW:003", "HW:004", "HW:005",
+                           "HW:001", "HW:001", "HW:001", "HW:001", "XX:999"};
+        SemanticSimilarity similarity = new SemanticSimilarity(store, corpus, null);
+        assertEquals("Annotations", 8, similarity.getAnnotationCount());
+        assertEquals("Root", 0, similarity.getInformationContent("HW:000"), DELTA);
+        assertEquals("IC", Math.log(4), similarity.getInformationContent("HW:003"), DELTA);
+        assertEquals("IC via part_of", Math.log(4), similarity.getInformationContent("HW:004"), DELTA);
+        assertEquals("Not annotated", 0, similarity.getInformationContent("HW:006"), DELTA);
+
+        assertEquals("MICA", "HW:002", similarity.getMostInformativeCommonAncestor("HW:003", "HW:005"));
+        assertEquals("MICA self", "HW:003", similarity.getMostInformativeCommonAncestor("HW:003", "HW:003"));
+        assertEquals("Resnik", Math.log(2), similarity.getSimilarity("HW:003", "HW:005", SemanticSimilarity.RESNIK), DELTA);
+        assertEquals("Lin", 0.4, similarity.getSimilarity("HW:003", "HW:005", SemanticSimilarity.LIN), DELTA);
+        assertEquals("Jaccard", 0.4, similarity.getSimilarity("HW:003", "HW:005", SemanticSimilarity.JACCARD), DELTA);
+        assertEquals("Root only", 0, similarity.getSimilarity("HW:001", "HW:003", SemanticSimilarity.RESNIK), DELTA);
+
+        Map counts = new HashMap();
+        counts.put("HW:003", Integer.valueOf(2));
+        counts.put("HW:004", Integer.valueOf(1));
+        counts.put("HW:005", Long.valueOf(1));
+        counts.put("HW:001", Integer.valueOf(4));
+        SemanticSimilarity fromCounts = new SemanticSimilarity(store, counts, null);
+        assertEquals("Same IC from counts", similarity.getInformationContent("HW:005"),
+                     fromCounts.getInformationContent("HW:005"), DELTA);
+
+        String[] ids = {"HW:001", "HW:003", "HW:005", "XX:999"};
+        double[][] matrix = similarity.getSimilarityMatrix(ids, ids, SemanticSimilarity.LIN);
+        assertEquals("Diagonal", 1, matrix[1][1], DELTA);
+        assertEquals("Symmetric", matrix[1][2], matrix[2][1], DELTA);
+        assertEquals("Cell", 0.4, matrix[1][2], DELTA);
+        assertTrue("Unknown", Double.isNaN(matrix[3][0]));
+        try {
+            similarity.getSimilarity("HW:001", "HW:003", 99);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)  {
+            // Expected
+        }
+    }
+
+    /**
+     * Compares a matrix large enough to run in parallel with single queries.
+     */
+    public void testMatrix()  {
+        TermStore.Builder builder = new TermStore.Builder();
+        int size = 500;
+        String[] ids = new String[size];
+        for (int i = 0; i < size; i++)  {
+            ids[i] = "T:" + i;
+            int index = builder.addTerm(ids[i], "term " + i);
+            if (i > 0)  {
+                builder.addRelationship(index, "is_a", "T:" + ((i - 1) / 3));
+            }
+            if (i > 10 && i % 7 == 0)  {
+                builder.addRelationship(index, "part_of", "T:" + (i / 10));
+            }
+        }
+        TermStore store = builder.build();
+        SemanticSimilarity similarity = new SemanticSimilarity(store, ids, null);
+        double[][] matrix = similarity.getSimilarityMatrix(ids, ids, SemanticSimilarity.RESNIK);
+        for (int i = 0; i < size; i += 37)  {
+            for (int j = 0; j < size; j += 11)  {
+                assertEquals(ids[i] + " " + ids[j],
+                             similarity.getSimilarity(ids[i], ids[j], SemanticSimilarity.RESNIK), matrix[i][j], DELTA);
+                assertEquals("Symmetric", matrix[i][j], matrix[j][i], DELTA);
+            }
+        }
+    }
+
+}
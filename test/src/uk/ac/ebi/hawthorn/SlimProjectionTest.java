@@ -0,0 +1,120 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * SlimProjection Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class SlimProjectionTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(SlimProjectionTest.class);
+        return suite;
+    }
+
+    public SlimProjectionTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Maps hawthorn.obo onto the hw_slim subset.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     * @see     Ontology#getSlimProjection(String)
+     */
+    public void testProjectToSlim() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        Ontology ontology = (Ontology) ontologyMap.getMap().get("HW");
+        SlimProjection slim = ontology.getSlimProjection("hw_slim");
+        assertSame("Cached", slim, ontology.getSlimProjection("hw_slim"));
+        assertEquals("Slim size", 3, slim.getSlimSize());
+
+        String[][] mapped = slim.projectToSlim(new String[]{"HW:001", "HW:003", "HW:006", "HW:000", "XX:001"});
+        assertEquals("Self", Arrays.asList(new String[]{"HW:001"}), Arrays.asList(mapped[0]));
+        assertEquals("is_a", Arrays.asList(new String[]{"HW:002"}), Arrays.asList(mapped[1]));
+        assertEquals("part_of, nearest only", Arrays.asList(new String[]{"HW:002"}), Arrays.asList(mapped[2]));
+        assertEquals("Root", Arrays.asList(new String[]{"HW:000"}), Arrays.asList(mapped[3]));
+        assertEquals("Unknown", 0, mapped[4].length);
+
+        // Following is_a only, leaf reaches the root alone
+        TermStore store = ontology.getTermStore();
+        SlimProjection isA = new SlimProjection(store, slim.getSlimIds(), new String[]{"is_a"});
+        assertEquals("is_a only", Arrays.asList(new String[]{"HW:000"}), Arrays.asList(isA.project("HW:006")));
+        assertEquals("Empty subset", 0, ontology.getSlimProjection("none").project("HW:006").length);
+    }
+
+    /**
+     * Checks a wide custom slim and a batch large enough to run in parallel.
+     */
+    public void testLargeSlim()  {
+        // Binary tree: T:i is_a T:(i-1)/2; slim is every term at depth 6
+        TermStore.Builder builder = new TermStore.Builder();
+        int size = (1 << 10) - 1;
+        for (int i = 0; i < size; i++)  {
+            int index = builder.addTerm("T:" + i, "term " + i);
+            if (i > 0)  {
+                builder.addRelationship(index, "is_a", "T:" + ((i - 1) / 2));
+            }
+        }
+        TermStore store = builder.build();
+        List slimIds = new ArrayList();
+        for (int i = (1 << 6) - 1; i < (1 << 7) - 1; i++)    {
+            slimIds.add("T:" + i);
+        }
+        SlimProjection slim = new SlimProjection(store, (String[]) slimIds.toArray(new String[0]), null);
+        assertEquals("Slim size", 64, slim.getSlimSize());
+        String[] ids = new String[20000];
+        for (int i = 0; i < ids.length; i++)    {
+            ids[i] = "T:" + (i % size);
+        }
+        String[][] mapped = slim.projectToSlim(ids);
+        for (int i = 0; i < ids.length; i++)    {
+            int t = i % size;
+            int depth = 31 - Integer.numberOfLeadingZeros(t + 1);
+            if (depth < 6)  {
+                assertEquals("Above slim " + t, 0, mapped[i].length);
+            }
+            else    {
+                int a = t;
+                while (31 - Integer.numberOfLeadingZeros(a + 1) > 6)    {
+                    a = (a - 1) / 2;
+                }
+                assertEquals("Below slim " + t, Arrays.asList(new String[]{"T:" + a}), Arrays.asList(mapped[i]));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+
+/**
+ * SourceHealth and CircuitBreaker Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class SourceHealthTest extends TestCase   {
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(SourceHealthTest.class);
+        return suite;
+    }
+
+    public SourceHealthTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Walks the breaker through closed, open, half-open and back.
+     */
+    public void testCircuitBreaker()  {
+        CircuitBreaker breaker = new CircuitBreaker(1000, 0);
+        breaker.configure(2, 100, 250);
+        assertFalse("Not due", breaker.tryAcquire(999));
+        assertTrue("Due", breaker.tryAcquire(1000));
+        assertFalse("Already checking", breaker.tryAcquire(1000));
+        breaker.failure(1000, new IOException("down"));
+        assertEquals("Still closed", SourceHealth.CLOSED, breaker.getHealth().getState());
+        assertFalse("Backing off", breaker.tryAcquire(1001));
+        assertEquals("Retry interval", 1100, breaker.getHealth().getNextCheckTime());
+        assertTrue("Retry", breaker.tryAcquire(1100));
+        breaker.failure(1100, new IOException("down"));
+        SourceHealth health = breaker.getHealth();
+        assertEquals("Open", SourceHealth.OPEN, health.getState());
+        assertEquals("Failures", 2, health.getConsecutiveFailures());
+        assertEquals("Backoff doubles", 1300, health.getNextCheckTime());
+        assertFalse("Open", breaker.tryAcquire(1299));
+        assertTrue("Probe", breaker.tryAcquire(1300));
+        assertEquals("Half-open", "half-open", breaker.getHealth().getStateName());
+        breaker.failure(1300, new IOException("still down"));
+        assertEquals("Backoff capped", 1550, breaker.getHealth().getNextCheckTime());
+        assertTrue("Probe", breaker.tryAcquire(1550));
+        breaker.failure(1550, new IOException("still down"));
+        assertEquals("Backoff capped", 1800, breaker.getHealth().getNextCheckTime());
+        assertTrue("Probe", breaker.tryAcquire(1800));
+        breaker.success(1800);
+        health = breaker.getHealth();
+        assertTrue("Closed", health.isHealthy());
+        assertEquals("Reset", 0, health.getConsecutiveFailures());
+        assertEquals("Total", 4, health.getFailureCount());
+        assertEquals("Last failure", "java.io.IOException: still down", health.getLastFailure());
+        assertEquals("Next check", 2800, health.getNextCheckTime());
+    }
+
+    /**
+     * Removes the source of an ontology and checks lookups carry on from the last snapshot.
+     *
+     * @throws  Exception if could not copy or load ontology
+     */
+    public void testUnhealthySource() throws Exception  {
+        File file = File.createTempFile("hawthorn", ".dag");
+        TestFiles.copy(new File("hawthorn.dag"), file);
+        Class.forName("uk.ac.ebi.hawthorn.DagOntology");
+        AbstractOntology ontology = (AbstractOntology) OntologyManager.getOntology("uk.ac.ebi.hawthorn.DagOntology",
+                "HD", file.getPath(), "", "", 0, true, null);
+        ontology.setFailurePolicy(2, 60, 600);
+        String term = ontology.getTerm("HD:0001");
+        assertTrue("Healthy", ontology.getHealth().isHealthy());
+        file.delete();
+        assertEquals("First failure", term, ontology.getTerm("HD:0001"));
+        assertEquals("Failed", 1, ontology.getHealth().getFailureCount());
+        for (int i = 0; i < 100; i++)   {
+            assertEquals("Last snapshot", term, ontology.getTerm("HD:0001"));
+        }
+        assertEquals("No more checks", 1, ontology.getHealth().getFailureCount());
+    }
+
+    /**
+     * Checks only the first lookup after a slow source goes down waits on it, and the next
+     * is served from the last snapshot at once.
+     *
+     * @throws  Exception if could not copy or load ontology
+     */
+    public void testUnreachableSource() throws Exception  {
+        final File file = File.createTempFile("hawthorn", ".dag");
+        TestFiles.copy(new File("hawthorn.dag"), file);
+        final boolean[] down = new boolean[1];
+        InputStreamListener listener = new InputStreamListener()    {
+            public InputStream getInputStream(String uri) throws IOException   {
+                if (down[0])    {
+                    try {
+                        Thread.sleep(1000);
+                    }
+                    catch (InterruptedException e)  {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IOException("Connection timed out: " + uri);
+                }
+                return new FileInputStream(file);
+            }
+        };
+        Class.forName("uk.ac.ebi.hawthorn.DagOntology");
+        AbstractOntology ontology = (AbstractOntology) OntologyManager.getOntology("uk.ac.ebi.hawthorn.DagOntology",
+                "HD", "http://unreachable.invalid/hawthorn.dag", "", "", 0, true, listener);
+        String term = ontology.getTerm("HD:0001");
+        down[0] = true;
+        long start = System.currentTimeMillis();
+        assertEquals("First lookup", term, ontology.getTerm("HD:0001"));
+        assertTrue("First lookup waits", System.currentTimeMillis() - start >= 1000);
+        start = System.currentTimeMillis();
+        assertEquals("Second lookup", term, ontology.getTerm("HD:0001"));
+        assertTrue("Second lookup does not wait", System.currentTimeMillis() - start < 500);
+        assertEquals("Checked once", 1, ontology.getHealth().getFailureCount());
+        file.delete();
+    }
+
+    /**
+     * Checks the first load's checksum is kept, so an unchanged source is not parsed or swapped
+     * in again, and each refresh reads the source once.
+     *
+     * @throws  Exception if could not copy or load ontology
+     */
+    public void testUnchangedSource() throws Exception  {
+        final File file = File.createTempFile("hawthorn", ".dag");
+        TestFiles.copy(new File("hawthorn.dag"), file);
+        final int[] opened = new int[1];
+        InputStreamListener listener = new InputStreamListener()    {
+            public InputStream getInputStream(String uri) throws IOException   {
+                opened[0]++;
+                return new FileInputStream(file);
+            }
+        };
+        Class.forName("uk.ac.ebi.hawthorn.DagOntology");
+        AbstractOntology ontology = (AbstractOntology) OntologyManager.getOntology("uk.ac.ebi.hawthorn.DagOntology",
+                "HD", file.getPath(), "", "", 0, false, listener);
+        TermStore first = ontology.getTermStore();
+        LoadStatistics statistics = ontology.getLoadStatistics();
+        assertSame("Unchanged", first, ontology.getTermStore());
+        assertSame("Not parsed", statistics, ontology.getLoadStatistics());
+        assertEquals("Read once per check", 3, opened[0]);
+
+        OutputStream out = new FileOutputStream(file, true);
+        out.write(" %petal ; HD:0099\n".getBytes("UTF-8"));
+        out.close();
+        assertNotSame("Changed", first, ontology.getTermStore());
+        assertEquals("Added", "petal", ontology.getTerm("HD:0099"));
+        file.delete();
+    }
+
+}
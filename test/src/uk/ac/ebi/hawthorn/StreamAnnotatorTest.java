@@ -0,0 +1,94 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+
+/**
+ * StreamAnnotator Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class StreamAnnotatorTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(StreamAnnotatorTest.class);
+        return suite;
+    }
+
+    public StreamAnnotatorTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Annotates single lines.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testAnnotateLine() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        StreamAnnotator annotator = new StreamAnnotator(ontologyMap, OntologyMapAnnotate.parseColumns("2,3,5"));
+        assertEquals("a\tHW:001\tHD:0001|HW:006|XX:1\tx\ttrunk\t" + ontologyMap.getTerm("HD:0001") + "|berry|\t",
+                     annotator.annotate("a\tHW:001\tHD:0001|HW:006|XX:1\tx"));
+        assertEquals("a\tHW:999\tfoo\t" + StreamAnnotator.UNKNOWN + "\t\t",
+                     annotator.annotate("a\tHW:999\tfoo"));
+        assertEquals("! comment", annotator.annotate("! comment"));
+    }
+
+    /**
+     * Annotates enough lines to use several chunks, checking order is kept.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testAnnotateStream() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        String[] names = {"Hawthorn test ontology", "trunk", "branch", "bough", "twig", "leaf", "berry"};
+        StringBuffer in = new StringBuffer("!gaf-version: 2.0\n");
+        for (int i = 0; i < 10000; i++)  {
+            in.append("DB\t").append(i).append("\tHW:00").append(i % 8).append('\n');
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamAnnotator annotator = new StreamAnnotator(ontologyMap, new int[]{2}, 100, 3);
+        StreamAnnotator.Summary summary = annotator.annotate(new ByteArrayInputStream(in.toString().getBytes("UTF-8")), out);
+        assertEquals("Lines", 10001, summary.getLineCount());
+        assertEquals("Unknown", 1250, summary.getUnknownCount());
+        assertEquals("Resolved", 8750, summary.getResolvedCount());
+        BufferedReader reader = new BufferedReader(new StringReader(out.toString("UTF-8")));
+        assertEquals("Header", "!gaf-version: 2.0", reader.readLine());
+        for (int i = 0; i < 10000; i++)  {
+            String name = (i % 8 < 7) ? names[i % 8] : StreamAnnotator.UNKNOWN;
+            assertEquals("Line " + i, "DB\t" + i + "\tHW:00" + (i % 8) + "\t" + name, reader.readLine());
+        }
+        assertNull("End", reader.readLine());
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * TermEnrichment Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class TermEnrichmentTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+    private static final double DELTA     = 1e-9;
+
+    private TermEnrichment enrichment;
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TermEnrichmentTest.class);
+        return suite;
+    }
+
+    public TermEnrichmentTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        TermStore store = ((Ontology) ontologyMap.getMap().get("HW")).getTermStore();
+        // Ten entities on bough, ten on trunk
+        String[] entities = new String[20];
+        String[] ids      = new String[20];
+        for (int i = 0; i < 20; i++)    {
+            entities[i] = "e" + i;
+            ids[i]      = (i < 10) ? "HW:003" : "HW:001";
+        }
+        enrichment = new TermEnrichment(new AnnotationRollup(store, null).count(entities, ids));
+    }
+
+    /**
+     * Checks p-values against sums of hypergeometric probabilities.
+     */
+    public void testPValue()  {
+        int total = 20;
+        for (int marked = 0; marked <= total; marked++) {
+            for (int n = 0; n <= total; n++)    {
+                for (int k = 0; k <= Math.min(n, marked); k++)  {
+                    double p = 0;
+                    for (int i = k; i <= Math.min(n, marked); i++)  {
+                        p += choose(marked, i) * choose(total - marked, n - i) / choose(total, n);
+                    }
+                    double expected = Math.min(1, p);
+                    assertEquals(k + "/" + n + ", " + marked + "/" + total, expected,
+                                 Math.exp(enrichment.getLogPValue(k, n, marked, total)), DELTA * Math.max(expected, 1e-6));
+                }
+            }
+        }
+        try {
+            enrichment.getLogPValue(5, 4, 10, 20);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)  {
+            // Expected
+        }
+    }
+
+    /**
+     * Checks a study set drawn from bough entities is enriched for bough and its ancestors.
+     */
+    public void testAnalyse()  {
+        TermEnrichment.Result[] results = enrichment.analyse(new String[]{"e0", "e1", "e2", "e3", "e4", "e4", "unknown"});
+        assertEquals("Terms", 3, results.length);
+        double p = 252.0 / 15504.0;     // C(10,5) / C(20,5)
+        assertEquals("First", "HW:002", results[0].getId());
+        assertEquals("Second", "HW:003", results[1].getId());
+        assertEquals("Root", "HW:000", results[2].getId());
+        assertEquals("Study count", 5, results[1].getStudyCount());
+        assertEquals("Study size", 5, results[1].getStudySize());
+        assertEquals("Background count", 10, results[1].getBackgroundCount());
+        assertEquals("Background size", 20, results[1].getBackgroundSize());
+        assertEquals("P", p, results[1].getPValue(), DELTA);
+        assertEquals("Root P", 1, results[2].getPValue(), DELTA);
+        assertEquals("Adjusted", p * 3 / 2, results[0].getAdjustedPValue(), DELTA);
+        assertEquals("Adjusted", p * 3 / 2, results[1].getAdjustedPValue(), DELTA);
+        assertEquals("Adjusted root", 1, results[2].getAdjustedPValue(), DELTA);
+        assertEquals("Empty", 0, enrichment.analyse(new String[]{"unknown"}).length);
+    }
+
+    /**
+     * Checks batches give the same results as single study sets.
+     */
+    public void testBatch()  {
+        Random random = new Random(49);
+        String[][] studies = new String[200][];
+        for (int i = 0; i < studies.length; i++)    {
+            studies[i] = new String[1 + random.nextInt(10)];
+            for (int j = 0; j < studies[i].length; j++) {
+                studies[i][j] = "e" + random.nextInt(22);
+            }
+        }
+        TermEnrichment.Result[][] batch = enrichment.analyse(studies);
+        for (int i = 0; i < studies.length; i++)    {
+            TermEnrichment.Result[] single = enrichment.analyse(studies[i]);
+            assertEquals("Terms " + i, single.length, batch[i].length);
+            for (int j = 0; j < single.length; j++) {
+                assertEquals("Result " + i, single[j].toString(), batch[i][j].toString());
+            }
+        }
+    }
+
+    private static double choose(int n, int k) {
+        double c = 1;
+        for (int i = 0; i < k; i++) {
+            c = c * (n - i) / (i + 1);
+        }
+        return c;
+    }
+
+}
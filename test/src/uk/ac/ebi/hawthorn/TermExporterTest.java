@@ -0,0 +1,189 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * TermExporter Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class TermExporterTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TermExporterTest.class);
+        return suite;
+    }
+
+    public TermExporterTest(String name) {
+        super(name);
+    }
+
+    private TermStore getTermStore() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        Ontology ontology = (Ontology) ontologyMap.getMap().get("HW");
+        assertSame("getTerms is a view of the snapshot", ontology.getTermStore().asMap(), ontology.getTerms());
+        return ontology.getTermStore();
+    }
+
+    /**
+     * Checks terms are visited in ID order.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     * @see     TermStore#cursor()
+     */
+    public void testCursor() throws ClassNotFoundException, IOException  {
+        TermStore store = getTermStore();
+        TermCursor cursor = store.cursor();
+        try {
+            cursor.getIndex();
+            fail("Expected IllegalStateException before first term");
+        }
+        catch (IllegalStateException e)    {
+        }
+        String previous = "";
+        int count = 0;
+        while (cursor.next())   {
+            assertTrue("Sorted", cursor.getId().compareTo(previous) > 0);
+            assertEquals("Name", store.getName(store.indexOf(cursor.getId())), cursor.getName());
+            previous = cursor.getId();
+            count++;
+        }
+        assertEquals("Count", store.size(), count);
+        assertFalse("Past end", cursor.next());
+    }
+
+    /**
+     * Checks range, prefix and numeric cursors.
+     */
+    public void testRangeCursor()  {
+        TermStore.Builder builder = new TermStore.Builder();
+        String[] ids = {"GO:0009000", "GO:0008150", "PO:0000001", "GO:0008099", "GO:0008200",
+                        "GO:0008100", "GO:0008199"};
+        for (int i = 0; i < ids.length; i++)    {
+            builder.addTerm(ids[i], "term " + i);
+        }
+        TermStore store = builder.build();
+        assertEquals("Range", Arrays.asList(new String[]{"GO:0008100", "GO:0008150", "GO:0008199"}),
+                     getIds(store.cursor("GO:0008100", "GO:0008200")));
+        assertEquals("Open start", Arrays.asList(new String[]{"GO:0008099"}), getIds(store.cursor(null, "GO:00081")));
+        assertEquals("Open end", Arrays.asList(new String[]{"PO:0000001"}), getIds(store.cursor("GO:1", null)));
+        assertEquals("Empty", 0, store.cursor("GO:0008200", "GO:0008100").getCount());
+        assertEquals("Prefix", Arrays.asList(new String[]{"GO:0008100", "GO:0008150", "GO:0008199"}),
+                     getIds(store.prefixCursor("GO:00081")));
+        assertEquals("Prefix count", 6, store.prefixCursor("GO:").getCount());
+        assertEquals("All", store.size(), store.prefixCursor("").getCount());
+        assertEquals("Numeric", Arrays.asList(new String[]{"GO:0008150", "GO:0008199", "GO:0008200"}),
+                     getIds(store.numericCursor("GO:", 8101, 8200)));
+        assertEquals("Numeric to end", Arrays.asList(new String[]{"GO:0008200", "GO:0009000"}),
+                     getIds(store.numericCursor("GO:", 8200, 9999999)));
+        assertEquals("Unknown prefix", 0, store.numericCursor("XX:", 0, 10).getCount());
+    }
+
+    private static List getIds(TermCursor cursor)   {
+        List ids = new ArrayList();
+        while (cursor.next())   {
+            ids.add(cursor.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Writes ID, name and relationships as tab-separated lines.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testWriteTsv() throws ClassNotFoundException, IOException  {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TermExporter.writeTsv(getTermStore(), out, true);
+        String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals("Lines", 7, lines.length);
+        assertEquals("First", "HW:000\tHawthorn test ontology\t", lines[0]);
+        assertEquals("Relationships", "HW:005\tleaf\tis_a HW:000|part_of HW:004", lines[5]);
+
+        out.reset();
+        TermExporter.writeTsv(getTermStore(), out, false);
+        assertEquals("Without relationships", "HW:003\tbough", out.toString("UTF-8").split("\n")[3]);
+    }
+
+    /**
+     * Writes OBO stanzas that can be read back.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testWriteObo() throws ClassNotFoundException, IOException  {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TermExporter.writeObo(getTermStore(), out);
+        String obo = out.toString("UTF-8");
+        assertTrue("Header", obo.startsWith("format-version: 1.2\n"));
+        assertTrue("Subset", obo.indexOf("[Term]\nid: HW:001\nname: trunk\n") > -1);
+        assertTrue("is_a", obo.indexOf("is_a: HW:002 ! branch\n") > -1);
+        assertTrue("part_of", obo.indexOf("relationship: part_of HW:004 ! twig\n") > -1);
+    }
+
+    /**
+     * Round-trips all fields through the binary format.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testBinary() throws ClassNotFoundException, IOException  {
+        TermStore store = getTermStore();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TermExporter.writeBinary(store, out);
+        TermStore copy = TermExporter.readBinary(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("Size", store.size(), copy.size());
+        for (int i = 0; i < store.size(); i++)  {
+            TermRecord expected = store.getRecord(i);
+            TermRecord actual   = copy.getRecord(copy.indexOf(expected.getId()));
+            String id = expected.getId();
+            assertEquals(id, expected.getName(), actual.getName());
+            assertEquals(id, expected.getNamespace(), actual.getNamespace());
+            assertEquals(id, expected.getDefinition(), actual.getDefinition());
+            assertEquals(id, Arrays.asList(expected.getSynonyms()), Arrays.asList(actual.getSynonyms()));
+            assertEquals(id, Arrays.asList(expected.getXrefs()), Arrays.asList(actual.getXrefs()));
+            assertEquals(id, Arrays.asList(expected.getSubsets()), Arrays.asList(actual.getSubsets()));
+            assertEquals(id, Arrays.asList(expected.getRelationships()), Arrays.asList(actual.getRelationships()));
+        }
+
+        try {
+            TermExporter.readBinary(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}));
+            fail("Expected IOException for bad magic number");
+        }
+        catch (IOException e)    {
+        }
+    }
+
+}
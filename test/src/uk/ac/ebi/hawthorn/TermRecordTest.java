@@ -0,0 +1,151 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * TermRecord and TermStore Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class TermRecordTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TermRecordTest.class);
+        return suite;
+    }
+
+    public TermRecordTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Checks fields read from hawthorn.obo
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     * @see     OntologyMap#getTermRecord(String)
+     */
+    public void testGetTermRecord() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        TermRecord record = ontologyMap.getTermRecord("HW:001");
+        assertEquals("ID", "HW:001", record.getId());
+        assertEquals("Name", "trunk", record.getName());
+        assertEquals("Definition", "The main woody stem of the tree.", record.getDefinition());
+        assertEquals("Namespace", "wood", record.getNamespace());
+        assertEquals("Synonyms", Arrays.asList(new String[]{"bole"}), Arrays.asList(record.getSynonyms()));
+        assertEquals("Xrefs", Arrays.asList(new String[]{"PO:0020142"}), Arrays.asList(record.getXrefs()));
+        assertEquals("Subsets", Arrays.asList(new String[]{"hw_slim"}), Arrays.asList(record.getSubsets()));
+        TermRecord.Relationship[] relationships = record.getRelationships();
+        assertEquals("Relationships", 1, relationships.length);
+        assertEquals("Type", "is_a", relationships[0].getType());
+        assertEquals("Target", "HW:000", relationships[0].getTargetId());
+
+        record = ontologyMap.getTermRecord("HW:006");
+        assertEquals("Default namespace", "default_namespace", ontologyMap.getTermRecord("HW:000").getNamespace());
+        assertNull("No definition", ontologyMap.getTermRecord("HW:004").getDefinition());
+        assertEquals("No xrefs", 0, ontologyMap.getTermRecord("HW:004").getXrefs().length);
+        Set targets = new HashSet();
+        relationships = record.getRelationships();
+        for (int i = 0; i < relationships.length; i++)    {
+            targets.add(relationships[i].toString());
+        }
+        assertTrue("is_a", targets.contains("is_a HW:000"));
+        assertTrue("part_of", targets.contains("part_of HW:004"));
+    }
+
+    /**
+     * Checks packed multi-valued columns and the map view
+     */
+    public void testBuilder()  {
+        TermStore.Builder builder = new TermStore.Builder(1);
+        for (int i = 0; i < 100; i++)   {
+            int index = builder.addTerm("T:" + i, "term " + i);
+            if (i % 3 == 0) {
+                builder.addSynonym(index, "a" + i);
+                builder.addSynonym(index, "b\u00e9" + i);
+            }
+            if (i > 0)  {
+                builder.addRelationship(index, "is_a", "T:" + (i - 1));
+            }
+        }
+        builder.addRelationship(0, "is_a", "X:unknown");
+        TermStore store = builder.build();
+        assertEquals("Size", 100, store.size());
+        assertEquals("Index", 42, store.indexOf("T:42"));
+        assertEquals("Missing", -1, store.indexOf("T:100"));
+        assertEquals("Synonyms", Arrays.asList(new String[]{"a42", "b\u00e942"}),
+                     Arrays.asList(store.getRecord(42).getSynonyms()));
+        assertEquals("No synonyms", 0, store.getRecord(43).getSynonyms().length);
+        assertEquals("Unresolved parent dropped", 0, store.getParentCount(0));
+        assertEquals("Parent", 41, store.getParent(42, 0));
+        assertNull("No namespace", store.getRecord(1).getNamespace());
+        Map map = store.asMap();
+        assertEquals("Map size", 100, map.size());
+        assertEquals("Map get", "term 7", map.get("T:7"));
+        assertEquals("Map equality", new HashMap(map), map);
+    }
+
+    /**
+     * Checks a builder cannot change a store that shares its arrays
+     */
+    public void testBuilderReuse()  {
+        TermStore.Builder builder = new TermStore.Builder(16);
+        for (int i = 0; i < 16; i++)   {
+            int index = builder.addTerm("T:" + i, "term " + i);
+            builder.setDefinition(index, "definition " + i);
+        }
+        TermStore store = builder.build();
+        builder = new TermStore.Builder(store);
+        for (int i = 0; i < 16; i++)   {
+            int index = builder.addTerm("T:" + i, "term " + i);
+            builder.setDefinition(index, "definition " + i);
+        }
+        store = builder.build();
+        try {
+            builder.addTerm("T:0", "changed");
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException e)  {
+        }
+        try {
+            builder.setDefinition(15, "changed");
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException e)  {
+        }
+        assertEquals("Name", "term 0", store.getName(0));
+        assertEquals("Definition", "definition 15", store.getRecord(15).getDefinition());
+        assertEquals("Size", 16, store.size());
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2005 European Bioinformatics Institute.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+
+package uk.ac.ebi.hawthorn;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * XrefIndex Tester.
+ *
+ * @author  Antony Quinn
+ * @version $Id$
+ * @since   1.1
+ */
+public class XrefIndexTest extends TestCase   {
+
+    private static final String TEST_FILE = "hawthorn.properties";
+
+    public static void main(String args[]) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static TestSuite suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(XrefIndexTest.class);
+        return suite;
+    }
+
+    public XrefIndexTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Maps HW terms to PO xrefs and back again, and between HW and HD.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     * @see     XrefIndex#mapIds(String[], String)
+     */
+    public void testMapIds() throws ClassNotFoundException, IOException  {
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        XrefIndex index = ontologyMap.getXrefIndex();
+        assertEquals("Links", 6, index.size());
+
+        String[][] mapped = index.mapIds(new String[]{"HW:001", "HW:004", "HW:005", "XX:999"}, "PO");
+        assertEquals("Length", 4, mapped.length);
+        assertEquals("Forward", Arrays.asList(new String[]{"PO:0020142"}), Arrays.asList(mapped[0]));
+        assertEquals("No xrefs", 0, mapped[1].length);
+        assertEquals("Forward", Arrays.asList(new String[]{"PO:0025034"}), Arrays.asList(mapped[2]));
+        assertEquals("Unknown", 0, mapped[3].length);
+
+        mapped = index.mapIds(new String[]{"PO:0025073"}, "HW");
+        assertEquals("Reverse", Arrays.asList(new String[]{"HW:002"}), Arrays.asList(mapped[0]));
+        mapped = index.mapIds(new String[]{"PO:0025073"}, "GO");
+        assertEquals("Wrong target prefix", 0, mapped[0].length);
+
+        mapped = index.mapIds(new String[]{"HW:004", "HD:0001"}, "HD");
+        assertEquals("Cross-ontology reverse", Arrays.asList(new String[]{"HD:0006"}), Arrays.asList(mapped[0]));
+        assertEquals("Same prefix", 0, mapped[1].length);
+        mapped = index.mapIds(new String[]{"HD:0001"}, "HW");
+        assertEquals("Cross-ontology forward", Arrays.asList(new String[]{"HW:000"}), Arrays.asList(mapped[0]));
+
+        index.refresh("HW");
+        assertEquals("Unchanged after refresh", 6, index.size());
+        assertSame("Same index", index, ontologyMap.getXrefIndex());
+    }
+
+    /**
+     * Checks IDs from a removed ontology are dropped when the index is re-linked.
+     *
+     * @throws  ClassNotFoundException   if class is unrecognised
+     * @throws  IOException              if could not load properties file or ontology
+     */
+    public void testRemovedIds() throws ClassNotFoundException, IOException  {
+        Properties p = new Properties();
+        p.load(new FileInputStream(TEST_FILE));
+        OntologyMap ontologyMap = new OntologyMap(new FileInputStream(TEST_FILE));
+        XrefIndex index = ontologyMap.getXrefIndex();
+        int before = index.getIdCount();
+
+        p.remove("HD.uri");
+        p.remove("HD.refresh-interval");
+        p.remove("HD.class");
+        ontologyMap.reconfigure(p);
+        index.refresh();
+        assertTrue("Dropped", index.getIdCount() < before);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        p.store(out, null);
+        XrefIndex fresh = new OntologyMap(new ByteArrayInputStream(out.toByteArray())).getXrefIndex();
+        assertEquals("Same as new index", fresh.getIdCount(), index.getIdCount());
+        assertEquals("Links", fresh.size(), index.size());
+        assertEquals("Forward", Arrays.asList(new String[]{"PO:0020142"}),
+                     Arrays.asList(index.mapIds(new String[]{"HW:001"}, "PO")[0]));
+    }
+
+}